@@ -0,0 +1,1675 @@
+/*----------------------------------------------------------------------*/
+/*
+
+        Module          : CMMEBinaryCache.java
+
+        Package         : DataStruct
+
+        Classes Included: CMMEBinaryCache,SnapshotBuilder,CMMEBinaryReader,
+                          BinaryValueTable
+
+        Purpose         : Compact binary snapshot of parsed piece data, kept
+                          as a derived load cache next to CMME-XML files
+                          (the XML file remains the format of record)
+
+        Programmer      : Ted Dumitrescu
+
+        Date Started    : 10/17/26
+
+Updates:
+10/17/26: snapshots can be built one section at a time (SnapshotBuilder),
+          for pieces whose sections are loaded lazily
+10/17/26: snapshots are also checked against a CRC of the first and last
+          blocks of the source; the cache directory is pruned (least
+          recently used snapshots first) when it grows past maxCacheSize
+
+                                                                        */
+/*----------------------------------------------------------------------*/
+
+package DataStruct;
+
+/*----------------------------------------------------------------------*/
+/* Imported packages */
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+
+/*------------------------------------------------------------------------
+Class:   CMMEBinaryCache
+Extends: -
+Purpose: Write and load binary snapshots of piece data
+
+Snapshot layout:
+  int    MAGIC
+  short  FORMAT_VERSION
+  int    header length
+  header: software version, source path, source length, source modification
+          time, source head/tail checksum, whether source was validated,
+          CMME file version
+  tables: strings, pitches, clefs, colorations, proportions (each value
+          stored once; events refer to table entries by index)
+  body:   general data, voice list, variant versions, sections with typed
+          event records
+------------------------------------------------------------------------*/
+
+public class CMMEBinaryCache
+{
+/*----------------------------------------------------------------------*/
+/* Class variables */
+
+  static final int   MAGIC=0x434D4D42; /* "CMMB" */
+  static final short FORMAT_VERSION=3;
+  static final int   PREFIX_SIZE=4+2+4;
+
+  static final String CACHE_FILE_EXT=".cmmebin";
+
+  /* bytes checksummed at each end of a source file */
+  static final int CHECKSUM_BLOCK_SIZE=65536;
+
+  /* record tags (event records use Event.EVENT_* type numbers) */
+  static final int TAG_VARIANTREADINGS=0x40,
+                   TAG_ENDLIST=        0xFF;
+
+  /* generic event attribute flags */
+  static final int EF_COLORED=   0x01,
+                   EF_EDITORIAL= 0x02,
+                   EF_ERROR=     0x04,
+                   EF_COMMENTARY=0x08;
+
+  /* directory for snapshot files (null to disable caching) */
+  public static File cacheDir=defaultCacheDir();
+
+  /* total size of snapshot files above which the least recently used are
+     deleted */
+  public static long maxCacheSize=64L*1024*1024;
+
+  /* background thread for writing snapshot files */
+  static ExecutorService writerThread=null;
+
+/*----------------------------------------------------------------------*/
+/* Class methods */
+
+  static File defaultCacheDir()
+  {
+    try
+      {
+        return new File(new File(System.getProperty("user.home"),".cmme"),"cache");
+      }
+    catch (SecurityException e)
+      {
+        /* no local file access (applet) */
+        return null;
+      }
+  }
+
+/*------------------------------------------------------------------------
+Method:  File getCacheFile(File source)
+Purpose: Calculate location of snapshot file for one source file
+Parameters:
+  Input:  File source - CMME-XML source file
+  Output: -
+  Return: snapshot file, or null if caching is unavailable
+------------------------------------------------------------------------*/
+
+  public static File getCacheFile(File source)
+  {
+    if (cacheDir==null)
+      return null;
+    try
+      {
+        CRC32 pathHash=new CRC32();
+        pathHash.update(source.getCanonicalPath().getBytes("UTF-8"));
+        return new File(cacheDir,Long.toHexString(pathHash.getValue())+CACHE_FILE_EXT);
+      }
+    catch (IOException e)
+      {
+        return null;
+      }
+  }
+
+/*------------------------------------------------------------------------
+Method:  long sourceChecksum(File source)
+Purpose: Calculate cheap content checksum of a source file (CRC of its
+         first and last blocks), to catch rewrites which keep the same
+         length and modification time
+Parameters:
+  Input:  File source - CMME-XML source file
+  Output: -
+  Return: checksum, or -1 if the file cannot be read
+------------------------------------------------------------------------*/
+
+  public static long sourceChecksum(File source)
+  {
+    RandomAccessFile sourceIn=null;
+    try
+      {
+        sourceIn=new RandomAccessFile(source,"r");
+        long   len=sourceIn.length();
+        CRC32  crc=new CRC32();
+        byte[] block=new byte[(int)Math.min(len,CHECKSUM_BLOCK_SIZE)];
+
+        sourceIn.readFully(block);
+        crc.update(block);
+        if (len>CHECKSUM_BLOCK_SIZE)
+          {
+            block=new byte[(int)Math.min(len-CHECKSUM_BLOCK_SIZE,CHECKSUM_BLOCK_SIZE)];
+            sourceIn.seek(len-block.length);
+            sourceIn.readFully(block);
+            crc.update(block);
+          }
+        return crc.getValue();
+      }
+    catch (IOException e)
+      {
+        return -1;
+      }
+    finally
+      {
+        if (sourceIn!=null)
+          try
+            {
+              sourceIn.close();
+            }
+          catch (IOException e)
+            {
+            }
+      }
+  }
+
+/*------------------------------------------------------------------------
+Method:  PieceData loadPieceData(File source)
+Purpose: Load piece data from snapshot of a source file, if a snapshot
+         exists and is still valid (source file length, modification time
+         and head/tail checksum unchanged since the snapshot was made, and
+         source validated if the parser is validating)
+Parameters:
+  Input:  File source - CMME-XML source file
+  Output: -
+  Return: piece data, or null if no valid snapshot is available
+------------------------------------------------------------------------*/
+
+  public static PieceData loadPieceData(File source)
+  {
+    File cacheFile=getCacheFile(source);
+    if (cacheFile==null || !cacheFile.exists())
+      return null;
+
+    RandomAccessFile cacheIn=null;
+    try
+      {
+        cacheIn=new RandomAccessFile(cacheFile,"r");
+        FileChannel cacheChannel=cacheIn.getChannel();
+
+        /* header is read into memory first, so that stale snapshots are
+           never mapped */
+        ByteBuffer prefix=readFully(cacheChannel,0,PREFIX_SIZE);
+        if (prefix.getInt()!=MAGIC || prefix.getShort()!=FORMAT_VERSION)
+          return null;
+        int        headerSize=prefix.getInt();
+        ByteBuffer header=readFully(cacheChannel,PREFIX_SIZE,headerSize);
+
+        CMMEBinaryReader reader=new CMMEBinaryReader();
+        reader.buf=header;
+        if (!MetaData.CMME_VERSION.equals(reader.readString()) ||
+            !source.getCanonicalPath().equals(reader.readString()))
+          return null;
+        long    sourceLength=header.getLong(),
+                sourceModified=header.getLong(),
+                sourceCRC=header.getLong();
+        boolean sourceValidated=header.get()!=0;
+        float   fileVersion=header.getFloat();
+        if (source.length()!=sourceLength || source.lastModified()!=sourceModified ||
+            sourceChecksum(source)!=sourceCRC)
+          return null;
+
+        /* an unchanged file which passed validation when the snapshot was
+           made is not validated again */
+        if (XMLReader.isValidating() && !sourceValidated)
+          return null;
+
+        long bodyStart=PREFIX_SIZE+headerSize;
+        PieceData pdata=reader.readPieceData(
+          cacheChannel.map(FileChannel.MapMode.READ_ONLY,bodyStart,cacheChannel.size()-bodyStart),
+          fileVersion);
+
+        /* mark as recently used (for pruning) */
+        cacheFile.setLastModified(System.currentTimeMillis());
+        return pdata;
+      }
+    catch (Exception e)
+      {
+        System.err.println("Error loading cached data for "+source+": "+e);
+        return null;
+      }
+    finally
+      {
+        if (cacheIn!=null)
+          try
+            {
+              cacheIn.close();
+            }
+          catch (IOException e)
+            {
+            }
+      }
+  }
+
+  static ByteBuffer readFully(FileChannel channel,long pos,int size) throws IOException
+  {
+    ByteBuffer buf=ByteBuffer.allocate(size);
+    while (buf.hasRemaining())
+      if (channel.read(buf,pos+buf.position())<0)
+        throw new EOFException();
+    buf.flip();
+    return buf;
+  }
+
+/*------------------------------------------------------------------------
+Method:  void savePieceData(File source,long sourceLength,long sourceModified,
+                            long sourceCRC,PieceData pdata,float fileVersion)
+Purpose: Make snapshot of piece data freshly loaded from a source file; the
+         data is encoded immediately (it may be edited once displayed) and
+         written to disk in the background. Errors are reported but not
+         thrown (the snapshot is only an optimization)
+Parameters:
+  Input:  File source         - CMME-XML source file
+          long sourceLength   - source file length before parsing
+          long sourceModified - source modification time before parsing
+          long sourceCRC      - sourceChecksum() before parsing
+          PieceData pdata     - piece data loaded from source
+          float fileVersion   - CMME version of source file
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+  public static void savePieceData(File source,long sourceLength,long sourceModified,
+                                   long sourceCRC,PieceData pdata,float fileVersion)
+  {
+    SnapshotBuilder snapshot=startSnapshot(source,sourceLength,sourceModified,sourceCRC,
+                                           pdata,fileVersion);
+    if (snapshot==null)
+      return;
+
+    for (int si=0; si<pdata.getNumSections(); si++)
+      snapshot.addSection(pdata.getSection(si));
+    snapshot.finish();
+  }
+
+/*------------------------------------------------------------------------
+Method:  SnapshotBuilder startSnapshot(File source,long sourceLength,
+                                      long sourceModified,long sourceCRC,
+                                      PieceData pdata,float fileVersion)
+Purpose: Begin snapshot of piece data loaded from a source file: general
+         data, voices and variant versions are encoded immediately, and
+         sections are added one at a time in order (so that a piece whose
+         sections are loaded lazily can be encoded as each section is read)
+Parameters:
+  Input:  File source         - CMME-XML source file
+          long sourceLength   - source file length before parsing
+          long sourceModified - source modification time before parsing
+          long sourceCRC      - sourceChecksum() before parsing
+          PieceData pdata     - piece data loaded from source (all sections
+                                must already have been added, though their
+                                voices may not yet be loaded)
+          float fileVersion   - CMME version of source file
+  Output: -
+  Return: snapshot in progress, or null if no snapshot should be made
+------------------------------------------------------------------------*/
+
+  public static SnapshotBuilder startSnapshot(File source,long sourceLength,long sourceModified,
+                                              long sourceCRC,PieceData pdata,float fileVersion)
+  {
+    File cacheFile=getCacheFile(source);
+    if (cacheFile==null || sourceCRC==-1)
+      return null;
+
+    /* source was rewritten while it was being parsed; the parsed data may
+       match neither version, so make no snapshot */
+    if (source.length()!=sourceLength || source.lastModified()!=sourceModified ||
+        sourceChecksum(source)!=sourceCRC)
+      return null;
+
+    SnapshotBuilder snapshot=new SnapshotBuilder(source,cacheFile,sourceLength,sourceModified,
+                                                 sourceCRC,pdata,fileVersion);
+    try
+      {
+        snapshot.writer.writePieceHeader(snapshot.bodyOut,pdata);
+      }
+    catch (IOException e)
+      {
+        System.err.println("Error caching data for "+source+": "+e);
+        return null;
+      }
+    return snapshot;
+  }
+
+/*------------------------------------------------------------------------
+Class:   SnapshotBuilder
+Extends: -
+Purpose: Snapshot being encoded, one section at a time
+------------------------------------------------------------------------*/
+
+  public static class SnapshotBuilder
+  {
+    File      source,
+              cacheFile;
+    long      sourceLength,
+              sourceModified,
+              sourceCRC;
+    PieceData pdata;
+    float     fileVersion;
+
+    /* body is written first, to collect value tables */
+    CMMEBinaryCache       writer;
+    ByteArrayOutputStream bodyBytes;
+    DataOutputStream      bodyOut;
+    boolean               failed=false;
+
+    SnapshotBuilder(File source,File cacheFile,long sourceLength,long sourceModified,
+                    long sourceCRC,PieceData pdata,float fileVersion)
+    {
+      this.source=source;
+      this.cacheFile=cacheFile;
+      this.sourceLength=sourceLength;
+      this.sourceModified=sourceModified;
+      this.sourceCRC=sourceCRC;
+      this.pdata=pdata;
+      this.fileVersion=fileVersion;
+      writer=new CMMEBinaryCache();
+      bodyBytes=new ByteArrayOutputStream(65536);
+      bodyOut=new DataOutputStream(bodyBytes);
+    }
+
+/*------------------------------------------------------------------------
+Method:  void addSection(MusicSection ms)
+Purpose: Encode next section of piece
+Parameters:
+  Input:  MusicSection ms - section to encode
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+    public void addSection(MusicSection ms)
+    {
+      if (failed)
+        return;
+      try
+        {
+          writer.writeSection(bodyOut,pdata,ms);
+        }
+      catch (Exception e)
+        {
+          System.err.println("Error caching data for "+source+": "+e);
+          failed=true;
+        }
+    }
+
+/*------------------------------------------------------------------------
+Method:  void abandon()
+Purpose: Discard snapshot (e.g., after an error loading a section)
+Parameters:
+  Input:  -
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+    public void abandon()
+    {
+      failed=true;
+    }
+
+/*------------------------------------------------------------------------
+Method:  void finish()
+Purpose: Complete encoding after all sections have been added, and write
+         snapshot file in the background
+Parameters:
+  Input:  -
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+    public void finish()
+    {
+      if (failed)
+        return;
+      if (source.length()!=sourceLength || source.lastModified()!=sourceModified ||
+          sourceChecksum(source)!=sourceCRC)
+        return;
+
+      try
+        {
+          bodyOut.flush();
+
+          ByteArrayOutputStream headerBytes=new ByteArrayOutputStream();
+          DataOutputStream      headerOut=new DataOutputStream(headerBytes);
+          writeString(headerOut,MetaData.CMME_VERSION);
+          writeString(headerOut,source.getCanonicalPath());
+          headerOut.writeLong(sourceLength);
+          headerOut.writeLong(sourceModified);
+          headerOut.writeLong(sourceCRC);
+          headerOut.writeBoolean(XMLReader.isValidating());
+          headerOut.writeFloat(fileVersion);
+          headerOut.flush();
+
+          final ByteArrayOutputStream snapshotBytes=
+            new ByteArrayOutputStream(PREFIX_SIZE+headerBytes.size()+bodyBytes.size()+4096);
+          DataOutputStream snapshotOut=new DataOutputStream(snapshotBytes);
+          snapshotOut.writeInt(MAGIC);
+          snapshotOut.writeShort(FORMAT_VERSION);
+          snapshotOut.writeInt(headerBytes.size());
+          headerBytes.writeTo(snapshotOut);
+          writer.writeTables(snapshotOut);
+          bodyBytes.writeTo(snapshotOut);
+          snapshotOut.flush();
+          bodyBytes=null;
+
+          final File   snapshotFile=cacheFile;
+          final String sourceName=source.toString();
+          getWriterThread().execute(new Runnable()
+            {
+              public void run()
+              {
+                writeSnapshotFile(snapshotFile,snapshotBytes,sourceName);
+              }
+            });
+        }
+      catch (Exception e)
+        {
+          System.err.println("Error caching data for "+source+": "+e);
+        }
+    }
+  }
+
+/*------------------------------------------------------------------------
+Method:  ExecutorService getWriterThread()
+Purpose: Return thread for writing snapshot files (created on first use;
+         daemon thread, so that a pending write does not keep the program
+         running)
+Parameters:
+  Input:  -
+  Output: -
+  Return: executor
+------------------------------------------------------------------------*/
+
+  static synchronized ExecutorService getWriterThread()
+  {
+    if (writerThread==null)
+      writerThread=Executors.newSingleThreadExecutor(new ThreadFactory()
+        {
+          public Thread newThread(Runnable r)
+          {
+            Thread t=new Thread(r,"Snapshot writer");
+            t.setDaemon(true);
+            return t;
+          }
+        });
+    return writerThread;
+  }
+
+/*------------------------------------------------------------------------
+Method:  void writeSnapshotFile(File cacheFile,ByteArrayOutputStream snapshotBytes,
+                                String sourceName)
+Purpose: Write encoded snapshot to a temporary file and move it into place
+Parameters:
+  Input:  File cacheFile                      - snapshot file
+          ByteArrayOutputStream snapshotBytes - encoded snapshot
+          String sourceName                   - source name for error messages
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+  static void writeSnapshotFile(File cacheFile,ByteArrayOutputStream snapshotBytes,
+                                String sourceName)
+  {
+    File tmpFile=new File(cacheFile.getPath()+".tmp");
+    try
+      {
+        cacheDir.mkdirs();
+        OutputStream cacheOut=new FileOutputStream(tmpFile);
+        try
+          {
+            snapshotBytes.writeTo(cacheOut);
+          }
+        finally
+          {
+            cacheOut.close();
+          }
+
+        cacheFile.delete();
+        if (!tmpFile.renameTo(cacheFile))
+          throw new IOException("could not rename "+tmpFile);
+        pruneCache(cacheFile);
+      }
+    catch (Exception e)
+      {
+        System.err.println("Error caching data for "+sourceName+": "+e);
+        tmpFile.delete();
+      }
+  }
+
+/*------------------------------------------------------------------------
+Method:  void pruneCache(File keepFile)
+Purpose: Delete least recently used snapshot files (by modification time,
+         which is updated whenever a snapshot is loaded) until the cache
+         directory is no larger than maxCacheSize
+Parameters:
+  Input:  File keepFile - snapshot just written (never deleted)
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+  static void pruneCache(File keepFile)
+  {
+    File[] cacheFiles=cacheDir.listFiles(new FileFilter()
+      {
+        public boolean accept(File f)
+        {
+          return f.getName().endsWith(CACHE_FILE_EXT);
+        }
+      });
+    if (cacheFiles==null)
+      return;
+
+    long totalSize=0;
+    for (File f : cacheFiles)
+      totalSize+=f.length();
+    if (totalSize<=maxCacheSize)
+      return;
+
+    Arrays.sort(cacheFiles,new Comparator<File>()
+      {
+        public int compare(File f1,File f2)
+        {
+          long m1=f1.lastModified(),
+               m2=f2.lastModified();
+          return m1<m2 ? -1 : m1>m2 ? 1 : 0;
+        }
+      });
+    for (int fi=0; fi<cacheFiles.length && totalSize>maxCacheSize; fi++)
+      if (!cacheFiles[fi].equals(keepFile))
+        {
+          long fileSize=cacheFiles[fi].length();
+          if (cacheFiles[fi].delete())
+            totalSize-=fileSize;
+        }
+  }
+
+/*------------------------------------------------------------------------
+Methods: write*(DataOutputStream out,...)
+Purpose: Low-level output of variable-length integers and strings
+Parameters:
+  Input:  values to write
+  Output: DataOutputStream out - output destination
+  Return: -
+------------------------------------------------------------------------*/
+
+  static void writeVarInt(DataOutputStream out,int val) throws IOException
+  {
+    while ((val&~0x7F)!=0)
+      {
+        out.writeByte((val&0x7F)|0x80);
+        val>>>=7;
+      }
+    out.writeByte(val);
+  }
+
+  /* signed values are zigzag-encoded so that small negatives stay short */
+  static void writeSignedInt(DataOutputStream out,int val) throws IOException
+  {
+    writeVarInt(out,(val<<1)^(val>>31));
+  }
+
+  static void writeString(DataOutputStream out,String s) throws IOException
+  {
+    byte[] sBytes=s.getBytes("UTF-8");
+    writeVarInt(out,sBytes.length);
+    out.write(sBytes);
+  }
+
+/*------------------------------------------------------------------------
+Methods: long pack*() / ...From*()
+Purpose: Convert table values to and from packed table keys
+Parameters:
+  Input:  values to convert
+  Output: -
+  Return: converted values
+------------------------------------------------------------------------*/
+
+  static long packPitch(Pitch p)
+  {
+    return ((long)p.noteletter<<32)|(p.octave&0xFFFFFFFFL);
+  }
+
+  static long packClef(Clef c,int pitchIndex)
+  {
+    return ((long)(c.cleftype&0xFFFF)<<48)|((long)(c.linespacenum&0xFFFF)<<32)|
+           ((long)pitchIndex<<1)|(c.signature ? 1 : 0);
+  }
+
+  static long packColoration(Coloration c)
+  {
+    return ((long)(c.primaryColor&0xFFFF)<<48)|((long)(c.primaryFill&0xFFFF)<<32)|
+           ((long)(c.secondaryColor&0xFFFF)<<16)|(c.secondaryFill&0xFFFFL);
+  }
+
+  static long packProportion(Proportion p)
+  {
+    return ((long)p.i1<<32)|(p.i2&0xFFFFFFFFL);
+  }
+
+  static Coloration colorationFromKey(long key)
+  {
+    return Coloration.intern(new Coloration((short)(key>>48),(short)(key>>32),(short)(key>>16),(short)key));
+  }
+
+/*----------------------------------------------------------------------*/
+/* Instance variables */
+
+  BinaryValueTable strings=new BinaryValueTable(),
+                   pitches=new BinaryValueTable(),
+                   clefs=new BinaryValueTable(),
+                   colorations=new BinaryValueTable(),
+                   proportions=new BinaryValueTable();
+
+/*----------------------------------------------------------------------*/
+/* Instance methods */
+
+/*------------------------------------------------------------------------
+Method:  void writeTables(DataOutputStream out)
+Purpose: Output value tables collected while writing body
+Parameters:
+  Input:  -
+  Output: DataOutputStream out - output destination
+  Return: -
+------------------------------------------------------------------------*/
+
+  void writeTables(DataOutputStream out) throws IOException
+  {
+    writeVarInt(out,strings.size());
+    for (Object s : strings.values)
+      writeString(out,(String)s);
+    for (BinaryValueTable t : new BinaryValueTable[] { pitches,clefs,colorations,proportions })
+      {
+        writeVarInt(out,t.size());
+        for (Object key : t.values)
+          out.writeLong((Long)key);
+      }
+  }
+
+/*------------------------------------------------------------------------
+Methods: void write*Ref(DataOutputStream out,...)
+Purpose: Output reference to table value (0 for null, otherwise index+1)
+Parameters:
+  Input:  value to write
+  Output: DataOutputStream out - output destination
+  Return: -
+------------------------------------------------------------------------*/
+
+  void writeStringRef(DataOutputStream out,String s) throws IOException
+  {
+    writeVarInt(out,s==null ? 0 : strings.intern(s)+1);
+  }
+
+  void writePitchRef(DataOutputStream out,Pitch p) throws IOException
+  {
+    writeVarInt(out,p==null ? 0 : pitches.intern(packPitch(p))+1);
+  }
+
+  void writeClefRef(DataOutputStream out,Clef c) throws IOException
+  {
+    writeVarInt(out,clefs.intern(packClef(c,pitches.intern(packPitch(c.pitch))))+1);
+  }
+
+  void writeColorationRef(DataOutputStream out,Coloration c) throws IOException
+  {
+    writeVarInt(out,c==null ? 0 : colorations.intern(packColoration(c))+1);
+  }
+
+  void writeProportionRef(DataOutputStream out,Proportion p) throws IOException
+  {
+    writeVarInt(out,p==null ? 0 : proportions.intern(packProportion(p))+1);
+  }
+
+  void writeSignum(DataOutputStream out,Signum s) throws IOException
+  {
+    if (s==null)
+      out.writeByte(0);
+    else
+      {
+        out.writeByte(1);
+        writeSignedInt(out,s.offset);
+        out.writeByte(s.orientation);
+        out.writeByte(s.side);
+      }
+  }
+
+/*------------------------------------------------------------------------
+Method:  void writePieceHeader(DataOutputStream out,PieceData pdata)
+Purpose: Output beginning of snapshot body, up to the section count (each
+         section follows separately through writeSection)
+Parameters:
+  Input:  PieceData pdata - piece data to write
+  Output: DataOutputStream out - output destination
+  Return: -
+------------------------------------------------------------------------*/
+
+  void writePieceHeader(DataOutputStream out,PieceData pdata) throws IOException
+  {
+    /* general data */
+    out.writeBoolean(pdata.isIncipitScore());
+    writeStringRef(out,pdata.getTitle());
+    writeStringRef(out,pdata.getSectionTitle());
+    writeStringRef(out,pdata.getComposer());
+    writeStringRef(out,pdata.getEditor());
+    writeStringRef(out,pdata.getPublicNotes());
+    writeStringRef(out,pdata.getNotes());
+    writeColorationRef(out,pdata.getBaseColoration());
+
+    /* voice data */
+    Voice[] vl=pdata.getVoiceData();
+    writeVarInt(out,vl.length);
+    for (Voice v : vl)
+      {
+        writeStringRef(out,v.getName());
+        out.writeBoolean(v.isEditorial());
+        Clef smc=v.getSuggestedModernClef();
+        writeVarInt(out,smc==null ? 0 : smc.cleftype+1);
+      }
+
+    /* variant versions */
+    ArrayList<VariantVersionData> versions=pdata.getVariantVersions();
+    writeVarInt(out,versions.size());
+    for (VariantVersionData vvd : versions)
+      {
+        writeStringRef(out,vvd.getID());
+        writeStringRef(out,vvd.getSourceName());
+        writeSignedInt(out,vvd.getSourceID());
+        writeVarInt(out,vvd.getNumInList());
+        writeStringRef(out,vvd.getEditor());
+        writeStringRef(out,vvd.getDescription());
+        writeVarInt(out,vvd.getMissingVoices().size());
+        for (Voice v : vvd.getMissingVoices())
+          writeVarInt(out,v.getNum());
+      }
+
+    /* sections */
+    writeVarInt(out,pdata.getNumSections());
+  }
+
+/*------------------------------------------------------------------------
+Method:  void writeSection(DataOutputStream out,PieceData pdata,MusicSection ms)
+Purpose: Output one music section
+Parameters:
+  Input:  PieceData pdata - piece containing section
+          MusicSection ms - section to write
+  Output: DataOutputStream out - output destination
+  Return: -
+------------------------------------------------------------------------*/
+
+  void writeSection(DataOutputStream out,PieceData pdata,MusicSection ms) throws IOException
+  {
+    out.writeByte(ms.getSectionType());
+    out.writeBoolean(ms.isEditorial());
+    writeStringRef(out,ms.getPrincipalSource());
+    writeVarInt(out,ms.getPrincipalSourceNum());
+
+    if (ms.getSectionType()==MusicSection.TEXT)
+      {
+        writeStringRef(out,((MusicTextSection)ms).getSectionText());
+        return;
+      }
+
+    /* base coloration is only recorded when it differs from the default
+       for the section type */
+    Coloration defaultColoration=ms.getSectionType()==MusicSection.PLAINCHANT ?
+      Coloration.DEFAULT_CHANT_COLORATION : pdata.getBaseColoration();
+    writeColorationRef(out,ms.getBaseColoration()==defaultColoration ? null : ms.getBaseColoration());
+
+    ArrayList<TacetInfo> tacetInfo=ms.getTacetInfo();
+    writeVarInt(out,tacetInfo.size());
+    for (TacetInfo ti : tacetInfo)
+      {
+        writeVarInt(out,ti.voiceNum);
+        writeStringRef(out,ti.tacetText);
+      }
+
+    writeVarInt(out,ms.getNumVoicesUsed());
+    for (int vi=0; vi<ms.getNumVoices(); vi++)
+      {
+        VoiceEventListData v=ms.getVoice(vi);
+        if (v==null)
+          continue;
+        writeVarInt(out,vi);
+        writeVarInt(out,v.getMissingVersions().size());
+        for (VariantVersionData vvd : v.getMissingVersions())
+          writeStringRef(out,vvd.getID());
+        writeVoiceEvents(out,v);
+      }
+  }
+
+/*------------------------------------------------------------------------
+Method:  void writeVoiceEvents(DataOutputStream out,VoiceEventListData v)
+Purpose: Output event list for one voice in one section, including
+         variant reading segments (section end marker is implicit)
+Parameters:
+  Input:  VoiceEventListData v - voice events
+  Output: DataOutputStream out - output destination
+  Return: -
+------------------------------------------------------------------------*/
+
+  void writeVoiceEvents(DataOutputStream out,VoiceEventListData v) throws IOException
+  {
+    int numEvents=v.getNumEvents();
+    for (int ei=0; ei<numEvents; ei++)
+      {
+        Event e=v.getEvent(ei);
+        switch (e.geteventtype())
+          {
+            case Event.EVENT_SECTIONEND:
+              break;
+            case Event.EVENT_VARIANTDATA_START:
+              out.writeByte(TAG_VARIANTREADINGS);
+
+              /* default reading */
+              for (e=v.getEvent(++ei); e.geteventtype()!=Event.EVENT_VARIANTDATA_END; e=v.getEvent(++ei))
+                writeEvent(out,e);
+              out.writeByte(TAG_ENDLIST);
+
+              /* variant readings */
+              ArrayList<VariantReading> readings=((VariantMarkerEvent)e).getReadings();
+              writeVarInt(out,readings.size());
+              for (VariantReading vr : readings)
+                {
+                  writeVarInt(out,vr.getVersions().size());
+                  for (VariantVersionData vvd : vr.getVersions())
+                    writeStringRef(out,vvd.getID());
+                  out.writeBoolean(vr.isError());
+                  for (int vri=0; vri<vr.getNumEvents(); vri++)
+                    writeEvent(out,vr.getEvent(vri));
+                  out.writeByte(TAG_ENDLIST);
+                }
+              break;
+            default:
+              writeEvent(out,e);
+          }
+      }
+    out.writeByte(TAG_ENDLIST);
+  }
+
+/*------------------------------------------------------------------------
+Method:  void writeEvent(DataOutputStream out,Event e)
+Purpose: Output one event record (type tag, type-specific data, generic
+         attributes)
+Parameters:
+  Input:  Event e - event to write
+  Output: DataOutputStream out - output destination
+  Return: -
+------------------------------------------------------------------------*/
+
+  void writeEvent(DataOutputStream out,Event e) throws IOException
+  {
+    int etype=e.geteventtype();
+    if (etype==Event.EVENT_SECTIONEND)
+      return;
+
+    out.writeByte(etype);
+    switch (etype)
+      {
+        case Event.EVENT_MULTIEVENT:
+          /* no generic attributes on multi-event itself */
+          writeVarInt(out,e.getSubEvents().size());
+          for (Event se : e.getSubEvents())
+            writeEvent(out,se);
+          return;
+
+        case Event.EVENT_CLEF:
+          writeClefRef(out,((ClefEvent)e).getClef(false,false));
+          break;
+
+        case Event.EVENT_MENS:
+          MensEvent me=(MensEvent)e;
+          writeVarInt(out,me.getSigns().size());
+          for (MensSignElement mse : me.getSigns())
+            {
+              out.writeByte(mse.signType);
+              if (mse.signType==MensSignElement.NUMBERS)
+                writeProportionRef(out,mse.number);
+              else
+                out.writeByte((mse.dotted ? 1 : 0)|(mse.stroke ? 2 : 0));
+            }
+          writeSignedInt(out,me.getStaffLoc());
+          out.writeByte((me.small() ? 1 : 0)|(me.vertical() ? 2 : 0)|(me.noScoreSig() ? 4 : 0));
+          Mensuration mi=me.getMensInfo();
+          out.writeByte(mi.prolatio);
+          out.writeByte(mi.tempus);
+          out.writeByte(mi.modus_minor);
+          out.writeByte(mi.modus_maior);
+          writeProportionRef(out,mi.tempoChange);
+          break;
+
+        case Event.EVENT_REST:
+          RestEvent re=(RestEvent)e;
+          out.writeByte(re.getnotetype());
+          writeProportionRef(out,re.getLength());
+          writeSignedInt(out,re.getbottomline());
+          writeVarInt(out,re.getnumlines());
+          writeSignum(out,re.getCorona());
+          writeSignum(out,re.getSignum());
+          break;
+
+        case Event.EVENT_NOTE:
+          NoteEvent        ne=(NoteEvent)e;
+          ModernAccidental ma=ne.getPitchOffset();
+          out.writeByte(ne.getnotetype());
+          writeProportionRef(out,ne.getLength());
+          writePitchRef(out,ne.getPitch());
+          writeSignedInt(out,ma.pitchOffset);
+          out.writeByte((ma.optional ? 1 : 0)|
+                        (ne.isWordEnd() ? 2 : 0)|
+                        (ne.isModernTextEditorial() ? 4 : 0)|
+                        (ne.isColored() ? 8 : 0));
+          out.writeByte(ne.getligtype());
+          out.writeByte(ne.getTieType());
+          out.writeByte(ne.getHalfColoration());
+          writeSignedInt(out,ne.getstemdir());
+          writeSignedInt(out,ne.getstemside());
+          writeVarInt(out,ne.getNumFlags());
+          writeStringRef(out,ne.getModernText());
+          writeSignum(out,ne.getCorona());
+          writeSignum(out,ne.getSignum());
+          break;
+
+        case Event.EVENT_DOT:
+          writePitchRef(out,((DotEvent)e).getPitch());
+          break;
+
+        case Event.EVENT_ORIGINALTEXT:
+          writeStringRef(out,((OriginalTextEvent)e).getText());
+          break;
+
+        case Event.EVENT_PROPORTION:
+          writeProportionRef(out,((ProportionEvent)e).getproportion());
+          break;
+
+        case Event.EVENT_COLORCHANGE:
+          writeColorationRef(out,((ColorChangeEvent)e).getcolorscheme());
+          break;
+
+        case Event.EVENT_CUSTOS:
+          writePitchRef(out,((CustosEvent)e).getPitch());
+          break;
+
+        case Event.EVENT_LINEEND:
+          out.writeBoolean(((LineEndEvent)e).isPageEnd());
+          break;
+
+        case Event.EVENT_BARLINE:
+          BarlineEvent be=(BarlineEvent)e;
+          writeVarInt(out,be.getNumLines());
+          out.writeBoolean(be.isRepeatSign());
+          writeSignedInt(out,be.getBottomLinePos());
+          writeVarInt(out,be.getNumSpaces());
+          break;
+
+        case Event.EVENT_ANNOTATIONTEXT:
+          AnnotationTextEvent ae=(AnnotationTextEvent)e;
+          writeStringRef(out,ae.gettext());
+          writeSignedInt(out,ae.getstaffloc());
+          break;
+
+        case Event.EVENT_LACUNA:
+          writeProportionRef(out,((LacunaEvent)e).getLength());
+          break;
+
+        case Event.EVENT_MODERNKEYSIGNATURE:
+          ModernKeySignature mks=((ModernKeySignatureEvent)e).getSigInfo();
+          writeVarInt(out,mks.numEls());
+          for (Iterator<ModernKeySignatureElement> i=mks.iterator(); i.hasNext();)
+            {
+              ModernKeySignatureElement kse=i.next();
+              out.writeChar(kse.pitch.noteletter);
+              writeSignedInt(out,kse.pitch.octave);
+              writeSignedInt(out,kse.accidental.accType);
+              writeVarInt(out,kse.accidental.numAcc);
+              out.writeBoolean(kse.accidental.optional);
+            }
+          break;
+      }
+
+    /* generic event attributes */
+    String ec=e.getEdCommentary();
+    out.writeByte((e.isColored() ? EF_COLORED : 0)|
+                  (e.isEditorial() ? EF_EDITORIAL : 0)|
+                  (e.isError() ? EF_ERROR : 0)|
+                  (ec!=null ? EF_COMMENTARY : 0));
+    if (ec!=null)
+      writeStringRef(out,ec);
+  }
+}
+
+/*------------------------------------------------------------------------
+Class:   CMMEBinaryReader
+Extends: CMMEParser
+Purpose: Construct piece data from a mapped snapshot body, using the same
+         per-voice parameter tracking as the XML parser
+------------------------------------------------------------------------*/
+
+class CMMEBinaryReader extends CMMEParser
+{
+/*----------------------------------------------------------------------*/
+/* Instance variables */
+
+  ByteBuffer buf;
+
+  /* value tables */
+  String[]     strings;
+  long[]       pitches,
+               clefs,
+               proportions;
+  Coloration[] colorations; /* shared between events (never modified) */
+
+/*----------------------------------------------------------------------*/
+/* Instance methods */
+
+  CMMEBinaryReader()
+  {
+    super();
+  }
+
+/*------------------------------------------------------------------------
+Methods: read*()
+Purpose: Low-level input of variable-length integers, strings and table
+         references
+Parameters:
+  Input:  -
+  Output: -
+  Return: values read
+------------------------------------------------------------------------*/
+
+  int readVarInt()
+  {
+    int val=0,shift=0,b;
+    do
+      {
+        b=buf.get();
+        val|=(b&0x7F)<<shift;
+        shift+=7;
+      }
+    while ((b&0x80)!=0);
+    return val;
+  }
+
+  int readSignedInt()
+  {
+    int val=readVarInt();
+    return (val>>>1)^-(val&1);
+  }
+
+  boolean readBoolean()
+  {
+    return buf.get()!=0;
+  }
+
+  String readString() throws UnsupportedEncodingException
+  {
+    int    len=readVarInt();
+    byte[] sBytes=new byte[len];
+    buf.get(sBytes);
+    return new String(sBytes,"UTF-8");
+  }
+
+  String readStringRef()
+  {
+    int ref=readVarInt();
+    return ref==0 ? null : strings[ref-1];
+  }
+
+  Pitch readPitchRef(Clef c)
+  {
+    int ref=readVarInt();
+    if (ref==0)
+      return null;
+    long key=pitches[ref-1];
+    return new Pitch((char)(key>>32),(int)key,c);
+  }
+
+  Coloration readColorationRef()
+  {
+    int ref=readVarInt();
+    return ref==0 ? null : colorations[ref-1];
+  }
+
+  Proportion readProportionRef()
+  {
+    int ref=readVarInt();
+    if (ref==0)
+      return null;
+    long key=proportions[ref-1];
+    return new Proportion((int)(key>>32),(int)key);
+  }
+
+  Signum readSignum()
+  {
+    if (!readBoolean())
+      return null;
+    int offset=readSignedInt(),
+        orientation=buf.get(),
+        side=buf.get();
+    return new Signum(offset,orientation,side);
+  }
+
+  long[] readLongTable()
+  {
+    long[] table=new long[readVarInt()];
+    for (int i=0; i<table.length; i++)
+      table[i]=buf.getLong();
+    return table;
+  }
+
+/*------------------------------------------------------------------------
+Method:  PieceData readPieceData(ByteBuffer body,float fileVersion)
+Purpose: Construct piece data from snapshot tables and body
+Parameters:
+  Input:  ByteBuffer body   - snapshot contents after header
+          float fileVersion - CMME version of source file
+  Output: -
+  Return: new piece data
+------------------------------------------------------------------------*/
+
+  PieceData readPieceData(ByteBuffer body,float fileVersion) throws IOException
+  {
+    this.fileVersion=fileVersion;
+    piece=new PieceData();
+    buf=body;
+
+    /* tables */
+    strings=new String[readVarInt()];
+    for (int i=0; i<strings.length; i++)
+      strings[i]=readString();
+    pitches=readLongTable();
+    clefs=readLongTable();
+    long[] colKeys=readLongTable();
+    colorations=new Coloration[colKeys.length];
+    for (int i=0; i<colKeys.length; i++)
+      colorations[i]=CMMEBinaryCache.colorationFromKey(colKeys[i]);
+    proportions=readLongTable();
+
+    /* general data */
+    boolean incipit=readBoolean();
+    piece.setGeneralData(readStringRef(),readStringRef(),readStringRef(),
+                         readStringRef(),readStringRef(),readStringRef());
+    Coloration baseColoration=readColorationRef();
+    if (!baseColoration.equals(piece.getBaseColoration()))
+      piece.setBaseColoration(baseColoration);
+    if (incipit)
+      piece.setIncipitScore(true);
+
+    /* voice data */
+    Voice[] vl=new Voice[readVarInt()];
+    for (int vi=0; vi<vl.length; vi++)
+      {
+        String name=readStringRef();
+        boolean editorial=readBoolean();
+        int     smcType=readVarInt();
+        vl[vi]=new Voice(piece,vi+1,name,editorial,
+                         smcType==0 ? null : Clef.DefaultModernClefs[smcType-1]);
+      }
+    piece.setVoiceData(vl);
+    initVoiceParams(vl.length);
+
+    /* variant versions */
+    int numVersions=readVarInt();
+    for (int vvi=0; vvi<numVersions; vvi++)
+      {
+        VariantVersionData vvd=new VariantVersionData(readStringRef());
+        String sourceName=readStringRef();
+        vvd.setSourceInfo(sourceName,readSignedInt());
+        vvd.setNumInList(readVarInt());
+        vvd.setEditor(readStringRef());
+        vvd.setDescription(readStringRef());
+        int numMissing=readVarInt();
+        for (int mi=0; mi<numMissing; mi++)
+          {
+            int vnum=readVarInt();
+            for (Voice v : vl)
+              if (v.getNum()==vnum)
+                vvd.setMissingVoice(v,true);
+          }
+        piece.addVariantVersion(vvd);
+      }
+
+    /* sections */
+    int numSections=readVarInt();
+    for (int si=0; si<numSections; si++)
+      piece.addSection(readSection());
+
+    piece.recalcAllEventParams();
+    return piece;
+  }
+
+/*------------------------------------------------------------------------
+Method:  MusicSection readSection()
+Purpose: Construct one music section
+Parameters:
+  Input:  -
+  Output: -
+  Return: new section
+------------------------------------------------------------------------*/
+
+  MusicSection readSection()
+  {
+    int     sectionType=buf.get();
+    boolean editorialSection=readBoolean();
+    String  sectionSource=readStringRef();
+    int     sectionSourceNum=readVarInt();
+
+    MusicSection curSection;
+    if (sectionType==MusicSection.TEXT)
+      curSection=new MusicTextSection(readStringRef());
+    else
+      {
+        if (sectionType==MusicSection.PLAINCHANT)
+          curSection=new MusicChantSection(piece.getVoiceData().length,false,Coloration.DEFAULT_CHANT_COLORATION);
+        else
+          curSection=new MusicMensuralSection(piece.getVoiceData().length,false,piece.getBaseColoration());
+
+        Coloration sectionColoration=readColorationRef();
+        if (sectionColoration!=null)
+          curSection.setBaseColoration(sectionColoration);
+        for (int vi=0; vi<curcolor.length; vi++)
+          curcolor[vi]=curSection.getBaseColoration();
+
+        int numTacets=readVarInt();
+        for (int ti=0; ti<numTacets; ti++)
+          {
+            int vnum=readVarInt();
+            curSection.setTacetText(vnum,readStringRef());
+          }
+
+        int numVoices=readVarInt();
+        for (int i=0; i<numVoices; i++)
+          readVoice(curSection);
+      }
+
+    curSection.setEditorial(editorialSection);
+    curSection.setPrincipalSource(sectionSource);
+    curSection.setPrincipalSourceNum(sectionSourceNum);
+
+    return curSection;
+  }
+
+/*------------------------------------------------------------------------
+Method:  void readVoice(MusicSection curSection)
+Purpose: Construct event list for one voice in one section
+Parameters:
+  Input:  -
+  Output: MusicSection curSection - section to which voice is added
+  Return: -
+------------------------------------------------------------------------*/
+
+  void readVoice(MusicSection curSection)
+  {
+    int vnum=readVarInt();
+    lastNoteEvent=null;
+
+    VoiceEventListData curv;
+    if (curSection instanceof MusicChantSection)
+      curv=new VoiceChantData(piece.getVoiceData()[vnum],curSection);
+    else
+      curv=new VoiceMensuralData(piece.getVoiceData()[vnum],curSection);
+
+    int numMissing=readVarInt();
+    for (int mi=0; mi<numMissing; mi++)
+      curv.addMissingVersion(piece.getVariantVersion(readStringRef()));
+
+    for (int tag=buf.get()&0xFF; tag!=CMMEBinaryCache.TAG_ENDLIST; tag=buf.get()&0xFF)
+      if (tag==CMMEBinaryCache.TAG_VARIANTREADINGS)
+        readVariantReadings(vnum,curv);
+      else
+        readSingleOrMultiEvent(vnum,curv,tag);
+
+    /* add SectionEnd event at end of each voice */
+    addNewEvent(vnum,curv,new Event(Event.EVENT_SECTIONEND));
+
+    curSection.setVoice(vnum,curv);
+  }
+
+/*------------------------------------------------------------------------
+Method:  void readVariantReadings(int vnum,VoiceEventListData v)
+Purpose: Construct segment of variant readings and add to voice data
+Parameters:
+  Input:  int vnum             - voice number
+  Output: VoiceEventListData v - voice being constructed
+  Return: -
+------------------------------------------------------------------------*/
+
+  void readVariantReadings(int vnum,VoiceEventListData v)
+  {
+    VariantMarkerEvent vd1=new VariantMarkerEvent(Event.EVENT_VARIANTDATA_START);
+    addNewEvent(vnum,v,vd1);
+    lastevent[vnum]=vd1;
+
+    /* default reading */
+    for (int tag=buf.get()&0xFF; tag!=CMMEBinaryCache.TAG_ENDLIST; tag=buf.get()&0xFF)
+      readSingleOrMultiEvent(vnum,v,tag);
+
+    int numReadings=readVarInt();
+    for (int ri=0; ri<numReadings; ri++)
+      {
+        parsingVariant=true;
+        VariantReading curReading=new VariantReading();
+        int            numVersions=readVarInt();
+        for (int vvi=0; vvi<numVersions; vvi++)
+          curReading.addVersion(piece.getVariantVersion(readStringRef()));
+        if (readBoolean())
+          curReading.setError(true);
+
+        VoiceEventListData evList=null;
+        if (v instanceof VoiceMensuralData)
+          evList=new VoiceMensuralData();
+        else if (v instanceof VoiceChantData)
+          evList=new VoiceChantData();
+        for (int tag=buf.get()&0xFF; tag!=CMMEBinaryCache.TAG_ENDLIST; tag=buf.get()&0xFF)
+          readSingleOrMultiEvent(vnum,evList,tag);
+
+        curReading.addEventList(evList);
+        vd1.addReading(curReading);
+        parsingVariant=false;
+      }
+
+    VariantMarkerEvent vd2=new VariantMarkerEvent(Event.EVENT_VARIANTDATA_END,vd1.getReadings());
+    addNewEvent(vnum,v,vd2);
+    lastevent[vnum]=vd2;
+
+    vd1.calcVariantTypes(v);
+    vd2.setVarTypeFlags(vd1.getVarTypeFlags());
+  }
+
+/*------------------------------------------------------------------------
+Method:  void readSingleOrMultiEvent(int vnum,VoiceEventListData v,int etype)
+Purpose: Construct one event and add to event list of a given voice
+Parameters:
+  Input:  int vnum             - voice number
+          int etype            - event type tag (already read)
+  Output: VoiceEventListData v - voice being constructed
+  Return: -
+------------------------------------------------------------------------*/
+
+  void readSingleOrMultiEvent(int vnum,VoiceEventListData v,int etype)
+  {
+    Event curevent;
+
+    if (etype==Event.EVENT_MULTIEVENT)
+      {
+        MultiEvent me=new MultiEvent();
+        Event      curclefevent=clefinfoevent[vnum];
+        int        numEvents=readVarInt();
+        for (int i=0; i<numEvents; i++)
+          {
+            Event e=readSingleEvent(vnum,buf.get()&0xFF);
+            me.addEvent(e);
+            if (vnum!=-1 && mensinfoevent[vnum]==e)
+              mensinfoevent[vnum]=me;
+          }
+        if (me.hasSignatureClef())
+          {
+            me.constructClefSets(lastevent[vnum],curclefevent);
+            checkClefInfoEvent(vnum,me);
+          }
+        curevent=me;
+      }
+    else
+      curevent=readSingleEvent(vnum,etype);
+
+    addNewEvent(vnum,v,curevent);
+    if (vnum!=-1)
+      lastevent[vnum]=curevent;
+  }
+
+/*------------------------------------------------------------------------
+Method:  Event readSingleEvent(int vnum,int etype)
+Purpose: Construct single event from typed record
+Parameters:
+  Input:  int vnum  - voice number
+          int etype - event type tag (already read)
+  Output: -
+  Return: event
+------------------------------------------------------------------------*/
+
+  Event readSingleEvent(int vnum,int etype)
+  {
+    Event curevent;
+    Event ce=clefinfoevent[vnum],
+          me=mensinfoevent[vnum];
+    Clef  pc=ce!=null ? ce.getPrincipalClef(false) : null;
+
+    switch (etype)
+      {
+        case Event.EVENT_CLEF:
+          long  clefKey=clefs[readVarInt()-1],
+                pitchKey=pitches[(int)((clefKey>>>1)&0x7FFFFFFF)];
+          curevent=new ClefEvent(
+            Clef.ClefNames[(short)(clefKey>>48)],(short)(clefKey>>32),
+            new Pitch((char)(pitchKey>>32),(int)pitchKey),
+            lastevent[vnum],vnum>=0 ? ce : null,
+            (clefKey&1)!=0);
+          checkClefInfoEvent(vnum,curevent);
+          break;
+
+        case Event.EVENT_MENS:
+          LinkedList<MensSignElement> signs=new LinkedList<MensSignElement>();
+          int numSigns=readVarInt();
+          for (int i=0; i<numSigns; i++)
+            {
+              int signType=buf.get();
+              if (signType==MensSignElement.NUMBERS)
+                signs.add(new MensSignElement(signType,readProportionRef()));
+              else
+                {
+                  int signFlags=buf.get();
+                  signs.add(new MensSignElement(signType,(signFlags&1)!=0,(signFlags&2)!=0));
+                }
+            }
+          int ssnum=readSignedInt(),
+              mensFlags=buf.get(),
+              prolatio=buf.get(),
+              tempus=buf.get(),
+              modusMinor=buf.get(),
+              modusMaior=buf.get();
+          curevent=new MensEvent(signs,ssnum,(mensFlags&1)!=0,(mensFlags&2)!=0,
+                                 new Mensuration(prolatio,tempus,modusMinor,modusMaior,readProportionRef()),
+                                 (mensFlags&4)!=0);
+          if (vnum!=-1)
+            mensinfoevent[vnum]=curevent;
+          break;
+
+        case Event.EVENT_REST:
+          int        restType=buf.get();
+          Proportion restLength=readProportionRef();
+          int        bottomLine=readSignedInt(),
+                     numLines=readVarInt();
+          curevent=new RestEvent(restType,restLength,bottomLine,numLines,
+                                 me==null ? 2 : me.getMensInfo().modus_maior);
+          curevent.setCorona(readSignum());
+          curevent.setSignum(readSignum());
+          break;
+
+        case Event.EVENT_NOTE:
+          int        noteType=buf.get();
+          Proportion noteLength=readProportionRef();
+          Pitch      pitch=readPitchRef(pc);
+          int        pitchOffset=readSignedInt(),
+                     noteFlags=buf.get(),
+                     ligType=buf.get(),
+                     tieType=buf.get(),
+                     halfCol=buf.get(),
+                     stemDir=readSignedInt(),
+                     stemSide=readSignedInt(),
+                     numFlags=readVarInt();
+          String     modernText=readStringRef();
+          NoteEvent  ne=new NoteEvent(
+            noteType,noteLength,pitch,new ModernAccidental(pitchOffset,(noteFlags&1)!=0),
+            ligType,(noteFlags&8)!=0,halfCol,stemDir,stemSide,
+            numFlags,modernText,(noteFlags&2)!=0,(noteFlags&4)!=0,tieType);
+          ne.setCorona(readSignum());
+          ne.setSignum(readSignum());
+          lastNoteEvent=ne;
+          curevent=ne;
+          break;
+
+        case Event.EVENT_DOT:
+          Mensuration mens=me==null ? Mensuration.DEFAULT_MENSURATION : me.getMensInfo();
+          NoteEvent   lne=lastNoteEvent;
+          if (lne!=null && lne.getmusictime()!=null &&
+              mens.ternary(lne.getnotetype()) &&
+              lne.getmusictime().greaterThan(NoteEvent.getTypeLength(lne.getnotetype(),mens)))
+            lne=null;
+          curevent=new DotEvent(readPitchRef(pc),lne);
+          lastNoteEvent=null;
+          break;
+
+        case Event.EVENT_ORIGINALTEXT:
+          curevent=new OriginalTextEvent(readStringRef());
+          break;
+
+        case Event.EVENT_PROPORTION:
+          curevent=new ProportionEvent(readProportionRef());
+          break;
+
+        case Event.EVENT_COLORCHANGE:
+          curevent=new ColorChangeEvent(readColorationRef());
+          if (vnum!=-1)
+            curcolor[vnum]=((ColorChangeEvent)curevent).getcolorscheme();
+          break;
+
+        case Event.EVENT_CUSTOS:
+          curevent=new CustosEvent(readPitchRef(pc));
+          break;
+
+        case Event.EVENT_LINEEND:
+          curevent=new LineEndEvent(readBoolean());
+          break;
+
+        case Event.EVENT_BARLINE:
+          int     barNumLines=readVarInt();
+          boolean repeatSign=readBoolean();
+          int     bottomLinePos=readSignedInt(),
+                  numSpaces=readVarInt();
+          curevent=new BarlineEvent(barNumLines,repeatSign,bottomLinePos,numSpaces);
+          break;
+
+        case Event.EVENT_ANNOTATIONTEXT:
+          String text=readStringRef();
+          int    staffLoc=readSignedInt();
+          curevent=staffLoc==AnnotationTextEvent.DEFAULT_STAFFLOC ?
+            new AnnotationTextEvent(text) : new AnnotationTextEvent(text,staffLoc);
+          break;
+
+        case Event.EVENT_LACUNA:
+          Proportion lacunaLength=readProportionRef();
+          curevent=lacunaLength.i1>0 ?
+            new LacunaEvent(lacunaLength) : new LacunaEvent(Event.EVENT_LACUNA);
+          break;
+
+        case Event.EVENT_LACUNA_END:
+          curevent=new LacunaEvent(Event.EVENT_LACUNA_END);
+          break;
+
+        case Event.EVENT_MODERNKEYSIGNATURE:
+          ModernKeySignature mks=new ModernKeySignature();
+          int numEls=readVarInt();
+          for (int i=0; i<numEls; i++)
+            {
+              char    pl=buf.getChar();
+              int     po=readSignedInt(),
+                      accType=readSignedInt(),
+                      numAcc=readVarInt();
+              boolean optional=readBoolean();
+              mks.addElement(new ModernKeySignatureElement(new Pitch(pl,po),
+                new ModernAccidental(accType,numAcc,optional)));
+            }
+          curevent=new ModernKeySignatureEvent(mks);
+          if (vnum!=-1)
+            curModKeySig[vnum]=((ModernKeySignatureEvent)curevent).getSigInfo();
+          break;
+
+        case Event.EVENT_ELLIPSIS:
+          curevent=new Event(Event.EVENT_ELLIPSIS);
+          break;
+
+        default:
+          curevent=new Event();
+      }
+
+    if (vnum!=-1)
+      {
+        curevent.setclefparams(clefinfoevent[vnum]);
+        curevent.setmensparams(mensinfoevent[vnum]);
+        curevent.setcolorparams(curcolor[vnum]);
+        curevent.setModernKeySigParams(curModKeySig[vnum]);
+      }
+
+    /* generic event attributes */
+    int flags=buf.get();
+    if ((flags&CMMEBinaryCache.EF_COLORED)!=0)
+      curevent.setColored(true);
+    if ((flags&CMMEBinaryCache.EF_EDITORIAL)!=0)
+      curevent.setEditorial(true);
+    if ((flags&CMMEBinaryCache.EF_ERROR)!=0)
+      curevent.setError(true);
+    curevent.setEdCommentary((flags&CMMEBinaryCache.EF_COMMENTARY)!=0 ? readStringRef() : null);
+
+    return curevent;
+  }
+}
+
+/*------------------------------------------------------------------------
+Class:   BinaryValueTable
+Extends: -
+Purpose: Table of distinct values (in order of first use) for snapshot
+         output
+------------------------------------------------------------------------*/
+
+class BinaryValueTable
+{
+/*----------------------------------------------------------------------*/
+/* Instance variables */
+
+  HashMap<Object,Integer> index=new HashMap<Object,Integer>();
+  ArrayList<Object>       values=new ArrayList<Object>();
+
+/*----------------------------------------------------------------------*/
+/* Instance methods */
+
+/*------------------------------------------------------------------------
+Method:  int intern(Object val)
+Purpose: Get table index of value, adding it to the table if necessary
+Parameters:
+  Input:  Object val - value (String or packed Long key)
+  Output: -
+  Return: table index
+------------------------------------------------------------------------*/
+
+  int intern(Object val)
+  {
+    Integer i=index.get(val);
+    if (i==null)
+      {
+        i=values.size();
+        index.put(val,i);
+        values.add(val);
+      }
+    return i;
+  }
+
+  int size()
+  {
+    return values.size();
+  }
+}
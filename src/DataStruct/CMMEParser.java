@@ -31,6 +31,29 @@ Updates:
 6/14/08:  now automatically consolidates variant readings upon saving
           (PieceData.consolidateAllReadings())
 12/30/09: parse/save text sections
+10/17/26: added streaming (StAX) input path, which constructs piece data
+          one event at a time without building a DOM tree for the whole
+          document; DOM input is still used when validating
+10/17/26: getFileVersion() now reads only the root start tag; added batch
+          version probe getFileVersions()
+10/17/26: added no-input constructor and initVoiceParams() for use by
+          CMMEBinaryCache snapshot reader
+10/17/26: added lazy section loading: with CMMEParser(File,ParseListener,true),
+          section headers are parsed up front and voice event lists are read
+          from the file (through CMMESectionLoader) when first accessed, or
+          in the background after loadSectionsInBackground()
+10/17/26: outputPieceData() streams output section by section and event by
+          event (CMMEOutputter) instead of building a tree for the whole
+          document
+10/17/26: parsed colorations and proportions are interned (shared among
+          events with the same values)
+10/17/26: progress and metrics (bytes, elements, events, time per phase)
+          are reported to a ParseListener (ProgressBarListener adapts a
+          JProgressBar); constructors take a ParseListener in place of a
+          JProgressBar
+10/17/26: outputPieceData() refuses to write a piece whose sections did not
+          all load; parse errors in lazily-loaded sections give locations
+          in the source file
 
                                                                         */
 /*----------------------------------------------------------------------*/
@@ -46,7 +69,8 @@ import org.jdom.output.*;
 import java.net.*;
 import java.io.*;
 import java.util.*;
-import javax.swing.JProgressBar;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import DataStruct.XMLReader;
 
@@ -72,14 +96,28 @@ public class CMMEParser
 
   float fileVersion;
 
+  /* index for loading section voices on demand (null if parsed in full) */
+  CMMESectionLoader sectionLoader=null;
+
+  /* progress/performance reporting */
+  ParseListener listener=null;
+  ParseMetrics  metrics=new ParseMetrics();
+  long          parseStartTime;
+
 /*----------------------------------------------------------------------*/
 /* Class methods */
 
+  /* maximum number of bytes handed to the parser per read while probing
+     file headers (so that only the start of the file is read) */
+  static final int HEADER_READ_SIZE=256;
+
 /*------------------------------------------------------------------------
-Method:  String getFileVersion(URL remoteloc)
-Purpose: Return version of CMME file
+Method:  String getFileVersion(URL remoteloc|InputStream musIn)
+Purpose: Return version of CMME file, reading only as far as the root
+         element's start tag
 Parameters:
-  Input:  URL remoteloc - URL for input
+  Input:  URL remoteloc     - URL for input
+          InputStream musIn - input (not closed)
   Output: -
   Return: Version as specified in CMMEversion attribute, "0.5" for old files
           with no version information
@@ -87,30 +125,133 @@ Parameters:
 
   public static String getFileVersion(URL remoteloc) throws JDOMException,IOException
   {
-    /* wasteful! */
-    Document  CMMEdoc=XMLReader.getNonValidatingParser().build(remoteloc);
-    Attribute CMMEversion=CMMEdoc.getRootElement().getAttribute("CMMEversion");
+    InputStream musIn=remoteloc.openStream();
+    try
+      {
+        return getFileVersion(musIn);
+      }
+    finally
+      {
+        musIn.close();
+      }
+  }
 
-    if (CMMEversion==null)
-      return "0.5";
-    else
-      return CMMEversion.getValue();
+  public static String getFileVersion(InputStream musIn) throws JDOMException
+  {
+    XMLStreamReader xmlIn=null;
+    try
+      {
+        xmlIn=XMLReader.getStreamReader(new HeaderInputStream(musIn));
+        if (!XMLReader.nextRootElement(xmlIn))
+          throw new JDOMException("No root element in CMME document");
+
+        String CMMEversion=xmlIn.getAttributeValue(null,"CMMEversion");
+        return CMMEversion==null ? "0.5" : CMMEversion;
+      }
+    catch (XMLStreamException e)
+      {
+        throw new JDOMException("Error reading CMME document header: "+e.getMessage(),e);
+      }
+    finally
+      {
+        if (xmlIn!=null)
+          try
+            {
+              xmlIn.close();
+            }
+          catch (XMLStreamException e)
+            {
+            }
+      }
+  }
+
+/*------------------------------------------------------------------------
+Method:  ArrayList<String> getFileVersions(List<URL> locs)
+Purpose: Probe versions of a set of CMME files
+Parameters:
+  Input:  List<URL> locs - URLs of files to check
+  Output: -
+  Return: list of versions, in the same order as locs (null for any file
+          which could not be read)
+------------------------------------------------------------------------*/
+
+  public static ArrayList<String> getFileVersions(List<URL> locs)
+  {
+    ArrayList<String> versions=new ArrayList<String>(locs.size());
+
+    for (URL loc : locs)
+      try
+        {
+          versions.add(getFileVersion(loc));
+        }
+      catch (Exception e)
+        {
+          System.err.println("Error reading version of "+loc+": "+e);
+          versions.add(null);
+        }
+
+    return versions;
+  }
+
+/*------------------------------------------------------------------------
+Class:   HeaderInputStream
+Extends: FilterInputStream
+Purpose: Passes input to the parser in small chunks, so that probing the
+         root element does not read far past it
+------------------------------------------------------------------------*/
+
+  static class HeaderInputStream extends FilterInputStream
+  {
+    HeaderInputStream(InputStream in)
+    {
+      super(in);
+    }
+
+    public int read(byte[] b,int off,int len) throws IOException
+    {
+      return super.read(b,off,Math.min(len,HEADER_READ_SIZE));
+    }
+
+    /* the probe never needs the rest of the stream */
+    public void close()
+    {
+    }
   }
 
 /*----------------------------------------------------------------------*/
 /* Instance methods */
 
 /*------------------------------------------------------------------------
-Constructor: CMMEParser(String fn)
-Purpose:     Parse local file
+Constructor: CMMEParser()
+Purpose:     Create parser without input (for subclasses which construct
+             piece data from other sources)
 Parameters:
-  Input:  String fn - filename for input
+  Input:  -
   Output: -
 ------------------------------------------------------------------------*/
 
-  public CMMEParser(String fn,JProgressBar pbar) throws JDOMException,IOException
+  CMMEParser()
   {
-    constructPieceData(XMLReader.getParser().build(fn),pbar);
+  }
+
+/*------------------------------------------------------------------------
+Constructor: CMMEParser(String fn[,ParseListener listener])
+Purpose:     Parse local file or system ID (strings with a URI scheme, e.g.
+             file: or http:, are resolved as URLs; anything else is taken
+             as a local filename)
+Parameters:
+  Input:  String fn              - filename or URI for input
+          ParseListener listener - listener for progress/metrics, or null
+  Output: -
+------------------------------------------------------------------------*/
+
+  public CMMEParser(String fn,ParseListener listener) throws JDOMException,IOException
+  {
+    startParse(listener);
+    if (hasURIScheme(fn))
+      parseURL(new URL(fn));
+    else
+      parseFile(new File(fn));
   }
 
   public CMMEParser(String fn) throws JDOMException,IOException
@@ -119,16 +260,96 @@ Parameters:
   }
 
 /*------------------------------------------------------------------------
-Constructor: CMMEParser(URL remoteloc)
+Constructor: CMMEParser(File f,ParseListener listener,boolean lazySections)
+Purpose:     Parse local file, optionally deferring the event lists of each
+             section until the section's voices are first accessed
+Parameters:
+  Input:  File f                 - file for input
+          ParseListener listener - listener for progress/metrics, or null
+          boolean lazySections   - whether to load section event lists on
+                                   demand (ignored when validating, or when
+                                   the file cannot be indexed)
+  Output: -
+------------------------------------------------------------------------*/
+
+  public CMMEParser(File f,ParseListener listener,boolean lazySections) throws JDOMException,IOException
+  {
+    startParse(listener);
+
+    if (lazySections && !XMLReader.isValidating())
+      sectionLoader=CMMESectionLoader.indexFile(f);
+
+    if (sectionLoader!=null)
+      constructPieceData(sectionLoader);
+    else
+      parseFile(f);
+  }
+
+/*------------------------------------------------------------------------
+Method:  void loadSectionsInBackground(CMMEBinaryCache.SnapshotBuilder snapshot)
+Purpose: Begin reading all section voices not yet loaded in a separate
+         thread (in document order; accessing a section's voices waits only
+         until that section has been read)
+Parameters:
+  Input:  CMMEBinaryCache.SnapshotBuilder snapshot - snapshot to complete
+                                                     with each section as it
+                                                     is read, or null
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+  public void loadSectionsInBackground(CMMEBinaryCache.SnapshotBuilder snapshot)
+  {
+    if (sectionLoader!=null)
+      sectionLoader.loadInBackground(snapshot);
+    else if (snapshot!=null)
+      {
+        for (int si=0; si<piece.getNumSections(); si++)
+          snapshot.addSection(piece.getSection(si));
+        snapshot.finish();
+      }
+  }
+
+/*------------------------------------------------------------------------
+Method:  void parseFile(File f)
+Purpose: Parse complete local file
+Parameters:
+  Input:  File f - file for input
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+  void parseFile(File f) throws JDOMException,IOException
+  {
+    if (XMLReader.isValidating())
+      constructPieceData(XMLReader.getParser().build(f));
+    else
+      {
+        InputStream musIn=new FileInputStream(f);
+        try
+          {
+            constructPieceData(new MeteredInputStream(musIn,metrics,listener,f.length()));
+          }
+        finally
+          {
+            musIn.close();
+          }
+      }
+  }
+
+/*------------------------------------------------------------------------
+Constructor: CMMEParser(URL remoteloc[,ParseListener listener])
 Purpose:     Parse remote resource
 Parameters:
-  Input:  URL remoteloc - URL for input
+  Input:  URL remoteloc          - URL for input
+          ParseListener listener - listener for progress/metrics, or null
   Output: -
 ------------------------------------------------------------------------*/
 
-  public CMMEParser(URL remoteloc,JProgressBar pbar) throws JDOMException,IOException
+  public CMMEParser(URL remoteloc,ParseListener listener) throws JDOMException,IOException
   {
-    constructPieceData(XMLReader.getParser().build(remoteloc),pbar);
+    startParse(listener);
+    parseURL(remoteloc);
   }
 
   public CMMEParser(URL remoteloc) throws JDOMException,IOException
@@ -136,9 +357,189 @@ Parameters:
     this(remoteloc,null);
   }
 
-  public CMMEParser(InputStream musIn,JProgressBar pbar) throws JDOMException,IOException
+/*------------------------------------------------------------------------
+Method:  void parseURL(URL remoteloc)
+Purpose: Parse complete resource at URL
+Parameters:
+  Input:  URL remoteloc - URL for input
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+  void parseURL(URL remoteloc) throws JDOMException,IOException
+  {
+    if (XMLReader.isValidating())
+      constructPieceData(XMLReader.getParser().build(remoteloc));
+    else
+      {
+        URLConnection conn=remoteloc.openConnection();
+        InputStream   musIn=conn.getInputStream();
+        try
+          {
+            constructPieceData(new MeteredInputStream(musIn,metrics,listener,conn.getContentLength()));
+          }
+        finally
+          {
+            musIn.close();
+          }
+      }
+  }
+
+/*------------------------------------------------------------------------
+Method:  boolean hasURIScheme(String fn)
+Purpose: Check whether a filename string begins with a URI scheme (at least
+         two characters, so that Windows drive letters are still treated as
+         local paths)
+Parameters:
+  Input:  String fn - filename or URI
+  Output: -
+  Return: true if fn should be resolved as a URL
+------------------------------------------------------------------------*/
+
+  static boolean hasURIScheme(String fn)
+  {
+    int colon=fn.indexOf(':');
+    if (colon<2)
+      return false;
+    if (!Character.isLetter(fn.charAt(0)))
+      return false;
+    for (int i=1; i<colon; i++)
+      {
+        char c=fn.charAt(i);
+        if (!(Character.isLetterOrDigit(c) || c=='+' || c=='-' || c=='.'))
+          return false;
+      }
+    return true;
+  }
+
+/*------------------------------------------------------------------------
+Constructor: CMMEParser(InputStream musIn,ParseListener listener)
+Purpose:     Parse data from an open stream (byte counts are not passed to
+             the listener here, since the caller may wrap the stream in a
+             ProgressInputStream at whichever level it knows the length of)
+Parameters:
+  Input:  InputStream musIn      - input (not closed)
+          ParseListener listener - listener for progress/metrics, or null
+  Output: -
+------------------------------------------------------------------------*/
+
+  public CMMEParser(InputStream musIn,ParseListener listener) throws JDOMException,IOException
+  {
+    startParse(listener);
+    if (XMLReader.isValidating())
+      constructPieceData(XMLReader.getParser().build(musIn));
+    else
+      constructPieceData(new MeteredInputStream(musIn,metrics,null,-1));
+  }
+/*------------------------------------------------------------------------
+Method:  void startParse(ParseListener listener)
+Purpose: Set listener and start timing before parsing
+Parameters:
+  Input:  ParseListener listener - listener for progress/metrics, or null
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+  void startParse(ParseListener listener)
+  {
+    this.listener=listener;
+    parseStartTime=System.nanoTime();
+  }
+
+/*------------------------------------------------------------------------
+Method:  void finishParse(boolean recalc)
+Purpose: Record parsing time, calculate event parameters and report to
+         listener
+Parameters:
+  Input:  boolean recalc - whether to calculate event parameters for the
+                           whole piece
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+  void finishParse(boolean recalc)
   {
-    constructPieceData(XMLReader.getParser().build(musIn),pbar);
+    metrics.parseTime+=System.nanoTime()-parseStartTime;
+
+    if (recalc)
+      {
+        long startTime=System.nanoTime();
+        piece.recalcAllEventParams();
+        metrics.recalcTime+=System.nanoTime()-startTime;
+      }
+
+    if (listener!=null)
+      listener.parseFinished(metrics);
+  }
+
+/*------------------------------------------------------------------------
+Method:  ParseMetrics getMetrics()
+Purpose: Return counts and timings for parse (updated further as lazily
+         loaded sections are read)
+Parameters:
+  Input:  -
+  Output: -
+  Return: metrics
+------------------------------------------------------------------------*/
+
+  public ParseMetrics getMetrics()
+  {
+    return metrics;
+  }
+
+/*------------------------------------------------------------------------
+Method:  XMLStreamReader getStreamReader(InputStream in)
+Purpose: Create pull parser which records element counts and parsing time
+         in this parser's metrics
+Parameters:
+  Input:  InputStream in - document input
+  Output: -
+  Return: stream reader positioned at start of document
+------------------------------------------------------------------------*/
+
+  XMLStreamReader getStreamReader(InputStream in) throws XMLStreamException
+  {
+    long            startTime=System.nanoTime();
+    XMLStreamReader xmlIn=XMLReader.getStreamReader(in);
+    metrics.readerTime+=System.nanoTime()-startTime;
+
+    return new MeteredStreamReader(xmlIn,metrics);
+  }
+
+/*------------------------------------------------------------------------
+Method:  void constructPieceData(InputStream musIn)
+Purpose: Parse input stream with pull parser and construct data structure
+         for piece (non-validating; only one event's tree segment is held
+         in memory at a time)
+Parameters:
+  Input:  InputStream musIn - CMME document input
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+  void constructPieceData(InputStream musIn) throws JDOMException
+  {
+    XMLStreamReader xmlIn=null;
+    try
+      {
+        xmlIn=getStreamReader(musIn);
+        constructPieceData(xmlIn);
+      }
+    catch (XMLStreamException e)
+      {
+        throw new JDOMException("Error parsing CMME document: "+e.getMessage(),e);
+      }
+    finally
+      {
+        if (xmlIn!=null)
+          try
+            {
+              xmlIn.close();
+            }
+          catch (XMLStreamException e)
+            {
+            }
+      }
   }
 
 /*------------------------------------------------------------------------
@@ -159,21 +560,210 @@ Parameters:
 
   NoteEvent lastNoteEvent;
 
-  void constructPieceData(Document cmmedoc,JProgressBar progressBar)
+  void constructPieceData(Document cmmedoc)
+  {
+    /* everything since the start of parsing was spent building the tree */
+    metrics.readerTime+=System.nanoTime()-parseStartTime;
+    for (Iterator ei=cmmedoc.getDescendants(new org.jdom.filter.ElementFilter()); ei.hasNext(); ei.next())
+      metrics.elementsProcessed++;
+
+    initPieceData(cmmedoc.getRootElement().getAttributeValue("CMMEversion"));
+
+    /* General data section */
+    Element GDNode=cmmedoc.getRootElement().getChild("GeneralData",cmmens);
+    parseGeneralData(GDNode);
+
+    /* Voice data section */
+    parseVoiceData(cmmedoc.getRootElement().getChild("VoiceData",cmmens));
+
+    /* Variant version declarations */
+    parseVariantVersions(GDNode);
+
+    /* Music sections */
+    List sectionList=cmmedoc.getRootElement().getChildren("MusicSection",cmmens);
+    int  numSections=sectionList.size();
+    for (int si=0; si<numSections; si++)
+      {
+        piece.addSection(parseMusicSection((Element)sectionList.get(si)));
+
+        if (listener!=null)
+          listener.sectionParsed(si,numSections);
+      }
+
+    finishParse(true);
+  }
+
+/*------------------------------------------------------------------------
+Method:  void constructPieceData(XMLStreamReader xmlIn)
+Purpose: Construct data structure for piece directly from XML event stream;
+         general and voice data are small and are parsed as tree segments,
+         music sections are parsed event by event
+Parameters:
+  Input:  XMLStreamReader xmlIn - stream reader at start of document
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+  void constructPieceData(XMLStreamReader xmlIn) throws XMLStreamException
+  {
+    int si=0;
+    if (parsePieceHeader(xmlIn))
+      do
+        if (xmlIn.getLocalName().equals("MusicSection"))
+          {
+            piece.addSection(parseMusicSection(xmlIn));
+
+            if (listener!=null)
+              listener.sectionParsed(si++,-1);
+          }
+        else
+          XMLReader.skipElement(xmlIn);
+      while (XMLReader.nextChildElement(xmlIn));
+
+    finishParse(true);
+  }
+
+/*------------------------------------------------------------------------
+Method:  void constructPieceData(CMMESectionLoader sectionLoader)
+Purpose: Construct data structure for piece with section headers only;
+         section event lists are filled in by the loader on demand
+Parameters:
+  Input:  CMMESectionLoader sectionLoader - index of sections in input file
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+  void constructPieceData(CMMESectionLoader sectionLoader) throws JDOMException,IOException
+  {
+    try
+      {
+        /* general and voice data: read the file up to the first section */
+        InputStream musIn=new MeteredInputStream(new FileInputStream(sectionLoader.getSourceFile()),
+                                                 metrics,null,-1);
+        try
+          {
+            XMLStreamReader xmlIn=getStreamReader(musIn);
+            parsePieceHeader(xmlIn);
+            xmlIn.close();
+          }
+        finally
+          {
+            musIn.close();
+          }
+
+        /* section headers */
+        int numSections=sectionLoader.getNumSections();
+        for (int si=0; si<numSections; si++)
+          {
+            InputStream sectionIn=new MeteredInputStream(sectionLoader.openSection(si),metrics,null,-1);
+            try
+              {
+                XMLStreamReader xmlIn=getStreamReader(sectionIn);
+                if (!(XMLReader.nextRootElement(xmlIn) && XMLReader.nextChildElement(xmlIn)))
+                  throw new XMLStreamException("Section "+si+" not found in index");
+                MusicSection curSection=parseMusicSection(xmlIn,false);
+                xmlIn.close();
+
+                piece.addSection(curSection);
+                sectionLoader.addSection(curSection);
+              }
+            catch (XMLStreamException e)
+              {
+                throw sectionLoader.mapError(si,e);
+              }
+            finally
+              {
+                sectionIn.close();
+              }
+
+            if (listener!=null)
+              listener.sectionParsed(si,numSections);
+          }
+      }
+    catch (XMLStreamException e)
+      {
+        throw new JDOMException("Error parsing CMME document: "+e.getMessage(),e);
+      }
+
+    sectionLoader.setParser(this);
+    finishParse(false);
+  }
+
+/*------------------------------------------------------------------------
+Method:  boolean parsePieceHeader(XMLStreamReader xmlIn)
+Purpose: Read root element, general data and voice data from XML stream,
+         stopping at the first music section
+Parameters:
+  Input:  XMLStreamReader xmlIn - stream reader at start of document
+  Output: -
+  Return: true if stream is positioned at the start tag of a music section,
+          false if the document has ended
+------------------------------------------------------------------------*/
+
+  boolean parsePieceHeader(XMLStreamReader xmlIn) throws XMLStreamException
+  {
+    if (!XMLReader.nextRootElement(xmlIn))
+      throw new XMLStreamException("No root element in CMME document");
+    initPieceData(xmlIn.getAttributeValue(null,"CMMEversion"));
+
+    Element GDNode=null;
+    while (XMLReader.nextChildElement(xmlIn))
+      {
+        String elName=xmlIn.getLocalName();
+
+        if (elName.equals("GeneralData"))
+          {
+            GDNode=XMLReader.readElement(xmlIn);
+            parseGeneralData(GDNode);
+          }
+        else if (elName.equals("VoiceData"))
+          {
+            parseVoiceData(XMLReader.readElement(xmlIn));
+
+            /* variant version declarations (in GeneralData) may refer to voices */
+            parseVariantVersions(GDNode);
+          }
+        else if (elName.equals("MusicSection"))
+          return true;
+        else
+          XMLReader.skipElement(xmlIn);
+      }
+
+    return false;
+  }
+
+/*------------------------------------------------------------------------
+Method:  void initPieceData(String versionStr)
+Purpose: Initialize piece structure and file version before parsing
+Parameters:
+  Input:  String versionStr - value of CMMEversion attribute (null if none)
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+  void initPieceData(String versionStr)
   {
     piece=new PieceData();
     cmmens=Namespace.getNamespace("http://www.cmme.org");
     fileVersion=0f;
 
-    /* version */
-    Attribute CMMEversion=cmmedoc.getRootElement().getAttribute("CMMEversion");
-    if (CMMEversion==null)
+    if (versionStr==null)
       System.err.println("Deprecated document version (pre-.81)");
     else
-      fileVersion=Float.parseFloat(CMMEversion.getValue());
+      fileVersion=Float.parseFloat(versionStr);
+  }
 
-    /* General data section */
-    Element GDNode=cmmedoc.getRootElement().getChild("GeneralData",cmmens);
+/*------------------------------------------------------------------------
+Method:  void parseGeneralData(Element GDNode)
+Purpose: Parse general information about piece (title, composer, etc.)
+Parameters:
+  Input:  Element GDNode - GeneralData tree segment
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+  void parseGeneralData(Element GDNode)
+  {
     piece.setGeneralData(GDNode.getChildText("Title",cmmens),
                          GDNode.getChildText("Section",cmmens),
                          GDNode.getChildText("Composer",cmmens),
@@ -186,17 +776,23 @@ Parameters:
       piece.setBaseColoration(parseColoration(BC));
     if (GDNode.getChild("Incipit",cmmens)!=null)
       piece.setIncipitScore(true);
+  }
 
-    /* Voice data section */
-    Element VDNode=cmmedoc.getRootElement().getChild("VoiceData",cmmens);
-    int     numvoices=Integer.parseInt(VDNode.getChildText("NumVoices",cmmens));
+/*------------------------------------------------------------------------
+Method:  void parseVoiceData(Element VDNode)
+Purpose: Parse voice list and initialize per-voice parsing parameters
+Parameters:
+  Input:  Element VDNode - VoiceData tree segment
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+  void parseVoiceData(Element VDNode)
+  {
+    int numvoices=Integer.parseInt(VDNode.getChildText("NumVoices",cmmens));
 
     Voice[] vl=new Voice[numvoices];
-    clefinfoevent=new Event[numvoices];
-    mensinfoevent=new Event[numvoices];
-    curcolor=new Coloration[numvoices];
-    curModKeySig=new ModernKeySignature[numvoices];
-    lastevent=new Event[numvoices];
+    initVoiceParams(numvoices);
 
     int vi=0;
     for (Object curObj : VDNode.getChildren("Voice",cmmens))
@@ -210,22 +806,56 @@ Parameters:
                              curvel.getChild("Editorial",cmmens)!=null,
                              suggestedModernClef);
 
+        vl[vi++]=curv;
+      }
+    piece.setVoiceData(vl);
+  }
+
+/*------------------------------------------------------------------------
+Method:  void initVoiceParams(int numvoices)
+Purpose: Initialize per-voice parsing parameters
+Parameters:
+  Input:  int numvoices - number of voices in piece
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+  void initVoiceParams(int numvoices)
+  {
+    clefinfoevent=new Event[numvoices];
+    mensinfoevent=new Event[numvoices];
+    curcolor=new Coloration[numvoices];
+    curModKeySig=new ModernKeySignature[numvoices];
+    lastevent=new Event[numvoices];
+
+    for (int vi=0; vi<numvoices; vi++)
+      {
         clefinfoevent[vi]=null;
         mensinfoevent[vi]=null;
         curcolor[vi]=piece.getBaseColoration();
         curModKeySig[vi]=ModernKeySignature.DEFAULT_SIG;
         lastevent[vi]=null;
-
-        vl[vi++]=curv;
       }
-    piece.setVoiceData(vl);
+  }
 
-    /* Variant version declarations */
+/*------------------------------------------------------------------------
+Method:  void parseVariantVersions(Element GDNode)
+Purpose: Parse variant version declarations (after voice data is available)
+Parameters:
+  Input:  Element GDNode - GeneralData tree segment
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+  void parseVariantVersions(Element GDNode)
+  {
     int varVersionNum=0;
     if (fileVersion<0.895f)
       /* pre-0.895 files do not declare the "default" variant version;
          create one */
       piece.addVariantVersion(new VariantVersionData("Default",varVersionNum++));
+    if (GDNode==null)
+      return;
     for (Object curObj : GDNode.getChildren("VariantVersion",cmmens))
       {
         Element curVVel=(Element)curObj;
@@ -255,52 +885,105 @@ Parameters:
 
         piece.addVariantVersion(vvd);
       }
+  }
 
-    /* Music sections */
-    List sectionList=cmmedoc.getRootElement().getChildren("MusicSection",cmmens);
-    int  numSections=sectionList.size(),
-         PBAdd=0;
-    if (progressBar!=null)
-      PBAdd=(progressBar.getMaximum()-progressBar.getValue())/numSections;
-    for (Object curObj : sectionList)
+/*------------------------------------------------------------------------
+Method:  MusicSection parseMusicSection(Element sectionEl|XMLStreamReader xmlIn)
+Purpose: Create one music section from document tree segment or XML stream
+Parameters:
+  Input:  Element sectionEl     - tree segment representing section
+          XMLStreamReader xmlIn - stream reader positioned at section start tag
+  Output: -
+  Return: new section
+------------------------------------------------------------------------*/
+
+  MusicSection parseMusicSection(Element sectionEl)
+  {
+    boolean      editorialSection=false;
+    String       sectionSource=null;
+    int          sectionSourceNum=0;
+    MusicSection curSection=null;
+
+    for (Object curSectionChildObj : sectionEl.getChildren())
       {
-        Element      sectionEl=(Element)curObj;
-        boolean      editorialSection=false;
-        String       sectionSource=null;
-        int          sectionSourceNum=0;
-        MusicSection curSection=null;
+        Element curSectionChild=(Element)curSectionChildObj;
+        String  childName=curSectionChild.getName();
 
-        for (Object curSectionChildObj : sectionEl.getChildren())
+        if (childName.equals("Editorial"))
+          editorialSection=true;
+        else if (childName.equals("PrincipalSource"))
           {
-            Element curSectionChild=(Element)curSectionChildObj;
-            String  childName=curSectionChild.getName();
+            sectionSource=curSectionChild.getChildText("Name",cmmens);
+            sectionSourceNum=Integer.parseInt(curSectionChild.getChildText("ID",cmmens));
+          }
 
-            if (childName.equals("Editorial"))
-              editorialSection=true;
-            else if (childName.equals("PrincipalSource"))
-              {
-                sectionSource=curSectionChild.getChildText("Name",cmmens);
-                sectionSourceNum=Integer.parseInt(curSectionChild.getChildText("ID",cmmens));
-              }
+        else if (childName.equals("MensuralMusic"))
+          curSection=parseMensuralMusicSection(curSectionChild);
+        else if (childName.equals("Plainchant"))
+          curSection=parsePlainchantSection(curSectionChild);
+        else if (childName.equals("Text"))
+          curSection=parseTextSection(curSectionChild);
+      }
+    curSection.setEditorial(editorialSection);
+    curSection.setPrincipalSource(sectionSource);
+    curSection.setPrincipalSourceNum(sectionSourceNum);
+
+    return curSection;
+  }
+
+  MusicSection parseMusicSection(XMLStreamReader xmlIn) throws XMLStreamException
+  {
+    return parseMusicSection(xmlIn,true);
+  }
+
+  /* with readVoices false, parsing stops at the first voice of a mensural or
+     plainchant section (the stream is left unfinished) */
+  MusicSection parseMusicSection(XMLStreamReader xmlIn,boolean readVoices) throws XMLStreamException
+  {
+    boolean      editorialSection=false;
+    String       sectionSource=null;
+    int          sectionSourceNum=0;
+    MusicSection curSection=null;
+
+    while (XMLReader.nextChildElement(xmlIn))
+      {
+        String childName=xmlIn.getLocalName();
 
-            else if (childName.equals("MensuralMusic"))
-              curSection=parseMensuralMusicSection(curSectionChild);
-            else if (childName.equals("Plainchant"))
-              curSection=parsePlainchantSection(curSectionChild);
-            else if (childName.equals("Text"))
-              curSection=parseTextSection(curSectionChild);
+        if (childName.equals("Editorial"))
+          {
+            editorialSection=true;
+            XMLReader.skipElement(xmlIn);
+          }
+        else if (childName.equals("PrincipalSource"))
+          {
+            Element curSectionChild=XMLReader.readElement(xmlIn);
+            sectionSource=curSectionChild.getChildText("Name",cmmens);
+            sectionSourceNum=Integer.parseInt(curSectionChild.getChildText("ID",cmmens));
           }
-        curSection.setEditorial(editorialSection);
-        curSection.setPrincipalSource(sectionSource);
-        curSection.setPrincipalSourceNum(sectionSourceNum);
-//        curSection.setVersion(piece.getVariantVersions().get(0));
-        piece.addSection(curSection);
-
-        if (progressBar!=null)
-          progressBar.setValue(progressBar.getValue()+PBAdd);
+
+        else if (childName.equals("MensuralMusic"))
+          curSection=parseVoiceSection(xmlIn,
+            new MusicMensuralSection(piece.getVoiceData().length,false,piece.getBaseColoration()),
+            readVoices);
+        else if (childName.equals("Plainchant"))
+          curSection=parseVoiceSection(xmlIn,
+            new MusicChantSection(piece.getVoiceData().length,false,Coloration.DEFAULT_CHANT_COLORATION),
+            readVoices);
+        else if (childName.equals("Text"))
+          curSection=parseTextSection(XMLReader.readElement(xmlIn));
+        else
+          XMLReader.skipElement(xmlIn);
+
+        if (curSection!=null && !readVoices)
+          break;
       }
+    if (curSection==null)
+      throw new XMLStreamException("No music data in section",xmlIn.getLocation());
+    curSection.setEditorial(editorialSection);
+    curSection.setPrincipalSource(sectionSource);
+    curSection.setPrincipalSourceNum(sectionSourceNum);
 
-    piece.recalcAllEventParams();
+    return curSection;
   }
 
 /*------------------------------------------------------------------------
@@ -339,18 +1022,7 @@ Parameters:
           curv.addMissingVersion(piece.getVariantVersion(((Element)curMVObj).getText()));
 
         for (Object curEvObj : curVoiceEl.getChild("EventList",cmmens).getChildren())
-          {
-            /* create structure for current event depending on type */
-            Element cureventel=(Element)curEvObj;
-            String eventtype=cureventel.getName();
-
-            if (eventtype.equals("VariantReadings"))
-              addVariantReadings(vnum,curv,cureventel);
-            else if (eventtype.equals("EditorialData"))
-              addEditorialEvents(vnum,curv,cureventel);
-            else
-              addSingleOrMultiEvent(curv,cureventel);
-          }
+          addEventListItem(vnum,curv,(Element)curEvObj);
         /* add SectionEnd event at end of each voice */
         addNewEvent(vnum,curv,new Event(Event.EVENT_SECTIONEND));
 
@@ -395,18 +1067,7 @@ Parameters:
           curv.addMissingVersion(piece.getVariantVersion(((Element)curMVObj).getText()));
 
         for (Object curEvObj : curVoiceEl.getChild("EventList",cmmens).getChildren())
-          {
-            /* create structure for current event depending on type */
-            Element cureventel=(Element)curEvObj;
-            String eventtype=cureventel.getName();
-
-            if (eventtype.equals("VariantReadings"))
-              addVariantReadings(vnum,curv,cureventel);
-            else if (eventtype.equals("EditorialData"))
-              addEditorialEvents(vnum,curv,cureventel);
-            else
-              addSingleOrMultiEvent(curv,cureventel);
-          }
+          addEventListItem(vnum,curv,(Element)curEvObj);
         /* add SectionEnd event at end of each voice */
         addNewEvent(vnum,curv,new Event(Event.EVENT_SECTIONEND));
 
@@ -429,13 +1090,135 @@ Parameters:
   void parseTacetInstructions(Element curSectionEl,MusicSection curSection)
   {
     for (Object curObj : curSectionEl.getChildren("TacetInstruction",cmmens))
+      parseTacetInstruction((Element)curObj,curSection);
+  }
+
+  void parseTacetInstruction(Element curTacetEl,MusicSection curSection)
+  {
+    curSection.setTacetText(
+      Integer.parseInt(curTacetEl.getChildText("VoiceNum",cmmens))-1,
+      curTacetEl.getChildText("TacetText",cmmens));
+  }
+
+/*------------------------------------------------------------------------
+Method:  MusicSection parseVoiceSection(XMLStreamReader xmlIn,MusicSection curSection,
+                                       boolean readVoices)
+Purpose: Read contents of one mensural or plainchant section from XML stream
+Parameters:
+  Input:  XMLStreamReader xmlIn   - stream reader positioned at start tag of
+                                    MensuralMusic/Plainchant element
+          boolean readVoices      - false to stop at the first Voice element
+  Output: MusicSection curSection - newly-created section to fill
+  Return: curSection
+------------------------------------------------------------------------*/
+
+  MusicSection parseVoiceSection(XMLStreamReader xmlIn,MusicSection curSection,
+                                 boolean readVoices) throws XMLStreamException
+  {
+    for (int vi=0; vi<curcolor.length; vi++)
+      curcolor[vi]=curSection.getBaseColoration();
+
+    while (XMLReader.nextChildElement(xmlIn))
+      {
+        String childName=xmlIn.getLocalName();
+
+        if (childName.equals("BaseColoration"))
+          {
+            curSection.setBaseColoration(parseColoration(XMLReader.readElement(xmlIn)));
+            for (int vi=0; vi<curcolor.length; vi++)
+              curcolor[vi]=curSection.getBaseColoration();
+          }
+        else if (childName.equals("TacetInstruction"))
+          parseTacetInstruction(XMLReader.readElement(xmlIn),curSection);
+        else if (childName.equals("Voice"))
+          if (readVoices)
+            parseVoice(xmlIn,curSection);
+          else
+            return curSection;
+        else
+          XMLReader.skipElement(xmlIn);
+      }
+
+    return curSection;
+  }
+
+/*------------------------------------------------------------------------
+Method:  void parseSectionVoices(XMLStreamReader xmlIn,MusicSection curSection)
+Purpose: Read voice event lists of a section whose header has already been
+         parsed (lazy section loading)
+Parameters:
+  Input:  XMLStreamReader xmlIn   - stream reader positioned at MusicSection
+                                    start tag
+  Output: MusicSection curSection - section to fill
+  Return: -
+------------------------------------------------------------------------*/
+
+  void parseSectionVoices(XMLStreamReader xmlIn,MusicSection curSection) throws XMLStreamException
+  {
+    while (XMLReader.nextChildElement(xmlIn))
+      {
+        String childName=xmlIn.getLocalName();
+
+        if (childName.equals("MensuralMusic") || childName.equals("Plainchant"))
+          {
+            for (int vi=0; vi<curcolor.length; vi++)
+              curcolor[vi]=curSection.getBaseColoration();
+
+            while (XMLReader.nextChildElement(xmlIn))
+              if (xmlIn.getLocalName().equals("Voice"))
+                parseVoice(xmlIn,curSection);
+              else
+                XMLReader.skipElement(xmlIn);
+          }
+        else
+          XMLReader.skipElement(xmlIn);
+      }
+  }
+
+/*------------------------------------------------------------------------
+Method:  void parseVoice(XMLStreamReader xmlIn,MusicSection curSection)
+Purpose: Read event list for one voice from XML stream, one event at a time
+Parameters:
+  Input:  XMLStreamReader xmlIn   - stream reader positioned at Voice start tag
+  Output: MusicSection curSection - section to which voice is added
+  Return: -
+------------------------------------------------------------------------*/
+
+  void parseVoice(XMLStreamReader xmlIn,MusicSection curSection) throws XMLStreamException
+  {
+    int                vnum=-1;
+    VoiceEventListData curv=null;
+
+    while (XMLReader.nextChildElement(xmlIn))
       {
-        Element curTacetEl=(Element)curObj;
+        String childName=xmlIn.getLocalName();
+
+        if (childName.equals("VoiceNum"))
+          {
+            vnum=Integer.parseInt(xmlIn.getElementText().trim())-1;
+            lastNoteEvent=null;
 
-        curSection.setTacetText(
-          Integer.parseInt(curTacetEl.getChildText("VoiceNum",cmmens))-1,
-          curTacetEl.getChildText("TacetText",cmmens));
+            if (curSection instanceof MusicChantSection)
+              curv=new VoiceChantData(piece.getVoiceData()[vnum],curSection);
+            else
+              curv=new VoiceMensuralData(piece.getVoiceData()[vnum],curSection);
+          }
+        else if (childName.equals("MissingVersionID") && curv!=null)
+          curv.addMissingVersion(piece.getVariantVersion(xmlIn.getElementText()));
+        else if (childName.equals("EventList") && curv!=null)
+          while (XMLReader.nextChildElement(xmlIn))
+            addEventListItem(vnum,curv,XMLReader.readElement(xmlIn));
+        else
+          XMLReader.skipElement(xmlIn);
       }
+    if (curv==null)
+      throw new XMLStreamException("Voice without VoiceNum",xmlIn.getLocation());
+
+    /* add SectionEnd event at end of each voice */
+    addNewEvent(vnum,curv,new Event(Event.EVENT_SECTIONEND));
+
+    /* set voice data in section */
+    curSection.setVoice(vnum,curv);
   }
 
 /*------------------------------------------------------------------------
@@ -455,6 +1238,30 @@ Parameters:
     return curSection;
   }
 
+/*------------------------------------------------------------------------
+Method:  void addEventListItem(int vnum,VoiceEventListData v,Element cureventel)
+Purpose: Parse one item in a voice's event list (event, multi-event, or
+         segment of variant/editorial readings) and add to voice data
+Parameters:
+  Input:  int vnum             - voice number
+          Element cureventel   - item node to parse
+  Output: VoiceEventListData v - voice being constructed
+  Return: -
+------------------------------------------------------------------------*/
+
+  void addEventListItem(int vnum,VoiceEventListData v,Element cureventel)
+  {
+    /* create structure for current event depending on type */
+    String eventtype=cureventel.getName();
+
+    if (eventtype.equals("VariantReadings"))
+      addVariantReadings(vnum,v,cureventel);
+    else if (eventtype.equals("EditorialData"))
+      addEditorialEvents(vnum,v,cureventel);
+    else
+      addSingleOrMultiEvent(v,cureventel);
+  }
+
 /*------------------------------------------------------------------------
 Method:  void addVariantReadings(int vnum,VoiceEventListData v,Element varRootEl)
 Purpose: Parse segment of variant readings and add to voice data
@@ -583,6 +1390,7 @@ Parameters:
         e.setModernKeySigParams(curModKeySig[vnum]);
       }
     v.addEvent(e);
+    metrics.eventsCreated++;
   }
 
 /*------------------------------------------------------------------------
@@ -1051,7 +1859,7 @@ Parameters:
   Event parseColorChangeEvent(Element e,Coloration lastc)
   {
     /* new coloration = last coloration + differences */
-    return new ColorChangeEvent(new Coloration(lastc,parseColoration(e)));
+    return new ColorChangeEvent(Coloration.intern(new Coloration(lastc,parseColoration(e))));
   }
 
 /*------------------------------------------------------------------------
@@ -1213,7 +2021,7 @@ Parameters:
         sf=Coloration.complementaryFill(pf);
       }
 
-    return new Coloration(pc,pf,sc,sf);
+    return Coloration.intern(new Coloration(pc,pf,sc,sf));
   }
 
 /*------------------------------------------------------------------------
@@ -1314,8 +2122,8 @@ Parameters:
   Proportion parseProportion(Element e)
   {
     return e==null ? null :
-             new Proportion(Integer.parseInt(e.getChildText("Num",cmmens)),
-                            Integer.parseInt(e.getChildText("Den",cmmens)));
+             Proportion.intern(Integer.parseInt(e.getChildText("Num",cmmens)),
+                               Integer.parseInt(e.getChildText("Den",cmmens)));
   }
 
 
@@ -1326,7 +2134,12 @@ Parameters:
 
 /*------------------------------------------------------------------------
 Method:  void outputPieceData(PieceData pdata,OutputStream outs)
-Purpose: Output CMME format file from PieceData structure
+Purpose: Output CMME format file from PieceData structure; output is written
+         as it is generated, so that only one event's tree segment (or small
+         header segment) is held in memory at a time. Write errors are
+         passed to the caller, which must treat the output as incomplete.
+         Output uses static state, so only one piece is written at a time
+         (saves run on background threads)
 Parameters:
   Input:  PieceData pdata   - structure containing music
           OutputStream outs - output destination
@@ -1336,10 +2149,9 @@ Parameters:
 
   static PieceData mainData;
 
-  public static void outputPieceData(PieceData pdata,OutputStream outs)
+  public static synchronized void outputPieceData(PieceData pdata,OutputStream outs) throws IOException
   {
-    Document outputdoc;
-    Element  rootel;
+    Element rootel;
 
     mainData=pdata;
     cmmens=Namespace.getNamespace("http://www.cmme.org");
@@ -1352,25 +2164,130 @@ Parameters:
     rootel.setAttribute("schemaLocation","http://www.cmme.org cmme.xsd",xsins);
     rootel.setAttribute("CMMEversion",MetaData.CMME_VERSION);//,cmmens);
 
+    /* a piece whose sections did not all load would be written without
+       their music */
+    Exception loadError=pdata.getLoadError();
+    if (loadError!=null)
+      throw new IOException("Piece was not loaded completely: "+loadError,loadError);
+
     /* actual content */
     pdata.consolidateAllReadings();
-    rootel.addContent(createGeneralDataTree(pdata));
-    rootel.addContent(createVoiceDataTree(pdata.getVoiceData()));
+    CMMEOutputter xout=new CMMEOutputter(outs);
+
+    xout.startDocument(rootel);
+    xout.writeElement(createGeneralDataTree(pdata));
+    xout.writeElement(createVoiceDataTree(pdata.getVoiceData()));
     for (int si=0; si<pdata.getNumSections(); si++)
-      rootel.addContent(createMusicSectionTree(pdata.getSection(si)));
+      writeMusicSection(xout,pdata.getSection(si));
+    xout.endDocument(rootel);
+  }
 
-    outputdoc=new Document(rootel);
+/*------------------------------------------------------------------------
+Class:   CMMEOutputter
+Extends: XMLOutputter
+Purpose: Writes CMME document incrementally: enclosing elements are opened
+         and closed explicitly, and complete tree segments are printed within
+         them, with the same formatting as XMLOutputter applies to a whole
+         document (raw format, two-space indent)
+------------------------------------------------------------------------*/
 
-    /* output */
-    try
-      {
-        XMLOutputter xout=new XMLOutputter(Format.getRawFormat().setIndent("  "));
-        xout.output(outputdoc,outs);
-      }
-    catch (Exception e)
-      {
-        System.err.println("Error writing XML doc: "+e);
-      }
+  static class CMMEOutputter extends XMLOutputter
+  {
+    Writer         out;
+    NamespaceStack namespaces=new NamespaceStack() {};
+    int            level=0;
+    boolean        startTagOpen=false; /* last start tag not yet closed with '>' */
+
+    CMMEOutputter(OutputStream outs) throws IOException
+    {
+      super(Format.getRawFormat().setIndent("  "));
+      out=new BufferedWriter(new OutputStreamWriter(outs,"UTF8"));
+    }
+
+    /* XML declaration and start tag of root element (whose content is
+       ignored) */
+    void startDocument(Element rootel) throws IOException
+    {
+      out.write("<?xml version=\"1.0\" encoding=\""+currentFormat.getEncoding()+"\"?>");
+      out.write(currentFormat.getLineSeparator());
+
+      out.write("<"+rootel.getQualifiedName());
+      printNamespaceDecl(rootel.getNamespace());
+      for (Object ns : rootel.getAdditionalNamespaces())
+        printNamespaceDecl((Namespace)ns);
+      printAttributes(out,rootel.getAttributes(),rootel,namespaces);
+
+      startTagOpen=true;
+      level=1;
+    }
+
+    void printNamespaceDecl(Namespace ns) throws IOException
+    {
+      String prefix=ns.getPrefix();
+      if (namespaces.getURI(prefix)!=null)
+        return; /* already declared */
+
+      out.write(prefix.equals("") ? " xmlns" : " xmlns:"+prefix);
+      out.write("=\""+escapeAttributeEntities(ns.getURI())+"\"");
+      namespaces.push(ns);
+    }
+
+    void endDocument(Element rootel) throws IOException
+    {
+      endElement(rootel.getQualifiedName());
+      out.write(currentFormat.getLineSeparator());
+      out.write(currentFormat.getLineSeparator());
+      out.flush();
+    }
+
+    /* open element (in the document's default namespace) */
+    void startElement(String name) throws IOException
+    {
+      newChild();
+      out.write("<"+name);
+      startTagOpen=true;
+      level++;
+    }
+
+    void endElement(String name) throws IOException
+    {
+      level--;
+      if (startTagOpen)
+        {
+          /* no content */
+          out.write(" />");
+          startTagOpen=false;
+        }
+      else
+        {
+          newLine(level);
+          out.write("</"+name+">");
+        }
+    }
+
+    /* print complete tree segment as next child of the current element */
+    void writeElement(Element el) throws IOException
+    {
+      newChild();
+      printElement(out,el,level,namespaces);
+    }
+
+    void newChild() throws IOException
+    {
+      if (startTagOpen)
+        {
+          out.write(">");
+          startTagOpen=false;
+        }
+      newLine(level);
+    }
+
+    void newLine(int indentLevel) throws IOException
+    {
+      out.write(currentFormat.getLineSeparator());
+      for (int i=0; i<indentLevel; i++)
+        out.write(currentFormat.getIndent());
+    }
   }
 
 /*------------------------------------------------------------------------
@@ -1485,119 +2402,103 @@ Parameters:
   }
 
 /*------------------------------------------------------------------------
-Method:  Element createMusicSectionTree(MusicSection ms)
-Purpose: Construct tree segment for one MusicSection
+Method:  void writeMusicSection(CMMEOutputter xout,MusicSection ms)
+Purpose: Output one MusicSection
 Parameters:
-  Input:  MusicSection ms - music section
+  Input:  CMMEOutputter xout - output destination
+          MusicSection ms    - music section
   Output: -
-  Return: root element (for this segment)
+  Return: -
 ------------------------------------------------------------------------*/
 
-  static Element createMusicSectionTree(MusicSection ms)
+  static void writeMusicSection(CMMEOutputter xout,MusicSection ms) throws IOException
   {
-    Element msel=new Element("MusicSection",cmmens);
+    xout.startElement("MusicSection");
     if (ms.isEditorial())
-      msel.addContent(new Element("Editorial",cmmens));
+      xout.writeElement(new Element("Editorial",cmmens));
     String msSource=ms.getPrincipalSource();
     if (msSource!=null && !msSource.equals(""))
-      msel.addContent(createSourceInfoTree("PrincipalSource",msSource,ms.getPrincipalSourceNum()));
+      xout.writeElement(createSourceInfoTree("PrincipalSource",msSource,ms.getPrincipalSourceNum()));
 
     switch (ms.getSectionType())
       {
         case MusicSection.MENSURAL_MUSIC:
-          msel.addContent(createMusicMensuralSectionTree((MusicMensuralSection)ms));
+          writeMusicMensuralSection(xout,(MusicMensuralSection)ms);
           break;
         case MusicSection.PLAINCHANT:
-          msel.addContent(createMusicChantSectionTree((MusicChantSection)ms));
+          writeMusicChantSection(xout,(MusicChantSection)ms);
           break;
         default:
           System.err.println("Save error: Attempting to create tree for unsupported section type");
           break;
       }
 
-    return msel;
+    xout.endElement("MusicSection");
   }
 
 /*------------------------------------------------------------------------
-Method:  Element createMusicMensuralSectionTree(MusicMensuralSection mms)
-Purpose: Construct tree segment for one MusicMensuralSection
+Method:  void writeMusicMensuralSection(CMMEOutputter xout,MusicMensuralSection mms)
+Purpose: Output one MusicMensuralSection
 Parameters:
-  Input:  MusicMensuralSection mms - mensural music section
+  Input:  CMMEOutputter xout       - output destination
+          MusicMensuralSection mms - mensural music section
   Output: -
-  Return: root element (for this segment)
+  Return: -
 ------------------------------------------------------------------------*/
 
-  static Element createMusicMensuralSectionTree(MusicMensuralSection mms)
+  static void writeMusicMensuralSection(CMMEOutputter xout,MusicMensuralSection mms) throws IOException
   {
-    Element mmsel=new Element("MensuralMusic",cmmens);
-    mmsel.addContent(new Element("NumVoices",cmmens).setText(Integer.toString(mms.getNumVoicesUsed())));
+    xout.startElement("MensuralMusic");
+    xout.writeElement(new Element("NumVoices",cmmens).setText(Integer.toString(mms.getNumVoicesUsed())));
     if (mms.getBaseColoration()!=null && !mms.getBaseColoration().equals(mainData.getBaseColoration()))
-      mmsel.addContent(addColorationData(new Element("BaseColoration",cmmens),mms.getBaseColoration()));
+      xout.writeElement(addColorationData(new Element("BaseColoration",cmmens),mms.getBaseColoration()));
 
-    addTacetInstructions(mmsel,mms);
+    writeTacetInstructions(xout,mms);
 
     for (int vi=0; vi<mms.getNumVoices(); vi++)
       if (mms.getVoice(vi)!=null)
-        {
-          VoiceMensuralData curvmd=(VoiceMensuralData)mms.getVoice(vi);
+        writeVoice(xout,mms.getVoice(vi));
 
-          Element curvel=new Element("Voice",cmmens);
-          curvel.addContent(new Element("VoiceNum",cmmens).setText(Integer.toString(curvmd.getVoiceNum())));
-          for (VariantVersionData vvd : curvmd.getMissingVersions())
-            curvel.addContent(new Element("MissingVersionID",cmmens).setText(vvd.getID()));
-          curvel.addContent(createVoiceEventTree(curvmd));
-
-          mmsel.addContent(curvel);
-        }
-
-    return mmsel;
+    xout.endElement("MensuralMusic");
   }
 
 /*------------------------------------------------------------------------
-Method:  Element createMusicChantSectionTree(MusicChantSection mcs)
-Purpose: Construct tree segment for one MusicChantSection
+Method:  void writeMusicChantSection(CMMEOutputter xout,MusicChantSection mcs)
+Purpose: Output one MusicChantSection
 Parameters:
-  Input:  MusicChantSection mcs - plainchant section
+  Input:  CMMEOutputter xout    - output destination
+          MusicChantSection mcs - plainchant section
   Output: -
-  Return: root element (for this segment)
+  Return: -
 ------------------------------------------------------------------------*/
 
-  static Element createMusicChantSectionTree(MusicChantSection mcs)
+  static void writeMusicChantSection(CMMEOutputter xout,MusicChantSection mcs) throws IOException
   {
-    Element mcsel=new Element("Plainchant",cmmens);
-    mcsel.addContent(new Element("NumVoices",cmmens).setText(Integer.toString(mcs.getNumVoicesUsed())));
+    xout.startElement("Plainchant");
+    xout.writeElement(new Element("NumVoices",cmmens).setText(Integer.toString(mcs.getNumVoicesUsed())));
     if (mcs.getBaseColoration()!=null && !mcs.getBaseColoration().equals(Coloration.DEFAULT_CHANT_COLORATION))
-      mcsel.addContent(addColorationData(new Element("BaseColoration",cmmens),mcs.getBaseColoration()));
+      xout.writeElement(addColorationData(new Element("BaseColoration",cmmens),mcs.getBaseColoration()));
 
-    addTacetInstructions(mcsel,mcs);
+    writeTacetInstructions(xout,mcs);
 
     for (int vi=0; vi<mcs.getNumVoices(); vi++)
       if (mcs.getVoice(vi)!=null)
-        {
-          VoiceEventListData curvd=mcs.getVoice(vi);
-
-          Element curvel=new Element("Voice",cmmens);
-          curvel.addContent(new Element("VoiceNum",cmmens).setText(Integer.toString(curvd.getVoiceNum())));
-          for (VariantVersionData vvd : curvd.getMissingVersions())
-            curvel.addContent(new Element("MissingVersionID",cmmens).setText(vvd.getID()));
-          curvel.addContent(createVoiceEventTree(curvd));
+        writeVoice(xout,mcs.getVoice(vi));
 
-          mcsel.addContent(curvel);
-        }
-
-    return mcsel;
+    xout.endElement("Plainchant");
   }
 
 /*------------------------------------------------------------------------
-Method:  void addTacetInstructions(Element sectionEl,MusicSection section)
-Purpose: Add tree segments for voice tacet texts in one MusicSection
+Method:  void writeTacetInstructions(CMMEOutputter xout,MusicSection section)
+Purpose: Output voice tacet texts in one MusicSection
 Parameters:
-  Input:  MusicSection section - music section
-  Output: Element sectionEl    - element representing music section
+  Input:  CMMEOutputter xout   - output destination
+          MusicSection section - music section
+  Output: -
   Return: -
 ------------------------------------------------------------------------*/
 
-  static void addTacetInstructions(Element sectionEl,MusicSection section)
+  static void writeTacetInstructions(CMMEOutputter xout,MusicSection section) throws IOException
   {
     if (section.getTacetInfo()==null)
       return;
@@ -1609,31 +2510,35 @@ Parameters:
           tacetEl.addContent(new Element("VoiceNum",cmmens).setText(Integer.toString(ti.voiceNum+1)));
           tacetEl.addContent(new Element("TacetText",cmmens).setText(ti.tacetText));
 
-          sectionEl.addContent(tacetEl);
+          xout.writeElement(tacetEl);
         }
   }
 
 /*------------------------------------------------------------------------
-Method:  Element createVoiceEventTree(VoiceEventListData v)
-Purpose: Construct tree segment for all Events in one voice section
+Method:  void writeVoice(CMMEOutputter xout,VoiceEventListData v)
+Purpose: Output one voice of a section, one event at a time
 Parameters:
-  Input:  VoiceEventListData v - data for one voice
+  Input:  CMMEOutputter xout   - output destination
+          VoiceEventListData v - data for one voice
   Output: -
-  Return: root element (for this segment)
+  Return: -
 ------------------------------------------------------------------------*/
 
   static Coloration lastcol;
 
-  static Element createVoiceEventTree(VoiceEventListData v)
+  static void writeVoice(CMMEOutputter xout,VoiceEventListData v) throws IOException
   {
-    Element elel=new Element("EventList",cmmens),
-            curevel;
-    Event   cure;
+    xout.startElement("Voice");
+    xout.writeElement(new Element("VoiceNum",cmmens).setText(Integer.toString(v.getVoiceNum())));
+    for (VariantVersionData vvd : v.getMissingVersions())
+      xout.writeElement(new Element("MissingVersionID",cmmens).setText(vvd.getID()));
 
+    xout.startElement("EventList");
     lastcol=v.getSection().getBaseColoration();
     for (Iterator i=v.events.iterator(); i.hasNext();)
       {
-        cure=(Event)i.next();
+        Event   cure=(Event)i.next();
+        Element curevel;
 
         if (cure.geteventtype()==Event.EVENT_VARIANTDATA_START)
           curevel=createVariantDataTree(i,((VariantMarkerEvent)cure).getReadings());
@@ -1641,10 +2546,11 @@ Parameters:
           curevel=createOneEventTree(cure);
 
         if (curevel!=null)
-          elel.addContent(curevel);
+          xout.writeElement(curevel);
       }
+    xout.endElement("EventList");
 
-    return elel;
+    xout.endElement("Voice");
   }
 
 /*------------------------------------------------------------------------
@@ -2158,7 +3064,7 @@ Parameters:
   {
     e.addContent(new Element("Type",cmmens).setText(NoteEvent.NoteTypeNames[nt]));
     if (l!=null && l.i1!=0)
-      e.addContent(addProportion(new Element("Length",cmmens),l.reduce()));
+      e.addContent(addProportion(new Element("Length",cmmens),new Proportion(l).reduce()));
 
     return e;
   }
@@ -0,0 +1,710 @@
+/*----------------------------------------------------------------------*/
+/*
+        Module          : CMMESectionLoader.java
+
+        Package         : DataStruct
+
+        Classes Included: CMMESectionLoader,RangeInputStream
+
+        Purpose         : Byte-offset index of the music sections in a CMME
+                          file, used to load section event lists on demand
+
+        Programmer      : Ted Dumitrescu
+
+        Date Started    : 10/17/26
+
+        Updates         :
+10/17/26: sections can be loaded in the background (loadInBackground), one
+          at a time, encoding each into the binary snapshot as it is read
+10/17/26: load failures are recorded on the piece (PieceData.getLoadError),
+          with parse error locations given in the source file
+
+                                                                        */
+/*----------------------------------------------------------------------*/
+
+package DataStruct;
+
+/*----------------------------------------------------------------------*/
+/* Imported classes */
+
+import java.io.*;
+import java.util.*;
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.jdom.JDOMException;
+
+/*------------------------------------------------------------------------
+Class:   CMMESectionLoader
+Extends: -
+Purpose: Locates MusicSection elements in a CMME file and parses their
+         voices when a section is first accessed
+------------------------------------------------------------------------*/
+
+class CMMESectionLoader
+{
+/*----------------------------------------------------------------------*/
+/* Class variables */
+
+  static final String SECTION_ELEMENT="MusicSection";
+
+  static final int SCAN_BUFFER_SIZE=65536;
+
+/*----------------------------------------------------------------------*/
+/* Instance variables */
+
+  File   sourceFile;
+  long   sourceLength,
+         sourceModified;
+  byte[] prolog;         /* document start up to end of root start tag */
+  String rootName;
+
+  ArrayList<Long> sectionStarts,
+                  sectionEnds;
+
+  /* sections created from this index, in document order, and the parser
+     holding the state needed to fill them */
+  ArrayList<MusicSection> sections;
+  CMMEParser              parser;
+  int                     numLoaded;
+
+  /* last event of each voice in the sections loaded so far (starting
+     parameters for the next section; recorded when each section is loaded,
+     since earlier sections may be read by other threads by the time later
+     ones are loaded) */
+  Event[] lastEvents;
+
+  /* snapshot being encoded as sections are loaded (null for none) */
+  CMMEBinaryCache.SnapshotBuilder snapshot=null;
+
+  /* scanning state */
+  InputStream scanIn;
+  byte[]      scanBuf;
+  int         scanLen,
+              scanPos,
+              nameEnd;
+  long        scanBufStart;
+
+/*----------------------------------------------------------------------*/
+/* Class methods */
+
+/*------------------------------------------------------------------------
+Method:  CMMESectionLoader indexFile(File f)
+Purpose: Scan file for the locations of all music sections
+Parameters:
+  Input:  File f - CMME file
+  Output: -
+  Return: new loader, or null if the file cannot be indexed (in which case
+          it should be parsed in full)
+------------------------------------------------------------------------*/
+
+  static CMMESectionLoader indexFile(File f) throws IOException
+  {
+    CMMESectionLoader loader=new CMMESectionLoader(f);
+    return loader.scanFile() ? loader : null;
+  }
+
+/*----------------------------------------------------------------------*/
+/* Instance methods */
+
+/*------------------------------------------------------------------------
+Constructor: CMMESectionLoader(File f)
+Purpose:     Initialize empty index
+Parameters:
+  Input:  File f - CMME file
+  Output: -
+------------------------------------------------------------------------*/
+
+  CMMESectionLoader(File f)
+  {
+    sourceFile=f;
+    sourceLength=f.length();
+    sourceModified=f.lastModified();
+    sectionStarts=new ArrayList<Long>();
+    sectionEnds=new ArrayList<Long>();
+    sections=new ArrayList<MusicSection>();
+    numLoaded=0;
+  }
+
+/*------------------------------------------------------------------------
+Method:  boolean scanFile()
+Purpose: Find root element and section boundaries by scanning the raw bytes
+         of the file (skipping declarations, comments and CDATA)
+Parameters:
+  Input:  -
+  Output: -
+  Return: true if index was created successfully
+------------------------------------------------------------------------*/
+
+  boolean scanFile() throws IOException
+  {
+    long prologEnd=-1;
+
+    scanIn=new FileInputStream(sourceFile);
+    scanBuf=new byte[SCAN_BUFFER_SIZE];
+    scanLen=scanPos=0;
+    scanBufStart=0;
+    try
+      {
+        int c=scanRead();
+
+        /* byte offsets are only meaningful for single-byte-based encodings */
+        if (c==0 || c==0xFE || c==0xFF)
+          return false;
+
+        while (c!=-1)
+          {
+            if (c!='<')
+              {
+                c=scanRead();
+                continue;
+              }
+
+            long tagStart=scanOffset()-1;
+            c=scanRead();
+            if (c=='?')
+              skipPast("?>");
+            else if (c=='!')
+              {
+                c=scanRead();
+                if (c=='-')
+                  skipPast("-->");
+                else if (c=='[')
+                  skipPast("]]>");
+                else
+                  skipDeclaration();
+              }
+            else if (c=='/')
+              {
+                String name=scanName(scanRead());
+                if (localName(name).equals(SECTION_ELEMENT))
+                  {
+                    skipTag();
+                    sectionEnds.add(scanOffset());
+                  }
+              }
+            else
+              {
+                String name=scanName(c);
+                if (rootName==null)
+                  {
+                    rootName=name;
+                    if (skipTag())
+                      return false; /* empty root element */
+                    prologEnd=scanOffset();
+                  }
+                else if (localName(name).equals(SECTION_ELEMENT))
+                  if (skipTag())
+                    return false; /* empty section */
+                  else
+                    sectionStarts.add(tagStart);
+              }
+            c=scanRead();
+          }
+      }
+    finally
+      {
+        scanIn.close();
+        scanIn=null;
+        scanBuf=null;
+      }
+
+    if (rootName==null || sectionStarts.size()!=sectionEnds.size())
+      return false;
+    for (int si=0; si<sectionStarts.size(); si++)
+      if (sectionEnds.get(si).longValue()<=sectionStarts.get(si).longValue())
+        return false;
+
+    prolog=new byte[(int)prologEnd];
+    RandomAccessFile raf=new RandomAccessFile(sourceFile,"r");
+    try
+      {
+        raf.readFully(prolog);
+      }
+    finally
+      {
+        raf.close();
+      }
+
+    return true;
+  }
+
+  int scanRead() throws IOException
+  {
+    if (scanPos>=scanLen)
+      {
+        scanBufStart+=scanLen;
+        scanPos=0;
+        scanLen=scanIn.read(scanBuf,0,scanBuf.length);
+        if (scanLen<=0)
+          {
+            scanLen=0;
+            return -1;
+          }
+      }
+    return scanBuf[scanPos++]&0xFF;
+  }
+
+  /* file offset of next byte to be read */
+  long scanOffset()
+  {
+    return scanBufStart+scanPos;
+  }
+
+  /* read name starting with character c; the character following the name
+     is left in nameEnd */
+  String scanName(int c) throws IOException
+  {
+    StringBuilder name=new StringBuilder();
+    while (c!=-1 && c!='>' && c!='/' && !Character.isWhitespace((char)c))
+      {
+        name.append((char)c);
+        c=scanRead();
+      }
+    nameEnd=c;
+    return name.toString();
+  }
+
+  String localName(String name)
+  {
+    return name.substring(name.indexOf(':')+1);
+  }
+
+  /* skip rest of tag after name, respecting quoted attribute values;
+     returns true if the tag is an empty-element tag */
+  boolean skipTag() throws IOException
+  {
+    int c=nameEnd,
+        lastc=-1,
+        quote=-1;
+
+    while (c!=-1)
+      {
+        if (quote!=-1)
+          {
+            if (c==quote)
+              quote=-1;
+          }
+        else if (c=='"' || c=='\'')
+          quote=c;
+        else if (c=='>')
+          return lastc=='/';
+        lastc=c;
+        c=scanRead();
+      }
+    return false;
+  }
+
+  /* skip past terminating sequence */
+  void skipPast(String term) throws IOException
+  {
+    int   termLen=term.length(),
+          numRead=0;
+    int[] window=new int[termLen];
+
+    for (int c=scanRead(); c!=-1; c=scanRead())
+      {
+        window[numRead++%termLen]=c;
+        if (numRead>=termLen)
+          {
+            boolean match=true;
+            for (int i=0; i<termLen && match; i++)
+              match=window[(numRead+i)%termLen]==term.charAt(i);
+            if (match)
+              return;
+          }
+      }
+  }
+
+  /* skip <!DOCTYPE ...> etc., including any internal subset */
+  void skipDeclaration() throws IOException
+  {
+    int depth=0;
+    for (int c=scanRead(); c!=-1; c=scanRead())
+      if (c=='[')
+        depth++;
+      else if (c==']')
+        depth--;
+      else if (c=='>' && depth<=0)
+        return;
+  }
+
+/*------------------------------------------------------------------------
+Method:  InputStream openSection(int si)
+Purpose: Open one section of the source file as a stand-alone document
+         (original prolog and root start tag, section, root end tag)
+Parameters:
+  Input:  int si - index of section in file
+  Output: -
+  Return: input stream for section document
+------------------------------------------------------------------------*/
+
+  InputStream openSection(int si) throws IOException
+  {
+    InputStream sectionIn=new RangeInputStream(sourceFile,
+      sectionStarts.get(si).longValue(),sectionEnds.get(si).longValue());
+
+    return new SequenceInputStream(
+      new SequenceInputStream(new ByteArrayInputStream(prolog),sectionIn),
+      new ByteArrayInputStream(("</"+rootName+">").getBytes("UTF-8")));
+  }
+
+/*------------------------------------------------------------------------
+Method:  void addSection(MusicSection s)
+Purpose: Register section created from the next index entry; voices of
+         mensural and plainchant sections will be loaded on first access
+Parameters:
+  Input:  MusicSection s - section header
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+  void addSection(MusicSection s)
+  {
+    sections.add(s);
+    if (s.getSectionType()!=MusicSection.TEXT)
+      s.sectionLoader=this;
+  }
+
+/*------------------------------------------------------------------------
+Method:  void loadSection(MusicSection s)
+Purpose: Parse voices of a section, along with any unloaded sections before
+         it (the parser carries coloration and other per-voice state from
+         one section to the next); then recalculate event parameters
+         starting from the end of the previous section
+Parameters:
+  Input:  MusicSection s - section to load
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+  synchronized void loadSection(MusicSection s)
+  {
+    if (s.sectionLoader==null)
+      return; /* loaded while waiting */
+
+    loadSections(sections.indexOf(s));
+  }
+
+  /* load all sections up to and including number targetNum */
+  synchronized void loadSections(int targetNum)
+  {
+    if (sections==null || targetNum<numLoaded)
+      return; /* already loaded, or being loaded by this thread */
+
+    boolean sourceChanged=sourceFile.length()!=sourceLength ||
+                          sourceFile.lastModified()!=sourceModified;
+    if (sourceChanged)
+      {
+        parser.piece.setLoadError(new IOException(
+          sourceFile+" changed since it was opened; section data not loaded"));
+        abandonSnapshot();
+      }
+
+    if (lastEvents==null)
+      lastEvents=new Event[parser.piece.getVoiceData().length];
+
+    while (numLoaded<=targetNum)
+      {
+        MusicSection curSection=sections.get(numLoaded++);
+        if (curSection.sectionLoader!=null)
+          {
+            if (!sourceChanged)
+              parseSection(curSection,numLoaded-1);
+            recalcSection(curSection);
+          }
+        if (snapshot!=null)
+          snapshot.addSection(curSection);
+
+        /* section data is complete; make it available to other threads */
+        curSection.sectionLoader=null;
+      }
+
+    /* everything loaded; release parser and section list */
+    if (numLoaded>=sections.size())
+      {
+        if (snapshot!=null)
+          snapshot.finish();
+        snapshot=null;
+        parser=null;
+        sections=null;
+        lastEvents=null;
+      }
+  }
+
+/*------------------------------------------------------------------------
+Method:  void parseSection(MusicSection curSection,int si)
+Purpose: Read voices of one section from source file
+Parameters:
+  Input:  MusicSection curSection - section to fill
+          int si                  - number of section in index
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+  void parseSection(MusicSection curSection,int si)
+  {
+    ParseMetrics metrics=parser.getMetrics();
+    long         startTime=System.nanoTime();
+    try
+      {
+        InputStream sectionIn=new MeteredInputStream(openSection(si),metrics,null,-1);
+        try
+          {
+            XMLStreamReader xmlIn=parser.getStreamReader(sectionIn);
+            if (XMLReader.nextRootElement(xmlIn) && XMLReader.nextChildElement(xmlIn))
+              parser.parseSectionVoices(xmlIn,curSection);
+            xmlIn.close();
+          }
+        finally
+          {
+            sectionIn.close();
+          }
+      }
+    catch (XMLStreamException e)
+      {
+        XMLStreamException fileError=mapError(si,e);
+        parser.piece.setLoadError(
+          new JDOMException("Error parsing CMME document: "+fileError.getMessage(),fileError));
+        abandonSnapshot();
+      }
+    catch (Exception e)
+      {
+        parser.piece.setLoadError(e);
+        abandonSnapshot();
+      }
+    metrics.parseTime+=System.nanoTime()-startTime;
+  }
+
+/*------------------------------------------------------------------------
+Method:  XMLStreamException mapError(int si,XMLStreamException e)
+Purpose: Translate the location of a parse error in a section document
+         (see openSection) into a location in the source file
+Parameters:
+  Input:  int si               - index of section in file
+          XMLStreamException e - error from parsing section document
+  Output: -
+  Return: error with source file location (e itself if it has no location,
+          or the location is in the prolog, which is copied unchanged)
+------------------------------------------------------------------------*/
+
+  XMLStreamException mapError(int si,XMLStreamException e)
+  {
+    Location loc=e.getLocation();
+    if (loc==null || loc.getLineNumber()<1)
+      return e;
+
+    /* lines and length of last line in prolog */
+    int prologLines=1,
+        prologTail=0;
+    for (byte b : prolog)
+      if (b=='\n')
+        {
+          prologLines++;
+          prologTail=0;
+        }
+      else
+        prologTail++;
+    if (loc.getLineNumber()<prologLines)
+      return e;
+
+    /* line and column at which the section starts in the source file */
+    long sectionStart=sectionStarts.get(si).longValue();
+    int  startLine=1,
+         startCol=0;
+    try
+      {
+        InputStream fileIn=new BufferedInputStream(new FileInputStream(sourceFile));
+        try
+          {
+            for (long pos=0; pos<sectionStart; pos++)
+              if (fileIn.read()=='\n')
+                {
+                  startLine++;
+                  startCol=0;
+                }
+              else
+                startCol++;
+          }
+        finally
+          {
+            fileIn.close();
+          }
+      }
+    catch (IOException ioe)
+      {
+        return e;
+      }
+
+    int line=loc.getLineNumber()-prologLines+startLine,
+        col=loc.getColumnNumber();
+    if (loc.getLineNumber()==prologLines && col>0)
+      col+=startCol-prologTail;
+
+    String synthPos="["+loc.getLineNumber()+","+loc.getColumnNumber()+"]",
+           filePos="["+line+","+col+"]",
+           msg=e.getMessage();
+    int    posi=msg==null ? -1 : msg.indexOf(synthPos);
+    if (posi==-1)
+      msg="at "+filePos+": "+msg;
+    else
+      msg=msg.substring(0,posi)+filePos+msg.substring(posi+synthPos.length());
+
+    return new XMLStreamException(msg,e);
+  }
+
+/*------------------------------------------------------------------------
+Method:  void recalcSection(MusicSection curSection)
+Purpose: Calculate event parameters of a newly-loaded section from the last
+         events of the preceding sections, as PieceData.recalcAllEventParams()
+         does, and record the section's own last events
+Parameters:
+  Input:  MusicSection curSection - newly-loaded section
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+  void recalcSection(MusicSection curSection)
+  {
+    ParseMetrics metrics=parser.getMetrics();
+    long         startTime=System.nanoTime();
+    for (int vi=0; vi<curSection.getNumVoices() && vi<lastEvents.length; vi++)
+      {
+        VoiceEventListData v=curSection.getVoice(vi);
+        if (v==null || v.getNumEvents()==0)
+          continue;
+        v.recalcEventParams(lastEvents[vi]!=null ? lastEvents[vi] : v.getEvent(0));
+        lastEvents[vi]=v.getEvent(v.getNumEvents()-1);
+      }
+    metrics.recalcTime+=System.nanoTime()-startTime;
+  }
+
+  void abandonSnapshot()
+  {
+    if (snapshot!=null)
+      snapshot.abandon();
+    snapshot=null;
+  }
+
+/*------------------------------------------------------------------------
+Method:  void loadInBackground(CMMEBinaryCache.SnapshotBuilder snapshot)
+Purpose: Start a thread which loads all sections in order, one at a time
+         (so that a thread which needs an early section, e.g. for rendering,
+         only waits for the section currently being read), adding each to a
+         snapshot
+Parameters:
+  Input:  CMMEBinaryCache.SnapshotBuilder snapshot - snapshot to complete as
+                                                     sections are loaded, or
+                                                     null
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+  synchronized void loadInBackground(CMMEBinaryCache.SnapshotBuilder snapshot)
+  {
+    if (sections==null)
+      return; /* everything already loaded */
+
+    /* snapshot must receive every section in order */
+    if (numLoaded==0)
+      this.snapshot=snapshot;
+    else if (snapshot!=null)
+      snapshot.abandon();
+
+    final int numSections=sections.size();
+    Thread loaderThread=new Thread(new Runnable()
+      {
+        public void run()
+        {
+          for (int si=0; si<numSections; si++)
+            loadSections(si);
+        }
+      },"Section loader");
+    loaderThread.setDaemon(true);
+    loaderThread.start();
+  }
+
+/*------------------------------------------------------------------------
+Methods: get*()
+Purpose: Routines to return attribute variables
+Parameters:
+  Input:  -
+  Output: -
+  Return: attribute variables
+------------------------------------------------------------------------*/
+
+  int getNumSections()
+  {
+    return sectionStarts.size();
+  }
+
+  File getSourceFile()
+  {
+    return sourceFile;
+  }
+
+/*------------------------------------------------------------------------
+Methods: void set*()
+Purpose: Routines to set attribute variables
+Parameters:
+  Input:  new attributes
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+  void setParser(CMMEParser parser)
+  {
+    this.parser=parser;
+  }
+}
+
+
+/*------------------------------------------------------------------------
+Class:   RangeInputStream
+Extends: InputStream
+Purpose: Reads one byte range of a file
+------------------------------------------------------------------------*/
+
+class RangeInputStream extends InputStream
+{
+/*----------------------------------------------------------------------*/
+/* Instance variables */
+
+  RandomAccessFile raf;
+  long             pos,
+                   end;
+
+/*----------------------------------------------------------------------*/
+/* Instance methods */
+
+  RangeInputStream(File f,long start,long end) throws IOException
+  {
+    this.raf=new RandomAccessFile(f,"r");
+    this.pos=start;
+    this.end=end;
+    raf.seek(start);
+  }
+
+  public int read() throws IOException
+  {
+    if (pos>=end)
+      return -1;
+    pos++;
+    return raf.read();
+  }
+
+  public int read(byte[] b,int off,int len) throws IOException
+  {
+    if (pos>=end)
+      return -1;
+    int numRead=raf.read(b,off,(int)Math.min(len,end-pos));
+    if (numRead>0)
+      pos+=numRead;
+    return numRead;
+  }
+
+  public void close() throws IOException
+  {
+    raf.close();
+  }
+}
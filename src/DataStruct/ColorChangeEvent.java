@@ -64,7 +64,7 @@ Parameters:
 
   public Event createCopy()
   {
-    Event e=new ColorChangeEvent(new Coloration(this.newcolor));
+    Event e=new ColorChangeEvent(this.newcolor);
     e.copyEventAttributes(this);
     return e;
   }
@@ -14,6 +14,7 @@
         Date Started    : 9/14/05
 
 Updates	:
+10/17/26: added intern() (shared instances for parsed/copied colorations)
 
                                                                         */
 /*----------------------------------------------------------------------*/
@@ -24,6 +25,7 @@ package DataStruct;
 /* Imported packages */
 
 import java.awt.Color;
+import java.util.*;
 
 /*------------------------------------------------------------------------
 Class:   Coloration
@@ -76,6 +78,10 @@ public class Coloration
                                  DEFAULT_CHANT_COLORATION=new Coloration(BLACK,FULL,
                                                                          BLACK,VOID);
 
+  /* shared instances returned by intern() */
+  static final int                   MAX_INTERNED=1024;
+  static HashMap<Long,Coloration>    internedValues=new HashMap<Long,Coloration>();
+
 /*----------------------------------------------------------------------*/
 /* Class methods */
 
@@ -137,6 +143,35 @@ Parameters:
     return f==VOID ? FULL : VOID;
   }
 
+/*------------------------------------------------------------------------
+Method:  Coloration intern(Coloration c)
+Purpose: Return shared instance of a coloration scheme (colorations are
+         never modified after construction, so events with the same scheme
+         can share one object)
+Parameters:
+  Input:  Coloration c - coloration scheme
+  Output: -
+  Return: shared coloration with the same values as c (null if c is null)
+------------------------------------------------------------------------*/
+
+  public static Coloration intern(Coloration c)
+  {
+    if (c==null)
+      return null;
+
+    Long key=Long.valueOf(((long)(c.primaryColor&0xFFFF)<<48)|((long)(c.primaryFill&0xFFFF)<<32)|
+                          ((long)(c.secondaryColor&0xFFFF)<<16)|(c.secondaryFill&0xFFFFL));
+    synchronized (internedValues)
+      {
+        Coloration sharedc=internedValues.get(key);
+        if (sharedc!=null)
+          return sharedc;
+        if (internedValues.size()<MAX_INTERNED)
+          internedValues.put(key,c);
+        return c;
+      }
+  }
+
 /*----------------------------------------------------------------------*/
 /* Instance variables */
 
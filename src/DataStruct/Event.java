@@ -33,6 +33,9 @@
 3/26/07:  changed flag 'coronata' to Signum 'corona' (for extra position info)
 11/7/07:  replaced types EDITORIALDATA_START/END with VARIANTDATA_START/END
 1/5/08:   added function createCopy
+10/17/26: copies share the (immutable) coloration of the original
+10/17/26: added contentHash (consistent with equals)
+10/17/26: removed per-event sub-event list (only MultiEvents have one)
 
                                                                         */
 /*----------------------------------------------------------------------*/
@@ -95,8 +98,7 @@ public class Event
 /*----------------------------------------------------------------------*/
 /* Instance variables */
 
-  int               eventtype;
-  LinkedList<Event> eventList; /* to integrate MultiEvents */
+  int eventtype;
 
   Proportion musictime=new Proportion(0,1);
   boolean    verticallyAligned=false, /* for multiple events at the same x-loc */
@@ -132,8 +134,6 @@ Parameters:
   public Event()
   {
     eventtype=EVENT_BASE;
-    eventList=new LinkedList<Event>();
-    eventList.add(this);
   }
 
 /*------------------------------------------------------------------------
@@ -187,7 +187,7 @@ Parameters:
     this.corona=other.corona==null ? null : new Signum(other.corona);
     this.signum=other.signum==null ? null : new Signum(other.signum);
     this.edCommentary=other.edCommentary==null ? null : new String(other.edCommentary);
-    this.colorscheme=new Coloration(other.colorscheme);
+    this.colorscheme=other.colorscheme;
     this.modernKeySig=new ModernKeySignature(other.modernKeySig);
 
     this.clefinfoevent=other.clefinfoevent;
@@ -220,6 +220,26 @@ Parameters:
     return false;
   }
 
+/*------------------------------------------------------------------------
+Method:  int contentHash()
+Purpose: Calculate hash code of this event's data, consistent with equals()
+         (events which are equal always have the same code)
+Parameters:
+  Input:  -
+  Output: -
+  Return: hash code
+------------------------------------------------------------------------*/
+
+  public int contentHash()
+  {
+    int h=eventtype;
+    h=h*31+musictime.valueHash();
+    h=h*31+(colored ? 1 : 0);
+    h=h*31+(editorial ? 1 : 0);
+    h=h*31+(error ? 1 : 0);
+    return h;
+  }
+
 /*------------------------------------------------------------------------
 Methods: boolean equals(Event other)
 Purpose: Check whether the data of this event is exactly equal to another
@@ -416,7 +436,7 @@ Parameters:
 
   public List<Event> getSubEvents()
   {
-    return eventList;
+    return Collections.singletonList(this);
   }
 
   public boolean hasEventType(int etype)
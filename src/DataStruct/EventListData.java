@@ -17,6 +17,14 @@
 12/1/08: made non-abstract, for implementing generic lists (variant reading,
          ligature data, etc.)
 12/5/08: moved recalcEventParams from VoiceEventListData
+10/17/26: coloration changes during recalcEventParams use interned values
+10/17/26: events stored in chunked EventSequence rather than ArrayList
+10/17/26: added incremental recalcEventParams (from a modified index, stopping
+          when parameters match those already stored)
+10/17/26: event sequences can be shared between lists (copy-on-write)
+10/17/26: searches for variant markers use the sequence's marker index
+10/17/26: getNextEventOfType uses the sequence's index for all event types
+10/17/26: added lookup of the variant readings covering an event
 
                                                                         */
 /*----------------------------------------------------------------------*/
@@ -36,11 +44,17 @@ Purpose: List of events
 
 public class EventListData
 {
+/*----------------------------------------------------------------------*/
+/* Class variables */
+
+  /* firstStop value for recalculating without stopping early */
+  public static final int RECALC_ALL=Integer.MAX_VALUE;
+
 /*----------------------------------------------------------------------*/
 /* Instance variables */
 
   /* music events */
-  ArrayList<Event> events;
+  EventSequence events;
 
 /*----------------------------------------------------------------------*/
 /* Instance methods */
@@ -88,7 +102,30 @@ Parameters:
 
   void initParams()
   {
-    events=new ArrayList<Event>();
+    events=new EventSequence();
+  }
+
+/*------------------------------------------------------------------------
+Method:  void shareEvents(EventListData other)
+Purpose: Use another list's event sequence without copying it; whichever
+         list is modified first makes its own copy
+Parameters:
+  Input:  EventListData other - list whose events to share
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+  void shareEvents(EventListData other)
+  {
+    other.events.shared=true;
+    events=other.events;
+  }
+
+  EventSequence modifiableEvents()
+  {
+    if (events.shared)
+      events=new EventSequence(events);
+    return events;
   }
 
 /*------------------------------------------------------------------------
@@ -115,7 +152,7 @@ Parameters:
 
   public void addEvent(Event e)
   {
-    events.add(e);
+    modifiableEvents().add(e);
   }
 
 /*------------------------------------------------------------------------
@@ -130,7 +167,7 @@ Parameters:
 
   public void addEvent(int i,Event e)
   {
-    events.add(i,e);
+    modifiableEvents().add(i,e);
   }
 
 /*------------------------------------------------------------------------
@@ -144,14 +181,12 @@ Parameters:
 
   public Event deleteEvent(int i)
   {
-    Event deletedEvent=events.get(i);
-    events.remove(i);
-    return deletedEvent;
+    return modifiableEvents().remove(i);
   }
 
   public Event deleteEvent(Event e)
   {
-    events.remove(e);
+    modifiableEvents().remove(e);
     return e;
   }
 
@@ -166,8 +201,7 @@ Parameters:
 
   public void truncateEvents(int deletionPoint)
   {
-    for (int i=events.size()-1; i>=deletionPoint; i--)
-      events.remove(i);
+    modifiableEvents().truncate(deletionPoint);
   }
 
 /*------------------------------------------------------------------------
@@ -181,16 +215,7 @@ Parameters:
 
   public int calcIndexWithinReading(int i)
   {
-    int   ri=0; /* index for event within reading */
-    Event ve=null;
-    do
-      {
-        ri++;
-        ve=getEvent(--i);
-      }
-    while (ve!=null && ve.geteventtype()!=Event.EVENT_VARIANTDATA_START);
-
-    return ri-1;
+    return i-getNextEventOfType(Event.EVENT_VARIANTDATA_START,i-1,-1)-1;
   }
 
 /*------------------------------------------------------------------------
@@ -218,20 +243,67 @@ Parameters:
   }
 
   public void recalcEventParams(Event paramEvent,Coloration curcolor)
+  {
+    recalcEventParams(paramEvent,curcolor,0,RECALC_ALL);
+  }
+
+/*------------------------------------------------------------------------
+Method:  boolean recalcEventParams(EventListData lastv,int start,int firstStop)
+Purpose: Recalculate event attributes incrementally after a change: begin at
+         the first modified event and stop as soon as the parameters carried
+         forward match those already stored in an unmodified event (all
+         following events must then be unchanged as well)
+Parameters:
+  Input:  EventListData lastv - previous section of this voice
+          int start           - index of first modified event
+          int firstStop       - first index at which recalculation may stop
+                                (one past the last modified event; 0 when
+                                only the starting parameters have changed)
+  Output: -
+  Return: true if the parameters at the end of the list may have changed
+          (i.e., the following section needs recalculating)
+------------------------------------------------------------------------*/
+
+  public boolean recalcEventParams(EventListData lastv,int start,int firstStop)
   {
     if (events.size()==0)
-      return;
+      return false;
+    Event paramEvent=lastv==null ? getEvent(0) : lastv.getEvent(lastv.getNumEvents()-1);
+    return recalcEventParams(paramEvent,paramEvent.getcoloration(),start,firstStop);
+  }
 
-    Event              lastevent=null,
+  boolean recalcEventParams(Event paramEvent,Coloration curcolor,int start,int firstStop)
+  {
+    if (events.size()==0)
+      return false;
+
+    /* start with a stored event whose parameters are reliable: multi-events
+       distribute parameters to their components, and signature clef sets are
+       built up cumulatively from the beginning of a run of clefs */
+    start=Math.min(start,events.size());
+    while (start>0 &&
+           (getEvent(start-1).geteventtype()==Event.EVENT_MULTIEVENT ||
+            getEvent(start-1).hasSignatureClef()))
+      start--;
+    if (start>0)
+      {
+        paramEvent=getEvent(start-1);
+        curcolor=paramEvent.getcoloration();
+      }
+
+    Event              lastevent=start>0 ? paramEvent : null,
                        clefinfoevent=paramEvent.getClefInfoEvent(),
                        mensinfoevent=paramEvent.getMensInfoEvent();
     Proportion         curProportion=paramEvent.getProportion();
     ModernKeySignature curModKeySig=paramEvent.getModernKeySig();
-    boolean            displayEditorial=false;
-    int                listPlace=0;
+    boolean            displayEditorial=start>0 ? paramEvent.displayAsEditorial() : false,
+                       clefsRebuilt=false;
+    int                ei=start;
 
-    for (Event curevent : events)
+    for (Iterator<Event> i=events.listIterator(start); i.hasNext(); ei++)
       {
+        Event curevent=i.next();
+
         if (curevent.hasSignatureClef())
           {
             if (curevent.hasPrincipalClef())
@@ -239,11 +311,12 @@ Parameters:
             curevent.constructClefSets(lastevent,clefinfoevent);
             clefinfoevent=curevent;
             curModKeySig=curevent.getClefSet().getKeySig();
+            clefsRebuilt=true;
           }
         if (curevent.getMensInfo()!=null)
           mensinfoevent=curevent;
         if (curevent.geteventtype()==Event.EVENT_COLORCHANGE)
-          curcolor=new Coloration(curcolor,((ColorChangeEvent)curevent).getcolorscheme());
+          curcolor=Coloration.intern(new Coloration(curcolor,((ColorChangeEvent)curevent).getcolorscheme()));
         else if (curevent.geteventtype()==Event.EVENT_MODERNKEYSIGNATURE)
           curModKeySig=((ModernKeySignatureEvent)curevent).getSigInfo();
         else if (curevent.geteventtype()==Event.EVENT_PROPORTION)
@@ -253,6 +326,18 @@ Parameters:
         else if (curevent.geteventtype()==Event.EVENT_LACUNA_END)
           displayEditorial=false;
 
+        /* converged? (once clef sets have been rebuilt, later clef events
+           must be rebuilt as well, so continue to the end) */
+        if (ei>=firstStop && !clefsRebuilt &&
+            curevent.geteventtype()!=Event.EVENT_MULTIEVENT &&
+            curevent.getClefInfoEvent()==clefinfoevent &&
+            curevent.getMensInfoEvent()==mensinfoevent &&
+            curevent.getcoloration()==curcolor &&
+            curevent.getModernKeySig()==curModKeySig &&
+            curevent.getProportion()==curProportion &&
+            curevent.displayAsEditorial()==displayEditorial)
+          return false;
+
         curevent.setclefparams(clefinfoevent);
         curevent.setmensparams(mensinfoevent);
         curevent.setcolorparams(curcolor);
@@ -262,6 +347,8 @@ Parameters:
 
         lastevent=curevent;
       }
+
+    return true;
   }
 
 /*------------------------------------------------------------------------
@@ -281,9 +368,9 @@ Parameters:
       return null;
   }
 
-  public ArrayList<Event> getEvents()
+  public List<Event> getEvents()
   {
-    return events;
+    return Collections.unmodifiableList(events);
   }
 
 /*------------------------------------------------------------------------
@@ -299,6 +386,9 @@ Parameters:
 
   public int getNextEventOfType(int evType,int i,int dir)
   {
+    if (dir==1 || dir==-1)
+      return events.getNextOfType(evType,i,dir);
+
     for (; i>=0 && i<events.size(); i+=dir)
       if (getEvent(i).geteventtype()==evType)
         return i;
@@ -306,6 +396,54 @@ Parameters:
     return -1;
   }
 
+/*------------------------------------------------------------------------
+Method:  int getVariantStart(int i)
+Purpose: Find variant whose markers enclose a given event
+Parameters:
+  Input:  int i - index of event
+  Output: -
+  Return: index of start marker of variant containing event i (i may be the
+          index of either marker), -1 if not within a variant
+------------------------------------------------------------------------*/
+
+  public int getVariantStart(int i)
+  {
+    return events.getVariantSpanStart(i);
+  }
+
+/*------------------------------------------------------------------------
+Method:  VariantMarkerEvent getVariantMarker(int i)
+Purpose: Find start marker of variant enclosing a given event
+Parameters:
+  Input:  int i - index of event
+  Output: -
+  Return: start marker (holding all readings at this location), or null if
+          event i is not within a variant
+------------------------------------------------------------------------*/
+
+  public VariantMarkerEvent getVariantMarker(int i)
+  {
+    int vmi=getVariantStart(i);
+    return vmi==-1 ? null : (VariantMarkerEvent)getEvent(vmi);
+  }
+
+/*------------------------------------------------------------------------
+Method:  VariantReading getVariantReading(int i,VariantVersionData version)
+Purpose: Find reading for one version at a given event
+Parameters:
+  Input:  int i                      - index of event
+          VariantVersionData version - version to check
+  Output: -
+  Return: reading of version in the variant enclosing event i, or null if
+          there is none
+------------------------------------------------------------------------*/
+
+  public VariantReading getVariantReading(int i,VariantVersionData version)
+  {
+    VariantMarkerEvent vm=getVariantMarker(i);
+    return vm==null ? null : vm.getVariantReading(version);
+  }
+
   /* is there a text-only variant at the indicated location? return it if so */
   public Event getOrigTextOnlyVariant(int ei)
   {
@@ -0,0 +1,310 @@
+/*----------------------------------------------------------------------*/
+/*
+
+        Module          : EventLocationIndex.java
+
+        Package         : DataStruct
+
+        Classes Included: EventLocationIndex
+
+        Purpose         : Map events back to their locations in a piece
+
+        Programmer      : Ted Dumitrescu
+
+        Date Started    : 10/17/26
+
+Updates:
+
+                                                                        */
+/*----------------------------------------------------------------------*/
+
+package DataStruct;
+
+/*----------------------------------------------------------------------*/
+/* Imported classes */
+
+import java.util.*;
+
+/*------------------------------------------------------------------------
+Class:   EventLocationIndex
+Extends: -
+Purpose: Identity-keyed index from events to (section, voice, event index),
+         used by PieceData.findEvent. The index is built on first use;
+         PieceData reports insertions and deletions, which only mark the
+         rest of the voice for renumbering, and the renumbering is done
+         when an event in that range is next looked up. Changes made
+         directly to voice lists are detected through the lists'
+         modification counts, and every result is checked against the
+         voice before it is returned, so the index never reports a stale
+         location.
+------------------------------------------------------------------------*/
+
+class EventLocationIndex
+{
+/*----------------------------------------------------------------------*/
+/* Class variables */
+
+  static final int CLEAN=Integer.MAX_VALUE;
+
+  /* indexed voice list */
+  static class VoiceRecord
+  {
+    VoiceEventListData v;
+    int                sectionNum,voiceNum,
+                       modCount,
+                       dirtyFrom=CLEAN; /* first index needing renumbering */
+
+    VoiceRecord(VoiceEventListData v,int sectionNum,int voiceNum)
+    {
+      this.v=v;
+      this.sectionNum=sectionNum;
+      this.voiceNum=voiceNum;
+    }
+  }
+
+  /* location of one event */
+  static class Entry
+  {
+    VoiceRecord voice;
+    int         eventNum;
+
+    Entry(VoiceRecord voice,int eventNum)
+    {
+      this.voice=voice;
+      this.eventNum=eventNum;
+    }
+  }
+
+/*----------------------------------------------------------------------*/
+/* Instance variables */
+
+  PieceData                    musicData;
+  IdentityHashMap<Event,Entry> entries=null;
+  VoiceRecord[][]              voices=null; /* [section][voice] */
+
+/*----------------------------------------------------------------------*/
+/* Instance methods */
+
+/*------------------------------------------------------------------------
+Constructor: EventLocationIndex(PieceData musicData)
+Purpose:     Initialize index (contents are built on first lookup)
+Parameters:
+  Input:  PieceData musicData - piece to index
+  Output: -
+------------------------------------------------------------------------*/
+
+  EventLocationIndex(PieceData musicData)
+  {
+    this.musicData=musicData;
+  }
+
+/*------------------------------------------------------------------------
+Method:  void rebuild()
+Purpose: Index every event in the piece
+Parameters:
+  Input:  -
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+  void rebuild()
+  {
+    entries=new IdentityHashMap<Event,Entry>();
+    voices=new VoiceRecord[musicData.getNumSections()][];
+    for (int si=0; si<voices.length; si++)
+      {
+        MusicSection s=musicData.getSection(si);
+        voices[si]=new VoiceRecord[s.getNumVoices()];
+        for (int vi=0; vi<voices[si].length; vi++)
+          {
+            VoiceEventListData v=s.getVoice(vi);
+            if (v!=null)
+              {
+                voices[si][vi]=new VoiceRecord(v,si,vi);
+                indexVoice(voices[si][vi],0);
+              }
+          }
+      }
+  }
+
+/*------------------------------------------------------------------------
+Method:  void indexVoice(VoiceRecord vr,int start)
+Purpose: (Re-)number events in one voice from a given index to the end
+Parameters:
+  Input:  VoiceRecord vr - voice to index
+          int start      - first event index to update
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+  void indexVoice(VoiceRecord vr,int start)
+  {
+    int ei=start;
+    for (Iterator<Event> i=vr.v.events.listIterator(start); i.hasNext(); ei++)
+      {
+        Event e=i.next();
+        Entry en=entries.get(e);
+        if (en==null)
+          entries.put(e,new Entry(vr,ei));
+        else
+          {
+            en.voice=vr;
+            en.eventNum=ei;
+          }
+      }
+
+    vr.dirtyFrom=CLEAN;
+    vr.modCount=vr.v.events.getModCount();
+  }
+
+/*------------------------------------------------------------------------
+Method:  VoiceRecord getVoiceRecord(int snum,int vnum)
+Purpose: Return index record for one voice, if the piece structure still
+         matches the index
+Parameters:
+  Input:  int snum,vnum - section and voice number
+  Output: -
+  Return: voice record, or null if the index is out of date
+------------------------------------------------------------------------*/
+
+  VoiceRecord getVoiceRecord(int snum,int vnum)
+  {
+    if (voices==null || snum>=voices.length || snum>=musicData.getNumSections() ||
+        vnum>=voices[snum].length)
+      return null;
+    VoiceRecord vr=voices[snum][vnum];
+    return vr!=null && vr.v==musicData.getSection(snum).getVoice(vnum) ? vr : null;
+  }
+
+/*------------------------------------------------------------------------
+Method:  void eventAdded|eventDeleted(int snum,int vnum,int i,Event e)
+Purpose: Update index after an event has been inserted in or removed from
+         a voice; later events are renumbered lazily
+Parameters:
+  Input:  int snum,vnum - section and voice number
+          int i         - index of event in voice
+          Event e       - event added/deleted
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+  void eventAdded(int snum,int vnum,int i,Event e)
+  {
+    VoiceRecord vr=voiceChanged(snum,vnum,i);
+    if (vr!=null)
+      entries.put(e,new Entry(vr,i));
+  }
+
+  void eventDeleted(int snum,int vnum,int i,Event e)
+  {
+    VoiceRecord vr=voiceChanged(snum,vnum,i);
+    if (vr!=null)
+      {
+        Entry en=entries.get(e);
+        if (en!=null && en.voice==vr)
+          entries.remove(e);
+      }
+  }
+
+  VoiceRecord voiceChanged(int snum,int vnum,int i)
+  {
+    if (entries==null)
+      return null;
+    VoiceRecord vr=getVoiceRecord(snum,vnum);
+    if (vr==null)
+      {
+        entries=null; /* structure changed; rebuild on next lookup */
+        return null;
+      }
+
+    int curModCount=vr.v.events.getModCount();
+    vr.dirtyFrom=curModCount==vr.modCount+1 ? Math.min(vr.dirtyFrom,i) : 0;
+    vr.modCount=curModCount;
+    return vr;
+  }
+
+/*------------------------------------------------------------------------
+Method:  EventLocation findEvent(Event e)
+Purpose: Find event
+Parameters:
+  Input:  Event e - event to seek
+  Output: -
+  Return: location information (section num, voice num, event index), or
+          null if the event is not in the piece
+------------------------------------------------------------------------*/
+
+  EventLocation findEvent(Event e)
+  {
+    if (entries==null)
+      rebuild();
+
+    EventLocation loc=lookup(e);
+    if (loc==null)
+      {
+        /* not found; bring index up to date with any direct changes */
+        refresh();
+        loc=lookup(e);
+      }
+
+    return loc;
+  }
+
+  EventLocation lookup(Event e)
+  {
+    Entry en=entries.get(e);
+    if (en==null)
+      return null;
+
+    VoiceRecord vr=en.voice;
+    if (vr.v.events.getModCount()!=vr.modCount)
+      vr.dirtyFrom=0;
+    if (en.eventNum>=vr.dirtyFrom)
+      indexVoice(vr,vr.dirtyFrom);
+
+    if (getVoiceRecord(vr.sectionNum,vr.voiceNum)!=vr || vr.v.getEvent(en.eventNum)!=e)
+      return null;
+    return new EventLocation(vr.sectionNum,vr.voiceNum,en.eventNum);
+  }
+
+/*------------------------------------------------------------------------
+Method:  void refresh()
+Purpose: Re-index any voices changed without notification, or the whole
+         piece if sections or voices have been replaced
+Parameters:
+  Input:  -
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+  void refresh()
+  {
+    if (voices.length!=musicData.getNumSections())
+      {
+        rebuild();
+        return;
+      }
+    for (int si=0; si<voices.length; si++)
+      {
+        MusicSection s=musicData.getSection(si);
+        if (voices[si].length!=s.getNumVoices())
+          {
+            rebuild();
+            return;
+          }
+        for (int vi=0; vi<voices[si].length; vi++)
+          {
+            VoiceRecord vr=voices[si][vi];
+            if ((vr==null ? null : vr.v)!=s.getVoice(vi))
+              {
+                rebuild();
+                return;
+              }
+            if (vr!=null)
+              if (vr.v.events.getModCount()!=vr.modCount)
+                indexVoice(vr,0);
+              else if (vr.dirtyFrom!=CLEAN)
+                indexVoice(vr,vr.dirtyFrom);
+          }
+      }
+  }
+}
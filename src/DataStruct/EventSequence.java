@@ -0,0 +1,801 @@
+/*----------------------------------------------------------------------*/
+/*
+
+        Module          : EventSequence.java
+
+        Package         : DataStruct
+
+        Classes Included: EventSequence
+
+        Purpose         : Chunked storage for event lists
+
+        Programmer      : Ted Dumitrescu
+
+        Date Started    : 10/17/26
+
+Updates:
+10/17/26: keeps sorted positions of variant start/end markers
+10/17/26: position index generalized to all event types (built on first
+          search for a type)
+10/17/26: added index of variant spans (start/end marker pairs) for finding
+          the readings which cover an event
+
+                                                                        */
+/*----------------------------------------------------------------------*/
+
+package DataStruct;
+
+/*----------------------------------------------------------------------*/
+/* Imported classes */
+
+import java.util.*;
+
+/*------------------------------------------------------------------------
+Class:   EventSequence
+Extends: java.util.AbstractList
+Purpose: Ordered list of events stored in a series of small arrays
+         ("chunks") rather than one large array, so that inserting or
+         deleting in the middle of a long voice only shifts the events
+         within one chunk. Full chunks are split in half on insertion;
+         sparse neighbouring chunks are merged on deletion. The chunk
+         holding the last accessed index is cached, so walking the list by
+         index (getEvent(i), i++) costs the same as walking an array, and
+         iterators step through the chunks directly.
+         A sequence may be shared by several event lists (e.g., a variant
+         version's view of a voice without readings and the default
+         voice); shared sequences are copied by EventListData before they
+         are modified.
+         The positions of each event type which has been searched for are
+         kept in sorted index arrays (built on the first search, then
+         updated on every insertion and deletion), so that the next event
+         of a type can be found by binary search.
+         Variant spans (the index ranges from each variant start marker to
+         its end marker) are kept in a sorted interval list, so that the
+         variant covering an event can be found by binary search. Spans are
+         shifted along with the events they enclose, and re-paired from the
+         marker positions only when a marker itself is added or removed.
+------------------------------------------------------------------------*/
+
+public class EventSequence extends AbstractList<Event>
+{
+/*----------------------------------------------------------------------*/
+/* Class variables */
+
+  static final int CHUNK_SIZE=128,
+                   MERGE_SIZE=CHUNK_SIZE/4, /* merge chunks smaller than this */
+                   NUM_INDEXED_TYPES=Event.EVENT_BLANK+1;
+
+/*------------------------------------------------------------------------
+Class:   TypePositions
+Extends: -
+Purpose: Sorted list of the indices of one type of event
+------------------------------------------------------------------------*/
+
+  static class TypePositions
+  {
+    int[] pos;
+    int   n=0;
+
+    TypePositions()
+    {
+      pos=new int[8];
+    }
+
+    TypePositions(TypePositions other)
+    {
+      pos=other.pos.clone();
+      n=other.n;
+    }
+
+    /* index in pos of first position >=i */
+    int search(int i)
+    {
+      int lo=0,
+          hi=n;
+      while (lo<hi)
+        {
+          int mid=(lo+hi)>>>1;
+          if (pos[mid]<i)
+            lo=mid+1;
+          else
+            hi=mid;
+        }
+      return lo;
+    }
+
+    void shiftFrom(int i,int d)
+    {
+      for (int k=search(i); k<n; k++)
+        pos[k]+=d;
+    }
+
+    void insert(int i)
+    {
+      int k=search(i);
+      if (n==pos.length)
+        pos=Arrays.copyOf(pos,n*2);
+      System.arraycopy(pos,k,pos,k+1,n-k);
+      pos[k]=i;
+      n++;
+    }
+
+    void remove(int i)
+    {
+      int k=search(i);
+      if (k<n && pos[k]==i)
+        {
+          System.arraycopy(pos,k+1,pos,k,n-k-1);
+          n--;
+        }
+    }
+
+    void truncate(int newSize)
+    {
+      n=search(newSize);
+    }
+
+    /* last position <=i, or -1 */
+    int floor(int i)
+    {
+      int k=search(i+1)-1;
+      return k>=0 ? pos[k] : -1;
+    }
+
+    /* first position >=i, or -1 */
+    int ceiling(int i)
+    {
+      int k=search(i);
+      return k<n ? pos[k] : -1;
+    }
+  }
+
+/*------------------------------------------------------------------------
+Class:   VariantSpans
+Extends: -
+Purpose: Sorted list of non-overlapping index intervals, each running from a
+         variant start marker to its end marker (inclusive)
+------------------------------------------------------------------------*/
+
+  static class VariantSpans
+  {
+    int[] start,end;
+    int   n=0;
+
+    VariantSpans(int capacity)
+    {
+      start=new int[Math.max(capacity,4)];
+      end=new int[start.length];
+    }
+
+    VariantSpans(VariantSpans other)
+    {
+      start=other.start.clone();
+      end=other.end.clone();
+      n=other.n;
+    }
+
+    void add(int s,int e)
+    {
+      if (n==start.length)
+        {
+          start=Arrays.copyOf(start,n*2);
+          end=Arrays.copyOf(end,n*2);
+        }
+      start[n]=s;
+      end[n]=e;
+      n++;
+    }
+
+    /* shift all interval bounds >=i */
+    void shiftFrom(int i,int d)
+    {
+      for (int k=n-1; k>=0 && end[k]>=i; k--)
+        {
+          end[k]+=d;
+          if (start[k]>=i)
+            start[k]+=d;
+        }
+    }
+
+    /* start of interval containing i, or -1 */
+    int covering(int i)
+    {
+      int lo=0,
+          hi=n;
+      while (lo<hi)
+        {
+          int mid=(lo+hi)>>>1;
+          if (start[mid]<=i)
+            lo=mid+1;
+          else
+            hi=mid;
+        }
+      return lo>0 && end[lo-1]>=i ? start[lo-1] : -1;
+    }
+  }
+
+/*----------------------------------------------------------------------*/
+/* Instance variables */
+
+  Event[][] chunks=new Event[4][];
+  int[]     chunkLen=new int[4];
+  int       numChunks=0,
+            size=0;
+
+  /* last chunk located, and index of its first event */
+  int cacheChunk=0,
+      cacheStart=0;
+
+  /* results of locate() */
+  int locChunk,locOffset;
+
+  /* referenced by more than one event list? */
+  boolean shared=false;
+
+  /* indices of events by type (null for types not yet searched) */
+  TypePositions[] typePositions=new TypePositions[NUM_INDEXED_TYPES];
+
+  /* variant start/end marker pairs (null if not built, or if markers have
+     been added or removed since) */
+  VariantSpans variantSpans=null;
+
+/*----------------------------------------------------------------------*/
+/* Instance methods */
+
+/*------------------------------------------------------------------------
+Constructor: EventSequence([EventSequence other])
+Purpose:     Initialize list
+Parameters:
+  Input:  EventSequence other - list to copy (events are not copied)
+  Output: -
+------------------------------------------------------------------------*/
+
+  public EventSequence()
+  {
+  }
+
+  public EventSequence(EventSequence other)
+  {
+    chunks=new Event[Math.max(other.numChunks,4)][];
+    chunkLen=Arrays.copyOf(other.chunkLen,chunks.length);
+    for (int c=0; c<other.numChunks; c++)
+      chunks[c]=other.chunks[c].clone();
+    numChunks=other.numChunks;
+    size=other.size;
+    modCount=other.modCount;
+    for (int t=0; t<NUM_INDEXED_TYPES; t++)
+      if (other.typePositions[t]!=null)
+        typePositions[t]=new TypePositions(other.typePositions[t]);
+    if (other.variantSpans!=null)
+      variantSpans=new VariantSpans(other.variantSpans);
+  }
+
+/*------------------------------------------------------------------------
+Method:  void locate(int i)
+Purpose: Find chunk and position within chunk of a given index; sets
+         locChunk and locOffset
+Parameters:
+  Input:  int i - index (0<=i<size)
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+  void locate(int i)
+  {
+    int c=cacheChunk,
+        start=cacheStart;
+
+    if (i<start)
+      while (i<start)
+        start-=chunkLen[--c];
+    else
+      while (i>=start+chunkLen[c])
+        start+=chunkLen[c++];
+
+    cacheChunk=locChunk=c;
+    cacheStart=start;
+    locOffset=i-start;
+  }
+
+  void resetCache()
+  {
+    cacheChunk=0;
+    cacheStart=0;
+  }
+
+  void checkIndex(int i,int max)
+  {
+    if (i<0 || i>max)
+      throw new IndexOutOfBoundsException("Index: "+i+", Size: "+size);
+  }
+
+/*------------------------------------------------------------------------
+Method:  void insertChunk(int c,Event[] chunk,int len)
+Purpose: Insert one chunk into the chunk arrays
+Parameters:
+  Input:  int c         - index of new chunk
+          Event[] chunk - event array
+          int len       - number of events used in array
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+  void insertChunk(int c,Event[] chunk,int len)
+  {
+    if (numChunks==chunks.length)
+      {
+        chunks=Arrays.copyOf(chunks,numChunks*2);
+        chunkLen=Arrays.copyOf(chunkLen,numChunks*2);
+      }
+    System.arraycopy(chunks,c,chunks,c+1,numChunks-c);
+    System.arraycopy(chunkLen,c,chunkLen,c+1,numChunks-c);
+    chunks[c]=chunk;
+    chunkLen[c]=len;
+    numChunks++;
+  }
+
+  void removeChunk(int c)
+  {
+    numChunks--;
+    System.arraycopy(chunks,c+1,chunks,c,numChunks-c);
+    System.arraycopy(chunkLen,c+1,chunkLen,c,numChunks-c);
+    chunks[numChunks]=null;
+    chunkLen[numChunks]=0;
+  }
+
+/*------------------------------------------------------------------------
+Method:  void mergeChunks(int c)
+Purpose: Append contents of chunk c+1 to chunk c and remove c+1
+Parameters:
+  Input:  int c - index of first chunk
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+  void mergeChunks(int c)
+  {
+    System.arraycopy(chunks[c+1],0,chunks[c],chunkLen[c],chunkLen[c+1]);
+    chunkLen[c]+=chunkLen[c+1];
+    removeChunk(c+1);
+  }
+
+/*------------------------------------------------------------------------
+Method:  void [add|remove|shift]TypePosition[s](int i,Event e)
+Purpose: Update type indices for an event placed at or removed from one
+         index, or for a shift of all following events
+Parameters:
+  Input:  int i   - index of event
+          Event e - event
+          int d   - amount to shift following indices
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+  TypePositions typePositions(Event e)
+  {
+    if (e==null)
+      return null;
+    int t=e.geteventtype();
+    return t>=0 && t<NUM_INDEXED_TYPES ? typePositions[t] : null;
+  }
+
+  void addTypePosition(int i,Event e)
+  {
+    TypePositions tp=typePositions(e);
+    if (tp!=null)
+      tp.insert(i);
+    if (isVariantMarker(e))
+      variantSpans=null;
+  }
+
+  void removeTypePosition(int i,Event e)
+  {
+    TypePositions tp=typePositions(e);
+    if (tp!=null)
+      tp.remove(i);
+    if (isVariantMarker(e))
+      variantSpans=null;
+  }
+
+  void shiftTypePositions(int i,int d)
+  {
+    for (TypePositions tp : typePositions)
+      if (tp!=null)
+        tp.shiftFrom(i,d);
+    if (variantSpans!=null)
+      variantSpans.shiftFrom(i,d);
+  }
+
+  static boolean isVariantMarker(Event e)
+  {
+    if (e==null)
+      return false;
+    int t=e.geteventtype();
+    return t==Event.EVENT_VARIANTDATA_START || t==Event.EVENT_VARIANTDATA_END;
+  }
+
+/*------------------------------------------------------------------------
+Method:  int getNextOfType(int evType,int i,int dir)
+Purpose: Find nearest event of a given type in one direction, building the
+         index for the type if necessary
+Parameters:
+  Input:  int evType - event type
+          int i      - index to begin search
+          int dir    - direction to search (1=forward,-1=backwards)
+  Output: -
+  Return: index of event (-1 if not found)
+------------------------------------------------------------------------*/
+
+  int getNextOfType(int evType,int i,int dir)
+  {
+    if (i<0 || i>=size || evType<0 || evType>=NUM_INDEXED_TYPES)
+      return -1;
+
+    TypePositions tp=typePositions[evType];
+    if (tp==null)
+      {
+        tp=typePositions[evType]=new TypePositions();
+        int ei=0;
+        for (int c=0; c<numChunks; c++)
+          for (int ci=0; ci<chunkLen[c]; ci++,ei++)
+            if (chunks[c][ci].geteventtype()==evType)
+              tp.insert(ei);
+      }
+
+    return dir>0 ? tp.ceiling(i) : tp.floor(i);
+  }
+
+/*------------------------------------------------------------------------
+Method:  int getVariantSpanStart(int i)
+Purpose: Find variant whose markers enclose a given index, pairing each
+         start marker with the next end marker if the span index needs to
+         be rebuilt
+Parameters:
+  Input:  int i - index of event
+  Output: -
+  Return: index of start marker of variant containing index i (i may be the
+          index of either marker), -1 if not within a variant
+------------------------------------------------------------------------*/
+
+  int getVariantSpanStart(int i)
+  {
+    if (i<0 || i>=size)
+      return -1;
+
+    if (variantSpans==null)
+      {
+        getNextOfType(Event.EVENT_VARIANTDATA_START,0,1);
+        getNextOfType(Event.EVENT_VARIANTDATA_END,0,1);
+        TypePositions starts=typePositions[Event.EVENT_VARIANTDATA_START],
+                      ends=typePositions[Event.EVENT_VARIANTDATA_END];
+
+        VariantSpans spans=new VariantSpans(starts.n);
+        int          ek=0;
+        for (int sk=0; sk<starts.n; sk++)
+          {
+            int s=starts.pos[sk];
+            if (spans.n>0 && s<=spans.end[spans.n-1])
+              continue; /* unpaired start marker within previous span */
+            while (ek<ends.n && ends.pos[ek]<s)
+              ek++;
+            if (ek==ends.n)
+              break;
+            spans.add(s,ends.pos[ek]);
+          }
+        variantSpans=spans;
+      }
+
+    return variantSpans.covering(i);
+  }
+
+/*------------------------------------------------------------------------
+Methods: List methods
+Purpose: Access and modify list (see java.util.List)
+------------------------------------------------------------------------*/
+
+  public int size()
+  {
+    return size;
+  }
+
+  public Event get(int i)
+  {
+    checkIndex(i,size-1);
+    locate(i);
+    return chunks[locChunk][locOffset];
+  }
+
+  public Event set(int i,Event e)
+  {
+    checkIndex(i,size-1);
+    locate(i);
+    Event oldEvent=chunks[locChunk][locOffset];
+    chunks[locChunk][locOffset]=e;
+    removeTypePosition(i,oldEvent);
+    addTypePosition(i,e);
+    return oldEvent;
+  }
+
+  public boolean add(Event e)
+  {
+    int c=numChunks-1;
+    if (c<0 || chunkLen[c]==CHUNK_SIZE)
+      insertChunk(++c,new Event[CHUNK_SIZE],0);
+    chunks[c][chunkLen[c]++]=e;
+    addTypePosition(size,e);
+    size++;
+    modCount++;
+    return true;
+  }
+
+  public void add(int i,Event e)
+  {
+    checkIndex(i,size);
+    if (i==size)
+      {
+        add(e);
+        return;
+      }
+
+    locate(i);
+    int c=locChunk,
+        offset=locOffset;
+
+    /* split full chunk */
+    if (chunkLen[c]==CHUNK_SIZE)
+      {
+        int     half=CHUNK_SIZE/2;
+        Event[] newChunk=new Event[CHUNK_SIZE];
+        System.arraycopy(chunks[c],half,newChunk,0,CHUNK_SIZE-half);
+        Arrays.fill(chunks[c],half,CHUNK_SIZE,null);
+        chunkLen[c]=half;
+        insertChunk(c+1,newChunk,CHUNK_SIZE-half);
+        if (offset>half)
+          {
+            c++;
+            offset-=half;
+            cacheChunk=c;
+            cacheStart+=half;
+          }
+      }
+
+    Event[] chunk=chunks[c];
+    System.arraycopy(chunk,offset,chunk,offset+1,chunkLen[c]-offset);
+    chunk[offset]=e;
+    chunkLen[c]++;
+    size++;
+    shiftTypePositions(i,1);
+    addTypePosition(i,e);
+    modCount++;
+  }
+
+  public Event remove(int i)
+  {
+    checkIndex(i,size-1);
+    locate(i);
+    int     c=locChunk,
+            offset=locOffset;
+    Event[] chunk=chunks[c];
+    Event   removedEvent=chunk[offset];
+
+    System.arraycopy(chunk,offset+1,chunk,offset,chunkLen[c]-offset-1);
+    chunk[--chunkLen[c]]=null;
+    size--;
+    modCount++;
+    removeTypePosition(i,removedEvent);
+    shiftTypePositions(i+1,-1);
+
+    if (chunkLen[c]==0)
+      removeChunk(c);
+    else if (chunkLen[c]<MERGE_SIZE)
+      {
+        if (c+1<numChunks && chunkLen[c]+chunkLen[c+1]<=CHUNK_SIZE)
+          mergeChunks(c);
+        else if (c>0 && chunkLen[c-1]+chunkLen[c]<=CHUNK_SIZE)
+          mergeChunks(c-1);
+      }
+    resetCache();
+
+    return removedEvent;
+  }
+
+  public void clear()
+  {
+    chunks=new Event[4][];
+    chunkLen=new int[4];
+    numChunks=0;
+    size=0;
+    typePositions=new TypePositions[NUM_INDEXED_TYPES];
+    variantSpans=null;
+    resetCache();
+    modCount++;
+  }
+
+  protected void removeRange(int fromIndex,int toIndex)
+  {
+    if (toIndex==size)
+      truncate(fromIndex);
+    else
+      super.removeRange(fromIndex,toIndex);
+  }
+
+/*------------------------------------------------------------------------
+Method:  void truncate(int newSize)
+Purpose: Remove all events from a given index to the end of the list
+Parameters:
+  Input:  int newSize - index of first event to remove
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+  public void truncate(int newSize)
+  {
+    if (newSize>=size)
+      return;
+    if (newSize<=0)
+      {
+        clear();
+        return;
+      }
+
+    locate(newSize);
+    int c=locChunk;
+    Arrays.fill(chunks[c],locOffset,chunkLen[c],null);
+    chunkLen[c]=locOffset;
+    if (locOffset>0)
+      c++;
+    while (numChunks>c)
+      removeChunk(numChunks-1);
+    size=newSize;
+    for (TypePositions tp : typePositions)
+      if (tp!=null)
+        tp.truncate(newSize);
+    variantSpans=null;
+    resetCache();
+    modCount++;
+  }
+
+/*------------------------------------------------------------------------
+Method:  int getModCount()
+Purpose: Return number of structural changes made to list (allows indices
+         built on the list to detect changes)
+Parameters:
+  Input:  -
+  Output: -
+  Return: modification count
+------------------------------------------------------------------------*/
+
+  int getModCount()
+  {
+    return modCount;
+  }
+
+  public Iterator<Event> iterator()
+  {
+    return new EventIterator(0);
+  }
+
+  public ListIterator<Event> listIterator()
+  {
+    return new EventIterator(0);
+  }
+
+  public ListIterator<Event> listIterator(int i)
+  {
+    checkIndex(i,size);
+    return new EventIterator(i);
+  }
+
+/*------------------------------------------------------------------------
+Class:   EventIterator
+Extends: -
+Purpose: List iterator which steps through chunks directly
+------------------------------------------------------------------------*/
+
+  class EventIterator implements ListIterator<Event>
+  {
+    int chunk,offset, /* position of next event */
+        index,
+        lastRet=-1,
+        expectedModCount;
+
+    EventIterator(int i)
+    {
+      setPosition(i);
+    }
+
+    void setPosition(int i)
+    {
+      index=i;
+      if (i<size)
+        {
+          locate(i);
+          chunk=locChunk;
+          offset=locOffset;
+        }
+      else
+        {
+          chunk=Math.max(numChunks-1,0);
+          offset=numChunks==0 ? 0 : chunkLen[chunk];
+        }
+      expectedModCount=modCount;
+    }
+
+    void checkForComodification()
+    {
+      if (modCount!=expectedModCount)
+        throw new ConcurrentModificationException();
+    }
+
+    public boolean hasNext()
+    {
+      return index<size;
+    }
+
+    public boolean hasPrevious()
+    {
+      return index>0;
+    }
+
+    public int nextIndex()
+    {
+      return index;
+    }
+
+    public int previousIndex()
+    {
+      return index-1;
+    }
+
+    public Event next()
+    {
+      checkForComodification();
+      if (index>=size)
+        throw new NoSuchElementException();
+      if (offset>=chunkLen[chunk])
+        {
+          chunk++;
+          offset=0;
+        }
+      lastRet=index++;
+      return chunks[chunk][offset++];
+    }
+
+    public Event previous()
+    {
+      checkForComodification();
+      if (index<=0)
+        throw new NoSuchElementException();
+      if (offset==0)
+        offset=chunkLen[--chunk];
+      lastRet=--index;
+      return chunks[chunk][--offset];
+    }
+
+    public void remove()
+    {
+      if (lastRet<0)
+        throw new IllegalStateException();
+      checkForComodification();
+      EventSequence.this.remove(lastRet);
+      setPosition(lastRet);
+      lastRet=-1;
+    }
+
+    public void set(Event e)
+    {
+      if (lastRet<0)
+        throw new IllegalStateException();
+      checkForComodification();
+      EventSequence.this.set(lastRet,e);
+    }
+
+    public void add(Event e)
+    {
+      checkForComodification();
+      EventSequence.this.add(index,e);
+      setPosition(index+1);
+      lastRet=-1;
+    }
+  }
+}
@@ -0,0 +1,93 @@
+/*----------------------------------------------------------------------*/
+/*
+
+        Module          : MeteredInputStream.java
+
+        Package         : DataStruct
+
+        Classes Included: MeteredInputStream
+
+        Purpose         : Input stream which counts bytes read and I/O time
+                          for ParseMetrics
+
+        Programmer      : Ted Dumitrescu
+
+        Date Started    : 10/17/26
+
+Updates:
+
+                                                                        */
+/*----------------------------------------------------------------------*/
+
+package DataStruct;
+
+/*----------------------------------------------------------------------*/
+/* Imported packages */
+
+import java.io.*;
+
+/*----------------------------------------------------------------------*/
+
+/*------------------------------------------------------------------------
+Class:   MeteredInputStream
+Extends: FilterInputStream
+Purpose: Counts bytes read from the underlying stream and time spent
+         waiting for them
+------------------------------------------------------------------------*/
+
+class MeteredInputStream extends FilterInputStream
+{
+  ParseMetrics  metrics;
+  ParseListener listener;
+  long          contentLen,
+                curStreamPos=0;
+
+/*------------------------------------------------------------------------
+Constructor: MeteredInputStream(InputStream in,ParseMetrics metrics,
+                                ParseListener listener,long contentLen)
+Purpose:     Initialize stream
+Parameters:
+  Input:  InputStream in         - stream from which to read data
+          ParseMetrics metrics   - metrics to update
+          ParseListener listener - listener for byte counts, or null
+          long contentLen        - length of stream (-1 if unknown)
+  Output: -
+------------------------------------------------------------------------*/
+
+  MeteredInputStream(InputStream in,ParseMetrics metrics,
+                     ParseListener listener,long contentLen)
+  {
+    super(in);
+    this.metrics=metrics;
+    this.listener=listener;
+    this.contentLen=contentLen;
+  }
+
+  public int read() throws IOException
+  {
+    long startTime=System.nanoTime();
+    int  b=super.read();
+    countBytes(b==-1 ? -1 : 1,startTime);
+    return b;
+  }
+
+  public int read(byte[] b,int off,int len) throws IOException
+  {
+    long startTime=System.nanoTime();
+    int  amountRead=super.read(b,off,len);
+    countBytes(amountRead,startTime);
+    return amountRead;
+  }
+
+  void countBytes(int amountRead,long startTime)
+  {
+    metrics.ioTime+=System.nanoTime()-startTime;
+    if (amountRead>=0)
+      {
+        curStreamPos+=amountRead;
+        metrics.bytesRead+=amountRead;
+      }
+    if (listener!=null)
+      listener.bytesRead(curStreamPos,amountRead<0 ? curStreamPos : contentLen);
+  }
+}
@@ -0,0 +1,70 @@
+/*----------------------------------------------------------------------*/
+/*
+
+        Module          : MeteredStreamReader.java
+
+        Package         : DataStruct
+
+        Classes Included: MeteredStreamReader
+
+        Purpose         : XML pull parser wrapper which counts elements read
+                          and parser time for ParseMetrics
+
+        Programmer      : Ted Dumitrescu
+
+        Date Started    : 10/17/26
+
+Updates:
+
+                                                                        */
+/*----------------------------------------------------------------------*/
+
+package DataStruct;
+
+/*----------------------------------------------------------------------*/
+/* Imported packages */
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.util.StreamReaderDelegate;
+
+/*----------------------------------------------------------------------*/
+
+/*------------------------------------------------------------------------
+Class:   MeteredStreamReader
+Extends: javax.xml.stream.util.StreamReaderDelegate
+Purpose: Counts elements read by a pull parser and time spent in the
+         parser
+------------------------------------------------------------------------*/
+
+class MeteredStreamReader extends StreamReaderDelegate
+{
+  ParseMetrics metrics;
+
+  MeteredStreamReader(XMLStreamReader reader,ParseMetrics metrics)
+  {
+    super(reader);
+    this.metrics=metrics;
+  }
+
+  public int next() throws XMLStreamException
+  {
+    long startTime=System.nanoTime();
+    int  eventType=super.next();
+    metrics.readerTime+=System.nanoTime()-startTime;
+    if (eventType==XMLStreamConstants.START_ELEMENT)
+      metrics.elementsProcessed++;
+    return eventType;
+  }
+
+  public int nextTag() throws XMLStreamException
+  {
+    long startTime=System.nanoTime();
+    int  eventType=super.nextTag();
+    metrics.readerTime+=System.nanoTime()-startTime;
+    if (eventType==XMLStreamConstants.START_ELEMENT)
+      metrics.elementsProcessed++;
+    return eventType;
+  }
+}
@@ -200,7 +200,7 @@ Parameters:
   Return: attribute variables
 ------------------------------------------------------------------------*/
 
-  public Iterator iterator()
+  public Iterator<ModernKeySignatureElement> iterator()
   {
     return accElements.iterator();
   }
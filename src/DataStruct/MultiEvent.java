@@ -14,6 +14,8 @@
         Date Started    : 2/1/06
 
         Updates         :
+10/17/26: added contentHash
+10/17/26: sub-events stored in an array instead of a LinkedList
 
                                                                         */
 /*----------------------------------------------------------------------*/
@@ -36,6 +38,8 @@ public class MultiEvent extends Event
 /*----------------------------------------------------------------------*/
 /* Instance variables */
 
+  Event[]     eventList=new Event[2]; /* simultaneous events */
+  int         numEvents=0;
   Mensuration mensInfo=null;
   ClefSet     clefset=null,       /* clef group */
               modernclefset=null; /* modern version of clef group */
@@ -56,7 +60,6 @@ Parameters:
   {
     super();
     eventtype=EVENT_MULTIEVENT;
-    eventList=new LinkedList<Event>();
   }
 
 /*------------------------------------------------------------------------
@@ -72,8 +75,8 @@ Parameters:
   public Event createCopy()
   {
     MultiEvent me=new MultiEvent();
-    for (Event e : eventList)
-      me.addEvent(e.createCopy());
+    for (int i=0; i<numEvents; i++)
+      me.addEvent(eventList[i].createCopy());
 
     me.copyEventAttributes(this);
     me.constructClefSets(null,null);
@@ -82,14 +85,23 @@ Parameters:
   }
 
 /*------------------------------------------------------------------------
-Methods: boolean equals(Event other)
-Purpose: Check whether the data of this event is exactly equal to another
+Methods: int contentHash() / boolean equals(Event other)
+Purpose: Calculate hash code of event data / check whether the data of this
+         event is exactly equal to another
 Parameters:
   Input:  Event other - event to check against
   Output: -
-  Return: true if events are equal
+  Return: hash code / true if events are equal
 ------------------------------------------------------------------------*/
 
+  public int contentHash()
+  {
+    int h=super.contentHash();
+    for (int i=0; i<getNumEvents(); i++)
+      h=h*31+getEvent(i).contentHash();
+    return h;
+  }
+
   public boolean equals(Event other)
   {
     if (!super.equals(other))
@@ -121,45 +133,48 @@ Parameters:
                                                 Proportion timeProp,
                                                 boolean useTies)
   {
-    LinkedList<LinkedList<Event>> modLists=new LinkedList<LinkedList<Event>>();
-    int finalLength=0;
-    for (Event e : eventList)
+    Event[][] modEvents=new Event[numEvents][];
+    int       finalLength=0;
+    for (int i=0; i<numEvents; i++)
       {
-        LinkedList<Event> el=e.makeModernNoteShapes(timePos,measurePos,
-                                 measureMinims,measureProp,
-                                 timeProp,useTies);
-        modLists.add(el);
-        if (el.size()>finalLength)
-          finalLength=el.size();
+        LinkedList<Event> el=eventList[i].makeModernNoteShapes(timePos,measurePos,
+                               measureMinims,measureProp,
+                               timeProp,useTies);
+        modEvents[i]=el.toArray(new Event[el.size()]);
+        if (modEvents[i].length>finalLength)
+          finalLength=modEvents[i].length;
       }
 
     /* OK, a weird and temporary solution to get through the cases I currently
-       need to deal with: simply combine the event lists 1:1 */
+       need to deal with: simply combine the event lists 1:1 (once only one
+       list has events left, its remaining events are added singly) */
     LinkedList<Event> finalList=new LinkedList<Event>();
-    while (modLists.size()>1)
+    for (int ei=0; ei<finalLength; ei++)
       {
-        MultiEvent me=new MultiEvent();
-        me.clefset=this.clefset;
-        me.modernclefset=this.modernclefset;
-
-        LinkedList<LinkedList<Event>> removalList=new LinkedList<LinkedList<Event>>();
-        for (LinkedList<Event> el : modLists)
+        int numLists=0,
+            lastList=-1;
+        for (int i=0; i<numEvents; i++)
+          if (ei<modEvents[i].length)
+            {
+              numLists++;
+              lastList=i;
+            }
+
+        if (numLists==1)
           {
-            me.addEvent(el.remove(0));
-            if (el.isEmpty())
-              removalList.add(el);
+            for (; ei<modEvents[lastList].length; ei++)
+              finalList.add(modEvents[lastList][ei]);
+            break;
           }
-        for (LinkedList<Event> el : removalList)
-          modLists.remove(el);
 
+        MultiEvent me=new MultiEvent();
+        me.clefset=this.clefset;
+        me.modernclefset=this.modernclefset;
+        for (int i=0; i<numEvents; i++)
+          if (ei<modEvents[i].length)
+            me.addEvent(modEvents[i][ei]);
         finalList.add(me);
       }
-    if (modLists.size()==1)
-      {
-        LinkedList<Event> el=modLists.get(0);
-        while (!el.isEmpty())
-          finalList.add(el.remove(0));
-      }
 
     return finalList;
   }
@@ -181,13 +196,14 @@ Parameters:
         /* multi-event vs. multi-event */
 
         /* every note pitch in this must appear in other, and vice versa */
-        for (Event e : eventList)
-          if (e.geteventtype()==Event.EVENT_NOTE)
-            if (!other.hasNotePitch(e.getPitch()))
+        MultiEvent otherME=(MultiEvent)other;
+        for (int i=0; i<numEvents; i++)
+          if (eventList[i].geteventtype()==Event.EVENT_NOTE)
+            if (!otherME.hasNotePitch(eventList[i].getPitch()))
               return false;
-        for (Event e : ((MultiEvent)other).eventList)
-          if (e.geteventtype()==Event.EVENT_NOTE)
-            if (!this.hasNotePitch(e.getPitch()))
+        for (int i=0; i<otherME.numEvents; i++)
+          if (otherME.eventList[i].geteventtype()==Event.EVENT_NOTE)
+            if (!this.hasNotePitch(otherME.eventList[i].getPitch()))
               return false;
 
         return true;
@@ -199,9 +215,9 @@ Parameters:
           return false;
 
         boolean foundMatch=false;
-        for (Event e : eventList)
-          if (e.geteventtype()==Event.EVENT_NOTE)
-            if (e.notePitchMatches(other))
+        for (int i=0; i<numEvents; i++)
+          if (eventList[i].geteventtype()==Event.EVENT_NOTE)
+            if (eventList[i].notePitchMatches(other))
               foundMatch=true;
             else
               return false;
@@ -212,9 +228,9 @@ Parameters:
 
   public boolean hasNotePitch(Pitch p)
   {
-    for (Event e : eventList)
-      if (e.geteventtype()==Event.EVENT_NOTE)
-        if (e.getPitch().equals(p))
+    for (int i=0; i<numEvents; i++)
+      if (eventList[i].geteventtype()==Event.EVENT_NOTE)
+        if (eventList[i].getPitch().equals(p))
           return true;
     return false;
   }
@@ -231,9 +247,9 @@ Parameters:
 
   void calcMusicTime()
   {
-    for (Iterator i=iterator(); i.hasNext();)
+    for (int i=0; i<numEvents; i++)
       {
-        Proportion imt=((Event)i.next()).getmusictime();
+        Proportion imt=eventList[i].getmusictime();
         if (imt.greaterThan(musictime))
           musictime.setVal(imt);
       }
@@ -250,7 +266,9 @@ Parameters:
 
   public void addEvent(Event e)
   {
-    eventList.add(e);
+    if (numEvents==eventList.length)
+      eventList=Arrays.copyOf(eventList,numEvents*2);
+    eventList[numEvents++]=e;
     if (e.getmusictime().greaterThan(musictime))
       musictime.setVal(e.getmusictime());
 
@@ -270,8 +288,12 @@ Parameters:
 
   public Event deleteEvent(Event e)
   {
-    eventList.remove(eventList.indexOf(e));
-    if (eventList.size()>=2)
+    int ei=0;
+    while (eventList[ei]!=e)
+      ei++;
+    System.arraycopy(eventList,ei+1,eventList,ei,numEvents-ei-1);
+    eventList[--numEvents]=null;
+    if (numEvents>=2)
       {
         /* recalculate parameters for this multi-event */
         if (e.getmusictime().equals(musictime))
@@ -279,9 +301,9 @@ Parameters:
         if (e.getMensInfo()!=null)
           {
             mensInfo=null;
-            for (Iterator i=iterator(); i.hasNext();)
+            for (int i=0; i<numEvents; i++)
               {
-                Mensuration m=((Event)i.next()).getMensInfo();
+                Mensuration m=eventList[i].getMensInfo();
                 if (m!=null)
                   mensInfo=m;
               }
@@ -291,7 +313,7 @@ Parameters:
       }
     else
       /* no more multi-event (only one event left) */
-      return (Event)(eventList.getFirst());
+      return eventList[0];
   }
 
 /*------------------------------------------------------------------------
@@ -305,17 +327,24 @@ Parameters:
 
   public Iterator iterator()
   {
-    return eventList.iterator();
+    return getSubEvents().iterator();
+  }
+
+  public List<Event> getSubEvents()
+  {
+    return Collections.unmodifiableList(Arrays.asList(eventList).subList(0,numEvents));
   }
 
   public int getNumEvents()
   {
-    return eventList.size();
+    return numEvents;
   }
 
   public Event getEvent(int i)
   {
-    return eventList.get(i);
+    if (i>=numEvents)
+      throw new IndexOutOfBoundsException("Index: "+i+", Size: "+numEvents);
+    return eventList[i];
   }
 
   public Mensuration getMensInfo()
@@ -325,27 +354,27 @@ Parameters:
 
   public boolean hasEventType(int etype)
   {
-    for (Event e : eventList)
-      if (e.hasEventType(etype))
+    for (int i=0; i<numEvents; i++)
+      if (eventList[i].hasEventType(etype))
         return true;
     return false;
   }
 
   public Event getFirstEventOfType(int etype)
   {
-    for (Event e : eventList)
-      if (e.hasEventType(etype))
-        return e;
+    for (int i=0; i<numEvents; i++)
+      if (eventList[i].hasEventType(etype))
+        return eventList[i];
     return null;
   }
 
   public NoteEvent getLowestNote()
   {
     NoteEvent lowestNote=null;
-    for (Event e : eventList)
-      if (e.geteventtype()==Event.EVENT_NOTE)
+    for (int i=0; i<numEvents; i++)
+      if (eventList[i].geteventtype()==Event.EVENT_NOTE)
         {
-          NoteEvent ne=(NoteEvent)e;
+          NoteEvent ne=(NoteEvent)eventList[i];
           if (lowestNote==null || lowestNote.getPitch().isHigherThan(ne.getPitch()))
             lowestNote=ne;
         }
@@ -354,24 +383,24 @@ Parameters:
 
   public boolean hasAccidentalClef()
   {
-    for (Event e : eventList)
-      if (e.hasAccidentalClef())
+    for (int i=0; i<numEvents; i++)
+      if (eventList[i].hasAccidentalClef())
         return true;
     return false;
   }
 
   public boolean hasPrincipalClef()
   {
-    for (Event e : eventList)
-      if (e.hasPrincipalClef())
+    for (int i=0; i<numEvents; i++)
+      if (eventList[i].hasPrincipalClef())
         return true;
     return false;
   }
 
   public boolean hasSignatureClef()
   {
-    for (Event e : eventList)
-      if (e.hasSignatureClef())
+    for (int i=0; i<numEvents; i++)
+      if (eventList[i].hasSignatureClef())
         return true;
     return false;
   }
@@ -380,11 +409,11 @@ Parameters:
   {
     int lastType=geteventtype();
 
-    for (Event e : eventList)
-      if (e.geteventtype()==Event.EVENT_NOTE)
+    for (int i=0; i<numEvents; i++)
+      if (eventList[i].geteventtype()==Event.EVENT_NOTE)
         return Event.EVENT_NOTE;
-      else if (e.getmusictime().i1!=0)
-        lastType=e.geteventtype();
+      else if (eventList[i].getmusictime().i1!=0)
+        lastType=eventList[i].geteventtype();
     return lastType;
   }
 
@@ -419,9 +448,9 @@ Parameters:
 
   public void constructClefSets(Event le,Event cie)
   {
-    for (Iterator i=iterator(); i.hasNext();)
+    for (int i=0; i<numEvents; i++)
       {
-        Event e=(Event)i.next();
+        Event e=eventList[i];
         if (e.geteventtype()==EVENT_CLEF)
           {
             e.constructClefSets(le,cie);
@@ -441,9 +470,9 @@ Parameters:
       }*/
 
     /* set individual events to have the same clef sets */
-    for (Iterator i=iterator(); i.hasNext();)
+    for (int i=0; i<numEvents; i++)
       {
-        Event e=(Event)i.next();
+        Event e=eventList[i];
         if (e.geteventtype()==EVENT_CLEF)
           {
             e.setClefSet(clefset,false);
@@ -473,9 +502,9 @@ Parameters:
   {
     MultiEvent newEvent=new MultiEvent();
 
-    for (Iterator i=iterator(); i.hasNext();)
+    for (int i=0; i<numEvents; i++)
       {
-        Event e=(Event)i.next();
+        Event e=eventList[i];
         if (e.geteventtype()!=EVENT_CLEF)
           newEvent.addEvent(e);
       }
@@ -500,9 +529,9 @@ Parameters:
     MultiEvent newEvent=new MultiEvent();
     Event      le=null;
 
-    for (Iterator i=iterator(); i.hasNext();)
+    for (int i=0; i<numEvents; i++)
       {
-        Event e=(Event)i.next();
+        Event e=eventList[i];
         if (e.geteventtype()!=EVENT_CLEF ||
             e.hasPrincipalClef())
           {
@@ -550,14 +579,14 @@ Parameters:
 
   public void setmensparams(Event me)
   {
-    for (Iterator i=iterator(); i.hasNext();)
-      ((Event)i.next()).setmensparams(me);
+    for (int i=0; i<numEvents; i++)
+      eventList[i].setmensparams(me);
   }
 
   public void setcolorparams(Coloration c)
   {
-    for (Iterator i=iterator(); i.hasNext();)
-      ((Event)i.next()).setcolorparams(c);
+    for (int i=0; i<numEvents; i++)
+      eventList[i].setcolorparams(c);
   }
 
 /*------------------------------------------------------------------------
@@ -572,8 +601,8 @@ Parameters:
   public void prettyprint()
   {
     System.out.println("   Multi-Event begin");
-    for (Iterator i=iterator(); i.hasNext();)
-      ((Event)i.next()).prettyprint();
+    for (int i=0; i<numEvents; i++)
+      eventList[i].prettyprint();
     System.out.println("   Multi-Event end");
   }
 }
@@ -14,6 +14,8 @@
         Date Started    : 2/14/07
 
         Updates         :
+10/17/26: voice list accessors load section data on demand (lazy section
+          loading)
 
                                                                         */
 /*----------------------------------------------------------------------*/
@@ -79,6 +81,7 @@ Parameters:
 
   public MusicSection shallowCopy()
   {
+    loadVoices();
     MusicChantSection copySection=new MusicChantSection(voices.length,editorial,baseColoration);
 
     copyBaseInfo(copySection);
@@ -101,6 +104,7 @@ Parameters:
 
   public void addVoice(Voice newv)
   {
+    loadVoices();
     /* copy voice list */
     VoiceChantData[] newVoices=new VoiceChantData[voices.length+1];
     for (int i=0; i<voices.length; i++)
@@ -124,6 +128,7 @@ Parameters:
 
   public void initializeNewVoice(int vnum,Voice newv)
   {
+    loadVoices();
     voices[vnum]=new VoiceChantData(newv,this);
     voices[vnum].addEvent(new Event(Event.EVENT_SECTIONEND));
   }
@@ -140,6 +145,7 @@ Parameters:
 
   public void removeVoice(int vnum)
   {
+    loadVoices();
     voices[vnum]=null;
   }
 
@@ -159,6 +165,7 @@ Parameters:
 
   public VoiceEventListData getVoice(int vnum)
   {
+    loadVoices();
     if (vnum>=voices.length)
       return null;
     return voices[vnum];
@@ -180,6 +187,7 @@ Parameters:
 
   public void setVoice(int vnum,VoiceEventListData v)
   {
+    loadVoices();
     voices[vnum]=(VoiceChantData)v;
   }
 }
@@ -16,6 +16,8 @@
         Updates         :
 12/22/07: moved TacetInfo to separate module (to be used by other types
           of MusicSection as well)
+10/17/26: voice list accessors load section data on demand (lazy section
+          loading)
 
                                                                         */
 /*----------------------------------------------------------------------*/
@@ -78,6 +80,7 @@ Parameters:
 
   public MusicSection shallowCopy()
   {
+    loadVoices();
     MusicMensuralSection copySection=new MusicMensuralSection(voices.length,editorial,baseColoration);
 
     copyBaseInfo(copySection);
@@ -101,6 +104,7 @@ Parameters:
 
   public void addVoice(Voice newv)
   {
+    loadVoices();
     /* copy voice list */
     VoiceMensuralData[] newVoices=new VoiceMensuralData[voices.length+1];
     for (int i=0; i<voices.length; i++)
@@ -124,6 +128,7 @@ Parameters:
 
   public void initializeNewVoice(int vnum,Voice newv)
   {
+    loadVoices();
     voices[vnum]=new VoiceMensuralData(newv,this);
     voices[vnum].addEvent(new Event(Event.EVENT_SECTIONEND));
   }
@@ -140,6 +145,7 @@ Parameters:
 
   public void removeVoice(int vnum)
   {
+    loadVoices();
     voices[vnum]=null;
   }
 
@@ -157,6 +163,7 @@ Parameters:
 
   public void updateVoiceList(Voice[] oldVL,Voice[] newVL,Voice[] newVoiceOrder)
   {
+    loadVoices();
 //    LinkedList<VoiceMensuralData> newVoiceList=new LinkedList<VoiceMensuralData>();
     VoiceMensuralData[] newVoiceList=new VoiceMensuralData[newVL.length];
     VoiceMensuralData   vmd;
@@ -198,6 +205,7 @@ Parameters:
 
   public VoiceEventListData getVoice(int vnum)
   {
+    loadVoices();
     if (vnum>=voices.length)
       return null;
     return voices[vnum];
@@ -211,6 +219,7 @@ Parameters:
   /* search for mensural data for a given set of master voice meta-data */
   public VoiceMensuralData getMensuralDataForVoice(Voice v)
   {
+    loadVoices();
     for (VoiceMensuralData vmd : voices)
       if (vmd!=null && vmd.getMetaData()==v)
         return vmd;
@@ -228,6 +237,7 @@ Parameters:
 
   public void setVoice(int vnum,VoiceEventListData v)
   {
+    loadVoices();
     voices[vnum]=(VoiceMensuralData)v;
   }
 }
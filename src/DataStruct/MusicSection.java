@@ -16,6 +16,7 @@
 
         Updates         :
 12/1/08: added initParams() for common initialization actions
+10/17/26: added sectionLoader/loadVoices() for lazy section loading
 
                                                                         */
 /*----------------------------------------------------------------------*/
@@ -61,6 +62,9 @@ public abstract class MusicSection
 
   ArrayList<TacetInfo> tacetInfo;
 
+  /* non-null while voice data has not yet been read from the source file */
+  volatile CMMESectionLoader sectionLoader=null;
+
 /*----------------------------------------------------------------------*/
 /* Instance methods */
 
@@ -104,6 +108,23 @@ Parameters:
     this.tacetInfo=new ArrayList<TacetInfo>();
   }
 
+/*------------------------------------------------------------------------
+Method:  void loadVoices()
+Purpose: Read voice data from source file if it has not been loaded yet;
+         to be called by subclasses before any access to their voice lists
+Parameters:
+  Input:  -
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+  protected void loadVoices()
+  {
+    CMMESectionLoader loader=sectionLoader;
+    if (loader!=null)
+      loader.loadSection(this);
+  }
+
 /*------------------------------------------------------------------------
 Method:  void recalcAllEventParams([VoiceEventListData[] lastv])
 Purpose: Recalculate event attributes based on parameters (clef, mensuration
@@ -0,0 +1,290 @@
+/*----------------------------------------------------------------------*/
+/*
+
+        Module          : MusicTime.java
+
+        Package         : DataStruct
+
+        Classes Included: MusicTime
+
+        Purpose         : Exact rational time values packed into primitive
+                          longs (allocation-free alternative to Proportion
+                          for inner loops)
+
+        Programmer      : Ted Dumitrescu
+
+        Date Started    : 10/17/26
+
+Updates:
+
+                                                                        */
+/*----------------------------------------------------------------------*/
+
+package DataStruct;
+
+/*------------------------------------------------------------------------
+Class:   MusicTime
+Extends: -
+Purpose: Static operations on rational values held in a long: numerator in
+         the high 32 bits, denominator in the low 32 bits. Values are
+         always in lowest terms with a positive denominator, so two values
+         are equal exactly when their longs are equal. Operands are reduced
+         by common factors before multiplying, and intermediate products
+         are calculated in 64 bits; results which still do not fit in
+         32-bit terms are replaced by the closest value that does (instead
+         of wrapping), so that arithmetic never aborts rendering.
+------------------------------------------------------------------------*/
+
+public class MusicTime
+{
+/*----------------------------------------------------------------------*/
+/* Class variables */
+
+  public static final long ZERO=pack(0,1),
+                           ONE= pack(1,1),
+                           TWO= pack(2,1),
+                           HALF=pack(1,2);
+
+/*----------------------------------------------------------------------*/
+/* Class methods */
+
+  static long pack(int num,int den)
+  {
+    return ((long)num<<32)|(den&0xFFFFFFFFL);
+  }
+
+  public static int num(long t)
+  {
+    return (int)(t>>32);
+  }
+
+  public static int den(long t)
+  {
+    return (int)t;
+  }
+
+/*------------------------------------------------------------------------
+Method:  long valueOf(long num,long den|Proportion p)
+Purpose: Create normalized time value
+Parameters:
+  Input:  long num,den - numerator and denominator
+          Proportion p - proportion to convert (null is treated as 0)
+  Output: -
+  Return: packed value
+------------------------------------------------------------------------*/
+
+  public static long valueOf(long num,long den)
+  {
+    if (den==0)
+      throw new ArithmeticException("MusicTime: zero denominator");
+    if (num==0)
+      return ZERO;
+    if (den<0)
+      {
+        num=-num;
+        den=-den;
+      }
+
+    long gcf=gcd(num<0 ? -num : num,den);
+    num/=gcf;
+    den/=gcf;
+    if (num<-Integer.MAX_VALUE || num>Integer.MAX_VALUE || den>Integer.MAX_VALUE)
+      return approximate(num,den);
+
+    return pack((int)num,(int)den);
+  }
+
+  public static long valueOf(Proportion p)
+  {
+    return p==null ? ZERO : valueOf(p.i1,p.i2);
+  }
+
+/*------------------------------------------------------------------------
+Method:  long approximate(long num,long den)
+Purpose: Replace a reduced value whose terms are too large for 32 bits by
+         the closest continued-fraction convergent whose terms fit
+Parameters:
+  Input:  long num,den - numerator and (positive) denominator
+  Output: -
+  Return: packed value
+------------------------------------------------------------------------*/
+
+  static long approximate(long num,long den)
+  {
+    long n=num<0 ? -num : num,
+         d=den,
+         h0=0,h1=1,  /* convergent numerators */
+         k0=1,k1=0;  /* convergent denominators */
+
+    while (d!=0)
+      {
+        long q=n/d;
+        if ((h1!=0 && q>(Integer.MAX_VALUE-h0)/h1) ||
+            (k1!=0 && q>(Integer.MAX_VALUE-k0)/k1))
+          break;
+        long h2=q*h1+h0,
+             k2=q*k1+k0;
+        h0=h1; h1=h2;
+        k0=k1; k1=k2;
+
+        long r=n-q*d;
+        n=d;
+        d=r;
+      }
+
+    if (k1==0) /* magnitude itself too large */
+      {
+        h1=Integer.MAX_VALUE;
+        k1=1;
+      }
+    if (h1==0)
+      return ZERO;
+    return pack((int)(num<0 ? -h1 : h1),(int)k1);
+  }
+
+  static long gcd(long a,long b)
+  {
+    while (b!=0)
+      {
+        long r=a%b;
+        a=b;
+        b=r;
+      }
+    return a;
+  }
+
+/*------------------------------------------------------------------------
+Method:  long add|subtract|multiply|divide(long t1,long t2)
+Purpose: Arithmetic on time values
+Parameters:
+  Input:  long t1,t2 - operands
+  Output: -
+  Return: result (t1+t2, t1-t2, t1*t2, t1/t2)
+------------------------------------------------------------------------*/
+
+  /* sums are taken over the least common multiple of the denominators */
+  public static long add(long t1,long t2)
+  {
+    long d1=den(t1),d2=den(t2);
+    if (d1==d2)
+      return valueOf((long)num(t1)+num(t2),d1);
+    long gcf=gcd(d1,d2);
+    return valueOf(num(t1)*(d2/gcf)+num(t2)*(d1/gcf),d1/gcf*d2);
+  }
+
+  public static long subtract(long t1,long t2)
+  {
+    long d1=den(t1),d2=den(t2);
+    if (d1==d2)
+      return valueOf((long)num(t1)-num(t2),d1);
+    long gcf=gcd(d1,d2);
+    return valueOf(num(t1)*(d2/gcf)-num(t2)*(d1/gcf),d1/gcf*d2);
+  }
+
+  /* products are cross-reduced before multiplying */
+  public static long multiply(long t1,long t2)
+  {
+    return multiplyReduced(num(t1),den(t1),num(t2),den(t2));
+  }
+
+  public static long divide(long t1,long t2)
+  {
+    return multiplyReduced(num(t1),den(t1),den(t2),num(t2));
+  }
+
+  static long multiplyReduced(long n1,long d1,long n2,long d2)
+  {
+    long g1=gcd(n1<0 ? -n1 : n1,d2),
+         g2=gcd(n2<0 ? -n2 : n2,d1);
+    if (g1>1)
+      {
+        n1/=g1;
+        d2/=g1;
+      }
+    if (g2>1)
+      {
+        n2/=g2;
+        d1/=g2;
+      }
+    return valueOf(n1*n2,d1*d2);
+  }
+
+/*------------------------------------------------------------------------
+Method:  int compare(long t1|Proportion p,long t2)
+Purpose: Exact comparison of time values
+Parameters:
+  Input:  long t1,t2 - values to compare
+          Proportion p - value to compare (null counts as 0)
+  Output: -
+  Return: negative if t1<t2, 0 if equal, positive if t1>t2
+------------------------------------------------------------------------*/
+
+  public static int compare(long t1,long t2)
+  {
+    if (t1==t2)
+      return 0;
+    long c1=num(t1)*(long)den(t2),
+         c2=num(t2)*(long)den(t1);
+    return c1<c2 ? -1 : c1==c2 ? 0 : 1;
+  }
+
+  public static int compare(Proportion p,long t)
+  {
+    return compare(valueOf(p),t);
+  }
+
+  public static long max(long t1,long t2)
+  {
+    return compare(t1,t2)>=0 ? t1 : t2;
+  }
+
+  public static long min(long t1,long t2)
+  {
+    return compare(t1,t2)<=0 ? t1 : t2;
+  }
+
+/*------------------------------------------------------------------------
+Method:  long toTicks(long t,int ticksPerUnit)
+Purpose: Convert to integer number of subdivisions (e.g., MIDI ticks),
+         truncated, without going through floating point
+Parameters:
+  Input:  long t           - time value
+          int ticksPerUnit - number of ticks per whole unit
+  Output: -
+  Return: number of ticks
+------------------------------------------------------------------------*/
+
+  public static long toTicks(long t,int ticksPerUnit)
+  {
+    return (long)num(t)*ticksPerUnit/den(t);
+  }
+
+  public static double toDouble(long t)
+  {
+    return (double)num(t)/(double)den(t);
+  }
+
+/*------------------------------------------------------------------------
+Method:  Proportion toProportion(long t)
+Purpose: Convert to (new, modifiable) Proportion
+Parameters:
+  Input:  long t - time value
+  Output: -
+  Return: new proportion
+------------------------------------------------------------------------*/
+
+  public static Proportion toProportion(long t)
+  {
+    return new Proportion(num(t),den(t));
+  }
+
+  public static void setProportion(Proportion p,long t)
+  {
+    p.setVal(num(t),den(t));
+  }
+
+  public static String toString(long t)
+  {
+    return num(t)+"/"+den(t);
+  }
+}
@@ -28,6 +28,8 @@
 7/8/08:   replaced ModernAccidental info with integer pitchOffset
 8/23/08:  added tie data
 3/12/09:  added modern note types, support for arbitrary number of flags
+10/17/26: note lengths are interned (shared, never modified in place)
+10/17/26: added contentHash
 
                                                                         */
 /*----------------------------------------------------------------------*/
@@ -330,7 +332,7 @@ Parameters:
     super();
     eventtype=EVENT_NOTE;
     notetype=nt;
-    length=musictime=len==null ? null : new Proportion(len);
+    length=musictime=Proportion.intern(len);
     pitch=p;
     pitchOffset=po;
     stemdir=STEM_UP;
@@ -608,14 +610,24 @@ System.out.print(" TLIM="+timeLeftInMeasure);*/
   }
 
 /*------------------------------------------------------------------------
-Methods: boolean equals(Event other)
-Purpose: Check whether the data of this event is exactly equal to another
+Methods: int contentHash() / boolean equals(Event other)
+Purpose: Calculate hash code of event data / check whether the data of this
+         event is exactly equal to another
 Parameters:
   Input:  Event other - event to check against
   Output: -
-  Return: true if events are equal
+  Return: hash code / true if events are equal
 ------------------------------------------------------------------------*/
 
+  public int contentHash()
+  {
+    int h=super.contentHash();
+    h=h*31+notetype;
+    h=h*31+(length==null ? 0 : length.valueHash());
+    h=h*31+(pitch==null ? 0 : pitch.placenum);
+    return h;
+  }
+
   public boolean equals(Event other)
   {
     if (!super.equals(other))
@@ -1016,7 +1028,7 @@ Parameters:
 
   public void setLength(Proportion l)
   {
-    length=musictime=new Proportion(l);
+    length=musictime=Proportion.intern(l);
   }
 
   public void setstemdir(int sd)
@@ -0,0 +1,68 @@
+/*----------------------------------------------------------------------*/
+/*
+
+        Module          : ParseListener.java
+
+        Package         : DataStruct
+
+        Classes Included: ParseListener
+
+        Purpose         : Receive progress and performance information while
+                          a CMME file is loaded
+
+        Programmer      : Ted Dumitrescu
+
+        Date Started    : 10/17/26
+
+Updates:
+
+                                                                        */
+/*----------------------------------------------------------------------*/
+
+package DataStruct;
+
+/*------------------------------------------------------------------------
+Interface: ParseListener
+Purpose:   Callbacks from CMMEParser (and from streams counting its input);
+           ProgressBarListener shows progress in a Swing progress bar,
+           headless tools can log the final metrics
+------------------------------------------------------------------------*/
+
+public interface ParseListener
+{
+/*------------------------------------------------------------------------
+Method:  void bytesRead(long numBytes,long totalBytes)
+Purpose: Called as raw input is read
+Parameters:
+  Input:  long numBytes   - number of bytes read so far
+          long totalBytes - length of input (-1 if unknown); numBytes equals
+                            totalBytes once the input is exhausted
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+  public void bytesRead(long numBytes,long totalBytes);
+
+/*------------------------------------------------------------------------
+Method:  void sectionParsed(int sectionNum,int numSections)
+Purpose: Called after each music section has been constructed
+Parameters:
+  Input:  int sectionNum  - number of section just parsed (0-based)
+          int numSections - total number of sections (-1 if not yet known)
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+  public void sectionParsed(int sectionNum,int numSections);
+
+/*------------------------------------------------------------------------
+Method:  void parseFinished(ParseMetrics metrics)
+Purpose: Called once the piece has been constructed
+Parameters:
+  Input:  ParseMetrics metrics - counts and timings for the whole load
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+  public void parseFinished(ParseMetrics metrics);
+}
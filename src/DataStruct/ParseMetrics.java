@@ -0,0 +1,132 @@
+/*----------------------------------------------------------------------*/
+/*
+
+        Module          : ParseMetrics.java
+
+        Package         : DataStruct
+
+        Classes Included: ParseMetrics
+
+        Purpose         : Counts and timings collected while parsing a CMME
+                          file
+
+        Programmer      : Ted Dumitrescu
+
+        Date Started    : 10/17/26
+
+Updates:
+
+                                                                        */
+/*----------------------------------------------------------------------*/
+
+package DataStruct;
+
+/*------------------------------------------------------------------------
+Class:   ParseMetrics
+Extends: -
+Purpose: Bytes read, elements and events processed, and elapsed time per
+         phase of loading one piece
+------------------------------------------------------------------------*/
+
+public class ParseMetrics
+{
+/*----------------------------------------------------------------------*/
+/* Class variables */
+
+  /* loading phases */
+  public static final int PHASE_IO=    0,
+                          PHASE_XML=   1,
+                          PHASE_BUILD= 2,
+                          PHASE_RECALC=3,
+                          NUM_PHASES=  4;
+
+  public static final String[] PhaseNames=new String[]
+                                 {
+                                   "I/O","XML","model build","recalc"
+                                 };
+
+/*----------------------------------------------------------------------*/
+/* Instance variables */
+
+  long bytesRead=0;
+  int  elementsProcessed=0,
+       eventsCreated=0;
+
+  /* accumulated times in nanoseconds; readerTime includes the I/O done
+     by the XML parser, parseTime includes readerTime */
+  long ioTime=0,
+       readerTime=0,
+       parseTime=0,
+       recalcTime=0;
+
+/*----------------------------------------------------------------------*/
+/* Instance methods */
+
+/*------------------------------------------------------------------------
+Method:  long getPhaseTime(int phase)
+Purpose: Return time spent in one loading phase
+Parameters:
+  Input:  int phase - PHASE_IO, PHASE_XML, PHASE_BUILD or PHASE_RECALC
+  Output: -
+  Return: time in nanoseconds
+------------------------------------------------------------------------*/
+
+  public long getPhaseTime(int phase)
+  {
+    switch (phase)
+      {
+        case PHASE_IO:
+          return ioTime;
+        case PHASE_XML:
+          return Math.max(0,readerTime-ioTime);
+        case PHASE_BUILD:
+          return Math.max(0,parseTime-Math.max(readerTime,ioTime));
+        case PHASE_RECALC:
+          return recalcTime;
+      }
+    return 0;
+  }
+
+  public long getTotalTime()
+  {
+    return Math.max(parseTime,readerTime)+recalcTime;
+  }
+
+  public long getBytesRead()
+  {
+    return bytesRead;
+  }
+
+  public int getElementsProcessed()
+  {
+    return elementsProcessed;
+  }
+
+  public int getEventsCreated()
+  {
+    return eventsCreated;
+  }
+
+/*------------------------------------------------------------------------
+Method:  String toString()
+Purpose: Summarize metrics on one line (for logs)
+Parameters:
+  Input:  -
+  Output: -
+  Return: string representation of metrics
+------------------------------------------------------------------------*/
+
+  public String toString()
+  {
+    StringBuffer sb=new StringBuffer();
+    sb.append(bytesRead).append(" bytes, ").
+       append(elementsProcessed).append(" elements, ").
+       append(eventsCreated).append(" events;");
+    for (int pi=0; pi<NUM_PHASES; pi++)
+      sb.append(" ").append(PhaseNames[pi]).append(" ").
+         append(getPhaseTime(pi)/1000000).append(" ms");
+    sb.append(" (total ").append(getTotalTime()/1000000).append(" ms)");
+
+    return sb.toString();
+  }
+}
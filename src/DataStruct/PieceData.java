@@ -22,6 +22,15 @@
 3/20/06:  added incipit-score flag
 2/07:     modified basic structure to incorporate muiltiple sections
 10/19/07: added "Notes" field
+10/17/26: findEvent uses an identity-keyed location index
+10/17/26: parameter changes after edits are propagated incrementally, only
+          into following sections whose parameters are affected
+10/17/26: consolidateReadings groups readings by content hash instead of
+          comparing every pair
+10/17/26: getVariantReading finds readings through the voice's variant span
+          index
+10/17/26: added getLoadError() (sections loaded lazily may fail to load after
+          the piece has been constructed)
 
                                                                         */
 /*----------------------------------------------------------------------*/
@@ -58,6 +67,12 @@ public class PieceData
   VariantVersionData            curVersion;
   PieceData                     defaultMusicData;
 
+  EventLocationIndex            locationIndex=null;
+
+  /* first error from loading section data on demand (the piece is then
+     incomplete, and must be neither displayed nor saved) */
+  volatile Exception            loadError=null;
+
 /*----------------------------------------------------------------------*/
 /* Instance methods */
 
@@ -234,21 +249,75 @@ Parameters:
 
   public void addEvent(int snum,int vnum,int i,Event e)
   {
-    VoiceEventListData v=getSection(snum).getVoice(vnum),
-                       lastv=v;
-    v.addEvent(i,e);
+    getSection(snum).getVoice(vnum).addEvent(i,e,getPreviousVoice(snum,vnum));
+    if (locationIndex!=null)
+      locationIndex.eventAdded(snum,vnum,i,e);
+
+    recalcFollowingSections(snum,vnum);
+  }
+
+/*------------------------------------------------------------------------
+Method:  void recalcEventParams(int snum,int vnum,int start,int firstStop)
+Purpose: Recalculate event parameters in one voice after a change, starting
+         at the modified index, and carry any changes into following sections
+Parameters:
+  Input:  int snum,vnum   - section and voice number
+          int start       - index of first modified event
+          int firstStop   - index after last modified event
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+  public void recalcEventParams(int snum,int vnum,int start,int firstStop)
+  {
+    if (getSection(snum).getVoice(vnum).recalcEventParams(getPreviousVoice(snum,vnum),start,firstStop))
+      recalcFollowingSections(snum,vnum);
+  }
+
+/*------------------------------------------------------------------------
+Method:  void recalcFollowingSections(int snum,int vnum)
+Purpose: Recalculate event parameters for one voice in the sections after a
+         given one, stopping at the first section where the voice's
+         parameters are unaffected
+Parameters:
+  Input:  int snum,vnum - section and voice number of changed voice
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+  void recalcFollowingSections(int snum,int vnum)
+  {
+    VoiceEventListData lastv=getSection(snum).getVoice(vnum);
 
     for (snum++; snum<getNumSections(); snum++)
       {
-        v=getSection(snum).getVoice(vnum);
+        VoiceEventListData v=getSection(snum).getVoice(vnum);
         if (v!=null)
           {
-            v.recalcEventParams(lastv);
+            if (!v.recalcEventParams(lastv,0,0))
+              return;
             lastv=v;
           }
       }
   }
 
+/*------------------------------------------------------------------------
+Method:  VoiceEventListData getPreviousVoice(int snum,int vnum)
+Purpose: Find the nearest earlier section containing a given voice
+Parameters:
+  Input:  int snum,vnum - section and voice number
+  Output: -
+  Return: voice in earlier section, or null if there is none
+------------------------------------------------------------------------*/
+
+  VoiceEventListData getPreviousVoice(int snum,int vnum)
+  {
+    VoiceEventListData lastv=null;
+    for (snum--; lastv==null && snum>=0; snum--)
+      lastv=getSection(snum).getVoice(vnum);
+    return lastv;
+  }
+
 /*------------------------------------------------------------------------
 Method:  int addVariantEvent(VariantVersionData vvd,int snum,int vnum,int vi,int di,Event e)
 Purpose: Insert event in one variant version
@@ -342,12 +411,11 @@ Parameters:
 
   public void deleteEvent(int snum,int vnum,int i)
   {
-    VoiceEventListData v=getSection(snum).getVoice(vnum),
-                       lastv=null;
-    for (snum--; lastv==null && snum>=0; snum--)
-      lastv=getSection(snum).getVoice(vnum);
+    Event deletedEvent=getSection(snum).getVoice(vnum).deleteEvent(i,getPreviousVoice(snum,vnum));
+    if (locationIndex!=null)
+      locationIndex.eventDeleted(snum,vnum,i,deletedEvent);
 
-    v.deleteEvent(i,lastv);
+    recalcFollowingSections(snum,vnum);
   }
 
 /*------------------------------------------------------------------------
@@ -1167,7 +1235,8 @@ Parameters:
     int                vmi2=defaultV.getNextEventOfType(Event.EVENT_VARIANTDATA_END,loc.eventNum+1,1);
 
     /* Make new reading for newly non-default versions */
-    List<VariantVersionData> defaultVersions=vme1.getDefaultVersions(      this.variantVersions,this.getVoice(loc.voiceNum),defaultV);
+    List<VariantVersionData> defaultVersions=vme1.getDefaultVersions(
+      this.variantVersions,this.getVoice(loc.voiceNum),defaultV);
     defaultVersions.remove(0);
     if (defaultVersions.size()>0)
       {
@@ -1235,10 +1304,17 @@ Parameters:
     VariantMarkerEvent vme2=(VariantMarkerEvent)(getSection(loc.sectionNum).getVoice(loc.voiceNum).getEvent(vmi2));
 
     /* check readings against default */
-    LinkedList<VariantReading> delList=new LinkedList<VariantReading>();
+    LinkedList<VariantReading>      delList=new LinkedList<VariantReading>();
+    HashMap<VariantReading,Integer> readingHashes=new HashMap<VariantReading,Integer>();
+    int                             defaultHash=VariantReading.calcContentHash(defaultV,vmi1+1,vmi2-1);
     for (VariantReading vr : vme1.getReadings())
-      if (vr.equals(defaultV,vmi1+1,vmi2-1))
-        delList.add(vr);
+      {
+        int h=vr.calcContentHash();
+        if (h==defaultHash && vr.equals(defaultV,vmi1+1,vmi2-1))
+          delList.add(vr);
+        else
+          readingHashes.put(vr,h);
+      }
     for (VariantReading vr : delList)
       {
         vme1.getReadings().remove(vr);
@@ -1247,22 +1323,36 @@ Parameters:
     if (delList.size()>0)
       changed=true;
 
-    /* check readings against each other */
+    /* check readings against each other (only readings with the same
+       content hash can be identical; the first of each set of identical
+       readings absorbs the versions of the others) */
     delList=new LinkedList<VariantReading>();
-    for (int i1=0; i1<vme1.getNumReadings(); i1++)
+    HashMap<Integer,LinkedList<VariantReading>> hashGroups=new HashMap<Integer,LinkedList<VariantReading>>();
+    for (VariantReading vr2 : vme1.getReadings())
       {
-        VariantReading vr1=vme1.getReading(i1);
-        for (int i2=i1+1; i2<vme1.getNumReadings(); i2++)
+        Integer                    h=readingHashes.get(vr2);
+        LinkedList<VariantReading> group=hashGroups.get(h);
+        if (group==null)
           {
-            VariantReading vr2=vme1.getReading(i2);
-            if (!delList.contains(vr2) &&
-                vr1.equals(vr2.getEvents(),0,vr2.getNumEvents()-1) &&
-                vr1.isError()==vr2.isError())
-              {
-                vr1.getVersions().addAll(vr2.getVersions());
-                delList.add(vr2);
-              }
+            group=new LinkedList<VariantReading>();
+            hashGroups.put(h,group);
+          }
+
+        VariantReading vr1=null;
+        for (VariantReading gvr : group)
+          if (gvr.equals(vr2.getEvents(),0,vr2.getNumEvents()-1) &&
+              gvr.isError()==vr2.isError())
+            {
+              vr1=gvr;
+              break;
+            }
+        if (vr1!=null)
+          {
+            vr1.getVersions().addAll(vr2.getVersions());
+            delList.add(vr2);
           }
+        else
+          group.add(vr2);
       }
     for (VariantReading vr : delList)
       {
@@ -1295,20 +1385,9 @@ Parameters:
 
   public EventLocation findEvent(Event e)
   {
-    for (int si=0; si<getNumSections(); si++)
-      {
-        MusicSection s=getSection(si);
-        for (int vi=0; vi<s.getNumVoices(); vi++)
-          {
-            VoiceEventListData v=s.getVoice(vi);
-            if (v!=null)
-              for (int ei=0; ei<v.getNumEvents(); ei++)
-                if (v.getEvent(ei)==e)
-                  return new EventLocation(si,vi,ei);
-          }
-      }
-
-    return null;
+    if (locationIndex==null)
+      locationIndex=new EventLocationIndex(this);
+    return locationIndex.findEvent(e);
   }
 
 /*------------------------------------------------------------------------
@@ -1451,7 +1530,8 @@ Parameters:
                     if (e!=null)
                       {
                         VariantMarkerEvent vme=(VariantMarkerEvent)(v.getEvent(ei));
-                        for (VariantVersionData vvd : vme.getDefaultVersions(                               this.getVariantVersions(),this.getVoice(vi),v))
+                        for (VariantVersionData vvd : vme.getDefaultVersions(
+                               this.getVariantVersions(),this.getVoice(vi),v))
                           if (!vvd.isDefault())
                             duplicateEventInVariant(vvd,this,si,vi,ei+1);
                         deleteEvent(si,vi,ei+1);
@@ -1521,7 +1601,8 @@ Parameters:
                         VariantMarkerEvent vme=(VariantMarkerEvent)(v.getEvent(ei));
                         int vmi2=v.getNextEventOfType(Event.EVENT_VARIANTDATA_END,ei+1,1);
 
-                        List defaultVersions=vme.getDefaultVersions(                          this.getVariantVersions(),this.getVoice(vi),v);
+                        List defaultVersions=vme.getDefaultVersions(
+                          this.getVariantVersions(),this.getVoice(vi),v);
                         if (defaultVersions.size()==1 || // skip if default is unique
                             defaultVersions.contains(newDefaultVersion))
                           ei=vmi2+1;
@@ -1556,7 +1637,8 @@ Parameters:
 
     /* create new variant */
     VariantReading newReading=new VariantReading();
-    for (VariantVersionData vvd : vme.getDefaultVersions(      this.getVariantVersions(),this.getVoice(vnum),v))
+    for (VariantVersionData vvd : vme.getDefaultVersions(
+      this.getVariantVersions(),this.getVoice(vnum),v))
       if (!vvd.isDefault())
         newReading.addVersion(vvd);
     variantReadings.add(newReading);
@@ -1696,6 +1778,24 @@ Parameters:
     return musicSections.size();
   }
 
+  /* waits until all sections have been loaded; null if nothing failed */
+  public Exception getLoadError()
+  {
+    if (defaultMusicData!=this)
+      return defaultMusicData.getLoadError();
+
+    for (MusicSection ms : musicSections)
+      ms.loadVoices();
+    return loadError;
+  }
+
+  /* records only the first error */
+  synchronized void setLoadError(Exception e)
+  {
+    if (loadError==null)
+      loadError=e;
+  }
+
   public MusicSection getSection(int sectionNum)
   {
     return musicSections.get(sectionNum);
@@ -1708,7 +1808,7 @@ Parameters:
 
   public VariantReading getVariantReading(int snum,int vnum,int eventnum,VariantVersionData version)
   {
-    return getSection(snum).getVoice(vnum).getEvent(eventnum).getVariantReading(version);
+    return getSection(snum).getVoice(vnum).getVariantReading(eventnum,version);
   }
 
   public VariantVersionData getDefaultVariantVersion()
@@ -0,0 +1,145 @@
+/*----------------------------------------------------------------------*/
+/*
+
+        Module          : ProgressBarListener.java
+
+        Package         : DataStruct
+
+        Classes Included: ProgressBarListener
+
+        Purpose         : Display parsing progress in a JProgressBar
+
+        Programmer      : Ted Dumitrescu
+
+        Date Started    : 10/17/26
+
+Updates:
+10/17/26: sections parsed from a stream of unknown section count move the bar
+          to the current input position
+
+                                                                        */
+/*----------------------------------------------------------------------*/
+
+package DataStruct;
+
+/*----------------------------------------------------------------------*/
+/* Imported packages */
+
+import javax.swing.JProgressBar;
+
+/*----------------------------------------------------------------------*/
+
+/*------------------------------------------------------------------------
+Class:   ProgressBarListener
+Extends: -
+Purpose: ParseListener which updates a progress bar: bytes read move the
+         bar between two given positions, parsed sections move it toward
+         the maximum, and the end of parsing fills it
+------------------------------------------------------------------------*/
+
+public class ProgressBarListener implements ParseListener
+{
+/*----------------------------------------------------------------------*/
+/* Instance variables */
+
+  JProgressBar progressBar;
+  int          PBStart,PBEnd; /* bar positions at start and end of read */
+  double       lastBarPos;
+  long         numBytesRead=0,  /* input position at last report */
+               totalBytes=-1;
+
+/*----------------------------------------------------------------------*/
+/* Instance methods */
+
+/*------------------------------------------------------------------------
+Constructor: ProgressBarListener(JProgressBar progressBar[,int PBStart,int PBEnd])
+Purpose:     Initialize listener
+Parameters:
+  Input:  JProgressBar progressBar - bar to update
+          int PBStart,PBEnd        - progress bar positions at start and end
+                                     of read (default: current position to
+                                     maximum)
+  Output: -
+------------------------------------------------------------------------*/
+
+  public ProgressBarListener(JProgressBar progressBar,int PBStart,int PBEnd)
+  {
+    this.progressBar=progressBar;
+    this.PBStart=PBStart;
+    this.PBEnd=PBEnd;
+    lastBarPos=(double)PBStart;
+  }
+
+  public ProgressBarListener(JProgressBar progressBar)
+  {
+    this(progressBar,progressBar.getValue(),progressBar.getMaximum());
+  }
+
+/*------------------------------------------------------------------------
+Method:  void bytesRead(long numBytes,long totalBytes)
+Purpose: Move bar in proportion to amount of input read
+Parameters:
+  Input:  long numBytes   - number of bytes read so far
+          long totalBytes - length of input (-1 if unknown)
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+  public void bytesRead(long numBytes,long totalBytes)
+  {
+    this.numBytesRead=numBytes;
+    this.totalBytes=totalBytes;
+    if (totalBytes<=0)
+      return;
+    if (numBytes>=totalBytes)
+      {
+        progressBar.setValue(PBEnd); /* EOF */
+        return;
+      }
+
+    double curBarPos=PBStart+((double)numBytes/(double)totalBytes)*(PBEnd-PBStart);
+    if (curBarPos>lastBarPos+10)
+      {
+        progressBar.setValue((int)Math.round(curBarPos));
+        lastBarPos=curBarPos;
+      }
+  }
+
+/*------------------------------------------------------------------------
+Method:  void sectionParsed(int sectionNum,int numSections)
+Purpose: Move bar toward maximum by an equal share for each section (or, if
+         the number of sections is not known, to the current position in the
+         input)
+Parameters:
+  Input:  int sectionNum  - number of section just parsed
+          int numSections - total number of sections (-1 if unknown)
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+  public void sectionParsed(int sectionNum,int numSections)
+  {
+    if (numSections>sectionNum)
+      progressBar.setValue(progressBar.getValue()+
+        (progressBar.getMaximum()-progressBar.getValue())/(numSections-sectionNum));
+    else if (totalBytes>0 && numBytesRead<totalBytes)
+      {
+        lastBarPos=PBStart+((double)numBytesRead/(double)totalBytes)*(PBEnd-PBStart);
+        progressBar.setValue((int)Math.round(lastBarPos));
+      }
+  }
+
+/*------------------------------------------------------------------------
+Method:  void parseFinished(ParseMetrics metrics)
+Purpose: Fill bar once loading is complete
+Parameters:
+  Input:  ParseMetrics metrics - metrics for load (unused)
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+  public void parseFinished(ParseMetrics metrics)
+  {
+    progressBar.setValue(progressBar.getMaximum());
+  }
+}
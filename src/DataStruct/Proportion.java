@@ -16,12 +16,25 @@
 Updates:
 9/19/05: added some arithmetic operations (addition, reduction, comparison)
 7/1/10:  added init from double (estimate)
+10/17/26: added intern() (shared instances for values which are never
+          modified in place, e.g. parsed event lengths)
+10/17/26: comparisons are exact (64-bit cross-multiplication instead of
+          toDouble()); arithmetic reduces operands by common factors and
+          is calculated in 64 bits; a reduced result which does not fit is
+          replaced by the closest value that does (instead of wrapping)
+10/17/26: added valueHash() (for grouping events by content)
+10/17/26: results with a zero denominator throw an ArithmeticException again
 
                                                                         */
 /*----------------------------------------------------------------------*/
 
 package DataStruct;
 
+/*----------------------------------------------------------------------*/
+/* Imported classes */
+
+import java.util.*;
+
 /*------------------------------------------------------------------------
 Class:   Proportion
 Extends: -
@@ -35,6 +48,10 @@ public class Proportion
 
   public static final Proportion EQUALITY=new Proportion(1,1);
 
+  /* shared instances returned by intern() */
+  static final int                MAX_INTERNED=4096;
+  static HashMap<Long,Proportion> internedValues=new HashMap<Long,Proportion>();
+
 /*----------------------------------------------------------------------*/
 /* Instance variables */
 
@@ -139,6 +156,39 @@ Parameters:
     return p1.lessThanOrEqualTo(p2) ? p1 : p2;
   }
 
+/*------------------------------------------------------------------------
+Method:  Proportion intern(int i1,int i2|Proportion p)
+Purpose: Return shared instance of a proportion value; only for use where
+         the result will never be modified in place (event lengths,
+         proportion signs, etc.), since every holder of the same value
+         receives the same object
+Parameters:
+  Input:  int i1,i2    - numerator and denominator
+          Proportion p - proportion value
+  Output: -
+  Return: shared proportion with the given value (null if p is null)
+------------------------------------------------------------------------*/
+
+  public static Proportion intern(int i1,int i2)
+  {
+    Long key=Long.valueOf(((long)i1<<32)|(i2&0xFFFFFFFFL));
+    synchronized (internedValues)
+      {
+        Proportion sharedp=internedValues.get(key);
+        if (sharedp!=null)
+          return sharedp;
+        sharedp=new Proportion(i1,i2);
+        if (internedValues.size()<MAX_INTERNED)
+          internedValues.put(key,sharedp);
+        return sharedp;
+      }
+  }
+
+  public static Proportion intern(Proportion p)
+  {
+    return p==null ? null : intern(p.i1,p.i2);
+  }
+
 /*----------------------------------------------------------------------*/
 /* Instance methods */
 
@@ -210,32 +260,50 @@ Parameters:
     if (i1==0)
       return this;
 
-    /* find greatest common factor */
-    int gnum,lnum,remainder;
+    setVal((long)i1,(long)i2,true);
+    return this;
+  }
 
-    if (i1>i2)
-      {
-        gnum=i1;
-        lnum=i2;
-      }
-    else
+/*------------------------------------------------------------------------
+Method:  void setVal(long n1,long n2,boolean reduce)
+Purpose: Set value from 64-bit intermediate results; values too large for
+         32-bit terms are approximated, and a zero denominator throws an
+         ArithmeticException (as reduce() always has)
+Parameters:
+  Input:  long n1,n2     - numerator and denominator
+          boolean reduce - whether to reduce to lowest terms (with positive
+                           denominator)
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+  void setVal(long n1,long n2,boolean reduce)
+  {
+    if (n2==0)
+      throw new ArithmeticException("Proportion: zero denominator");
+
+    if (reduce && n1!=0 && n2!=0)
       {
-        gnum=i2;
-        lnum=i1;
+        if (n2<0)
+          {
+            n1=-n1;
+            n2=-n2;
+          }
+        long gcf=MusicTime.gcd(n1<0 ? -n1 : n1,n2);
+        n1/=gcf;
+        n2/=gcf;
       }
-    remainder=gnum%lnum;
-    while (remainder!=0)
+
+    if (n1<-Integer.MAX_VALUE || n1>Integer.MAX_VALUE ||
+        n2<-Integer.MAX_VALUE || n2>Integer.MAX_VALUE)
       {
-        gnum=lnum;
-        lnum=remainder;
-        remainder=gnum%lnum;
+        long t=MusicTime.valueOf(n1,n2);
+        n1=MusicTime.num(t);
+        n2=MusicTime.den(t);
       }
 
-    /* lnum==GCF */
-    i1/=lnum;
-    i2/=lnum;
-
-    return this;
+    i1=(int)n1;
+    i2=(int)n2;
   }
 
 /*------------------------------------------------------------------------
@@ -249,7 +317,35 @@ Parameters:
 
   public boolean equals(Proportion p)
   {
-    return toDouble()==p.toDouble();
+    return (long)i1*p.i2==(long)p.i1*i2;
+  }
+
+/*------------------------------------------------------------------------
+Method:  int valueHash()
+Purpose: Calculate hash code consistent with equals() (equal values in
+         different terms give the same code)
+Parameters:
+  Input:  -
+  Output: -
+  Return: hash code of reduced value
+------------------------------------------------------------------------*/
+
+  public int valueHash()
+  {
+    if (i2==0)
+      return 1;
+    if (i1==0)
+      return 0;
+
+    long n1=i1,
+         n2=i2;
+    if (n2<0)
+      {
+        n1=-n1;
+        n2=-n2;
+      }
+    long gcf=MusicTime.gcd(n1<0 ? -n1 : n1,n2);
+    return (int)(n1/gcf)*31+(int)(n2/gcf);
   }
 
 /*------------------------------------------------------------------------
@@ -263,22 +359,31 @@ Parameters:
 
   public boolean greaterThan(Proportion p)
   {
-    return this.toDouble()>p.toDouble();
+    return compareTo(p)>0;
   }
 
   public boolean greaterThanOrEqualTo(Proportion p)
   {
-    return this.toDouble()>=p.toDouble();
+    return compareTo(p)>=0;
   }
 
   public boolean lessThan(Proportion p)
   {
-    return this.toDouble()<p.toDouble();
+    return compareTo(p)<0;
   }
 
   public boolean lessThanOrEqualTo(Proportion p)
   {
-    return this.toDouble()<=p.toDouble();
+    return compareTo(p)<=0;
+  }
+
+  public int compareTo(Proportion p)
+  {
+    long c1=(long)this.i1*p.i2,
+         c2=(long)p.i1*this.i2;
+    if (((long)this.i2*p.i2)<0)
+      return c1<c2 ? 1 : c1==c2 ? 0 : -1;
+    return c1<c2 ? -1 : c1==c2 ? 0 : 1;
   }
 
 /*------------------------------------------------------------------------
@@ -297,12 +402,11 @@ Parameters:
 
     if (i2!=p.i2)
       {
-        i1=i1*p.i2+p.i1*i2;
-        i2*=p.i2;
-        reduce();
+        long gcf=MusicTime.gcd(Math.abs((long)i2),Math.abs((long)p.i2));
+        setVal((long)i1*(p.i2/gcf)+(long)p.i1*(i2/gcf),(i2/gcf)*p.i2,true);
       }
     else
-      i1+=p.i1;
+      setVal((long)i1+p.i1,i2,false);
   }
 
 /*------------------------------------------------------------------------
@@ -316,23 +420,35 @@ Parameters:
 
   public void multiply(int o1,int o2)
   {
-    i1*=o1;
-    i2*=o2;
-    reduce();
+    setProduct(i1,i2,o1,o2);
   }
 
   public void multiply(Proportion other)
   {
-    this.i1*=other.i1;
-    this.i2*=other.i2;
-    reduce();
+    setProduct(this.i1,this.i2,other.i1,other.i2);
   }
 
   public void divide(Proportion other)
   {
-    this.i1*=other.i2;
-    this.i2*=other.i1;
-    reduce();
+    setProduct(this.i1,this.i2,other.i2,other.i1);
+  }
+
+  /* cross-reduce before multiplying (n1/d1 * n2/d2) */
+  void setProduct(long n1,long d1,long n2,long d2)
+  {
+    long g1=MusicTime.gcd(Math.abs(n1),Math.abs(d2)),
+         g2=MusicTime.gcd(Math.abs(n2),Math.abs(d1));
+    if (g1>1)
+      {
+        n1/=g1;
+        d2/=g1;
+      }
+    if (g2>1)
+      {
+        n2/=g2;
+        d1/=g2;
+      }
+    setVal(n1*n2,d1*d2,true);
   }
 
 /*------------------------------------------------------------------------
@@ -351,12 +467,12 @@ Parameters:
 
     if (this.i2!=other.i2)
       {
-        this.i1=this.i1*other.i2-other.i1*this.i2;
-        this.i2*=other.i2;
-        reduce();
+        long gcf=MusicTime.gcd(Math.abs((long)this.i2),Math.abs((long)other.i2));
+        setVal((long)this.i1*(other.i2/gcf)-(long)other.i1*(this.i2/gcf),
+               (this.i2/gcf)*other.i2,true);
       }
     else
-      this.i1-=other.i1;
+      setVal((long)this.i1-other.i1,this.i2,false);
   }
 
 /*------------------------------------------------------------------------
@@ -71,7 +71,7 @@ Parameters:
 
   public Event createCopy()
   {
-    Event e=new ProportionEvent(new Proportion(this.proportion));
+    Event e=new ProportionEvent(Proportion.intern(this.proportion));
     e.copyEventAttributes(this);
     return e;
   }
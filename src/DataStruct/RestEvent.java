@@ -18,6 +18,7 @@
 3/15/06: introduced rest-form calculations based on mensuration (for longas
          and maximas)
 7/19/06: added default positioning for rests in modern cleffing
+10/17/26: rest lengths are interned (shared, never modified in place)
 
                                                                         */
 /*----------------------------------------------------------------------*/
@@ -116,7 +117,7 @@ Parameters:
     super();
     eventtype=EVENT_REST;
     notetype=nt;
-    length=musictime=p==null ? null : new Proportion(p);
+    length=musictime=Proportion.intern(p);
     bottomline=bl;
     numlines=nl;
     numSets=notetype==NoteEvent.NT_Maxima ? ns : 1;
@@ -21,6 +21,9 @@
           variants
 4/23/10:  fixed a few bugs when checking rhythms for notes with null
           rhythmic values (chant sections)
+10/17/26: hasVariant* keep running times as packed MusicTime values
+          (no allocation per event, exact comparisons)
+10/17/26: added calcContentHash (for grouping identical readings)
 
                                                                         */
 /*----------------------------------------------------------------------*/
@@ -125,6 +128,26 @@ Parameters:
     return i-1;
   }
 
+/*------------------------------------------------------------------------
+Method:  int calcContentHash(EventListData el,int i1,int i2)
+Purpose: Calculate hash code of a list of events, consistent with
+         equals(EventListData,int,int) (identical lists always have the same
+         code)
+Parameters:
+  Input:  EventListData el - event list
+          int i1,i2        - first and last indices to include
+  Output: -
+  Return: hash code
+------------------------------------------------------------------------*/
+
+  public static int calcContentHash(EventListData el,int i1,int i2)
+  {
+    int h=i2-i1+1;
+    for (int i=i1; i<=i2; i++)
+      h=h*31+el.getEvent(i).contentHash();
+    return h;
+  }
+
 /*------------------------------------------------------------------------
 Methods: String varTypesToStr(long varTypeFlags)
 Purpose: Create string representation of variant types in a set of flags
@@ -223,6 +246,20 @@ Parameters:
     return true;
   }
 
+/*------------------------------------------------------------------------
+Method:  int calcContentHash()
+Purpose: Calculate hash code of this reading's events
+Parameters:
+  Input:  -
+  Output: -
+  Return: hash code
+------------------------------------------------------------------------*/
+
+  public int calcContentHash()
+  {
+    return calcContentHash(events,0,getNumEvents()-1);
+  }
+
 /*------------------------------------------------------------------------
 Method:  boolean eventsEqual(VariantReading other)
 Purpose: Check whether two readings contain the same event list
@@ -315,7 +352,7 @@ Parameters:
   {
     int        i=0;
     Event      e1=null,e2=null;
-    Proportion mt1=new Proportion(0,1),mt2=new Proportion(0,1);
+    long       mt1=MusicTime.ZERO,mt2=MusicTime.ZERO;
     do
       {
         /* find position of next note in each list */
@@ -323,18 +360,18 @@ Parameters:
         e1=getVarEvent(events,i);
         while (e1!=null && e1.rhythmicEventType()!=Event.EVENT_NOTE)
           {
-            mt1.add(e1.calcProportionalMusicLength());
+            mt1=MusicTime.add(mt1,MusicTime.valueOf(e1.calcProportionalMusicLength()));
             e1=getVarEvent(events,++i);
           }
         e2=getVarEvent(v,vi);
         while (e2!=null && e2.rhythmicEventType()!=Event.EVENT_NOTE)
           {
-            mt2.add(e2.calcProportionalMusicLength());
+            mt2=MusicTime.add(mt2,MusicTime.valueOf(e2.calcProportionalMusicLength()));
             e2=getVarEvent(v,++vi);
           }
 
         /* differing rest lengths? */
-        if (!mt1.equals(mt2))
+        if (mt1!=mt2)
           return true;
 
         /* differing note lengths? */
@@ -344,17 +381,17 @@ Parameters:
 
         if (e1!=null)
           {
-            mt1.add(e1.calcProportionalMusicLength());
+            mt1=MusicTime.add(mt1,MusicTime.valueOf(e1.calcProportionalMusicLength()));
             i++;
           }
         if (e2!=null)
           {
-            mt2.add(e2.calcProportionalMusicLength());
+            mt2=MusicTime.add(mt2,MusicTime.valueOf(e2.calcProportionalMusicLength()));
             vi++;
           }
 
         /* are voices in the same place after adding the previous note(s)? */
-        if (!mt1.equals(mt2))
+        if (mt1!=mt2)
           return true;
       }
     while (e1!=null && e2!=null);
@@ -455,7 +492,7 @@ Parameters:
   {
     int        i=0;
     Event      e1=null,e2=null;
-    Proportion mt1=new Proportion(0,1),mt2=new Proportion(0,1);
+    long       mt1=MusicTime.ZERO,mt2=MusicTime.ZERO;
 
     do
       {
@@ -463,13 +500,13 @@ Parameters:
         e1=getVarEvent(events,i);
         while (e1!=null && !e1.hasEventType(Event.EVENT_ORIGINALTEXT))
           {
-            mt1.add(e1.getmusictime());
+            mt1=MusicTime.add(mt1,MusicTime.valueOf(e1.getmusictime()));
             e1=getVarEvent(events,++i);
           }
         e2=getVarEvent(v,vi);
         while (e2!=null && !e2.hasEventType(Event.EVENT_ORIGINALTEXT))
           {
-            mt2.add(e2.getmusictime());
+            mt2=MusicTime.add(mt2,MusicTime.valueOf(e2.getmusictime()));
             e2=getVarEvent(v,++vi);
           }
 
@@ -486,7 +523,7 @@ Parameters:
           return true;
 
         /* different positioning? */
-        if (!mt1.equals(mt2))
+        if (mt1!=mt2)
           return true;
 
         if (e1!=null)
@@ -503,7 +540,7 @@ Parameters:
   {
     int        i=0;
     Event      e1=null,e2=null;
-    Proportion mt1=new Proportion(0,1),mt2=new Proportion(0,1);
+    long       mt1=MusicTime.ZERO,mt2=MusicTime.ZERO;
 
 //System.out.println("HVA vi="+vi);
     e2=getVarEvent(v,vi);
@@ -524,13 +561,13 @@ Parameters:
         while (e1!=null && !e1.hasAccidentalClef())
           {
 //System.out.println("HVA1");
-            mt1.add(e1.getmusictime());
+            mt1=MusicTime.add(mt1,MusicTime.valueOf(e1.getmusictime()));
             e1=getVarEvent(events,++i);
           }
         e2=getVarEvent(v,vi);
         while (e2!=null && !e2.hasAccidentalClef())
           {
-            mt2.add(e2.getmusictime());
+            mt2=MusicTime.add(mt2,MusicTime.valueOf(e2.getmusictime()));
             e2=getVarEvent(v,++vi);
           }
 
@@ -573,7 +610,7 @@ Parameters:
             /* different positioning? (if both are clef+sig, doesn't matter) */
             if (!fullClefs)
               {
-                if (!mt1.equals(mt2))
+                if (mt1!=mt2)
                   return true;
               }
           }
@@ -592,7 +629,7 @@ Parameters:
   {
     int        i=0;
     Event      e1=null,e2=null;
-    Proportion mt1=new Proportion(0,1),mt2=new Proportion(0,1);
+    long       mt1=MusicTime.ZERO,mt2=MusicTime.ZERO;
 
     do
       {
@@ -600,13 +637,13 @@ Parameters:
         e1=getVarEvent(events,i);
         while (e1!=null && !e1.hasPrincipalClef())
           {
-            mt1.add(e1.getmusictime());
+            mt1=MusicTime.add(mt1,MusicTime.valueOf(e1.getmusictime()));
             e1=getVarEvent(events,++i);
           }
         e2=getVarEvent(v,vi);
         while (e2!=null && !e2.hasPrincipalClef())
           {
-            mt2.add(e2.getmusictime());
+            mt2=MusicTime.add(mt2,MusicTime.valueOf(e2.getmusictime()));
             e2=getVarEvent(v,++vi);
           }
 
@@ -623,7 +660,7 @@ Parameters:
           return true;
 
         /* different positioning? */
-        if (!mt1.equals(mt2))
+        if (mt1!=mt2)
           return true;
 
         if (e1!=null)
@@ -640,7 +677,7 @@ Parameters:
   {
     int        i=0;
     Event      e1=null,e2=null;
-    Proportion mt1=new Proportion(0,1),mt2=new Proportion(0,1);
+    long       mt1=MusicTime.ZERO,mt2=MusicTime.ZERO;
 
     do
       {
@@ -648,13 +685,13 @@ Parameters:
         e1=getVarEvent(events,i);
         while (e1!=null && !e1.hasEventType(Event.EVENT_MENS))
           {
-            mt1.add(e1.getmusictime());
+            mt1=MusicTime.add(mt1,MusicTime.valueOf(e1.getmusictime()));
             e1=getVarEvent(events,++i);
           }
         e2=getVarEvent(v,vi);
         while (e2!=null && !e2.hasEventType(Event.EVENT_MENS))
           {
-            mt2.add(e2.getmusictime());
+            mt2=MusicTime.add(mt2,MusicTime.valueOf(e2.getmusictime()));
             e2=getVarEvent(v,++vi);
           }
 
@@ -674,7 +711,7 @@ Parameters:
           return true;
 
         /* different positioning? */
-        if (!mt1.equals(mt2))
+        if (mt1!=mt2)
           return true;
 
         if (e1!=null)
@@ -691,7 +728,7 @@ Parameters:
   {
     int        i=0;
     Event      e1=null,e2=null;
-    Proportion mt1=new Proportion(0,1),mt2=new Proportion(0,1);
+    long       mt1=MusicTime.ZERO,mt2=MusicTime.ZERO;
 
     do
       {
@@ -706,7 +743,7 @@ Parameters:
               lne1=null;
             if (lne1==null)
               {
-                mt1.add(e1.getmusictime());
+                mt1=MusicTime.add(mt1,MusicTime.valueOf(e1.getmusictime()));
                 e1=getVarEvent(events,++i);
               }
           }
@@ -718,7 +755,7 @@ Parameters:
               lne2=null;
             if (lne2==null)
               {
-                mt2.add(e2.getmusictime());
+                mt2=MusicTime.add(mt2,MusicTime.valueOf(e2.getmusictime()));
                 e2=getVarEvent(v,++vi);
               }
           }
@@ -732,7 +769,7 @@ Parameters:
           return false;
 
         /* different positioning? */
-        if (!mt1.equals(mt2))
+        if (mt1!=mt2)
           return true;
 
         /* now check that entire ligature matches */
@@ -749,18 +786,18 @@ Parameters:
               doneLigCheck=true;
             else
               {
-                mt1.add(e1.getmusictime());
-                mt2.add(e2.getmusictime());
+                mt1=MusicTime.add(mt1,MusicTime.valueOf(e1.getmusictime()));
+                mt2=MusicTime.add(mt2,MusicTime.valueOf(e2.getmusictime()));
                 e1=getVarEvent(events,++i);
                 while (e1!=null && !e1.hasEventType(Event.EVENT_NOTE))
                   {
-                    mt1.add(e1.getmusictime());
+                    mt1=MusicTime.add(mt1,MusicTime.valueOf(e1.getmusictime()));
                     e1=getVarEvent(events,++i);
                   }
                 e2=getVarEvent(v,++vi);
                 while (e2!=null && !e2.hasEventType(Event.EVENT_NOTE))
                   {
-                    mt2.add(e2.getmusictime());
+                    mt2=MusicTime.add(mt2,MusicTime.valueOf(e2.getmusictime()));
                     e2=getVarEvent(v,++vi);
                   }
                 lne1=e1==null ? null : (NoteEvent)(e1.getFirstEventOfType(Event.EVENT_NOTE));
@@ -786,26 +823,26 @@ Parameters:
   {
     int        i=0;
     Event      e1=null,e2=null;
-    Proportion mt1=new Proportion(0,1),mt2=new Proportion(0,1);
+    long       mt1=MusicTime.ZERO,mt2=MusicTime.ZERO;
     do
       {
         /* find position of next line end in each list */
         e1=getVarEvent(events,i);
         while (e1!=null && e1.geteventtype()!=Event.EVENT_LINEEND)
           {
-            mt1.add(e1.getmusictime());
+            mt1=MusicTime.add(mt1,MusicTime.valueOf(e1.getmusictime()));
             e1=getVarEvent(events,++i);
           }
         e2=getVarEvent(v,vi);
         while (e2!=null && e2.geteventtype()!=Event.EVENT_LINEEND)
           {
-            mt2.add(e2.getmusictime());
+            mt2=MusicTime.add(mt2,MusicTime.valueOf(e2.getmusictime()));
             e2=getVarEvent(v,++vi);
           }
 
         /* differing position of line ends? */
         if (e1!=null && e2!=null &&
-            !mt1.equals(mt2))
+            mt1!=mt2)
           return true;
 
         /* one has line end and the other doesn't? */
@@ -848,7 +885,7 @@ Parameters:
   {
     int        i=0;
     Event      e1=null,e2=null;
-    Proportion mt1=new Proportion(0,1),mt2=new Proportion(0,1);
+    long       mt1=MusicTime.ZERO,mt2=MusicTime.ZERO;
 
     e1=getVarEvent(events,i);
     e2=getVarEvent(v,vi);
@@ -859,34 +896,34 @@ Parameters:
 
     do
       {
-        Proportion nextE1T=Proportion.sum(mt1,e1.getmusictime());
-        while (nextE1T.greaterThan(mt2))
+        long nextE1T=MusicTime.add(mt1,MusicTime.valueOf(e1.getmusictime()));
+        while (MusicTime.compare(nextE1T,mt2)>0)
           {
-            if (mt2.equals(mt1) && e2.hasVariantColoration(e1))
+            if (mt2==mt1 && e2.hasVariantColoration(e1))
               return true;
-            mt2.add(e2.getmusictime());
+            mt2=MusicTime.add(mt2,MusicTime.valueOf(e2.getmusictime()));
             e2=getVarEvent(v,++vi);
             if (e2==null)
               return false;
           }
-        Proportion nextE2T=Proportion.sum(mt2,e2.getmusictime());
-        while (nextE2T.greaterThan(mt1))
+        long nextE2T=MusicTime.add(mt2,MusicTime.valueOf(e2.getmusictime()));
+        while (MusicTime.compare(nextE2T,mt1)>0)
           {
-            if (mt2.equals(mt1) && e2.hasVariantColoration(e1))
+            if (mt2==mt1 && e2.hasVariantColoration(e1))
               return true;
-            mt1.add(e1.getmusictime());
+            mt1=MusicTime.add(mt1,MusicTime.valueOf(e1.getmusictime()));
             e1=getVarEvent(events,++i);
             if (e1==null)
               return false;
           }
 
-        if (mt1.equals(mt2) && nextE1T.equals(nextE2T))
+        if (mt1==mt2 && nextE1T==nextE2T)
           {
             if (e2.hasVariantColoration(e1))
               return true;
-            mt1.add(e1.getmusictime());
+            mt1=MusicTime.add(mt1,MusicTime.valueOf(e1.getmusictime()));
             e1=getVarEvent(events,++i);
-            mt2.add(e2.getmusictime());
+            mt2=MusicTime.add(mt2,MusicTime.valueOf(e2.getmusictime()));
             e2=getVarEvent(v,++vi);
           }
       }
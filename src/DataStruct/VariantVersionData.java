@@ -16,6 +16,8 @@
 
         Updates         :
 7/19/08: added missing voices list
+10/17/26: constructMusicData shares event lists of voices without readings
+          for this version instead of copying them
 
                                                                         */
 /*----------------------------------------------------------------------*/
@@ -127,9 +129,15 @@ Parameters:
                 newV.setMissingVersions(origV.getMissingVersions());
 
                 /* iterate through events list, copying everything but replacing
-                   VARIANTDATA segments when necessary */
+                   VARIANTDATA segments when necessary; voices without readings
+                   for this version simply share the default event list */
                 int     ei=0;
                 boolean done=ei>=origV.getNumEvents();
+                if (!hasReadings(origV))
+                  {
+                    newV.shareEvents(origV);
+                    done=true;
+                  }
                 while (!done)
                   {
                     Event e=origV.getEvent(ei);
@@ -189,6 +197,25 @@ Parameters:
     return newMusicData;
   }
 
+/*------------------------------------------------------------------------
+Method:  boolean hasReadings(VoiceEventListData v)
+Purpose: Check whether one voice contains any variant readings belonging
+         to this version
+Parameters:
+  Input:  VoiceEventListData v - voice to check
+  Output: -
+  Return: true if the voice has at least one reading for this version
+------------------------------------------------------------------------*/
+
+  boolean hasReadings(VoiceEventListData v)
+  {
+    for (Event e : v.events)
+      if (e.geteventtype()==Event.EVENT_VARIANTDATA_START &&
+          e.getVariantReading(this)!=null)
+        return true;
+    return false;
+  }
+
 /*------------------------------------------------------------------------
 Methods: void set*()
 Purpose: Routines to set attribute variables
@@ -15,6 +15,8 @@
 
         Updates         :
 1/15/08: moved basic list functions to EventListData
+10/17/26: parameter recalculation after adding/deleting events starts at the
+          modified index and stops once parameters are unchanged
 
                                                                         */
 /*----------------------------------------------------------------------*/
@@ -105,16 +107,22 @@ Parameters:
   }
 
 /*------------------------------------------------------------------------
-Method:  void addEvent(int i,Event e)
+Method:  void addEvent(int i,Event e[,VoiceEventListData lastv])
 Purpose: Add event to this voice's list (at specified location)
 Parameters:
-  Input:  int i   - index of location for addition
-          Event e - event to add
+  Input:  int i                    - index of location for addition
+          Event e                  - event to add
+          VoiceEventListData lastv - previous section of this voice
   Output: -
   Return: -
 ------------------------------------------------------------------------*/
 
   public void addEvent(int i,Event e)
+  {
+    addEvent(i,e,null);
+  }
+
+  public void addEvent(int i,Event e,VoiceEventListData lastv)
   {
     Event addedEvent=e;
     int   listPlace=i;
@@ -140,17 +148,18 @@ Parameters:
           e=(Event)li.next();
           e.setListPlace(++i);
         }
-    e.setcolorparams(section.getBaseColoration());
 
     if (addedEvent.hasSignatureClef() ||
         addedEvent.getMensInfo()!=null ||
         addedEvent.geteventtype()==Event.EVENT_COLORCHANGE ||
+        addedEvent.geteventtype()==Event.EVENT_PROPORTION ||
         addedEvent.geteventtype()==Event.EVENT_LACUNA ||
         addedEvent.geteventtype()==Event.EVENT_LACUNA_END ||
         addedEvent.geteventtype()==Event.EVENT_MODERNKEYSIGNATURE ||
         addedEvent.geteventtype()==Event.EVENT_VARIANTDATA_START ||
-        addedEvent.geteventtype()==Event.EVENT_VARIANTDATA_END)
-      recalcEventParams();
+        addedEvent.geteventtype()==Event.EVENT_VARIANTDATA_END ||
+        adjacentSignatureClefs(listPlace-1,listPlace+1))
+      recalcEventParams(lastv,listPlace,listPlace+1);
   }
 
 /*------------------------------------------------------------------------
@@ -189,16 +198,36 @@ Parameters:
     if (deletedEvent.hasSignatureClef() ||
         deletedEvent.getMensInfo()!=null ||
         deletedEvent.geteventtype()==Event.EVENT_COLORCHANGE ||
+        deletedEvent.geteventtype()==Event.EVENT_PROPORTION ||
         deletedEvent.geteventtype()==Event.EVENT_LACUNA ||
         deletedEvent.geteventtype()==Event.EVENT_LACUNA_END ||
         deletedEvent.geteventtype()==Event.EVENT_MODERNKEYSIGNATURE ||
         deletedEvent.geteventtype()==Event.EVENT_VARIANTDATA_START ||
-        deletedEvent.geteventtype()==Event.EVENT_VARIANTDATA_END)
-      recalcEventParams(lastv);
+        deletedEvent.geteventtype()==Event.EVENT_VARIANTDATA_END ||
+        adjacentSignatureClefs(i-1,i))
+      recalcEventParams(lastv,i,i);
 
     return deletedEvent;
   }
 
+/*------------------------------------------------------------------------
+Method:  boolean adjacentSignatureClefs(int i1,int i2)
+Purpose: Check whether the events on either side of an insertion or
+         deletion are both signature clefs (in which case the edit splits or
+         joins a clef set, even if the event itself is not a clef)
+Parameters:
+  Input:  int i1,i2 - indices of events before and after edit point
+  Output: -
+  Return: true if both events have signature clefs
+------------------------------------------------------------------------*/
+
+  boolean adjacentSignatureClefs(int i1,int i2)
+  {
+    Event e1=getEvent(i1),
+          e2=getEvent(i2);
+    return e1!=null && e2!=null && e1.hasSignatureClef() && e2.hasSignatureClef();
+  }
+
 /*------------------------------------------------------------------------
 Method:  void truncateEvents(int deletionPoint)
 Purpose: Truncate event list at a given point
@@ -248,6 +277,26 @@ Parameters:
         curevent.setListPlace(listPlace++);
   }
 
+/*------------------------------------------------------------------------
+Method:  boolean recalcEventParams(EventListData lastv,int start,int firstStop)
+Purpose: Recalculate event attributes incrementally after a change (list
+         places are already maintained by addEvent and deleteEvent)
+Parameters:
+  Input:  EventListData lastv - previous section of this voice
+          int start           - index of first modified event
+          int firstStop       - first index at which recalculation may stop
+  Output: -
+  Return: true if the parameters at the end of the voice may have changed
+------------------------------------------------------------------------*/
+
+  public boolean recalcEventParams(EventListData lastv,int start,int firstStop)
+  {
+    if (events.size()==0)
+      return false;
+    Event paramEvent=lastv==null ? getEvent(0) : lastv.getEvent(lastv.getNumEvents()-1);
+    return recalcEventParams(paramEvent,section.getBaseColoration(),start,firstStop);
+  }
+
 /*------------------------------------------------------------------------
 Methods: get*() / is*()
 Purpose: Routines to return attribute variables
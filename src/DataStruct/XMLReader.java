@@ -21,6 +21,11 @@ Updates:
          directory with a .cmme.xml file)
 6/30/10: added noEntityBuilder for reading MusicXML documents while
          ignoring DOCTYPE declarations
+10/17/26: added StAX stream reader support (for parsing large documents
+          without building a full DOM tree)
+10/17/26: parsers are now created per thread, so that documents can be
+          loaded concurrently; compiled schema grammar is cached and shared
+          between validating parsers
 
                                                                         */
 /*----------------------------------------------------------------------*/
@@ -35,6 +40,12 @@ import org.jdom.input.*;
 import org.xml.sax.EntityResolver;
 import org.xml.sax.InputSource;
 
+import java.io.InputStream;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
 /*----------------------------------------------------------------------*/
 
 /*------------------------------------------------------------------------
@@ -49,10 +60,25 @@ public class XMLReader
 /* Class variables */
 
   static final String ValParserName="org.apache.xerces.parsers.SAXParser",
-                      NonvalParserName="gnu.xml.aelfred2.SAXDriver";
-  static SAXBuilder   builder,
-                      noEntityBuilder=null;
-  static boolean      inited=false;
+                      NonvalParserName="gnu.xml.aelfred2.SAXDriver",
+                      GrammarPoolClassName="org.apache.xerces.util.XMLGrammarPoolImpl",
+                      GrammarPoolProperty="http://apache.org/xml/properties/internal/grammar-pool";
+
+  /* parser configuration (set by initparser) */
+  static String           database=null;
+  static boolean          validate=false;
+  static volatile boolean inited=false;
+
+  /* parsers are not thread-safe; each thread gets its own instances.
+     builders is replaced whenever the configuration changes, discarding
+     builders created under the old configuration */
+  static volatile ThreadLocal<SAXBuilder> builders=null;
+  static final ThreadLocal<SAXBuilder>    nonValBuilders=new ThreadLocal<SAXBuilder>(),
+                                          noEntityBuilders=new ThreadLocal<SAXBuilder>();
+  static final ThreadLocal<XMLInputFactory> streamFactories=new ThreadLocal<XMLInputFactory>();
+
+  /* compiled schema grammars, shared by all validating parsers */
+  static Object grammarPool=null;
 
 /*----------------------------------------------------------------------*/
 
@@ -121,24 +147,68 @@ Parameters:
   Return: -
 ------------------------------------------------------------------------*/
 
-  public static void initparser(String db,boolean validate)
+  public static synchronized void initparser(String db,boolean validate)
+  {
+    XMLReader.database=db;
+    XMLReader.validate=validate;
+    if (validate && grammarPool==null)
+      grammarPool=createGrammarPool();
+    builders=new ThreadLocal<SAXBuilder>();
+    inited=true;
+  }
+
+/*------------------------------------------------------------------------
+Method:  SAXBuilder createParser()
+Purpose: Create XML parser according to current configuration
+Parameters:
+  Input:  -
+  Output: -
+  Return: new parser
+------------------------------------------------------------------------*/
+
+  static synchronized SAXBuilder createParser()
+  {
+    if (!validate)
+      return new SAXBuilder(NonvalParserName,false);
+
+    /* validates based on XML Schema */
+    SAXBuilder newBuilder=new SAXBuilder(ValParserName,true);
+    newBuilder.setFeature("http://apache.org/xml/features/validation/schema",
+                          true);
+    newBuilder.setEntityResolver(new CMMEEntityResolver(database));
+    if (grammarPool!=null)
+      newBuilder.setProperty(GrammarPoolProperty,grammarPool);
+
+    return newBuilder;
+  }
+
+/*------------------------------------------------------------------------
+Method:  Object createGrammarPool()
+Purpose: Create grammar cache for validating parser, so that cmme.xsd is
+         compiled once and reused by every parse (loaded by name to avoid a
+         hard dependency on xercesImpl.jar)
+Parameters:
+  Input:  -
+  Output: -
+  Return: grammar pool, or null if not available
+------------------------------------------------------------------------*/
+
+  static Object createGrammarPool()
   {
-    if (validate)
+    try
       {
-        /* validates based on XML Schema */
-        builder=new SAXBuilder(ValParserName,true);
-        builder.setFeature("http://apache.org/xml/features/validation/schema",
-                           true);
-        builder.setEntityResolver(new CMMEEntityResolver(db));
+        return Class.forName(GrammarPoolClassName).getDeclaredConstructor().newInstance();
+      }
+    catch (Exception e)
+      {
+        System.err.println("Schema grammar caching unavailable: "+e);
+        return null;
       }
-    else
-      builder=new SAXBuilder(NonvalParserName,false);
-    inited=true;
   }
 
 /*------------------------------------------------------------------------
 Method:  SAXBuilder getParser()
-Purpose: Return XML parser
+Purpose: Return XML parser for the calling thread
 Parameters:
   Input:  -
   Output: -
@@ -147,19 +217,27 @@ Parameters:
 
   public static SAXBuilder getNonValidatingParser()
   {
-    if (inited && !builder.getValidation())
-      return builder;
-    else
-      return new SAXBuilder(NonvalParserName,false);
+    if (inited && !validate)
+      return getParser();
+
+    SAXBuilder nonValBuilder=nonValBuilders.get();
+    if (nonValBuilder==null)
+      {
+        nonValBuilder=new SAXBuilder(NonvalParserName,false);
+        nonValBuilders.set(nonValBuilder);
+      }
+    return nonValBuilder;
   }
 
   public static SAXBuilder getNoEntityParser()
   {
+    SAXBuilder noEntityBuilder=noEntityBuilders.get();
     if (noEntityBuilder==null)
       {
         noEntityBuilder=new SAXBuilder("org.apache.xerces.parsers.SAXParser",false);
         noEntityBuilder.setFeature(
           "http://apache.org/xml/features/nonvalidating/load-external-dtd",false);
+        noEntityBuilders.set(noEntityBuilder);
       }
 
     return noEntityBuilder;
@@ -167,10 +245,174 @@ Parameters:
 
   public static SAXBuilder getParser()
   {
-    if (inited)
-      return builder;
-    System.err.println("XML Reader called before initialization");
-    return null;
+    if (!inited)
+      {
+        System.err.println("XML Reader called before initialization");
+        return null;
+      }
+
+    ThreadLocal<SAXBuilder> curBuilders=builders;
+    SAXBuilder              builder=curBuilders.get();
+    if (builder==null)
+      {
+        builder=createParser();
+        curBuilders.set(builder);
+      }
+    return builder;
+  }
+
+/*------------------------------------------------------------------------
+Method:  boolean isValidating()
+Purpose: Check whether the main parser has been initialized to validate input
+Parameters:
+  Input:  -
+  Output: -
+  Return: true if input is validated against the CMME schema
+------------------------------------------------------------------------*/
+
+  public static boolean isValidating()
+  {
+    return inited && validate;
+  }
+
+/*------------------------------------------------------------------------
+Method:  XMLStreamReader getStreamReader(InputStream in)
+Purpose: Create non-validating pull parser for reading a document
+         incrementally (factory is per-thread, as factory implementations
+         may reuse reader state)
+Parameters:
+  Input:  InputStream in - document input
+  Output: -
+  Return: stream reader positioned at start of document
+------------------------------------------------------------------------*/
+
+  public static XMLStreamReader getStreamReader(InputStream in) throws XMLStreamException
+  {
+    XMLInputFactory streamFactory=streamFactories.get();
+    if (streamFactory==null)
+      {
+        streamFactory=XMLInputFactory.newInstance();
+        streamFactory.setProperty(XMLInputFactory.IS_COALESCING,Boolean.TRUE);
+        streamFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE,Boolean.TRUE);
+        streamFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES,Boolean.FALSE);
+        streamFactories.set(streamFactory);
+      }
+
+    return streamFactory.createXMLStreamReader(in);
+  }
+
+/*------------------------------------------------------------------------
+Method:  boolean nextRootElement(XMLStreamReader xmlIn)
+Purpose: Advance stream reader to the start tag of the document's root
+         element
+Parameters:
+  Input:  XMLStreamReader xmlIn - stream reader at start of document
+  Output: -
+  Return: false if document contains no element
+------------------------------------------------------------------------*/
+
+  public static boolean nextRootElement(XMLStreamReader xmlIn) throws XMLStreamException
+  {
+    while (xmlIn.hasNext())
+      if (xmlIn.next()==XMLStreamConstants.START_ELEMENT)
+        return true;
+    return false;
+  }
+
+/*------------------------------------------------------------------------
+Method:  boolean nextChildElement(XMLStreamReader xmlIn)
+Purpose: Advance stream reader to the start tag of the next child of the
+         current element
+Parameters:
+  Input:  XMLStreamReader xmlIn - stream reader positioned at the parent's
+                                  start tag or at the end tag of the last
+                                  child read
+  Output: -
+  Return: true if positioned at a child start tag, false if positioned at
+          the parent's end tag
+------------------------------------------------------------------------*/
+
+  public static boolean nextChildElement(XMLStreamReader xmlIn) throws XMLStreamException
+  {
+    while (true)
+      switch (xmlIn.next())
+        {
+          case XMLStreamConstants.START_ELEMENT:
+            return true;
+          case XMLStreamConstants.END_ELEMENT:
+          case XMLStreamConstants.END_DOCUMENT:
+            return false;
+        }
+  }
+
+/*------------------------------------------------------------------------
+Method:  void skipElement(XMLStreamReader xmlIn)
+Purpose: Skip over the current element and all of its content
+Parameters:
+  Input:  XMLStreamReader xmlIn - stream reader positioned at a start tag
+  Output: -
+  Return: - (stream reader is left positioned at the matching end tag)
+------------------------------------------------------------------------*/
+
+  public static void skipElement(XMLStreamReader xmlIn) throws XMLStreamException
+  {
+    int depth=1;
+    while (depth>0)
+      switch (xmlIn.next())
+        {
+          case XMLStreamConstants.START_ELEMENT:
+            depth++;
+            break;
+          case XMLStreamConstants.END_ELEMENT:
+            depth--;
+            break;
+          case XMLStreamConstants.END_DOCUMENT:
+            return;
+        }
+  }
+
+/*------------------------------------------------------------------------
+Method:  Element readElement(XMLStreamReader xmlIn)
+Purpose: Build DOM tree segment for the current element only (allows
+         tree-based parsing code to process one small segment of a large
+         document at a time)
+Parameters:
+  Input:  XMLStreamReader xmlIn - stream reader positioned at a start tag
+  Output: -
+  Return: element with all attributes and content; stream reader is left
+          positioned at the matching end tag
+------------------------------------------------------------------------*/
+
+  public static Element readElement(XMLStreamReader xmlIn) throws XMLStreamException
+  {
+    Element el=new Element(xmlIn.getLocalName(),
+                           getNamespace(xmlIn.getPrefix(),xmlIn.getNamespaceURI()));
+    for (int ai=0; ai<xmlIn.getAttributeCount(); ai++)
+      el.setAttribute(xmlIn.getAttributeLocalName(ai),xmlIn.getAttributeValue(ai),
+                      getNamespace(xmlIn.getAttributePrefix(ai),xmlIn.getAttributeNamespace(ai)));
+
+    while (true)
+      switch (xmlIn.next())
+        {
+          case XMLStreamConstants.START_ELEMENT:
+            el.addContent(readElement(xmlIn));
+            break;
+          case XMLStreamConstants.CHARACTERS:
+          case XMLStreamConstants.CDATA:
+          case XMLStreamConstants.SPACE:
+            el.addContent(xmlIn.getText());
+            break;
+          case XMLStreamConstants.END_ELEMENT:
+          case XMLStreamConstants.END_DOCUMENT:
+            return el;
+        }
+  }
+
+  static Namespace getNamespace(String prefix,String uri)
+  {
+    if (uri==null || uri.length()==0)
+      return Namespace.NO_NAMESPACE;
+    return Namespace.getNamespace(prefix==null ? "" : prefix,uri);
   }
 
 /*------------------------------------------------------------------------
@@ -33,6 +33,15 @@ Updates:
 6/29/08:  added taskbar icons for dots+mensuration
 9/8/09:   GeneralInfoFrame moved to separate class
 5/7/10:   Improved error-handling/idiot-proofing in file save (as) functions
+10/17/26: file saving runs in the background: the score is serialized on
+          the save thread straight into a temporary file, which is synced and
+          atomically moved over the target file; a failed write leaves the
+          target file untouched. The window (and the windows it owns) accepts
+          no input while the save is running, so the score cannot be edited
+          while it is being written
+10/17/26: scores saved under a .cmme.xml.gz name are gzip-compressed
+          (block-parallel, Util.ParallelGZIPOutputStream)
+10/17/26: modifications invalidate cached version renderings
 
                                                                         */
 /*----------------------------------------------------------------------*/
@@ -59,6 +68,7 @@ import java.awt.GridBagConstraints;
 import java.awt.Dimension;
 import java.awt.Insets;
 import java.awt.RenderingHints;
+import java.awt.Window;
 import java.awt.image.*;
 import java.awt.event.*;
 
@@ -157,6 +167,14 @@ public class EditorWin extends Gfx.MusicWin implements ActionListener,ChangeList
   String            windowFilePath=null;
   boolean           modified=false;
 
+  /* background file save */
+  Gfx.SwingWorker saveThread=null;
+  File            saveFile=null;
+  int             saveProgress=-1; /* percentage written, -1 if not saving */
+  String          saveOrigFileName,     /* window file name/path to restore */
+                  saveOrigFilePath;     /* if the save fails */
+  Window[]        saveDisabledWindows=null;
+
   GeneralInfoFrame generalInfoFrame;
   TextEditorFrame  textEditorFrame;
 
@@ -2823,10 +2841,10 @@ Parameters:
           if (doNotOverwrite(saveFile))
             return false;
 
-          /* save */
+          /* save (the original name is restored if the save fails) */
           windowFileName=saveFile.getName();
           windowFilePath=fn;
-          writeCMMEFile(saveFile);
+          writeCMMEFile(saveFile,origWindowFileName,origWindowFilePath);
 
           return true;
         }
@@ -2846,10 +2864,12 @@ Parameters:
 
 /*------------------------------------------------------------------------
 Method:  boolean fileSave()
-         void writeCMMEFile(File f)
+         void writeCMMEFile(File f,String origFileName,String origFilePath)
 Purpose: Save current score into file
 Parameters:
-  Input:  File f - file to save into
+  Input:  File f              - file to save into
+          String origFileName - window file name to restore if saving fails
+          String origFilePath - window file path to restore if saving fails
   Output: -
   Return: whether file saved successfully
 ------------------------------------------------------------------------*/
@@ -2861,7 +2881,7 @@ Parameters:
     else
       try
         {
-          writeCMMEFile(new File(windowFilePath));
+          writeCMMEFile(new File(windowFilePath),windowFileName,windowFilePath);
         }
       catch (Exception e)
         {
@@ -2875,17 +2895,225 @@ Parameters:
     return true;
   }
 
-  synchronized void writeCMMEFile(File f) throws Exception
+  synchronized void writeCMMEFile(File f,String origFileName,String origFilePath) throws Exception
   {
-    CMMEParser.outputPieceData(musicData,new FileOutputStream(f));
-    addCMMETitle(windowFileName);
+    /* one save at a time */
+    waitForSave();
+
+    final File targetFile=f;
+
     modified=false;
+    saveFile=f;
+    saveOrigFileName=origFileName;
+    saveOrigFilePath=origFilePath;
+    saveProgress=0;
+    updateTitle();
+
+    /* the save thread reads the score itself (and output consolidates
+       variant readings, which edits it), so no edits may be made until it
+       has finished */
+    blockInput(true);
+
+    /* serialize and write file in separate thread */
+    saveThread=new Gfx.SwingWorker()
+    {
+    public Object construct()
+    {
+      try
+        {
+          writeFileData(targetFile);
+        }
+      catch (Exception e)
+        {
+          return e;
+        }
+      return null;
+    }
+
+    public void finished()
+    {
+      saveFinished(this);
+    }
+    }; /* end SwingWorker */
+
+    saveThread.start();
+  }
+
+/*------------------------------------------------------------------------
+Method:  void writeFileData(File f)
+Purpose: Replace contents of file without risk of leaving it incomplete:
+         serialize score into temporary file in the same directory
+         (gzip-compressed for .gz names), force it to disk, and move it over
+         the original in one step (called from save thread); if writing
+         fails, the original file is left untouched
+Parameters:
+  Input:  File f - file to save into
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+  void writeFileData(File f) throws IOException
+  {
+    File dir=f.getAbsoluteFile().getParentFile(),
+         tmpFile=File.createTempFile(f.getName()+".",".tmp",dir);
+
+    /* progress is estimated against the size of the file being replaced */
+    final long expectedSize=f.length();
+
+    FileOutputStream tmpOut=new FileOutputStream(tmpFile);
+    boolean          written=false;
+    try
+      {
+        OutputStream progressOut=new BufferedOutputStream(new FilterOutputStream(tmpOut)
+          {
+            long bytesWritten=0;
+            int  lastPercent=0;
+
+            public void write(byte[] b,int off,int len) throws IOException
+            {
+              out.write(b,off,len);
+              bytesWritten+=len;
+              if (expectedSize>0)
+                {
+                  int percent=(int)(bytesWritten*100/expectedSize);
+                  if (percent>=lastPercent+10 && percent<100)
+                    {
+                      lastPercent=percent;
+                      setSaveProgress(percent);
+                    }
+                }
+            }
+          },65536);
+
+        Util.ParallelGZIPOutputStream gzOut=null;
+        OutputStream                  dataOut=progressOut;
+        if (isGZIPFilename(f.getName()))
+          dataOut=gzOut=new Util.ParallelGZIPOutputStream(progressOut);
+
+        CMMEParser.outputPieceData(musicData,dataOut);
+        if (gzOut!=null)
+          gzOut.finish();
+        progressOut.flush();
+        tmpOut.getFD().sync();
+        written=true;
+      }
+    finally
+      {
+        tmpOut.close();
+        if (!written)
+          tmpFile.delete();
+      }
+
+    try
+      {
+        java.nio.file.Files.move(tmpFile.toPath(),f.toPath(),
+                                 java.nio.file.StandardCopyOption.ATOMIC_MOVE,
+                                 java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+      }
+    catch (IOException e)
+      {
+        throw new IOException("Could not replace "+f+" (new version saved in "+tmpFile+"): "+e,e);
+      }
+  }
+
+  void setSaveProgress(final int percent)
+  {
+    SwingUtilities.invokeLater(new Runnable()
+      {
+        public void run()
+        {
+          if (saveProgress>=0)
+            {
+              saveProgress=percent;
+              updateTitle();
+            }
+        }
+      });
+  }
+
+/*------------------------------------------------------------------------
+Method:  boolean saveFinished(Gfx.SwingWorker saver)
+Purpose: Update GUI after background save has completed
+Parameters:
+  Input:  Gfx.SwingWorker saver - save thread
+  Output: -
+  Return: whether file saved successfully
+------------------------------------------------------------------------*/
+
+  synchronized boolean saveFinished(Gfx.SwingWorker saver)
+  {
+    Exception saveError=(Exception)saver.get();
+    if (saver!=saveThread)
+      return saveError==null; /* already handled */
+
+    saveThread=null;
+    saveProgress=-1;
+    blockInput(false);
+    if (saveError!=null)
+      {
+        modified=true;
+
+        /* window no longer refers to a file which was not written */
+        windowFileName=saveOrigFileName;
+        windowFilePath=saveOrigFilePath;
+      }
+    updateTitle();
+
+    if (saveError!=null)
+      displayErrorMessage("Error saving file \""+saveFile.getName()+"\":\n"+saveError,"File not saved");
+    return saveError==null;
+  }
+
+/*------------------------------------------------------------------------
+Method:  void blockInput(boolean block)
+Purpose: Disable or re-enable this window and the windows it owns (event
+         editor, text editor, etc.), so that the score cannot be edited
+         while it is being saved
+Parameters:
+  Input:  boolean block - true to disable input, false to re-enable
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+  void blockInput(boolean block)
+  {
+    if (block)
+      {
+        Window[] owned=getOwnedWindows();
+        saveDisabledWindows=new Window[owned.length+1];
+        saveDisabledWindows[0]=this;
+        System.arraycopy(owned,0,saveDisabledWindows,1,owned.length);
+        for (Window w : saveDisabledWindows)
+          w.setEnabled(false);
+      }
+    else if (saveDisabledWindows!=null)
+      {
+        for (Window w : saveDisabledWindows)
+          w.setEnabled(true);
+        saveDisabledWindows=null;
+      }
+  }
+
+/*------------------------------------------------------------------------
+Method:  boolean waitForSave()
+Purpose: Wait for background save (if any) to complete
+Parameters:
+  Input:  -
+  Output: -
+  Return: false if a save was in progress and failed
+------------------------------------------------------------------------*/
+
+  synchronized boolean waitForSave()
+  {
+    if (saveThread==null)
+      return true;
+    return saveFinished(saveThread);
   }
 
 /*------------------------------------------------------------------------
 Method:  void fileModified()
 Purpose: Update GUI to reflect modification of the current file from its
-         last saved state
+         last saved state, and discard cached renderings
 Parameters:
   Input:  -
   Output: -
@@ -2894,10 +3122,29 @@ Parameters:
 
   synchronized void fileModified()
   {
+    renderCache.invalidate();
     if (modified)
       return;
     modified=true;
-    setTitle(getTitle()+" (modified)");
+    updateTitle();
+  }
+
+/*------------------------------------------------------------------------
+Method:  void updateTitle()
+Purpose: Set window title to reflect file name and save state
+Parameters:
+  Input:  -
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+  void updateTitle()
+  {
+    addCMMETitle(windowFileName);
+    if (saveProgress>=0)
+      setTitle(getTitle()+" (saving "+saveProgress+"%)");
+    if (modified)
+      setTitle(getTitle()+" (modified)");
   }
 
 /*------------------------------------------------------------------------
@@ -3033,6 +3280,7 @@ Parameters:
 
   public boolean closewin()
   {
+    waitForSave();
     if (modified)
       {
         int confirm_option=JOptionPane.showConfirmDialog(this,
@@ -3043,7 +3291,7 @@ Parameters:
         switch (confirm_option)
           {
             case JOptionPane.YES_OPTION:
-              if (fileSave()==false)
+              if (fileSave()==false || waitForSave()==false)
                 return false;
               break;
             case JOptionPane.NO_OPTION:
@@ -14,6 +14,9 @@
         Date Started    : 5/3/05
 
         Updates         :
+10/17/26: XML input is validated only when CMME_OPT_VALIDATEXML is set (as in
+          the viewer), so that files are normally loaded through the
+          streaming parser
 
                                                                         */
 /*----------------------------------------------------------------------*/
@@ -126,7 +129,9 @@ Parameters:
 
     /* load XML parser */
     //TODO: make a command line option to specify schema location.
-    DataStruct.XMLReader.initparser(null,true);
+    /* validation requires a DOM parse; otherwise files are read with the
+       streaming parser */
+    DataStruct.XMLReader.initparser(null,AppContext.CMME_OPT_VALIDATEXML);
 
     /* load base music font */
     try
@@ -42,6 +42,12 @@ Updates:
 7/2/09:   made clipboard static (same for all windows)
 7/19/09:  fixed paste bug (multiple pastes of the same material did not create
           new copies of events)
+10/17/26: note lengths are copied before modification (may be shared)
+10/17/26: after modifying a parameter event, event parameters are
+          recalculated from that event onward only as far as they change
+10/17/26: inserting, deleting or modifying notes, rests and dots rerenders
+          only the edited section (and following sections if affected)
+10/17/26: such edits lay out the section again only from the edited measure
 
                                                                         */
 /*----------------------------------------------------------------------*/
@@ -399,8 +405,9 @@ Parameters:
         NoteEvent lastne=(NoteEvent)getNeighboringEventOfType(Event.EVENT_NOTE,snum,vnum,eventnum-1,-1);
         if (lastne!=null)
           {
-            Proportion notelength=lastne.getLength();
+            Proportion notelength=new Proportion(lastne.getLength());
             notelength.multiply(2,3);
+            lastne.setLength(notelength);
           }
       }
     else if (ev_to_delete.geteventtype()==Event.EVENT_VARIANTDATA_START)
@@ -613,11 +620,20 @@ Parameters:
 
     Cursor.hideCursor();
 
+    Event deletedEvent=re.getEvent();
+    int   changedPlace=renderedSections[snum].getVoicedataPlace(vnum,eventnum);
+    if (deletedEvent.geteventtype()==Event.EVENT_DOT)
+      {
+        /* deleting a dot of addition changes the preceding note */
+        int lastNoteNum=getNeighboringEventNumOfType(Event.EVENT_NOTE,snum,vnum,eventnum-1,-1);
+        if (lastNoteNum>=0)
+          changedPlace=renderedSections[snum].getVoicedataPlace(vnum,lastNoteNum);
+      }
     deleteItem(snum,vnum,eventnum);
     if (secondDeletedIndex>-1 && secondDeletedIndex<eventnum)
       eventnum--;
 
-    rerender();
+    rerenderAfterChange(snum,vnum,changedPlace,deletedEvent);
     checkVariant(snum,vnum,eventnum);
     repaint();
     parentEditorWin.fileModified();
@@ -673,9 +689,10 @@ Parameters:
 
   int insertEvent(int snum,int vnum,int eventnum,Event e)
   {
-    eventnum=insertEventWithoutRerender(snum,vnum,eventnum,e);
+    int listPos=insertEventWithoutRerender(snum,vnum,eventnum,e);
+    eventnum=listPos;
 
-    rerender();
+    rerenderAfterChange(snum,vnum,listPos,e);
     checkVariant(snum,vnum,eventnum);
     repaint();
     parentEditorWin.fileModified();
@@ -704,6 +721,39 @@ Parameters:
     return eventnum;
   }
 
+/*------------------------------------------------------------------------
+Method:  void rerenderAfterChange(int snum,int vnum,int evnum,Event e)
+Purpose: Rerender after one event has been inserted, deleted or modified;
+         only the section containing it is rerendered (plus any following
+         sections affected) if the event cannot change voice parameters
+         (clefs, mensurations, etc.), and within that section only from the
+         measure containing the change
+Parameters:
+  Input:  int snum  - section number
+          int vnum  - voice number
+          int evnum - list place of first changed event in voice
+          Event e   - changed event
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+  void rerenderAfterChange(int snum,int vnum,int evnum,Event e)
+  {
+    switch (e.geteventtype())
+      {
+        case Event.EVENT_NOTE:
+        case Event.EVENT_REST:
+        case Event.EVENT_DOT:
+          if (inVariantVersion())
+            rerender(snum);
+          else
+            rerender(snum,vnum,evnum);
+          break;
+        default:
+          rerender();
+      }
+  }
+
 /*------------------------------------------------------------------------
 Method:  long checkVariant(int snum,int vnum,int eventNum)
 Purpose: (Re-)calculate variant type flags at a given location
@@ -780,6 +830,25 @@ Parameters:
       return e1; /* in default reading */
   }
 
+/*------------------------------------------------------------------------
+Method:  void recalcEventParams(int snum,int vnum,Event e)
+Purpose: Recalculate event parameters (clef, mensuration, etc.) after one
+         event has been modified
+Parameters:
+  Input:  int snum,vnum - section and voice number
+          Event e       - modified event
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+  void recalcEventParams(int snum,int vnum,Event e)
+  {
+    int ei=e.getListPlace(!inVariantVersion());
+    if (curVersionMusicData.getSection(snum).getVoice(vnum).getEvent(ei)!=e)
+      ei=0; /* list place out of date; recalculate whole voice */
+    curVersionMusicData.recalcEventParams(snum,vnum,ei,ei+1);
+  }
+
 /*------------------------------------------------------------------------
 Method:  NoteEvent getNoteEventForLigation(int snum,int vnum,int note1i,int note2i)
 Purpose: Locate note event for modification of ligation, creating new
@@ -1637,7 +1706,7 @@ Parameters:
             startei=firstEventNumAfterClefSet(snum,vnum,eventnum+1,e.getClefSet());
           }*/
 
-        curVersionMusicData.getSection(snum).getVoice(vnum).recalcEventParams();
+        recalcEventParams(snum,vnum,e);
 
 /*        if (oldSig!=null)
           updateNoteAccidentals(snum,vnum,startei,oldSig,e.getClefSet().getKeySig());*/
@@ -1648,7 +1717,7 @@ Parameters:
           getCurModernKeySig(snum,vnum,eventnum).calcNotePitchOffset(e.getPitch(),null));
       }
 
-    rerender();
+    rerenderAfterChange(snum,vnum,e.getListPlace(!inVariantVersion()),e);
     checkVariant(snum,vnum,eventnum);
     repaint();
     parentEditorWin.fileModified();
@@ -1677,12 +1746,12 @@ Parameters:
     e.setpitch(newp);
 
     if (getCurEvent().getEvent().geteventtype()==Event.EVENT_CLEF)
-      curVersionMusicData.getSection(snum).getVoice(vnum).recalcEventParams();
+      recalcEventParams(snum,vnum,e);
     else if (e.geteventtype()==Event.EVENT_NOTE)
       ((NoteEvent)e).setPitchOffset(
         getCurModernKeySig(snum,vnum,eventnum).calcNotePitchOffset(e.getPitch(),null));
 
-    rerender();
+    rerenderAfterChange(snum,vnum,e.getListPlace(!inVariantVersion()),e);
     checkVariant(snum,vnum,eventnum);
     repaint();
     parentEditorWin.fileModified();
@@ -1718,7 +1787,7 @@ Parameters:
 
     eventnum+=ne.getListPlace(!inVariantVersion())-orige.getListPlace(!inVariantVersion());
 
-    rerender();
+    rerenderAfterChange(snum,vnum,ne.getListPlace(!inVariantVersion()),ne);
     checkVariant(snum,vnum,eventnum);
     repaint();
     parentEditorWin.fileModified();
@@ -1753,7 +1822,7 @@ Parameters:
 
     ma.optional=!ma.optional;
 
-    rerender();
+    rerenderAfterChange(snum,vnum,ne.getListPlace(!inVariantVersion()),ne);
     checkVariant(snum,vnum,eventnum);
     repaint();
     parentEditorWin.fileModified();
@@ -1794,7 +1863,7 @@ Parameters:
 
     ne.setTieType(newTieType);
 
-    rerender();
+    rerenderAfterChange(snum,vnum,ne.getListPlace(!inVariantVersion()),ne);
     checkVariant(snum,vnum,eventnum);
     repaint();
     parentEditorWin.fileModified();
@@ -1828,7 +1897,7 @@ Parameters:
       e.setLength(NoteEvent.getTypeLength(nt,getCurMensInfo(snum,vnum,eventnum)));
 
     eventnum+=e.getListPlace(!inVariantVersion())-orige.getListPlace(!inVariantVersion());
-    rerender();
+    rerenderAfterChange(snum,vnum,e.getListPlace(!inVariantVersion()),e);
     checkVariant(snum,vnum,eventnum);
     repaint();
     if (e.getnotetype()!=oldnt || e.isflagged()!=oldf)
@@ -1961,7 +2030,7 @@ Parameters:
 
     /* choose coloration effect: sesquialtera, imperfection, or 'minor color' */
     int        nt=ne.getnotetype();
-    Proportion curLength=ne.getLength();
+    Proportion curLength=Proportion.copyProportion(ne.getLength());
 
     if (curLength==null)
       return;
@@ -2970,7 +3039,7 @@ Parameters:
     if (!c.isflat() && Clef.isFlatType(ct)) /* mark flats as signature clefs by default */
       sig=true;
     c.setattributes(ct,loc,ct!=c.cleftype ? Clef.DefaultClefPitches[ct] : c.pitch,false,sig,displayClef);
-    curVersionMusicData.getSection(snum).getVoice(vnum).recalcEventParams();
+    recalcEventParams(snum,vnum,ce);
 
 /*    shiftDotPositions((oldline1-c.line1placenum)/2,snum,vnum,eventnum+1);
     int startei=firstEventNumAfterClefSet(snum,vnum,eventnum+1,ce.getClefSet());
@@ -3037,7 +3106,7 @@ Parameters:
     c=ce.getClef(false,false);
 
     c.setSignature(!c.signature());
-    curVersionMusicData.getSection(snum).getVoice(vnum).recalcEventParams();
+    recalcEventParams(snum,vnum,ce);
 /*    int startei=firstEventNumAfterClefSet(snum,vnum,eventnum+1,ce.getClefSet());
     ModernKeySignature newSig=c.signature() ? ce.getClefSet().getKeySig() :
                                               ce.getModernKeySig();
@@ -3468,7 +3537,7 @@ Parameters:
     eventnum+=me.getListPlace(!inVariantVersion())-origme.getListPlace(!inVariantVersion());
 
     me.setMensInfo(m);
-    curVersionMusicData.getSection(snum).getVoice(vnum).recalcEventParams();
+    recalcEventParams(snum,vnum,me);
 
     rerender();
     checkVariant(snum,vnum,eventnum);
@@ -3581,7 +3650,7 @@ Parameters:
     eventnum+=cce.getListPlace(!inVariantVersion())-origcce.getListPlace(!inVariantVersion());
 
     cce.setcolorscheme(c);
-    curVersionMusicData.getSection(snum).getVoice(vnum).recalcEventParams();
+    recalcEventParams(snum,vnum,cce);
 
     rerender();
     checkVariant(snum,vnum,eventnum);
@@ -4049,7 +4118,7 @@ Parameters:
       mkse.addFlat();
     else
       return;
-    curVersionMusicData.getSection(snum).getVoice(vnum).recalcEventParams();
+    recalcEventParams(snum,vnum,mkse);
     updateNoteAccidentals(snum,vnum,eventnum+1,oldSig,mkse.getSigInfo());
 
     rerender();
@@ -26,6 +26,8 @@
 3/16/09:  added event handling for measure label buttons in notes list
 3/17/09:  finished implementing version selection
 11/2/09:  VariantReport moved to separate module
+10/17/26: default-version rendering taken from parent window's
+          RenderedVersionCache when available
 
                                                                         */
 /*----------------------------------------------------------------------*/
@@ -136,7 +138,7 @@ Parameters:
     Container contentPane=getContentPane();
     contentPane.setLayout(new BoxLayout(contentPane,BoxLayout.Y_AXIS));
 
-    varReports=new VariantAnalysisList(musicData,ScoreRenderer.renderSections(musicData,OptionSet.makeDEFAULT_ORIGINAL(parentWin)));
+    varReports=new VariantAnalysisList(musicData,renderDefaultVersion());
     controlsPanel=createControlsPanel();
     notesPanel=createNotesPanel(MusicGfx,STAFFSCALE,VIEWSCALE);
     notesScrollPane=new JScrollPane(notesPanel);
@@ -177,6 +179,22 @@ Parameters:
     setNotesPaneSize();
   }
 
+/*------------------------------------------------------------------------
+Method:  ScoreRenderer[] renderDefaultVersion()
+Purpose: Render default version in original notation for analysis, using
+         the parent window's cached rendering if there is one
+Parameters:
+  Input:  -
+  Output: -
+  Return: rendered sections
+------------------------------------------------------------------------*/
+
+  ScoreRenderer[] renderDefaultVersion()
+  {
+    return parentWin.getRenderedSections(musicData.getDefaultVariantVersion(),musicData,
+                                         OptionSet.makeDEFAULT_ORIGINAL(parentWin));
+  }
+
 /*------------------------------------------------------------------------
 Method:  JPanel create*Panel()
 Purpose: Initialize individual panes within window
@@ -494,7 +512,7 @@ Parameters:
 
   void saveNotes()
   {
-    String critNotesName=parentWin.windowFileName.replaceFirst("\\.cmme\\.xml","-notes.html");
+    String critNotesName=parentWin.windowFileName.replaceFirst("\\.cmme\\.xml(\\.gz)?","-notes.html");
 
     parentWin.critNotesFileChooser=parentWin.getCritNotesFileChooser();
     File initFile=new File(parentWin.critNotesFileChooser.getCurrentDirectory(),critNotesName);
@@ -22,6 +22,8 @@
 9/8/09:   created default values for NOTE_ON velocity and overall gain,
           lower than before to avoid distortion on some implementations
 11/6/10:  plays tied notes properly in modern notation
+10/17/26: sequence times are exact packed MusicTime values (no allocation
+          per event; ticks calculated without floating point)
 
                                                                         */
 /*----------------------------------------------------------------------*/
@@ -146,12 +148,13 @@ Parameters:
 
   class SequenceParams
   {
-    Proportion curTime,
-               curProportion,
-               sectionStartTime;
-    int        vnum;
-    boolean    inTie,
-               beginTie,endTie,doubleTied;
+    long    curTime,          /* MusicTime values */
+            curProportion,
+            sectionStartTime;
+    int     vnum,
+            velocity;
+    boolean inTie,
+            beginTie,endTie,doubleTied;
   }
 
   Sequence constructSequence(PieceData musicData,ScoreRenderer[] renderedSections) throws Exception
@@ -171,73 +174,72 @@ Parameters:
       }
 
     SequenceParams params=new SequenceParams();
-    Proportion     sectionEndTime;
-    params.sectionStartTime=new Proportion(0,1);
+    long           sectionEndTime,
+                   sectionRest=MusicTime.valueOf(Integer.parseInt(configVal("RestBetweenSections")),1);
+    params.velocity=Integer.parseInt(configVal("Velocity"));
+    params.sectionStartTime=MusicTime.ZERO;
     for (ScoreRenderer rs : renderedSections)
       {
-        sectionEndTime=new Proportion(params.sectionStartTime);
+        sectionEndTime=params.sectionStartTime;
 
         for (int vi=0; vi<musicData.getVoiceData().length; vi++)
           if (rs.eventinfo[vi]!=null)
             {
               params.vnum=vi;
-              params.curTime=new Proportion(params.sectionStartTime);
-              params.curProportion=new Proportion(1,1);
+              params.curTime=params.sectionStartTime;
+              params.curProportion=MusicTime.ONE;
               params.inTie=false;
 
               for (RenderedEvent re : rs.eventinfo[vi])
                 sequenceEvent(re,t[vi],params);
 
-              if (params.curTime.greaterThan(sectionEndTime))
-                sectionEndTime=params.curTime;
+              sectionEndTime=MusicTime.max(params.curTime,sectionEndTime);
             }
 
         addMeasureMarkers(rs,t[0],params.sectionStartTime);
 
         /* insert beat of rest between sections */
-        params.sectionStartTime=Proportion.sum(
-          sectionEndTime,
-          new Proportion(Integer.parseInt(configVal("RestBetweenSections")),1));
+        params.sectionStartTime=MusicTime.add(sectionEndTime,sectionRest);
       }
 
     return s;
   }
 
-  void sequenceEvent(NoteEvent e,Track t,SequenceParams params,Proportion length) throws Exception
+  void sequenceEvent(NoteEvent e,Track t,SequenceParams params,long length) throws Exception
   {
     if (!(params.doubleTied || params.endTie))
       {
         ShortMessage MIDImsg=new ShortMessage();
         MIDImsg.setMessage(ShortMessage.NOTE_ON,params.vnum%MAX_NORMAL_CHANNELS,e.getMIDIPitch(),
-          Integer.parseInt(configVal("Velocity")));
-        t.add(new MidiEvent(MIDImsg,(long)(params.curTime.toDouble()*TICKS_PER_MINIM)));
+          params.velocity);
+        t.add(new MidiEvent(MIDImsg,MusicTime.toTicks(params.curTime,TICKS_PER_MINIM)));
       }
 
-    params.curTime.add(length);
+    params.curTime=MusicTime.add(params.curTime,length);
 
     if (!(params.beginTie || params.doubleTied))
       {
         ShortMessage MIDImsg=new ShortMessage();
         MIDImsg.setMessage(ShortMessage.NOTE_OFF,params.vnum%MAX_NORMAL_CHANNELS,e.getMIDIPitch(),
-          Integer.parseInt(configVal("Velocity")));
-        t.add(new MidiEvent(MIDImsg,(long)(params.curTime.toDouble()*TICKS_PER_MINIM)));
+          params.velocity);
+        t.add(new MidiEvent(MIDImsg,MusicTime.toTicks(params.curTime,TICKS_PER_MINIM)));
       }
   }
 
-  void sequenceEvent(RestEvent e,Track t,SequenceParams params,Proportion length) throws Exception
+  void sequenceEvent(RestEvent e,Track t,SequenceParams params,long length) throws Exception
   {
 //    params.curTime.add(Proportion.quotient(e.getmusictime(),params.curProportion));
   }
 
-  void sequenceEvent(ProportionEvent e,Track t,SequenceParams params,Proportion length) throws Exception
+  void sequenceEvent(ProportionEvent e,Track t,SequenceParams params,long length) throws Exception
   {
-    params.curProportion.multiply(e.getproportion());
+    params.curProportion=MusicTime.multiply(params.curProportion,MusicTime.valueOf(e.getproportion()));
   }
 
-  void sequenceEvent(MultiEvent me,Track t,SequenceParams params,Proportion length) throws Exception
+  void sequenceEvent(MultiEvent me,Track t,SequenceParams params,long length) throws Exception
   {
-    Proportion origTime=new Proportion(params.curTime),
-               lastTime=new Proportion(params.curTime);
+    long origTime=params.curTime,
+         lastTime=params.curTime;
 
     for (Iterator i=me.iterator(); i.hasNext();)
       {
@@ -246,23 +248,21 @@ Parameters:
           {
             case Event.EVENT_NOTE:
               sequenceEvent((NoteEvent)e,t,params,length);
-              if (params.curTime.greaterThan(lastTime))
-                lastTime=new Proportion(params.curTime);
-              params.curTime=new Proportion(origTime);
+              lastTime=MusicTime.max(params.curTime,lastTime);
+              params.curTime=origTime;
               break;
             case Event.EVENT_REST:
               sequenceEvent((RestEvent)e,t,params,length);
-              if (params.curTime.greaterThan(lastTime))
-                lastTime=new Proportion(params.curTime);
-              params.curTime=new Proportion(origTime);
+              lastTime=MusicTime.max(params.curTime,lastTime);
+              params.curTime=origTime;
               break;
           }
       }
 
-    params.curTime=new Proportion(lastTime);
+    params.curTime=lastTime;
   }
 
-  void sequenceEvent(Event e,Track t,SequenceParams params,Proportion length) throws Exception
+  void sequenceEvent(Event e,Track t,SequenceParams params,long length) throws Exception
   {
     switch (e.geteventtype())
       {
@@ -298,26 +298,26 @@ Parameters:
         params.endTie=!params.doubleTied;
       }
 
-    params.curTime=Proportion.sum(params.sectionStartTime,re.getmusictime());
-    sequenceEvent(re.getEvent(),t,params,re.getMusicLength());
+    params.curTime=MusicTime.add(params.sectionStartTime,MusicTime.valueOf(re.getmusictime()));
+    sequenceEvent(re.getEvent(),t,params,MusicTime.valueOf(re.getMusicLength()));
 
     if (params.endTie)
       params.inTie=false;
   }
 
 /*------------------------------------------------------------------------
-Methods: void addMeasureMarkers(ScoreRenderer rs,Track t,Proportion startTime)
+Methods: void addMeasureMarkers(ScoreRenderer rs,Track t,long startTime)
 Purpose: Insert meta-event markers for measure beginnings
 Parameters:
   Input:  ScoreRenderer rs     - section to calculate
-          Proportion startTime - starting time of section
+          long startTime       - starting time of section (MusicTime)
   Output: Track t              - track to update with events
   Return: -
 ------------------------------------------------------------------------*/
 
-  void addMeasureMarkers(ScoreRenderer rs,Track t,Proportion startTime) throws Exception
+  void addMeasureMarkers(ScoreRenderer rs,Track t,long startTime) throws Exception
   {
-    Proportion curTime=new Proportion(startTime);
+    long curTime=startTime;
 
     for (int mi=rs.getFirstMeasureNum(); mi<=rs.getLastMeasureNum(); mi++)
       {
@@ -325,11 +325,12 @@ Parameters:
         MetaMessage measureMsg=new MetaMessage();
         byte[] msgData=("m"+mi).getBytes();
         measureMsg.setMessage(MIDI_EVENT_MARKER,msgData,msgData.length);
-        t.add(new MidiEvent(measureMsg,(long)(curTime.toDouble()*TICKS_PER_MINIM)));
+        t.add(new MidiEvent(measureMsg,MusicTime.toTicks(curTime,TICKS_PER_MINIM)));
 
         /* advance timer */
         MeasureInfo m=rs.getMeasure(mi);
-        curTime.add(Proportion.quotient(new Proportion(m.numMinims,1),m.defaultTempoProportion));
+        curTime=MusicTime.add(curTime,MusicTime.divide(MusicTime.valueOf(m.numMinims,1),
+                                                       MusicTime.valueOf(m.defaultTempoProportion)));
       }
   }
 
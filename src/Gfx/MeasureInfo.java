@@ -19,6 +19,10 @@ Updates:
 5/1/07:  changed from holding clef event indices to holding actual lists
          of clef events (for preservation of clefs across sections)
 7/1/10:  converted music time variables from double to Proportion
+10/17/26: added getEndTime() (packed MusicTime value, for comparisons
+          during rendering without allocating)
+10/17/26: added rendering/positioning checkpoints (for relayout from an
+          edited measure)
 
                                                                         */
 /*----------------------------------------------------------------------*/
@@ -60,6 +64,11 @@ public class MeasureInfo
   int measurenum,
       numvoices;
 
+  /* relayout information (see ScoreRenderer.relayoutVoice) */
+  double                           renderedXLength;    /* xlength before positioning */
+  ScoreRenderer.RenderCheckpoint   renderCheckpoint[]; /* voice states at first event */
+  ScoreRenderer.PositionCheckpoint positionCheckpoint; /* positioning state at first event */
+
 /*----------------------------------------------------------------------*/
 /* Instance methods */
 
@@ -96,6 +105,7 @@ Parameters:
     this.startMensEvent=new RenderedEvent[numvoices];
     this.tempoProportion=new Proportion[numvoices];
     this.lastBeginClefIndex=new int[numvoices];
+    this.renderCheckpoint=new ScoreRenderer.RenderCheckpoint[numvoices];
 
     for (int vi=0; vi<this.numvoices; vi++)
       {
@@ -125,6 +135,12 @@ Parameters:
       Proportion.quotient(new Proportion(this.numMinims,1),this.defaultTempoProportion));
   }
 
+  public long getEndTime()
+  {
+    return MusicTime.add(MusicTime.valueOf(this.startMusicTime),
+      MusicTime.divide(MusicTime.valueOf(this.numMinims,1),MusicTime.valueOf(this.defaultTempoProportion)));
+  }
+
   public Proportion getEndMusicTime(int vnum)
   {
     return Proportion.sum(this.startMusicTime,
@@ -46,6 +46,19 @@ Updates:
 10/17/08: added handleRuntimeError
 7/14/09:  added file chooser for PDF generation
 6/24/10:  added (menu-only) GUI for toggling modern note shapes
+10/17/26: openFile loads from binary snapshot (CMMEBinaryCache) when the
+          source file is unchanged since it was last parsed
+10/17/26: added support for opening gzip-compressed scores (.cmme.xml.gz)
+10/17/26: added cache of rendered variant versions (RenderedVersionCache)
+10/17/26: score page layouts and analysis windows take renderings through
+          getRenderedSections/getRenderedPages (shared render cache)
+10/17/26: openFile parses section headers only and reads section voices
+          in the background (lazy section loading) while the window is
+          created; the snapshot is encoded as each section is read
+10/17/26: a piece with a section which failed to load in the background is
+          reported as a load error instead of being displayed
+10/17/26: renderings from getRenderedSections are marked shared, so that
+          edits in the view no longer change renderers held by other windows
 
                                                                         */
 /*----------------------------------------------------------------------*/
@@ -85,11 +98,13 @@ public class MusicWin extends JFrame implements ActionListener,ItemListener,Wind
                           FILETYPE_XML= 2;
 
   public static final String FILENAME_EXTENSION_CMME=".cmme.xml",
+                             FILENAME_EXTENSION_GZIP=".gz",
                              FILENAME_EXTENSION_MIDI=".MID",
                              FILENAME_EXTENSION_XML= ".xml",
                              FILENAME_EXTENSION_HTML=".html",
 
-                             FILENAME_PATTERN_CMME=".*\\.cmme\\.xml",
+                             FILENAME_PATTERN_CMME=".*\\.cmme\\.xml(\\.gz)?",
+                             FILENAME_PATTERN_GZIP=".*\\.[Gg][Zz]",
                              FILENAME_PATTERN_MIDI=".*\\.[Mm][Ii][Dd]",
                              FILENAME_PATTERN_XML= ".*\\.[Xx][Mm][Ll]",
                              FILENAME_PATTERN_HTML=".*\\.[Hh][Tt][Mm][Ll]";
@@ -144,12 +159,13 @@ public class MusicWin extends JFrame implements ActionListener,ItemListener,Wind
                   rerendermusic=false,
                   redrawscr=false;
 
-  protected PieceData           musicData;
-  protected MusicFont           MusicGfx;
-  public    OptionSet           optSet;
-  protected PartsWin            partsWin;
-  protected ScorePagePreviewWin scorePageWin;
-  protected JDialog             genPDFDialog;
+  protected PieceData            musicData;
+  protected MusicFont            MusicGfx;
+  public    OptionSet            optSet;
+  protected RenderedVersionCache renderCache=new RenderedVersionCache();
+  protected PartsWin             partsWin;
+  protected ScorePagePreviewWin  scorePageWin;
+  protected JDialog              genPDFDialog;
 
 
   public Container cp;
@@ -236,7 +252,12 @@ Parameters:
 
   public static boolean isCMMEFilename(String filename)
   {
-    return filename.matches(".*\\.[Cc][Mm][Mm][Ee]\\.[Xx][Mm][Ll]");
+    return filename.matches(".*\\.[Cc][Mm][Mm][Ee]\\.[Xx][Mm][Ll](\\.[Gg][Zz])?");
+  }
+
+  public static boolean isGZIPFilename(String filename)
+  {
+    return filename.matches(FILENAME_PATTERN_GZIP);
   }
 
   public static boolean isMIDIFilename(String filename)
@@ -449,7 +470,7 @@ Parameters:
 
     public String getDescription()
     {
-      return "CMME scores (.cmme.xml)";
+      return "CMME scores (.cmme.xml, .cmme.xml.gz)";
     }
   }
 
@@ -603,6 +624,15 @@ Parameters:
 
     /* create music view areas and ancillary frames */
     ViewScr=createMusicCanvas(musicData,MusicGfx,this,optSet);
+
+    /* rendering has waited for every section to load; a piece with a
+       section which failed to load is incomplete, and is not displayed */
+    Exception loadError=musicData.getLoadError();
+    if (loadError!=null)
+      {
+        dispose();
+        throw loadError;
+      }
     cp.add("Center",ViewScr);
     partsWin=createInitialPartsWin();
     scorePageWin=null;
@@ -783,12 +813,37 @@ Parameters:
         else
           {
             fURL=f.toURI().toURL();
-            int flen=fURL.openConnection().getContentLength();
-            Util.ProgressInputStream musIn=
-              new Util.ProgressInputStream(fURL.openStream(),
-                                           lw.getProgressBar(),flen,0,75);
-            parser=new CMMEParser(musIn,lw.getProgressBar());
-            musicdat=parser.piece;
+
+            /* use binary snapshot if source is unchanged since last load */
+            musicdat=CMMEBinaryCache.loadPieceData(f);
+            if (musicdat==null)
+              {
+                /* snapshot is stamped with the state of the file before
+                   parsing, so a rewrite during parsing invalidates it */
+                long sourceLength=f.length(),
+                     sourceModified=f.lastModified(),
+                     sourceCRC=CMMEBinaryCache.sourceChecksum(f);
+                if (isGZIPFilename(filename))
+                  {
+                    int flen=fURL.openConnection().getContentLength();
+                    InputStream musIn=new GZIPInputStream(
+                      new Util.ProgressInputStream(fURL.openStream(),
+                                                   lw.getProgressBar(),flen,0,75));
+                    parser=new CMMEParser(musIn,new ProgressBarListener(lw.getProgressBar()));
+                    musIn.close();
+                  }
+                else
+                  /* only section headers are parsed here; section voices are
+                     read in the background while the window is created and
+                     rendered (rendering waits for each section as needed) */
+                  parser=new CMMEParser(f,new ProgressBarListener(lw.getProgressBar()),true);
+                musicdat=parser.piece;
+
+                /* snapshot is encoded section by section as voices are read */
+                parser.loadSectionsInBackground(
+                  CMMEBinaryCache.startSnapshot(f,sourceLength,sourceModified,sourceCRC,
+                                                musicdat,parser.getFileVersion()));
+              }
             windowFilename=f.getName();
             path=f.getCanonicalPath();
           }
@@ -833,7 +888,13 @@ Parameters:
         }
       catch (Exception e)
         {
-          JOptionPane.showMessageDialog(curWindow,"Error creating score window","Error",JOptionPane.ERROR_MESSAGE);
+          /* sections loaded in the background are reported as load errors */
+          Exception loadError=musicdat.getLoadError();
+          if (loadError!=null)
+            JOptionPane.showMessageDialog(curWindow,"Error loading "+filename+"\n\n"+loadError,
+                                          "Error",JOptionPane.ERROR_MESSAGE);
+          else
+            JOptionPane.showMessageDialog(curWindow,"Error creating score window","Error",JOptionPane.ERROR_MESSAGE);
           if (MetaData.CMME_OPT_TESTING)
             {
               System.err.println("Error creating score window: "+e);
@@ -1833,8 +1894,8 @@ Parameters:
 
   synchronized void writeMusicXMLFile(File f) throws Exception
   {
-    ScorePageRenderer renderedPages=new ScorePageRenderer(
-      musicData,OptionSet.makeDEFAULT_FULL_MODERN(this),
+    ScorePageRenderer renderedPages=getRenderedPages(
+      musicData.getDefaultVariantVersion(),musicData,OptionSet.makeDEFAULT_FULL_MODERN(this),
       new Dimension(ScorePagePreviewWin.STAFFXSIZE,ScorePagePreviewWin.DRAWINGSPACEY),
       ScorePagePreviewWin.STAFFSCALE,ScorePagePreviewWin.CANVASYSCALE);
 
@@ -1867,8 +1928,8 @@ Parameters:
       }
     else
       {
-        renderedPages=new ScorePageRenderer(
-          ViewScr.getMusicData(),optSet,
+        renderedPages=getRenderedPages(
+          getCurrentVariantVersion(),ViewScr.getMusicData(),optSet,
           new Dimension(ScorePagePreviewWin.STAFFXSIZE,ScorePagePreviewWin.DRAWINGSPACEY),
           ScorePagePreviewWin.STAFFSCALE,ScorePagePreviewWin.CANVASYSCALE);
         pdfName=windowFileName.replaceFirst("cmme\\.xml","pdf");
@@ -2783,6 +2844,76 @@ Parameters:
     VariantAnalysisList val=new VariantAnalysisList(musicData,this);
   }
 
+/*------------------------------------------------------------------------
+Method:  ScoreRenderer[] getRenderedSections(VariantVersionData version,
+                                             PieceData versionData,
+                                             OptionSet options)
+Purpose: Get score rendering of one version, from the render cache if it
+         has already been rendered with the same options
+Parameters:
+  Input:  VariantVersionData version - variant version
+          PieceData versionData      - music data for version
+          OptionSet options          - display options
+  Output: -
+  Return: rendered sections (to be treated as read-only; marked shared, so
+          that editing never changes them in place)
+------------------------------------------------------------------------*/
+
+  public ScoreRenderer[] getRenderedSections(VariantVersionData version,
+                                             PieceData versionData,
+                                             OptionSet options)
+  {
+    RenderedVersionCache.Entry cached=renderCache.get(version,options);
+    ScoreRenderer[]            renderedSections=cached!=null ?
+      cached.getRenderedSections() :
+      ScoreRenderer.renderSections(versionData,options);
+    ScoreRenderer.markShared(renderedSections);
+    if (cached!=null)
+      return renderedSections;
+
+    /* event parameters only match the version currently displayed */
+    if (getCurrentVariantVersion()==version)
+      renderCache.put(version,options,versionData,renderedSections);
+    return renderedSections;
+  }
+
+/*------------------------------------------------------------------------
+Method:  ScorePageRenderer getRenderedPages(VariantVersionData version,
+                                            PieceData versionData,
+                                            OptionSet options,Dimension d,
+                                            int STAFFSCALE,int CANVASYSCALE)
+Purpose: Get page layout of one version, reusing the cached score rendering
+         (and cached page layout) where possible
+Parameters:
+  Input:  VariantVersionData version  - variant version
+          PieceData versionData       - music data for version
+          OptionSet options           - display options
+          Dimension d                 - size of drawing block
+          int STAFFSCALE,CANVASYSCALE - drawing space parameters
+  Output: -
+  Return: page layout
+------------------------------------------------------------------------*/
+
+  public ScorePageRenderer getRenderedPages(VariantVersionData version,
+                                            PieceData versionData,
+                                            OptionSet options,Dimension d,
+                                            int STAFFSCALE,int CANVASYSCALE)
+  {
+    ScoreRenderer[]            renderedSections=getRenderedSections(version,versionData,options);
+    RenderedVersionCache.Entry cached=renderCache.get(version,options);
+
+    ScorePageRenderer renderedPages=cached==null ? null : cached.getRenderedPages();
+    if (renderedPages!=null && renderedPages.scoreData.length==renderedSections.length &&
+        renderedPages.hasLayout(d,STAFFSCALE,CANVASYSCALE))
+      return renderedPages;
+
+    renderedPages=new ScorePageRenderer(versionData,renderedSections,options,
+                                        d,STAFFSCALE,CANVASYSCALE);
+    if (cached!=null && cached.getRenderedSections()==renderedSections)
+      cached.setRenderedPages(renderedPages);
+    return renderedPages;
+  }
+
   /* MIDI Playback functions */
 
   MIDIPlayer scorePlayer=null;
@@ -2863,6 +2994,11 @@ Parameters:
     return musicData;
   }
 
+  public RenderedVersionCache getRenderCache()
+  {
+    return renderCache;
+  }
+
   public String getWindowFileName()
   {
     return windowFileName;
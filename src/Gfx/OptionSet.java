@@ -18,6 +18,7 @@ Updates:
 4/18/05: converted OptionsWin to OptionSet (to represent option data without
          requiring link to GUI)
 10/7/2011: added initConfigFromFile
+10/17/26: added getFingerprint
 
                                                                         */
 /*----------------------------------------------------------------------*/
@@ -274,6 +275,27 @@ Parameters:
     return false;
   }
 
+/*------------------------------------------------------------------------
+Method:  String getFingerprint()
+Purpose: Summarize all option values in one string (two option sets with
+         equal fingerprints produce identical renderings)
+Parameters:
+  Input:  -
+  Output: -
+  Return: fingerprint string
+------------------------------------------------------------------------*/
+
+  public String getFingerprint()
+  {
+    return barline_type+","+noteShapeType+","+modacc_type+","+colorationDisplayFlags+","+
+           displayOrigText+","+displayModText+","+usemodernclefs+","+
+           useModernAccidentalSystem+","+displayallnewlineclefs+","+
+           displayorigligatures+","+displayligbrackets+","+viewEdCommentary+","+
+           markdissonances+","+markdirectedprogressions+","+displayedittags+","+
+           unscoredDisplay+","+ligatureList+","+markVariants+","+customVariantFlags+","+
+           STAFFSCALE+","+STAFFSPACING+","+BREVESCALE+","+VIEWSCALE;
+  }
+
 /*------------------------------------------------------------------------
 Methods: get*()
 Purpose: Routines to return parameters and options
@@ -23,6 +23,7 @@ Updates:
 9/22/09:  fixed divide-by-zero bug for scores with one system per page
 12/22/10: automatically opens PDF upon generation
           added support for ties
+10/17/26: MultiEvent components are visited by index (no iterators)
 
                                                                         */
 /*----------------------------------------------------------------------*/
@@ -672,8 +673,8 @@ Parameters:
     if (e.multiEventList!=null)
       {
         /* loop through events */
-        for (Iterator i=e.multiEventList.iterator(); i.hasNext();)
-          drawEvent((RenderedEvent)(i.next()),curx,cury,cb);
+        for (int i=0; i<e.multiEventList.size(); i++)
+          drawEvent(e.multiEventList.get(i),curx,cury,cb);
         return;
       }
 
@@ -30,6 +30,7 @@ Updates:
                       notes (e.g., modern text and accidentals)
          added small modern accidental shapes for above-staff display
 7/14/05: added PDF-writing support for clefset-drawing
+10/17/26: MultiEvent components kept in an ArrayList (indexed loops)
 
                                                                         */
 /*----------------------------------------------------------------------*/
@@ -66,8 +67,8 @@ public class RenderedEvent
   OptionSet        options;
   RenderedSonority fullSonority; /* other notes sounding simultaneously */
 
-  LinkedList<RenderedEvent> multiEventList; /* list of rendered events for
-                                               one MultiEvent */
+  ArrayList<RenderedEvent> multiEventList; /* list of rendered events for
+                                              one MultiEvent */
 
   double              xloc;
   boolean             useligxpos, /* whether x-pos should depend on previous note */
@@ -119,11 +120,12 @@ Parameters:
         RenderedClefSet savedCS=musicparams.clefEvents;
         imgs=null;
         imgxsize=imgXSizeWithoutText=0;
-        multiEventList=new LinkedList<RenderedEvent>();
+        MultiEvent me=(MultiEvent)e;
+        multiEventList=new ArrayList<RenderedEvent>(me.getNumEvents());
         musicparams.inMultiEvent=true;
-        for (Iterator i=((MultiEvent)e).iterator(); i.hasNext();)
+        for (int i=0; i<me.getNumEvents(); i++)
           {
-            RenderedEvent re=new RenderedEvent(d,(Event)i.next(),musicparams,op);
+            RenderedEvent re=new RenderedEvent(d,me.getEvent(i),musicparams,op);
             multiEventList.add(re);
             if (re.imgxsize>imgxsize)
               imgxsize=re.imgxsize;
@@ -1267,8 +1269,8 @@ Parameters:
   {
     if (multiEventList!=null)
       /* loop through events */
-      for (Iterator i=multiEventList.iterator(); i.hasNext();)
-        ((RenderedEvent)(i.next())).draw(g,mf,ImO,xl,yl,VIEWSCALE);
+      for (int i=0; i<multiEventList.size(); i++)
+        multiEventList.get(i).draw(g,mf,ImO,xl,yl,VIEWSCALE);
 
     else
       /* loop through images */
@@ -1295,8 +1297,8 @@ Parameters:
   {
     if (multiEventList!=null)
       /* loop through events */
-      for (Iterator i=multiEventList.iterator(); i.hasNext();)
-        ((RenderedEvent)(i.next())).drawHighlighted(g,mf,ImO,xl,yl,VIEWSCALE);
+      for (int i=0; i<multiEventList.size(); i++)
+        multiEventList.get(i).drawHighlighted(g,mf,ImO,xl,yl,VIEWSCALE);
 
     else
       /* loop through images */
@@ -1350,9 +1352,9 @@ Parameters:
     double xs=0;
 
     if (multiEventList!=null)
-      for (Iterator i=multiEventList.iterator(); i.hasNext();)
+      for (int i=0; i<multiEventList.size(); i++)
         {
-          RenderedEvent re=(RenderedEvent)i.next();
+          RenderedEvent re=multiEventList.get(i);
           Event         ce=re.getEvent();
           if (ce.geteventtype()==Event.EVENT_CLEF &&
               ce.hasSignatureClef() &&
@@ -1389,9 +1391,9 @@ Parameters:
     double xs=0;
 
     if (multiEventList!=null)
-      for (Iterator i=multiEventList.iterator(); i.hasNext();)
+      for (int i=0; i<multiEventList.size(); i++)
         {
-          RenderedEvent re=(RenderedEvent)i.next();
+          RenderedEvent re=multiEventList.get(i);
           Event         ce=re.getEvent();
           if (ce.geteventtype()==Event.EVENT_CLEF &&
               ce.hasSignatureClef() &&
@@ -1426,9 +1428,9 @@ Parameters:
     double xs=0;
 
     if (multiEventList!=null)
-      for (Iterator i=multiEventList.iterator(); i.hasNext();)
+      for (int i=0; i<multiEventList.size(); i++)
         {
-          RenderedEvent re=(RenderedEvent)i.next();
+          RenderedEvent re=multiEventList.get(i);
           Event         ce=re.getEvent();
           if (ce.geteventtype()==Event.EVENT_CLEF &&
               ce.hasSignatureClef() &&
@@ -1465,9 +1467,9 @@ Parameters:
                        double xl,double yl,double VIEWSCALE)
   {
     if (multiEventList!=null)
-      for (Iterator i=multiEventList.iterator(); i.hasNext();)
+      for (int i=0; i<multiEventList.size(); i++)
         {
-          RenderedEvent re=(RenderedEvent)i.next();
+          RenderedEvent re=multiEventList.get(i);
           if (re.getEvent().geteventtype()==Event.EVENT_MENS)
             re.draw(g,mf,ImO,xl,yl,VIEWSCALE);
         }
@@ -1560,7 +1562,7 @@ Parameters:
     return multiEventList.get(i);
   }
 
-  public LinkedList<RenderedEvent> getEventList()
+  public ArrayList<RenderedEvent> getEventList()
   {
     return multiEventList;
   }
@@ -15,6 +15,8 @@
         Date Started    : 4/26/07
 
         Updates:
+10/17/26: added sameParams (for deciding whether a following section needs
+          rerendering after an edit)
 
                                                                         */
 /*----------------------------------------------------------------------*/
@@ -46,6 +48,38 @@ public class RenderedSectionParams
 
   public boolean  usedInSection;
 
+/*----------------------------------------------------------------------*/
+/* Class methods */
+
+/*------------------------------------------------------------------------
+Method:  boolean sameParams(RenderedSectionParams[] params1,
+                            RenderedSectionParams[] params2)
+Purpose: Check whether two sets of voice parameters contain the same clef
+         and mensuration data (the rendered events themselves may differ)
+Parameters:
+  Input:  RenderedSectionParams[] params1,params2 - parameter sets
+  Output: -
+  Return: true if all voice parameters are equal
+------------------------------------------------------------------------*/
+
+  public static boolean sameParams(RenderedSectionParams[] params1,
+                                   RenderedSectionParams[] params2)
+  {
+    if (params1.length!=params2.length)
+      return false;
+    for (int i=0; i<params1.length; i++)
+      if (!params1[i].sameParams(params2[i]))
+        return false;
+    return true;
+  }
+
+  static boolean sameEvent(RenderedEvent re1,RenderedEvent re2)
+  {
+    if (re1==null || re2==null)
+      return re1==re2;
+    return re1.getEvent()==re2.getEvent() || re1.getEvent().equals(re2.getEvent());
+  }
+
 /*----------------------------------------------------------------------*/
 /* Instance methods */
 
@@ -73,6 +107,31 @@ Parameters:
     this.usedInSection=rsp.usedInSection;
   }
 
+/*------------------------------------------------------------------------
+Method:  boolean sameParams(RenderedSectionParams other)
+Purpose: Check whether another voice parameter set contains the same clef
+         and mensuration data as this one
+Parameters:
+  Input:  RenderedSectionParams other - parameter set to compare
+  Output: -
+  Return: true if parameters are equal
+------------------------------------------------------------------------*/
+
+  public boolean sameParams(RenderedSectionParams other)
+  {
+    if (usedInSection!=other.usedInSection ||
+        !sameEvent(mensEvent,other.mensEvent))
+      return false;
+    if (clefSet==null || other.clefSet==null)
+      return clefSet==other.clefSet;
+    if (clefSet.size()!=other.clefSet.size())
+      return false;
+    for (Iterator<RenderedEvent> i1=clefSet.iterator(),i2=other.clefSet.iterator(); i1.hasNext();)
+      if (!sameEvent(i1.next(),i2.next()))
+        return false;
+    return true;
+  }
+
 /*------------------------------------------------------------------------
 Methods: get*() / is*()
 Purpose: Routines to return attribute variables
@@ -37,9 +37,9 @@ public class RenderedSonority
     switch (e.geteventtype())
       {
         case Event.EVENT_MULTIEVENT:
-          for (Iterator i=((MultiEvent)re.getEvent()).iterator(); i.hasNext();)
+          for (int i=0; i<((MultiEvent)e).getNumEvents(); i++)
             {
-              Event ne=(Event)i.next();
+              Event ne=((MultiEvent)e).getEvent(i);
               if (ne.geteventtype()==Event.EVENT_NOTE)
                 insertNote(re,ne.getPitch());
             }
@@ -59,9 +59,9 @@ public class RenderedSonority
     switch (e.geteventtype())
       {
         case Event.EVENT_MULTIEVENT:
-          for (Iterator i=((MultiEvent)re.getEvent()).iterator(); i.hasNext();)
+          for (int i=0; i<((MultiEvent)e).getNumEvents(); i++)
             {
-              Event ne=(Event)i.next();
+              Event ne=((MultiEvent)e).getEvent(i);
               if (ne.geteventtype()==Event.EVENT_NOTE)
                 removeNote(re,ne.getPitch());
             }
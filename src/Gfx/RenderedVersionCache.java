@@ -0,0 +1,229 @@
+/*----------------------------------------------------------------------*/
+/*
+
+        Module          : RenderedVersionCache.java
+
+        Package         : Gfx
+
+        Classes Included: RenderedVersionCache
+
+        Purpose         : Keep recently displayed variant versions of a piece
+                          (with their renderings) for quick re-display
+
+        Programmer      : Ted Dumitrescu
+
+        Date Started    : 10/17/26
+
+Updates:
+10/17/26: entries also keep the page layout derived from the rendering
+          (for print preview/PDF/MusicXML export)
+
+                                                                        */
+/*----------------------------------------------------------------------*/
+
+package Gfx;
+
+/*----------------------------------------------------------------------*/
+/* Imported packages */
+
+import java.util.*;
+
+import DataStruct.PieceData;
+import DataStruct.VariantVersionData;
+
+/*------------------------------------------------------------------------
+Class:   RenderedVersionCache
+Extends: -
+Purpose: Bounded least-recently-used cache of constructed version data and
+         rendered sections (plus page layout, once requested) for one open
+         piece, keyed by variant version and display options. Size is
+         measured in rendered events; when the total exceeds the limit,
+         the least recently used versions are dropped (the most recent
+         entry is always kept). The owner must call invalidate() whenever
+         the music is edited. Section lists put here must not be a view's
+         live list (renderers handed out are marked shared, see
+         ScoreRenderer.markShared).
+------------------------------------------------------------------------*/
+
+public class RenderedVersionCache
+{
+/*----------------------------------------------------------------------*/
+/* Class variables */
+
+  public static final int DEFAULT_MAX_EVENTS=250000;
+
+  static class Key
+  {
+    VariantVersionData version;
+    String             optionsFingerprint;
+
+    Key(VariantVersionData version,OptionSet options)
+    {
+      this.version=version;
+      this.optionsFingerprint=options.getFingerprint();
+    }
+
+    public boolean equals(Object other)
+    {
+      if (!(other instanceof Key))
+        return false;
+      Key otherKey=(Key)other;
+      return version==otherKey.version &&
+             optionsFingerprint.equals(otherKey.optionsFingerprint);
+    }
+
+    public int hashCode()
+    {
+      return System.identityHashCode(version)*31+optionsFingerprint.hashCode();
+    }
+  }
+
+  /* one cached version */
+  public static class Entry
+  {
+    PieceData         musicData;
+    ScoreRenderer[]   renderedSections;
+    ScorePageRenderer renderedPages=null;
+    int               size;
+
+    Entry(PieceData musicData,ScoreRenderer[] renderedSections)
+    {
+      this.musicData=musicData;
+      this.renderedSections=renderedSections;
+      this.size=calcSize(renderedSections);
+    }
+
+    public PieceData getMusicData()
+    {
+      return musicData;
+    }
+
+    public ScoreRenderer[] getRenderedSections()
+    {
+      return renderedSections;
+    }
+
+    public synchronized ScorePageRenderer getRenderedPages()
+    {
+      return renderedPages;
+    }
+
+    public synchronized void setRenderedPages(ScorePageRenderer renderedPages)
+    {
+      this.renderedPages=renderedPages;
+    }
+  }
+
+/*----------------------------------------------------------------------*/
+/* Instance variables */
+
+  LinkedHashMap<Key,Entry> entries=new LinkedHashMap<Key,Entry>(16,0.75f,true);
+  int                      maxSize,
+                           curSize=0;
+
+/*----------------------------------------------------------------------*/
+/* Class methods */
+
+/*------------------------------------------------------------------------
+Method:  int calcSize(ScoreRenderer[] renderedSections)
+Purpose: Estimate size of a rendering
+Parameters:
+  Input:  ScoreRenderer[] renderedSections - rendered sections
+  Output: -
+  Return: number of rendered events
+------------------------------------------------------------------------*/
+
+  static int calcSize(ScoreRenderer[] renderedSections)
+  {
+    int size=0;
+    for (ScoreRenderer r : renderedSections)
+      if (r!=null && r.eventinfo!=null)
+        for (RenderList rl : r.eventinfo)
+          if (rl!=null)
+            size+=rl.size();
+    return size;
+  }
+
+/*----------------------------------------------------------------------*/
+/* Instance methods */
+
+/*------------------------------------------------------------------------
+Constructor: RenderedVersionCache([int maxSize])
+Purpose:     Initialize empty cache
+Parameters:
+  Input:  int maxSize - maximum total number of rendered events to keep
+  Output: -
+------------------------------------------------------------------------*/
+
+  public RenderedVersionCache(int maxSize)
+  {
+    this.maxSize=maxSize;
+  }
+
+  public RenderedVersionCache()
+  {
+    this(DEFAULT_MAX_EVENTS);
+  }
+
+/*------------------------------------------------------------------------
+Method:  Entry get(VariantVersionData version,OptionSet options)
+Purpose: Look up cached rendering of one version
+Parameters:
+  Input:  VariantVersionData version - variant version
+          OptionSet options          - display options
+  Output: -
+  Return: cached entry, or null if not present
+------------------------------------------------------------------------*/
+
+  public synchronized Entry get(VariantVersionData version,OptionSet options)
+  {
+    return entries.get(new Key(version,options));
+  }
+
+/*------------------------------------------------------------------------
+Method:  void put(VariantVersionData version,OptionSet options,
+                  PieceData musicData,ScoreRenderer[] renderedSections)
+Purpose: Store rendering of one version, evicting older entries if
+         necessary
+Parameters:
+  Input:  VariantVersionData version       - variant version
+          OptionSet options                - display options
+          PieceData musicData              - music data for version
+          ScoreRenderer[] renderedSections - rendered sections
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+  public synchronized void put(VariantVersionData version,OptionSet options,
+                               PieceData musicData,ScoreRenderer[] renderedSections)
+  {
+    Entry newEntry=new Entry(musicData,renderedSections),
+          oldEntry=entries.put(new Key(version,options),newEntry);
+    if (oldEntry!=null)
+      curSize-=oldEntry.size;
+    curSize+=newEntry.size;
+
+    for (Iterator<Entry> i=entries.values().iterator();
+         curSize>maxSize && entries.size()>1;)
+      {
+        Entry e=i.next();
+        curSize-=e.size;
+        i.remove();
+      }
+  }
+
+/*------------------------------------------------------------------------
+Method:  void invalidate()
+Purpose: Remove all entries (after music has been modified)
+Parameters:
+  Input:  -
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+  public synchronized void invalidate()
+  {
+    entries.clear();
+    curSize=0;
+  }
+}
@@ -21,6 +21,7 @@ Updates:
           created and sized automatically
           added scroll pane for viewing main canvas
 12/22/10: added support for ties
+10/17/26: page layout taken from parent window (shared render cache)
 
                                                                         */
 /*----------------------------------------------------------------------*/
@@ -88,8 +89,8 @@ Parameters:
     /* initialize window */
     parentMusicWin=mw;
     musicData=p;
-    renderedPages=new ScorePageRenderer(
-      musicData,mw.optSet,
+    renderedPages=mw.getRenderedPages(
+      musicData.getDefaultVariantVersion(),musicData,mw.optSet,
       new Dimension(STAFFXSIZE,DRAWINGSPACEY),
       STAFFSCALE,CANVASYSCALE);
 
@@ -17,6 +17,8 @@ Updates:
 8/2/06:  moved page and staff system parameters to separate objects
          (RenderedScorePage and RenderedStaffSystem)
 8/29/07: added support for multiple-section scores
+10/17/26: page layout can be created from an existing score rendering
+          (shared through RenderedVersionCache)
 
                                                                         */
 /*----------------------------------------------------------------------*/
@@ -50,7 +52,9 @@ public class ScorePageRenderer
 
   OptionSet options;
   Dimension canvasSize;
-  int       numVoices;
+  int       numVoices,
+            staffScale,canvasYScale; /* drawing space parameters used for
+                                        this layout */
 
   public PieceData                      musicData;
   public ScoreRenderer[]                scoreData;
@@ -58,15 +62,57 @@ public class ScorePageRenderer
   public ArrayList<RenderedStaffSystem> systems;
   public ArrayList<RenderedScorePage>   pages;
 
+/*----------------------------------------------------------------------*/
+/* Class methods */
+
+/*------------------------------------------------------------------------
+Method:  ScoreRenderer[] renderScore(PieceData p,OptionSet o)
+Purpose: Render music into continuous score
+Parameters:
+  Input:  PieceData p - music data
+          OptionSet o - display options
+  Output: -
+  Return: rendered sections
+------------------------------------------------------------------------*/
+
+  static ScoreRenderer[] renderScore(PieceData p,OptionSet o)
+  {
+    int numVoices=p.getVoiceData().length;
+
+    /* initialize voice parameters */
+    RenderedSectionParams[] sectionParams=new RenderedSectionParams[numVoices];
+    for (int i=0; i<numVoices; i++)
+      sectionParams[i]=new RenderedSectionParams();
+
+    int             numSections=p.getNumSections(),
+                    numMeasures=0;
+    double          startX=0;
+    ScoreRenderer[] scoreData=new ScoreRenderer[numSections];
+    for (int i=0; i<numSections; i++)
+      {
+        scoreData[i]=new ScoreRenderer(i,p.getSection(i),p,
+                                       sectionParams,
+                                       o,numMeasures,startX);
+        sectionParams=scoreData[i].getEndingParams();
+        numMeasures+=scoreData[i].getNumMeasures();
+        startX+=scoreData[i].getXsize();
+      }
+
+    return scoreData;
+  }
+
 /*----------------------------------------------------------------------*/
 /* Instance methods */
 
 /*------------------------------------------------------------------------
-Constructor: ScorePageRenderer(PieceData p,OptionSet o,Dimension d,
+Constructor: ScorePageRenderer(PieceData p,[ScoreRenderer[] scoreData,]
+                               OptionSet o,Dimension d,
                                int STAFFSCALE,int CANVASYSCALE)
 Purpose:     Initialize renderer
 Parameters:
   Input:  PieceData p                 - music data
+          ScoreRenderer[] scoreData   - existing score rendering of p with
+                                        options o (not modified)
           OptionSet o                 - display options
           Dimension d                 - size of drawing block
           int STAFFSCALE,CANVASYSCALE - drawing space parameters
@@ -76,35 +122,44 @@ Parameters:
 
   public ScorePageRenderer(PieceData p,OptionSet o,Dimension d,
                            int STAFFSCALE,int CANVASYSCALE)
+  {
+    this(p,renderScore(p,o),o,d,STAFFSCALE,CANVASYSCALE);
+  }
+
+  public ScorePageRenderer(PieceData p,ScoreRenderer[] scoreData,OptionSet o,
+                           Dimension d,int STAFFSCALE,int CANVASYSCALE)
   {
     this.STAFFSCALE=STAFFSCALE;
     this.CANVASYSCALE=CANVASYSCALE;
+    staffScale=STAFFSCALE;
+    canvasYScale=CANVASYSCALE;
     musicData=p;
     options=o;
-    canvasSize=d;
+    canvasSize=new Dimension(d);
     numVoices=musicData.getVoiceData().length;
 
-    /* initialize voice parameters */
-    RenderedSectionParams[] sectionParams=new RenderedSectionParams[numVoices];
-    for (int i=0; i<numVoices; i++)
-      sectionParams[i]=new RenderedSectionParams();
+    /* keep own copy of section list (the view replaces shared renderers in
+       its list after edits instead of changing them) */
+    this.scoreData=scoreData.clone();
 
-    /* render, first into continuous score, then into page structure */
-    int    numSections=musicData.getNumSections(),
-           numMeasures=0;
-    double startX=0;
-    scoreData=new ScoreRenderer[numSections];
-    for (int i=0; i<numSections; i++)
-      {
-        scoreData[i]=new ScoreRenderer(i,musicData.getSection(i),musicData,
-                                       sectionParams,
-                                       options,numMeasures,startX);
-        sectionParams=scoreData[i].getEndingParams();
-        numMeasures+=scoreData[i].getNumMeasures();
-        startX+=scoreData[i].getXsize();
-      }
+    renderPages(this.scoreData);
+  }
 
-    renderPages(scoreData);
+/*------------------------------------------------------------------------
+Method:  boolean hasLayout(Dimension d,int STAFFSCALE,int CANVASYSCALE)
+Purpose: Check whether this page layout was created with given drawing
+         space parameters
+Parameters:
+  Input:  Dimension d                 - size of drawing block
+          int STAFFSCALE,CANVASYSCALE - drawing space parameters
+  Output: -
+  Return: true if parameters match
+------------------------------------------------------------------------*/
+
+  public boolean hasLayout(Dimension d,int STAFFSCALE,int CANVASYSCALE)
+  {
+    return canvasSize.equals(d) &&
+           staffScale==STAFFSCALE && canvasYScale==CANVASYSCALE;
   }
 
 /*------------------------------------------------------------------------
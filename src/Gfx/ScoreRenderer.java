@@ -5,7 +5,8 @@
 
         Package         : Gfx
 
-        Classes Included: ScoreRenderer,VoiceGfxInfo
+        Classes Included: ScoreRenderer (with nested RenderCheckpoint,
+                          PositionCheckpoint),VoiceGfxInfo
 
         Purpose         : "Prerenders" music events of one mensural music
                           section into scored measure array to facilitate quick
@@ -67,6 +68,27 @@ Updates:
           version)
 9/24/09:  fixed spacing bug when rhythmic-error variant is within proportional
           section
+10/17/26: music time calculations in the positioning loops use exact packed
+          MusicTime values instead of temporary Proportions and toDouble()
+          comparisons
+10/17/26: rendering a rhythmic-error variant no longer modifies the variant
+          marker's stored default-reading length (re-rendering the same
+          version data gave different spacing)
+10/17/26: MultiEvent components are visited by index (no iterators)
+10/17/26: renderSections creates the rendered event lists of each section in
+          order (to pass on ending parameters and measure numbers), then
+          positions all sections in parallel and assigns section x-locations
+          afterwards
+10/17/26: added rerenderSections for re-rendering from one edited section,
+          stopping once following sections are unaffected
+10/17/26: positionMensuralEvents merges voices through a priority queue
+          ordered by exact music time (ties in first-come order), instead of
+          the sorted voice list
+10/17/26: an edit within one voice is re-laid out in place (relayoutVoice):
+          rendering and positioning resume from checkpoints saved in each
+          measure and stop once the previous layout is reached again
+10/17/26: renderers given to other windows are marked shared, and are
+          replaced rather than changed in place when rerendering
 
                                                                         */
 /*----------------------------------------------------------------------*/
@@ -78,6 +100,12 @@ package Gfx;
 
 import java.awt.FontMetrics;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import DataStruct.*; /* music data structures */
 
@@ -99,9 +127,8 @@ class VoiceGfxInfo
 
   public VoiceEventListData v;         /* event list info */
   public int                voicenum;  /* voice number */
-  public VoiceGfxInfo       next,last; /* for voice list;
-                                          voices are always sorted in this list by
-                                          current musical time (musictime) */
+  long                      queueTime;  /* for positioning queue: musictime when */
+  int                       queueOrder; /* queued, and order of queueing */
 
   public Event            clefedata;     /* event data for current clef */
   public RenderedClefSet  clefEvents;    /* current clef set */
@@ -297,6 +324,27 @@ public class ScoreRenderer
 
   public static final double SECTION_END_SPACING=10;
 
+  /* results of renderVoiceEvents */
+  static final int RENDER_FINISHED=-1,
+                   RENDER_ABORTED= -2;
+
+  /* worker threads for positioning sections in parallel */
+  static final int       NUM_LAYOUT_THREADS=Runtime.getRuntime().availableProcessors();
+  static ExecutorService layoutThreads=null;
+
+  /* positioning queue order: earliest music time first, then voices which
+     were queued earlier */
+  static final Comparator<VoiceGfxInfo> VOICE_QUEUE_ORDER=new Comparator<VoiceGfxInfo>()
+    {
+      public int compare(VoiceGfxInfo v1,VoiceGfxInfo v2)
+      {
+        int c=MusicTime.compare(v1.queueTime,v2.queueTime);
+        if (c!=0)
+          return c;
+        return v1.queueOrder<v2.queueOrder ? -1 : v1.queueOrder==v2.queueOrder ? 0 : 1;
+      }
+    };
+
   /* event x positioning relative to previous events */
   public static int XPOS_BEFORENEXT=  0, /* immediately before next event */
                     XPOS_IMMEDIATE=   1, /* immediately after previous event */
@@ -327,13 +375,20 @@ public class ScoreRenderer
   /* default amount of horizontal space taken by one breve */
   double       MINIMSCALE,BREVESCALE;
   int          numVoices;
-  VoiceGfxInfo voicegfx[],
-               liststart;
+  VoiceGfxInfo voicegfx[];
   double       startX;
+  boolean      shared=false; /* rendering has been given to other windows, and
+                                must not be changed in place */
 
   /* rendering parameters */
   int              curMeasureNum;
   MeasureInfo      curmeasure;
+
+  /* voices still being positioned */
+  PriorityQueue<VoiceGfxInfo> voiceQueue;
+  ArrayList<VoiceGfxInfo>     startVoices;
+  int                         voiceQueueCount;
+
   double           barxstart;
   Proportion       starttime;
   int              skipevents; /* number of events to 'skip' displaying */
@@ -343,8 +398,11 @@ public class ScoreRenderer
   VoiceGfxInfo     variantVoice;       /* voice with variant causing respacing */
   RenderedSonority curSonority;
 
-  LinkedList<VoiceGfxInfo> finalisList; /* for incipit-scores; displaying explicits
-                                           after ellipses */
+  /* relayout information */
+  int voiceEndMeasure[], /* index of last measure reached by each voice */
+      lastMensMeasure[]; /* index of last measure whose length was set by a
+                            mensuration in each voice (-1 if none) */
+
 
   /* mensuration parameters */
   public Mensuration baseMensuration;
@@ -378,15 +436,14 @@ Parameters:
 
   public static ScoreRenderer[] renderSections(PieceData musicToRender,OptionSet options)
   {
-    double startX=0;
-
     /* initialize voice parameters */
     int numVoices=musicToRender.getVoiceData().length;
     RenderedSectionParams[] sectionParams=new RenderedSectionParams[numVoices];
     for (int i=0; i<numVoices; i++)
       sectionParams[i]=new RenderedSectionParams();
 
-    /* initialize sections */
+    /* create rendered event lists; each section's starting parameters and
+       measure numbers depend on the previous section */
     int numSections=musicToRender.getNumSections();
     ScoreRenderer[] renderedSections=new ScoreRenderer[numSections];
     int nummeasures=0;
@@ -394,15 +451,219 @@ Parameters:
       {
         renderedSections[i]=new ScoreRenderer(i,musicToRender.getSection(i),musicToRender,
                                               sectionParams,
-                                              options,nummeasures,startX);
+                                              options,nummeasures,0,false);
         sectionParams=renderedSections[i].getEndingParams();
         nummeasures+=renderedSections[i].getNumMeasures();
+      }
+
+    /* x-positioning within sections is independent */
+    positionSections(renderedSections);
+
+    double startX=0;
+    for (int i=0; i<numSections; i++)
+      {
+        renderedSections[i].startX=startX;
         startX+=renderedSections[i].getXsize()+SECTION_END_SPACING;
       }
 
     return renderedSections;
   }
 
+/*------------------------------------------------------------------------
+Method:  void rerenderSections(ScoreRenderer[] renderedSections,int snum,
+                               [int vnum,int firstChangedEvent,]
+                               PieceData musicToRender,OptionSet options)
+Purpose: Rerender sections after a change in one section, continuing into
+         following sections only while the ending parameters or last measure
+         number of the last rerendered section differ from before (after
+         that, following sections are only moved horizontally); if the
+         change is within one voice, the changed section is re-laid out in
+         place from the measure containing the change where possible
+         (shared renderers are never changed in place: they are replaced
+         with new renderers instead)
+Parameters:
+  Input:  ScoreRenderer[] renderedSections - current renderers for all sections
+          int snum                         - number of changed section
+          int vnum                         - number of changed voice (-1 if
+                                             not known)
+          int firstChangedEvent            - index of first changed event in
+                                             voice event list
+          PieceData musicToRender          - music data to be rendered
+          OptionSet options                - display options
+  Output: ScoreRenderer[] renderedSections - renderers for changed sections
+                                             are replaced or updated
+  Return: -
+------------------------------------------------------------------------*/
+
+  public static void rerenderSections(ScoreRenderer[] renderedSections,int snum,
+                                      PieceData musicToRender,OptionSet options)
+  {
+    rerenderSections(renderedSections,snum,-1,-1,musicToRender,options);
+  }
+
+  public static void rerenderSections(ScoreRenderer[] renderedSections,int snum,
+                                      int vnum,int firstChangedEvent,
+                                      PieceData musicToRender,OptionSet options)
+  {
+    int numSections=renderedSections.length;
+    for (int si=snum; si<numSections; si++)
+      {
+        ScoreRenderer           oldRenderer=renderedSections[si];
+        int                     oldLastMeasureNum=oldRenderer.getLastMeasureNum();
+        RenderedSectionParams[] oldEndingParams=oldRenderer.getEndingParams(),
+                                sectionParams;
+        int                     nummeasures;
+        double                  startX;
+        if (si==0)
+          {
+            int numVoices=musicToRender.getVoiceData().length;
+            sectionParams=new RenderedSectionParams[numVoices];
+            for (int i=0; i<numVoices; i++)
+              sectionParams[i]=new RenderedSectionParams();
+            nummeasures=0;
+            startX=0;
+          }
+        else
+          {
+            ScoreRenderer lastRenderer=renderedSections[si-1];
+            sectionParams=lastRenderer.getEndingParams();
+            nummeasures=lastRenderer.getLastMeasureNum()+1;
+            startX=lastRenderer.getStartX()+lastRenderer.getXsize()+SECTION_END_SPACING;
+          }
+
+        if (si!=snum || vnum<0 || oldRenderer.shared ||
+            !oldRenderer.relayoutVoice(vnum,firstChangedEvent))
+          renderedSections[si]=new ScoreRenderer(si,musicToRender.getSection(si),musicToRender,
+                                                 sectionParams,
+                                                 options,nummeasures,startX);
+
+        if (oldLastMeasureNum==renderedSections[si].getLastMeasureNum() &&
+            RenderedSectionParams.sameParams(oldEndingParams,
+                                             renderedSections[si].getEndingParams()))
+          {
+            for (si++; si<numSections; si++)
+              {
+                ScoreRenderer lastRenderer=renderedSections[si-1];
+                startX=lastRenderer.getStartX()+lastRenderer.getXsize()+SECTION_END_SPACING;
+                if (renderedSections[si].shared)
+                  renderedSections[si]=new ScoreRenderer(si,musicToRender.getSection(si),musicToRender,
+                                                         lastRenderer.getEndingParams(),options,
+                                                         lastRenderer.getLastMeasureNum()+1,startX);
+                else
+                  renderedSections[si].startX=startX;
+              }
+            return;
+          }
+      }
+  }
+
+/*------------------------------------------------------------------------
+Method:  void markShared(ScoreRenderer[] renderedSections)
+Purpose: Mark a set of renderers as given to other windows, so that later
+         rerendering replaces them instead of changing them in place
+Parameters:
+  Input:  ScoreRenderer[] renderedSections - section array
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+  static void markShared(ScoreRenderer[] renderedSections)
+  {
+    for (ScoreRenderer r : renderedSections)
+      r.shared=true;
+  }
+
+/*------------------------------------------------------------------------
+Method:  void positionSections(ScoreRenderer[] renderedSections)
+Purpose: Assign x-positions to events in a set of sections whose rendered
+         event lists have been created, using multiple threads if available
+         (the calling thread takes sections from the same queue as the
+         workers, so positioning finishes even if all workers are busy)
+Parameters:
+  Input:  ScoreRenderer[] renderedSections - section array
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+  static void positionSections(final ScoreRenderer[] renderedSections)
+  {
+    int numThreads=Math.min(NUM_LAYOUT_THREADS,renderedSections.length);
+    if (numThreads<2)
+      {
+        for (ScoreRenderer r : renderedSections)
+          r.positionEvents();
+        return;
+      }
+
+    final AtomicInteger nextSection=new AtomicInteger(0);
+    Runnable positioner=new Runnable()
+      {
+        public void run()
+        {
+          for (int si=nextSection.getAndIncrement(); si<renderedSections.length;
+               si=nextSection.getAndIncrement())
+            renderedSections[si].positionEvents();
+        }
+      };
+
+    ArrayList<Future<?>> workers=new ArrayList<Future<?>>(numThreads-1);
+    for (int ti=1; ti<numThreads; ti++)
+      workers.add(getLayoutThreads().submit(positioner));
+    positioner.run();
+
+    /* wait for sections still being positioned by workers */
+    boolean interrupted=false;
+    for (Future<?> w : workers)
+      while (true)
+        try
+          {
+            w.get();
+            break;
+          }
+        catch (InterruptedException e)
+          {
+            interrupted=true;
+          }
+        catch (ExecutionException e)
+          {
+            Throwable cause=e.getCause();
+            if (cause instanceof RuntimeException)
+              throw (RuntimeException)cause;
+            if (cause instanceof Error)
+              throw (Error)cause;
+            throw new RuntimeException(cause);
+          }
+    if (interrupted)
+      Thread.currentThread().interrupt();
+  }
+
+/*------------------------------------------------------------------------
+Method:  ExecutorService getLayoutThreads()
+Purpose: Return thread pool for positioning sections (created on first use;
+         daemon threads, so that an idle pool does not keep the program
+         running)
+Parameters:
+  Input:  -
+  Output: -
+  Return: thread pool
+------------------------------------------------------------------------*/
+
+  static synchronized ExecutorService getLayoutThreads()
+  {
+    if (layoutThreads==null)
+      layoutThreads=Executors.newFixedThreadPool(NUM_LAYOUT_THREADS,new ThreadFactory()
+        {
+          public Thread newThread(Runnable r)
+          {
+            Thread t=new Thread(r,"Score layout");
+            t.setDaemon(true);
+            return t;
+          }
+        });
+
+    return layoutThreads;
+  }
+
 /*------------------------------------------------------------------------
 Method:  int calcRendererNum(ScoreRenderer[] renderedSections,int m)
 Purpose: Calculate index of (rendered) section within an array containing
@@ -451,7 +712,7 @@ Parameters:
 /*------------------------------------------------------------------------
 Constructor: ScoreRenderer(int sectionNum,MusicSection ms,PieceData fullPieceData,
                            RenderedSectionParams[] rsp,
-                           OptionSet o,int fmn,double sx)
+                           OptionSet o,int fmn,double sx[,boolean position])
 Purpose:     Initialize renderer
 Parameters:
   Input:  int sectionNum              - section number
@@ -461,6 +722,8 @@ Parameters:
           OptionSet o                 - display options
           int fmn                     - number of first measure in section
           double sx                   - left x-coordinate of section in full score
+          boolean position            - whether to position events (if false,
+                                        positionEvents() must be called later)
   Output: -
   Return: -
 ------------------------------------------------------------------------*/
@@ -468,6 +731,13 @@ Parameters:
   public ScoreRenderer(int sectionNum,MusicSection ms,PieceData fullPieceData,
                        RenderedSectionParams[] rsp,
                        OptionSet o,int fmn,double sx)
+  {
+    this(sectionNum,ms,fullPieceData,rsp,o,fmn,sx,true);
+  }
+
+  ScoreRenderer(int sectionNum,MusicSection ms,PieceData fullPieceData,
+                RenderedSectionParams[] rsp,
+                OptionSet o,int fmn,double sx,boolean position)
   {
     this.sectionNum=sectionNum;
     this.musicData=ms;
@@ -480,13 +750,45 @@ Parameters:
     for (int i=0; i<rsp.length; i++)
       startingParams[i]=new RenderedSectionParams(rsp[i]);
 
-    render();
+    if (position)
+      render();
+    else
+      createRenderedEvents();
   }
 
+/*------------------------------------------------------------------------
+Method:  void render()
+Purpose: Render section: create rendered event lists, then position events
+Parameters:
+  Input:  -
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
   public void render()
+  {
+    createRenderedEvents();
+    positionEvents();
+  }
+
+/*------------------------------------------------------------------------
+Method:  void createRenderedEvents()
+Purpose: First rendering stage: create rendered event lists and measure
+         structure, and store parameters for the next section (chant and
+         text sections are rendered completely here)
+Parameters:
+  Input:  -
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+  void createRenderedEvents()
   {
     if (musicData instanceof MusicMensuralSection)
-      renderMensuralData((MusicMensuralSection)musicData);
+      {
+        initEvents(musicData);
+        createRenderLists();
+      }
     else if (musicData instanceof MusicChantSection)
       renderChantData((MusicChantSection)musicData);
     else if (musicData instanceof MusicTextSection)
@@ -497,6 +799,735 @@ Parameters:
     createEndingParams();
   }
 
+/*------------------------------------------------------------------------
+Method:  void positionEvents()
+Purpose: Second rendering stage: assign x-positions to rendered events
+         (uses no data from other sections)
+Parameters:
+  Input:  -
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+  void positionEvents()
+  {
+    if (musicData instanceof MusicMensuralSection)
+      positionMensuralEvents();
+  }
+
+/*------------------------------------------------------------------------
+Class:   RenderCheckpoint
+Extends: -
+Purpose: Rendering state of one voice before a timed event at which
+         rendering can be resumed without looking back at earlier events
+         (no ligature, tie, variant reading, dot, coloration bracket or
+         skipped/inserted events pending); saved once per measure
+------------------------------------------------------------------------*/
+
+  static class RenderCheckpoint
+  {
+  /* instance variables */
+
+    int              evloc,revloc;
+    Event            nextEvent;         /* unrendered event at evloc */
+    Proportion       musictime;
+    Event            clefedata;
+    RenderedClefSet  clefEvents;
+    RenderedEvent    mensEvent;
+    Proportion       curProportion,
+                     tempoProportion;
+    int              numMinimsInBreve;
+    Coloration       curColoration;
+    boolean          inEditorialSection;
+    RenderedLigature ligInfo,tieInfo;
+    int              lastTimedEventNum;
+
+    /* renderer mensuration parameters (set separately for each voice) */
+    Mensuration baseMensuration;
+    int         scoreMinimsInBreve;
+    Proportion  measureProportion;
+    double      MINIMSCALE,BREVESCALE;
+    Mensuration lastMens;
+    Proportion  lastMensTime;
+
+  /* class methods */
+
+/*------------------------------------------------------------------------
+Method:  boolean canSave(ScoreRenderer r,VoiceGfxInfo v,Event e)
+Purpose: Check whether rendering of a voice could be resumed before a
+         given event
+Parameters:
+  Input:  ScoreRenderer r - renderer
+          VoiceGfxInfo v  - voice being rendered
+          Event e         - next event to be rendered
+  Output: -
+  Return: true if e is timed and no state from earlier events is pending
+------------------------------------------------------------------------*/
+
+    static boolean canSave(ScoreRenderer r,VoiceGfxInfo v,Event e)
+    {
+      return e.getmusictime().i1>0 &&
+             r.skipevents==0 && r.withnextStart==-1 && !r.endlig &&
+             r.errorRespacingTime==null &&
+             v.replacementEvents.isEmpty() && v.lastNoteEvent==null &&
+             v.ligInfo.firstEventNum==-1 && v.tieInfo.firstEventNum==-1 &&
+             v.colorBeginLoc==-1 && v.colorEndLoc==-1 &&
+             v.varReadingInfo==null && v.varDefaultTimeAdd==null && !v.respaceAfterVar;
+    }
+
+    static boolean sameColoration(Coloration c1,Coloration c2)
+    {
+      return c1==c2 || (c1!=null && c2!=null && c1.equals(c2));
+    }
+
+  /* instance methods */
+
+/*------------------------------------------------------------------------
+Constructor: RenderCheckpoint(ScoreRenderer r,VoiceGfxInfo v)
+Purpose:     Save current rendering state of one voice
+Parameters:
+  Input:  ScoreRenderer r - renderer
+          VoiceGfxInfo v  - voice being rendered
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+    RenderCheckpoint(ScoreRenderer r,VoiceGfxInfo v)
+    {
+      evloc=v.evloc;
+      revloc=v.revloc;
+      nextEvent=v.v.getEvent(v.evloc);
+      musictime=new Proportion(v.musictime);
+      clefedata=v.clefedata;
+      clefEvents=v.clefEvents;
+      mensEvent=v.mensEvent;
+      curProportion=v.curProportion;
+      tempoProportion=v.tempoProportion;
+      numMinimsInBreve=v.numMinimsInBreve;
+      curColoration=v.curColoration;
+      inEditorialSection=v.inEditorialSection;
+      ligInfo=v.ligInfo;
+      tieInfo=v.tieInfo;
+      lastTimedEventNum=v.lastTimedEventNum;
+
+      baseMensuration=r.baseMensuration;
+      scoreMinimsInBreve=r.numMinimsInBreve;
+      measureProportion=r.measureProportion;
+      MINIMSCALE=r.MINIMSCALE;
+      BREVESCALE=r.BREVESCALE;
+      lastMens=r.lastMens;
+      lastMensTime=r.lastMensTime;
+    }
+
+/*------------------------------------------------------------------------
+Method:  void restore(ScoreRenderer r,VoiceGfxInfo v)
+Purpose: Reset rendering state of voice and renderer to this checkpoint
+Parameters:
+  Input:  -
+  Output: ScoreRenderer r - renderer
+          VoiceGfxInfo v  - voice to reset
+  Return: -
+------------------------------------------------------------------------*/
+
+    void restore(ScoreRenderer r,VoiceGfxInfo v)
+    {
+      v.evloc=evloc;
+      v.revloc=revloc;
+      v.musictime=new Proportion(musictime);
+      v.clefedata=clefedata;
+      v.clefEvents=clefEvents;
+      v.mensEvent=mensEvent;
+      v.curProportion=curProportion;
+      v.tempoProportion=tempoProportion;
+      v.numMinimsInBreve=numMinimsInBreve;
+      v.curColoration=curColoration;
+      v.inEditorialSection=inEditorialSection;
+      v.ligInfo=ligInfo;
+      v.tieInfo=tieInfo;
+      v.lastTimedEventNum=lastTimedEventNum;
+      v.lastNoteEvent=null;
+      v.replacementEvents=new ArrayList<Event>();
+      v.colorBeginLoc=v.colorEndLoc=-1;
+      v.varReadingInfo=null;
+      v.varDefaultTimeAdd=null;
+      v.respaceAfterVar=false;
+
+      r.skipevents=0;
+      r.withnextStart=-1;
+      r.endlig=false;
+      r.errorRespacingTime=null;
+      r.variantVoice=null;
+      r.baseMensuration=baseMensuration;
+      r.numMinimsInBreve=scoreMinimsInBreve;
+      r.measureProportion=measureProportion;
+      r.MINIMSCALE=MINIMSCALE;
+      r.BREVESCALE=BREVESCALE;
+      r.lastMens=lastMens;
+      r.lastMensTime=lastMensTime;
+    }
+
+/*------------------------------------------------------------------------
+Method:  boolean matches(RenderCheckpoint cp)
+Purpose: Check whether rendering from this checkpoint will produce the same
+         events as rendering from another (i.e., whether a re-rendered
+         voice has resynchronized with its previous rendering)
+Parameters:
+  Input:  RenderCheckpoint cp - checkpoint from previous rendering
+  Output: -
+  Return: true if voice state is the same and the next event is a note
+          (so that no later dot refers back to a re-rendered note)
+------------------------------------------------------------------------*/
+
+    boolean matches(RenderCheckpoint cp)
+    {
+      return cp!=null &&
+             evloc==cp.evloc && revloc==cp.revloc &&
+             nextEvent==cp.nextEvent && nextEvent.hasEventType(Event.EVENT_NOTE) &&
+             musictime.equals(cp.musictime) &&
+             clefedata==cp.clefedata && clefEvents==cp.clefEvents && mensEvent==cp.mensEvent &&
+             curProportion.equals(cp.curProportion) &&
+             tempoProportion.equals(cp.tempoProportion) &&
+             numMinimsInBreve==cp.numMinimsInBreve &&
+             sameColoration(curColoration,cp.curColoration) &&
+             inEditorialSection==cp.inEditorialSection &&
+             baseMensuration==cp.baseMensuration &&
+             scoreMinimsInBreve==cp.scoreMinimsInBreve &&
+             measureProportion.equals(cp.measureProportion) &&
+             BREVESCALE==cp.BREVESCALE &&
+             lastMens==cp.lastMens;
+    }
+  }
+
+
+/*------------------------------------------------------------------------
+Class:   PositionCheckpoint
+Extends: -
+Purpose: Positioning state of all voices at the first pass of the
+         positioning loop in a measure (saved only once the current
+         sonority can no longer change)
+------------------------------------------------------------------------*/
+
+  static class PositionCheckpoint
+  {
+  /* class variables */
+
+    static final double X_TOLERANCE=1e-6;
+
+  /* instance variables */
+
+    double           barxstart,
+                     measureXLength;
+    int              voiceQueueCount,
+                     numSonorities;
+    RenderedSonority curSonority;
+
+    /* voice positions */
+    int              revloc[],
+                     withnextEvents[],
+                     queueOrder[],
+                     queueRank[],   /* place in positioning queue (-1 if not queued) */
+                     trailStart[];  /* first of the NOSPACE events directly before
+                                       revloc (which may still be moved) */
+    long             queueTime[];
+    Proportion       musictime[];
+    double           xloc[],xadd[],lastx[];
+    RenderedEvent    curSoundingEvent[];
+    double           trailX[][],      /* x-locations of trailing NOSPACE events */
+                     finalTrailX[][]; /* and after positioning the whole section */
+
+  /* class methods */
+
+/*------------------------------------------------------------------------
+Method:  boolean canSave(ScoreRenderer r)
+Purpose: Check whether positioning state can be saved at the current pass
+         of the positioning loop
+Parameters:
+  Input:  ScoreRenderer r - renderer
+  Output: -
+  Return: true if the current sonority is complete
+------------------------------------------------------------------------*/
+
+    static boolean canSave(ScoreRenderer r)
+    {
+      return !r.voiceQueue.isEmpty() &&
+             MusicTime.compare(MusicTime.valueOf(r.curSonority.getMusicTime()),
+                               r.voiceQueue.peek().queueTime)<0;
+    }
+
+    static boolean sameX(double x1,double x2)
+    {
+      return Math.abs(x1-x2)<=X_TOLERANCE;
+    }
+
+    static boolean sameNotes(RenderedSonority s1,RenderedSonority s2)
+    {
+      if (!s1.getMusicTime().equals(s2.getMusicTime()) ||
+          s1.rNotes.size()!=s2.rNotes.size())
+        return false;
+      Iterator<RenderedEvent> i2=s2.rNotes.iterator();
+      for (RenderedEvent re : s1.rNotes)
+        if (re!=i2.next())
+          return false;
+      return true;
+    }
+
+  /* instance methods */
+
+/*------------------------------------------------------------------------
+Constructor: PositionCheckpoint(ScoreRenderer r)
+Purpose:     Save current positioning state
+Parameters:
+  Input:  ScoreRenderer r - renderer
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+    PositionCheckpoint(ScoreRenderer r)
+    {
+      int nv=r.numVoices;
+
+      barxstart=r.barxstart;
+      measureXLength=r.curmeasure.xlength;
+      voiceQueueCount=r.voiceQueueCount;
+      numSonorities=r.sonorityList.size();
+      curSonority=r.curSonority;
+
+      revloc=new int[nv];
+      withnextEvents=new int[nv];
+      queueOrder=new int[nv];
+      queueRank=new int[nv];
+      trailStart=new int[nv];
+      queueTime=new long[nv];
+      musictime=new Proportion[nv];
+      xloc=new double[nv];
+      xadd=new double[nv];
+      lastx=new double[nv];
+      curSoundingEvent=new RenderedEvent[nv];
+      trailX=new double[nv][];
+      finalTrailX=new double[nv][];
+
+      VoiceGfxInfo[] queued=r.voiceQueue.toArray(new VoiceGfxInfo[r.voiceQueue.size()]);
+      Arrays.sort(queued,ScoreRenderer.VOICE_QUEUE_ORDER);
+      Arrays.fill(queueRank,-1);
+      for (int qi=0; qi<queued.length; qi++)
+        queueRank[queued[qi].voicenum]=qi;
+
+      for (int i=0; i<nv; i++)
+        {
+          VoiceGfxInfo v=r.voicegfx[i];
+          revloc[i]=v.revloc;
+          withnextEvents[i]=v.withnextEvents;
+          queueOrder[i]=v.queueOrder;
+          queueTime[i]=v.queueTime;
+          musictime[i]=v.musictime;
+          xloc[i]=v.xloc;
+          xadd[i]=v.xadd;
+          lastx[i]=v.lastx;
+          curSoundingEvent[i]=v.curSoundingEvent;
+
+          RenderList rl=r.eventinfo[i];
+          int        ts=v.revloc;
+          if (rl!=null)
+            while (ts>0 && ScoreRenderer.getXSpacing(rl.getEvent(ts-1))==ScoreRenderer.XSPACING_NOSPACE)
+              ts--;
+          trailStart[i]=ts;
+          trailX[i]=new double[v.revloc-ts];
+          for (int ei=ts; ei<v.revloc; ei++)
+            trailX[i][ei-ts]=rl.getEvent(ei).getxloc();
+        }
+    }
+
+/*------------------------------------------------------------------------
+Method:  void restore(ScoreRenderer r,int mi)
+Purpose: Reset positioning state of renderer to this checkpoint
+Parameters:
+  Input:  int mi          - index of measure where checkpoint was saved
+  Output: ScoreRenderer r - renderer
+  Return: -
+------------------------------------------------------------------------*/
+
+    void restore(ScoreRenderer r,int mi)
+    {
+      r.curMeasureNum=mi;
+      r.curmeasure=r.measures.get(mi);
+      r.curmeasure.xlength=measureXLength;
+      r.barxstart=barxstart;
+      r.positioningWITHNEXTEvents=false;
+
+      r.voiceQueue=new PriorityQueue<VoiceGfxInfo>(Math.max(r.numVoices,1),ScoreRenderer.VOICE_QUEUE_ORDER);
+      r.startVoices=new ArrayList<VoiceGfxInfo>(r.numVoices);
+      r.voiceQueueCount=voiceQueueCount;
+      for (int i=0; i<r.numVoices; i++)
+        {
+          VoiceGfxInfo v=r.voicegfx[i];
+          v.revloc=revloc[i];
+          v.withnextEvents=withnextEvents[i];
+          v.queueOrder=queueOrder[i];
+          v.queueTime=queueTime[i];
+          v.musictime=musictime[i];
+          v.xloc=xloc[i];
+          v.xadd=xadd[i];
+          v.lastx=lastx[i];
+          v.curSoundingEvent=curSoundingEvent[i];
+          v.immediatePositioning=false;
+          if (queueRank[i]>=0)
+            r.voiceQueue.add(v);
+
+          for (int ei=trailStart[i]; ei<revloc[i]; ei++)
+            r.eventinfo[i].getEvent(ei).setxloc(trailX[i][ei-trailStart[i]]);
+        }
+
+      r.sonorityList=new ArrayList<RenderedSonority>(r.sonorityList.subList(0,numSonorities));
+      r.curSonority=curSonority;
+    }
+
+/*------------------------------------------------------------------------
+Method:  double resyncOffset(PositionCheckpoint cp,int vnum,int minTrailStart)
+Purpose: Check whether positioning from this checkpoint will produce the
+         same positions as from a checkpoint saved at the same place in a
+         previous layout, apart from a horizontal offset
+Parameters:
+  Input:  PositionCheckpoint cp - checkpoint from previous layout
+          int vnum              - re-rendered voice
+          int minTrailStart     - first event index in re-rendered voice
+                                  which is unchanged from previous rendering
+  Output: -
+  Return: horizontal offset from previous layout, or NaN if positioning
+          is not in the same state
+------------------------------------------------------------------------*/
+
+    double resyncOffset(PositionCheckpoint cp,int vnum,int minTrailStart)
+    {
+      double dx=barxstart-cp.barxstart;
+
+      if (trailStart[vnum]<=minTrailStart ||
+          !sameX(measureXLength,cp.measureXLength) ||
+          !sameNotes(curSonority,cp.curSonority))
+        return Double.NaN;
+
+      for (int i=0; i<revloc.length; i++)
+        {
+          if (revloc[i]!=cp.revloc[i] || trailStart[i]!=cp.trailStart[i] ||
+              withnextEvents[i]!=cp.withnextEvents[i] ||
+              queueRank[i]!=cp.queueRank[i] ||
+              (queueRank[i]>=0 && queueTime[i]!=cp.queueTime[i]) ||
+              !musictime[i].equals(cp.musictime[i]) ||
+              curSoundingEvent[i]!=cp.curSoundingEvent[i] ||
+              !sameX(xadd[i],cp.xadd[i]) ||
+              !sameX(xloc[i]-cp.xloc[i],dx) ||
+              !sameX(lastx[i]-cp.lastx[i],dx))
+            return Double.NaN;
+          for (int ti=0; ti<trailX[i].length; ti++)
+            if (!sameX(trailX[i][ti]-cp.trailX[i][ti],dx))
+              return Double.NaN;
+        }
+
+      return dx;
+    }
+
+/*------------------------------------------------------------------------
+Method:  void saveFinalPositions(ScoreRenderer r)
+Purpose: Store x-locations of trailing events after positioning is finished
+Parameters:
+  Input:  ScoreRenderer r - renderer
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+    void saveFinalPositions(ScoreRenderer r)
+    {
+      for (int i=0; i<revloc.length; i++)
+        {
+          finalTrailX[i]=new double[trailX[i].length];
+          for (int ei=trailStart[i]; ei<revloc[i]; ei++)
+            finalTrailX[i][ei-trailStart[i]]=r.eventinfo[i].getEvent(ei).getxloc();
+        }
+    }
+
+/*------------------------------------------------------------------------
+Method:  boolean precedesTrail(PositionCheckpoint cp)
+Purpose: Check whether the events saved here all come before the trailing
+         events of a later checkpoint (so that positioning from that
+         checkpoint cannot move them)
+Parameters:
+  Input:  PositionCheckpoint cp - later checkpoint
+  Output: -
+  Return: true if no voice is past the start of cp's trailing events
+------------------------------------------------------------------------*/
+
+    boolean precedesTrail(PositionCheckpoint cp)
+    {
+      for (int i=0; i<revloc.length; i++)
+        if (revloc[i]>cp.trailStart[i])
+          return false;
+      return true;
+    }
+
+/*------------------------------------------------------------------------
+Method:  void shift(double dx)
+Purpose: Move all saved x-locations horizontally
+Parameters:
+  Input:  double dx - amount to move
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+    void shift(double dx)
+    {
+      barxstart+=dx;
+      for (int i=0; i<revloc.length; i++)
+        {
+          xloc[i]+=dx;
+          lastx[i]+=dx;
+          for (int ti=0; ti<trailX[i].length; ti++)
+            {
+              trailX[i][ti]+=dx;
+              finalTrailX[i][ti]+=dx;
+            }
+        }
+    }
+  }
+
+
+/*------------------------------------------------------------------------
+Method:  boolean relayoutVoice(int vnum,int firstChangedEvent)
+Purpose: Update rendering in place after events in one voice have been
+         inserted, deleted or modified (without changing clefs or
+         mensurations): re-render the voice from the last checkpoint
+         before the change and re-position from the measure containing it,
+         keeping the rendered events, measures and positions before that
+         point; stop once the voice (and then the positioning of all voices)
+         is back in the same state as in the previous rendering at a
+         measure checkpoint, and reuse the previous rendering from there
+Parameters:
+  Input:  int vnum              - number of changed voice
+          int firstChangedEvent - index in voice event list of first changed
+                                  event
+  Output: -
+  Return: false if the change could not be handled incrementally (the
+          renderer is then unusable, and the section must be rendered again)
+------------------------------------------------------------------------*/
+
+  boolean relayoutVoice(int vnum,int firstChangedEvent)
+  {
+    if (!(musicData instanceof MusicMensuralSection) || voiceEndMeasure==null ||
+        vnum<0 || vnum>=numVoices || musicData.getNumVoices()!=numVoices ||
+        voicegfx[vnum].v==null || voicegfx[vnum].v!=musicData.getVoice(vnum))
+      return false;
+
+    VoiceGfxInfo v=voicegfx[vnum];
+    RenderList   rl=eventinfo[vnum];
+    int          firstMeasureNum=getFirstMeasureNum(),
+                 oldNumMeasures=measures.size();
+
+    /* find measure to re-render from */
+    int rmi=-1;
+    for (int mi=0; mi<oldNumMeasures; mi++)
+      {
+        RenderCheckpoint cp=measures.get(mi).renderCheckpoint[vnum];
+        if (cp!=null)
+          if (cp.evloc<firstChangedEvent)
+            rmi=mi;
+          else
+            break;
+      }
+    if (rmi==-1)
+      return false;
+
+    /* voices rendered after this one may have changed the measures which it
+       goes through */
+    for (int i=vnum+1; i<numVoices; i++)
+      if (lastMensMeasure[i]>=rmi)
+        return false;
+
+    /* find measure to re-position from */
+    RenderCheckpoint startCp=measures.get(rmi).renderCheckpoint[vnum];
+    int              pmi=rmi;
+    while (pmi>=0 &&
+           (measures.get(pmi).positionCheckpoint==null ||
+            measures.get(pmi).positionCheckpoint.revloc[vnum]>startCp.revloc))
+      pmi--;
+    if (pmi<0)
+      return false;
+
+    /* keep previous rendering of voice after the checkpoint */
+    double          oldBarxstart=barxstart;
+    int             oldPosMeasureNum=curMeasureNum,
+                    oldEndMeasure=voiceEndMeasure[vnum];
+    RenderedClefSet oldEndClefEvents=v.clefEvents;
+    RenderedEvent   oldEndMensEvent=v.mensEvent;
+    Proportion      oldEndTempoProportion=v.tempoProportion;
+
+    ArrayList<RenderedEvent> oldEvents=new ArrayList<RenderedEvent>(rl.subList(startCp.revloc,rl.size()));
+    rl.subList(startCp.revloc,rl.size()).clear();
+
+    RenderCheckpoint[] oldRenderCps=new RenderCheckpoint[oldNumMeasures];
+    int[]              oldREventIndex=new int[oldNumMeasures],
+                       oldLastBeginClefIndex=new int[oldNumMeasures];
+    RenderedClefSet[]  oldStartClefEvents=new RenderedClefSet[oldNumMeasures];
+    RenderedEvent[]    oldStartMensEvent=new RenderedEvent[oldNumMeasures];
+    Proportion[]       oldTempoProportion=new Proportion[oldNumMeasures];
+    for (int mi=rmi+1; mi<oldNumMeasures; mi++)
+      {
+        MeasureInfo m=measures.get(mi);
+        oldRenderCps[mi]=m.renderCheckpoint[vnum];
+        oldREventIndex[mi]=m.reventindex[vnum];
+        oldLastBeginClefIndex[mi]=m.lastBeginClefIndex[vnum];
+        oldStartClefEvents[mi]=m.startClefEvents[vnum];
+        oldStartMensEvent[mi]=m.startMensEvent[vnum];
+        oldTempoProportion[mi]=m.tempoProportion[vnum];
+
+        m.renderCheckpoint[vnum]=null;
+        m.reventindex[vnum]=-1;
+        m.lastBeginClefIndex[vnum]=-1;
+      }
+
+    /* re-render voice */
+    curMeasureNum=firstMeasureNum+rmi;
+    curmeasure=measures.get(rmi);
+    startCp.restore(this,v);
+    int rsmi=renderVoiceEvents(v,oldRenderCps,firstChangedEvent),
+        resyncRevloc;
+    if (rsmi==RENDER_ABORTED)
+      return false;
+
+    if (rsmi!=RENDER_FINISHED)
+      {
+        /* resynchronized: reuse remaining events and measure info */
+        resyncRevloc=v.revloc;
+        rl.addAll(oldEvents.subList(resyncRevloc-startCp.revloc,oldEvents.size()));
+        for (int mi=rsmi+1; mi<oldNumMeasures; mi++)
+          {
+            MeasureInfo m=measures.get(mi);
+            m.renderCheckpoint[vnum]=oldRenderCps[mi];
+            m.reventindex[vnum]=oldREventIndex[mi];
+            m.lastBeginClefIndex[vnum]=oldLastBeginClefIndex[mi];
+            m.startClefEvents[vnum]=oldStartClefEvents[mi];
+            m.startMensEvent[vnum]=oldStartMensEvent[mi];
+            m.tempoProportion[vnum]=oldTempoProportion[mi];
+          }
+        v.clefEvents=oldEndClefEvents;
+        v.mensEvent=oldEndMensEvent;
+        v.tempoProportion=oldEndTempoProportion;
+      }
+    else
+      {
+        /* voice may now end in a different measure */
+        resyncRevloc=Integer.MAX_VALUE;
+        int newEndMeasure=curMeasureNum-firstMeasureNum;
+        for (int mi=Math.min(oldEndMeasure,newEndMeasure)+1;
+             mi<=Math.max(oldEndMeasure,newEndMeasure) && mi<oldNumMeasures; mi++)
+          if (measureCreator(mi,vnum,oldEndMeasure)!=measureCreator(mi,vnum,newEndMeasure))
+            return false;
+        voiceEndMeasure[vnum]=newEndMeasure;
+
+        int numMeasures=0;
+        for (VoiceGfxInfo vg : voicegfx)
+          if (vg.v!=null)
+            numMeasures=Math.max(numMeasures,voiceEndMeasure[vg.voicenum]+1);
+        if (numMeasures<measures.size())
+          measures.subList(numMeasures,measures.size()).clear();
+        for (int mi=oldNumMeasures; mi<measures.size(); mi++)
+          measures.get(mi).renderedXLength=measures.get(mi).xlength;
+      }
+
+    for (VoiceGfxInfo vg : voicegfx)
+      if (vg.v!=null)
+        vg.revloc=eventinfo[vg.voicenum].size();
+    fillEmptyMeasures();
+    initCurDrawingParams();
+    createEndingParams();
+
+    /* re-position from checkpoint before the change */
+    int                  numMeasures=measures.size();
+    PositionCheckpoint[] oldPosCps=new PositionCheckpoint[oldNumMeasures];
+    double[]             oldXLength=new double[oldNumMeasures],
+                         oldLeftX=new double[oldNumMeasures];
+    for (int mi=pmi+1; mi<numMeasures; mi++)
+      {
+        MeasureInfo m=measures.get(mi);
+        if (mi<oldNumMeasures)
+          {
+            oldPosCps[mi]=m.positionCheckpoint;
+            oldXLength[mi]=m.xlength;
+            oldLeftX[mi]=m.leftx;
+          }
+        m.positionCheckpoint=null;
+        m.xlength=m.renderedXLength;
+      }
+
+    ArrayList<RenderedSonority> oldSonorities=sonorityList;
+    PositionCheckpoint          startPosCp=measures.get(pmi).positionCheckpoint;
+    startPosCp.restore(this,pmi);
+    int psmi=positionVoices(oldPosCps,vnum,resyncRevloc);
+
+    if (psmi>=0)
+      {
+        /* resynchronized: move remaining events and measures from previous
+           layout */
+        PositionCheckpoint oldCp=oldPosCps[psmi];
+        double             dx=barxstart-oldCp.barxstart;
+        for (int i=0; i<numVoices; i++)
+          if (eventinfo[i]!=null)
+            {
+              RenderList vl=eventinfo[i];
+              for (int ei=oldCp.trailStart[i]; ei<oldCp.revloc[i]; ei++)
+                vl.getEvent(ei).setxloc(oldCp.finalTrailX[i][ei-oldCp.trailStart[i]]+dx);
+              if (dx!=0)
+                for (int ei=oldCp.revloc[i]; ei<vl.size(); ei++)
+                  vl.getEvent(ei).setxloc(vl.getEvent(ei).getxloc()+dx);
+              voicegfx[i].revloc=vl.size();
+            }
+
+        for (int mi=psmi; mi<numMeasures; mi++)
+          {
+            MeasureInfo m=measures.get(mi);
+            m.xlength=oldXLength[mi];
+            m.leftx=oldLeftX[mi]+dx;
+            if (mi>psmi)
+              {
+                m.positionCheckpoint=oldPosCps[mi];
+                if (m.positionCheckpoint!=null && dx!=0)
+                  m.positionCheckpoint.shift(dx);
+              }
+          }
+
+        sonorityList.addAll(oldSonorities.subList(oldCp.numSonorities,oldSonorities.size()));
+        curSonority=sonorityList.get(sonorityList.size()-1);
+        barxstart=oldBarxstart+dx;
+        curMeasureNum=oldPosMeasureNum;
+        curmeasure=measures.get(curMeasureNum);
+        voiceQueue.clear();
+        saveFinalPositions(pmi,psmi+1);
+      }
+    else
+      saveFinalPositions(pmi,numMeasures);
+
+    /* trailing events saved at earlier checkpoints may also have moved */
+    for (int mi=pmi-1; mi>=0; mi--)
+      {
+        PositionCheckpoint cp=measures.get(mi).positionCheckpoint;
+        if (cp!=null)
+          if (cp.precedesTrail(startPosCp))
+            break;
+          else
+            cp.saveFinalPositions(this);
+      }
+
+    return true;
+  }
+
+  /* index of voice which creates measure mi when rendering (the first
+     voice to reach it), with the last measure of voice vnum given */
+  int measureCreator(int mi,int vnum,int vnumEndMeasure)
+  {
+    for (VoiceGfxInfo vg : voicegfx)
+      if (vg.v!=null &&
+          (vg.voicenum==vnum ? vnumEndMeasure : voiceEndMeasure[vg.voicenum])>=mi)
+        return vg.voicenum;
+    return -1;
+  }
+
 /*------------------------------------------------------------------------
 Methods: get*() / is*()
 Purpose: Routines to return attribute variables
@@ -743,10 +1774,6 @@ Parameters:
         voicegfx[i]=new VoiceGfxInfo(this,musicData.getVoice(i));
         voicegfx[i].voicenum=i;
       }
-    for (int i=0; i<numVoices-1; i++)
-      voicegfx[i].next=voicegfx[i+1];
-    for (int i=1; i<numVoices; i++)
-      voicegfx[i].last=voicegfx[i-1];
 
     /* initialize voices */
     eventinfo=new RenderList[numVoices];
@@ -789,22 +1816,6 @@ Parameters:
         }
       else
         eventinfo[i]=null;
-    for (int i=0; i<numVoices-1; i++)
-      voicegfx[i].next=voicegfx[i+1];
-    voicegfx[numVoices-1].next=null;
-    voicegfx[0].last=null;
-    for (int i=1; i<numVoices; i++)
-      voicegfx[i].last=voicegfx[i-1];
-
-    /* remove unused voices from rendering list */
-    for (int i=0; i<numVoices; i++)
-      if (musicData.getVoice(i)==null)
-        {
-          if (voicegfx[i].last!=null)
-            voicegfx[i].last.next=voicegfx[i].next;
-          if (voicegfx[i].next!=null)
-            voicegfx[i].next.last=voicegfx[i].last;
-        }
     }
 
     /* get drawing options */
@@ -816,12 +1827,6 @@ Parameters:
     displayVarTexts=options.markVariant(VariantReading.VAR_ORIGTEXT) &&
                     !options.get_displayedittags();
 
-    /* set initial drawing parameters */
-    if (numVoices>0)
-      liststart=voicegfx[musicData.getValidVoicenum(0)];
-
-    finalisList=new LinkedList<VoiceGfxInfo>();
-
     /* initialize measure list */
     measures=new MeasureList(numVoices);
     curmeasure=measures.newMeasure(
@@ -911,80 +1916,135 @@ Parameters:
   Return: -
 ------------------------------------------------------------------------*/
 
-  void renderMensuralData(MusicMensuralSection ms)
+  void renderChantData(MusicChantSection ms)
   {
     initEvents(ms);
-    createRenderLists();
-    positionMensuralEvents();
+    positionChantEvents(ms);
   }
 
-  void renderChantData(MusicChantSection ms)
+  void renderTextData(MusicTextSection ms)
   {
     initEvents(ms);
-    positionChantEvents(ms);
+    positionTextSection(ms);
   }
 
-  void renderTextData(MusicTextSection ms)
-  {
-    initEvents(ms);
-    positionTextSection(ms);
+/*------------------------------------------------------------------------
+Method:  void createRenderLists()
+Purpose: Create lists of rendered events for each voice,
+         replacing/deleting/adding events as necessary for display but not
+         assigning any x-positioning
+Parameters:
+  Input:  -
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+  int withnextStart;
+
+  void createRenderLists()
+  {
+    voiceEndMeasure=new int[numVoices];
+    lastMensMeasure=new int[numVoices];
+    Arrays.fill(lastMensMeasure,-1);
+
+    for (VoiceGfxInfo v : voicegfx)
+      if (v!=null && v.v!=null)
+        {
+          curMeasureNum=getFirstMeasureNum();
+          curmeasure=measures.get(curMeasureNum-getFirstMeasureNum());
+          skipevents=0;
+          v.evloc=0;
+          renderVoiceEvents(v,null,-1);
+          voiceEndMeasure[v.voicenum]=curMeasureNum-getFirstMeasureNum();
+
+          /* reset parameters */
+          initCurDrawingParams();
+        }
+
+    fillEmptyMeasures();
+    for (MeasureInfo m : measures)
+      m.renderedXLength=m.xlength;
+  }
+
+/*------------------------------------------------------------------------
+Method:  int renderVoiceEvents(VoiceGfxInfo v,RenderCheckpoint[] oldCheckpoints,
+                               int firstChangedEvent)
+Purpose: Create rendered events for one voice from its current position,
+         saving a checkpoint in each measure where possible; when
+         re-rendering after a change, stop at the first checkpoint after the
+         change which matches the previous rendering
+Parameters:
+  Input:  VoiceGfxInfo v                    - voice to render
+          RenderCheckpoint[] oldCheckpoints - voice checkpoints from previous
+                                              rendering by measure index (null
+                                              when rendering the whole voice)
+          int firstChangedEvent             - index of first changed event
+  Output: -
+  Return: index of measure where rendering resynchronized, RENDER_FINISHED
+          if all events were rendered, or RENDER_ABORTED if a re-rendered
+          event changes the measure structure
+------------------------------------------------------------------------*/
+
+  int renderVoiceEvents(VoiceGfxInfo v,RenderCheckpoint[] oldCheckpoints,
+                        int firstChangedEvent)
+  {
+    RenderList rl=eventinfo[v.voicenum];
+    int        newEventsInserted=0;
+
+    for (; v.evloc<v.v.getNumEvents(); v.evloc++)
+      {
+        Event e=v.v.getEvent(v.evloc);
+
+        while (MusicTime.compare(v.musictime,curmeasure.getEndTime())>0)
+          advanceOneMeasure(v);
+        if (positionInNewMeasure(e,v))
+          advanceOneMeasure(v);
+        if (newEventsInserted>0)
+          {
+            adjustNewEventMeasureNums(v,newEventsInserted);
+            newEventsInserted=0;
+          }
+
+        if (curmeasure.renderCheckpoint[v.voicenum]==null &&
+            RenderCheckpoint.canSave(this,v,e))
+          {
+            RenderCheckpoint cp=new RenderCheckpoint(this,v);
+            curmeasure.renderCheckpoint[v.voicenum]=cp;
+
+            int mi=curMeasureNum-getFirstMeasureNum();
+            if (oldCheckpoints!=null && v.evloc>firstChangedEvent &&
+                mi<oldCheckpoints.length && cp.matches(oldCheckpoints[mi]))
+              return mi;
+          }
+        if (oldCheckpoints!=null && e.getMensInfo()!=null)
+          return RENDER_ABORTED;
+
+        RenderedEvent re=addOneEvent(e,rl,v,skipevents==0);
+
+        if (skipevents>0)
+          {
+            if (--skipevents==0)
+              newEventsInserted=insertReplacementEvents(v);
+          }
+        else if (v.replacementEvents.size()>0)
+          newEventsInserted=insertReplacementEvents(v);
+      }
+
+    return RENDER_FINISHED;
   }
 
 /*------------------------------------------------------------------------
-Method:  void createRenderLists()
-Purpose: Create lists of rendered events for each voice,
-         replacing/deleting/adding events as necessary for display but not
-         assigning any x-positioning
+Method:  void fillEmptyMeasures()
+Purpose: Fill out voice info for "empty" measures beyond the end of voice
+         parts
 Parameters:
   Input:  -
   Output: -
   Return: -
 ------------------------------------------------------------------------*/
 
-  int withnextStart;
-
-  void createRenderLists()
+  void fillEmptyMeasures()
   {
-    for (VoiceGfxInfo v : voicegfx)
-      if (v!=null && v.v!=null)
-        {
-          RenderList rl=eventinfo[v.voicenum];
-          curMeasureNum=getFirstMeasureNum();
-          curmeasure=measures.get(curMeasureNum-getFirstMeasureNum());
-          skipevents=0;
-          int withnextStart=-1,
-              newEventsInserted=0;
-
-          for (v.evloc=0; v.evloc<v.v.getNumEvents(); v.evloc++)
-            {
-              Event e=v.v.getEvent(v.evloc);
-
-              while (v.musictime.greaterThan(curmeasure.getEndMusicTime()))
-                advanceOneMeasure(v);
-              if (positionInNewMeasure(e,v))
-                advanceOneMeasure(v);
-              if (newEventsInserted>0)
-                {
-                  adjustNewEventMeasureNums(v,newEventsInserted);
-                  newEventsInserted=0;
-                }
-
-              RenderedEvent re=addOneEvent(e,rl,v,skipevents==0);
-
-              if (skipevents>0)
-                {
-                  if (--skipevents==0)
-                    newEventsInserted=insertReplacementEvents(v);
-                }
-              else if (v.replacementEvents.size()>0)
-                newEventsInserted=insertReplacementEvents(v);
-            }
-
-          /* reset parameters */
-          initCurDrawingParams();
-        }
-
-    /* fill out info for "empty" measures beyond the end of voice parts */
     for (VoiceGfxInfo v : voicegfx)
       if (v!=null)
         {
@@ -1155,25 +2215,27 @@ Parameters:
 //      v.tieInfo=new RenderedLigature(v.v,vl,RenderedLigature.TIE);
 
     /* advance music time after timed event */
+    long musicLength=MusicTime.valueOf(re.getEvent().getmusictime()),
+         curTime=MusicTime.valueOf(v.musictime);
     if (noteShapeType==OptionSet.OPT_NOTESHAPE_ORIG)
-      re.setMusicLength(Proportion.quotient(
-                          re.getEvent().getmusictime(),
-                          Proportion.product(v.curProportion,v.tempoProportion)));
+      musicLength=MusicTime.divide(musicLength,
+                                   MusicTime.multiply(MusicTime.valueOf(v.curProportion),
+                                                      MusicTime.valueOf(v.tempoProportion)));
     else
-      re.setMusicLength(Proportion.quotient(
-                          re.getEvent().getmusictime(),v.tempoProportion));
+      musicLength=MusicTime.divide(musicLength,MusicTime.valueOf(v.tempoProportion));
 
     if (v.respaceAfterVar)
       {
-        re.getMusicLength().add(v.varDefaultTimeAdd);
+        musicLength=MusicTime.add(musicLength,MusicTime.valueOf(v.varDefaultTimeAdd));
         v.varDefaultTimeAdd=null;
         v.respaceAfterVar=false;
       }
     if (errorRespacingTime!=null &&
-        Proportion.sum(v.musictime,re.getMusicLength()).greaterThan(errorRespacingTime))
-      re.setMusicLength(Proportion.difference(errorRespacingTime,v.musictime));
+        MusicTime.compare(MusicTime.add(curTime,musicLength),MusicTime.valueOf(errorRespacingTime))>0)
+      musicLength=MusicTime.subtract(MusicTime.valueOf(errorRespacingTime),curTime);
 
-    v.musictime.add(re.getMusicLength());  //Proportion.product(re.getMusicLength(),v.tempoProportion));
+    re.setMusicLength(MusicTime.toProportion(musicLength));
+    MusicTime.setProportion(v.musictime,MusicTime.add(curTime,musicLength));  //Proportion.product(re.getMusicLength(),v.tempoProportion));
   }
 
 /*------------------------------------------------------------------------
@@ -1216,9 +2278,9 @@ Parameters:
         if (useModernClefs && e.geteventtype()==Event.EVENT_MULTIEVENT && e.hasPrincipalClef())
           {
             /* separate modern clefs from accidentals */
-            for (Iterator ei=((MultiEvent)e).iterator(); ei.hasNext();)
+            for (int ei=0; ei<((MultiEvent)e).getNumEvents(); ei++)
               {
-                Event ee=(Event)ei.next();
+                Event ee=((MultiEvent)e).getEvent(ei);
                 if (ee.geteventtype()==Event.EVENT_CLEF && !ee.hasPrincipalClef()) //&& !useModernAccSystem)
                   v.replacementEvents.add(ee);
               }
@@ -1257,7 +2319,7 @@ Parameters:
 
         /* change current bar if mensuration takes effect here */
         if (!me.noScoreSig() &&
-            v.musictime.lessThan(curmeasure.getEndMusicTime()))
+            MusicTime.compare(v.musictime,curmeasure.getEndTime())<0)
           {
             if (curmeasure.numMinims!=numMinimsInBreve ||
                 !curmeasure.scaleSet)
@@ -1268,6 +2330,7 @@ Parameters:
                 curmeasure.scaleSet=true;
               }
             curmeasure.tempoProportion[v.voicenum]=v.tempoProportion;
+            lastMensMeasure[v.voicenum]=curMeasureNum-getFirstMeasureNum();
           }
         lastMens=mensInfo;
         lastMensTime=v.musictime;
@@ -1343,6 +2406,7 @@ Parameters:
                            varReadingLength=v.varReadingInfo.varReading.getLength();
                 if (varReadingLength.greaterThan(defaultReadingLength))
                   {
+                    defaultReadingLength=new Proportion(defaultReadingLength);
                     defaultReadingLength.divide(v.curProportion);
                     defaultReadingLength.divide(v.tempoProportion);
                     errorRespacingTime=Proportion.sum(v.musictime,defaultReadingLength);
@@ -1507,7 +2571,7 @@ Parameters:
       return false;
     if (e.getmusictime().i1<=0)
       return false;
-    return v.musictime.greaterThanOrEqualTo(curmeasure.getEndMusicTime());
+    return MusicTime.compare(v.musictime,curmeasure.getEndTime())>=0;
   }
 
 /* POSITIONING CODE */
@@ -1525,40 +2589,125 @@ Parameters:
   void positionMensuralEvents()
   {
     initVoiceCounters();
+    positionVoices(null,-1,-1);
+    saveFinalPositions(0,measures.size());
+  }
+
+/*------------------------------------------------------------------------
+Method:  int positionVoices(PositionCheckpoint[] oldCheckpoints,int vnum,
+                            int minTrailStart)
+Purpose: Run positioning loop from the current voice positions, saving a
+         checkpoint at the first pass in each measure where possible; when
+         re-positioning after a change, stop at the first checkpoint which
+         matches the previous layout apart from a horizontal offset
+Parameters:
+  Input:  PositionCheckpoint[] oldCheckpoints - checkpoints from previous
+                                                layout by measure index
+                                                (null if none)
+          int vnum                            - re-rendered voice
+          int minTrailStart                   - first event index in vnum
+                                                which is unchanged from
+                                                previous rendering
+  Output: -
+  Return: index of measure where positioning resynchronized, or -1 if all
+          events were positioned
+------------------------------------------------------------------------*/
+
+  int positionVoices(PositionCheckpoint[] oldCheckpoints,int vnum,
+                     int minTrailStart)
+  {
     do
       {
+        if (curmeasure.positionCheckpoint==null && PositionCheckpoint.canSave(this))
+          {
+            PositionCheckpoint cp=new PositionCheckpoint(this);
+            curmeasure.positionCheckpoint=cp;
+            if (oldCheckpoints!=null && curMeasureNum<oldCheckpoints.length &&
+                oldCheckpoints[curMeasureNum]!=null &&
+                !Double.isNaN(cp.resyncOffset(oldCheckpoints[curMeasureNum],vnum,minTrailStart)))
+              return curMeasureNum;
+          }
+
         advanceVoices(positionUntimedEvents());
 
-        while (liststart!=null &&
-               liststart.musictime.greaterThan(curmeasure.getEndMusicTime()))
+        while (!voiceQueue.isEmpty() &&
+               MusicTime.compare(voiceQueue.peek().queueTime,curmeasure.getEndTime())>0)
           advanceOneMeasureSpacing();
 
-        if (liststart!=null &&
-            positionInNewMeasure(eventinfo[liststart.voicenum].getEvent(liststart.revloc).getEvent(),liststart))
+        VoiceGfxInfo firstv=voiceQueue.peek();
+        if (firstv!=null &&
+            positionInNewMeasure(eventinfo[firstv.voicenum].getEvent(firstv.revloc).getEvent(),firstv))
           advanceOneMeasureSpacing();
 
         advanceVoices(positionTimedAndImmediateEvents());
 
         /* advance one measure if leftmost voice is past current measure limit */
-        while (liststart!=null &&
-               liststart.musictime.greaterThan(curmeasure.getEndMusicTime()))
+        while (!voiceQueue.isEmpty() &&
+               MusicTime.compare(voiceQueue.peek().queueTime,curmeasure.getEndTime())>0)
           advanceOneMeasureSpacing();
       }
-    while (liststart!=null);
+    while (!voiceQueue.isEmpty());
+
+    return -1;
+  }
+
+  /* store final positions of trailing events in checkpoints of measures
+     firstMeasure to lastMeasure-1 */
+  void saveFinalPositions(int firstMeasure,int lastMeasure)
+  {
+    for (int mi=firstMeasure; mi<lastMeasure; mi++)
+      if (measures.get(mi).positionCheckpoint!=null)
+        measures.get(mi).positionCheckpoint.saveFinalPositions(this);
   }
 
   void initVoiceCounters()
   {
     curMeasureNum=0;
     curmeasure=measures.get(curMeasureNum);
-    for (VoiceGfxInfo v : voicegfx)
-      if (v!=null)
+    voiceQueue=new PriorityQueue<VoiceGfxInfo>(Math.max(numVoices,1),VOICE_QUEUE_ORDER);
+    startVoices=new ArrayList<VoiceGfxInfo>(numVoices);
+    voiceQueueCount=0;
+    for (int i=0; i<numVoices; i++)
+      if (voicegfx[i]!=null)
         {
-          v.musictime=new Proportion(0,1);
-          v.revloc=0;
+          voicegfx[i].musictime=new Proportion(0,1);
+          voicegfx[i].revloc=0;
+          if (musicData.getVoice(i)!=null)
+            queueVoice(voicegfx[i]);
         }
   }
 
+/*------------------------------------------------------------------------
+Method:  void queueVoice(VoiceGfxInfo v)
+Purpose: Add voice to positioning queue at its current music time (after
+         any voices already queued at the same time)
+Parameters:
+  Input:  VoiceGfxInfo v - voice to queue
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+  void queueVoice(VoiceGfxInfo v)
+  {
+    v.queueTime=MusicTime.valueOf(v.musictime);
+    v.queueOrder=voiceQueueCount++;
+    voiceQueue.add(v);
+  }
+
+/*------------------------------------------------------------------------
+Method:  boolean voiceFinished(VoiceGfxInfo v)
+Purpose: Check whether all events in one voice have been positioned
+Parameters:
+  Input:  VoiceGfxInfo v - voice to check
+  Output: -
+  Return: true if voice has no more events
+------------------------------------------------------------------------*/
+
+  boolean voiceFinished(VoiceGfxInfo v)
+  {
+    return eventinfo[v.voicenum].getEvent(v.revloc)==null;
+  }
+
 /*------------------------------------------------------------------------
 Method:  double positionUntimedEvents()
 Purpose: Position untimed events for all voices in the leftmost place (i.e. those
@@ -1572,31 +2721,39 @@ Parameters:
   double positionUntimedEvents()
   {
     double        xadd=0;
-    VoiceGfxInfo  v,nextv;
     RenderedEvent re;
 
-    if (liststart==null)
+    if (voiceQueue.isEmpty())
       return xadd;
 
-    starttime=new Proportion(liststart.musictime);
-    nextv=liststart.next;
-    for (v=liststart;
-         v!=null && v.musictime.equals(starttime);
-         v=nextv)
-      {
-        nextv=v.next;
-        for (re=eventinfo[v.voicenum].getEvent(v.revloc);
-             re!=null && re.getMusicLength().i1==0;
-             re=eventinfo[v.voicenum].getEvent(incrementVoicePosition(v)))
-          {
-            int xpos=getXPosType(re);
-            if (xpos==XPOS_WITHNEXT ||
-                (xpos==XPOS_INVISIBLE && v.withnextEvents>0))
+    /* take all voices at the earliest time out of the queue, in order */
+    VoiceGfxInfo firstv=voiceQueue.peek();
+    starttime=new Proportion(firstv.musictime);
+    startVoices.clear();
+    while (!voiceQueue.isEmpty() && voiceQueue.peek().queueTime==firstv.queueTime)
+      startVoices.add(voiceQueue.poll());
+
+    for (VoiceGfxInfo v : startVoices)
+      for (re=eventinfo[v.voicenum].getEvent(v.revloc);
+           re!=null && re.getMusicLength().i1==0;
+           re=eventinfo[v.voicenum].getEvent(incrementVoicePosition(v)))
+        {
+          int xpos=getXPosType(re);
+          if (xpos==XPOS_WITHNEXT ||
+              (xpos==XPOS_INVISIBLE && v.withnextEvents>0))
+            {
+              /* unplaced until the next event (clear any earlier layout) */
+              re.setxloc(0);
               v.withnextEvents++;
-            else
-              xadd=positionUntimedEvent(v,re,xadd);
-          }
-      }
+            }
+          else
+            xadd=positionUntimedEvent(v,re,xadd);
+        }
+
+    /* return unfinished voices to the queue (keeping their places) */
+    for (VoiceGfxInfo v : startVoices)
+      if (!voiceFinished(v))
+        voiceQueue.add(v);
 
     return xadd;
   }
@@ -1613,27 +2770,23 @@ Parameters:
 
   double positionTimedAndImmediateEvents()
   {
-    VoiceGfxInfo  v,nextv;
+    VoiceGfxInfo  v;
     RenderedEvent re;
     double        xadd=0;
 
-    if (liststart==null)
+    if (voiceQueue.isEmpty())
       return xadd;
 
-    nextv=liststart.next;
-    for (v=liststart;
-         v!=null && starttime.greaterThanOrEqualTo(v.musictime);
-         v=nextv)
+    long startTime=MusicTime.valueOf(starttime);
+    while (!voiceQueue.isEmpty() &&
+           MusicTime.compare(voiceQueue.peek().queueTime,startTime)<=0)
       {
-        nextv=v.next;
-
+        v=voiceQueue.poll();
         re=eventinfo[v.voicenum].getEvent(v.revloc);
-        if (re==null)
-          removeVoice(v);
-        else
+        if (re!=null)
           {
             xadd=positionTimedEvent(v,re,xadd);
-            recalcVoiceList(v);
+            queueVoice(v);
           }
       }
 
@@ -1721,37 +2874,6 @@ Parameters:
     return xadd;
   }
 
-/*------------------------------------------------------------------------
-Method:  void recalcVoiceList(VoiceGfxInfo v)
-Purpose: Adjust pointers within voice list to maintain sorting order after one
-         voice has moved forward
-Parameters:
-  Input:  VoiceGfxInfo v - voice which has just been advanced (i.e. in
-                           which timed events have just been positioned)
-  Output: -
-  Return: -
-------------------------------------------------------------------------*/
-
-  void recalcVoiceList(VoiceGfxInfo v)
-  {
-    VoiceGfxInfo moveplace=v;
-    while (!((moveplace.next==null) ||
-             (moveplace.next.musictime.greaterThan(v.musictime))))
-      moveplace=moveplace.next;
-
-    if (moveplace!=v)
-      {
-        removeVoice(v);
-
-        /* re-insert */
-        if (moveplace.next!=null)
-          moveplace.next.last=v;
-        v.next=moveplace.next;
-        v.last=moveplace;
-        moveplace.next=v;
-      }
-  }
-
   /* update sonority info for analysis */
   void updateSonority(RenderedEvent re,VoiceGfxInfo v)
   {
@@ -1855,7 +2977,8 @@ Parameters:
 
 /*------------------------------------------------------------------------
 Method:  int incrementVoicePosition(VoiceGfxInfo v)
-Purpose: Advance event index within one voice list, remove if done
+Purpose: Advance event index within one voice list (finished voices are not
+         returned to the positioning queue)
 Parameters:
   Input:  VoiceGfxInfo  v - voice to update
   Output: -
@@ -1864,35 +2987,7 @@ Parameters:
 
   int incrementVoicePosition(VoiceGfxInfo v)
   {
-    v.revloc++;
-    removeVoiceIfFinished(v);
-    return v.revloc;
-  }
-
-/*------------------------------------------------------------------------
-Method:  void removeVoice[IfFinished](VoiceGfxInfo v)
-Purpose: Remove voice from rendering to-do list [if all its events have
-         been rendered]
-Parameters:
-  Input:  VoiceGfxInfo  v - voice to update
-  Output: -
-  Return: -
-------------------------------------------------------------------------*/
-
-  void removeVoiceIfFinished(VoiceGfxInfo v)
-  {
-    if (eventinfo[v.voicenum].getEvent(v.revloc)==null)
-      removeVoice(v);
-  }
-
-  void removeVoice(VoiceGfxInfo v)
-  {
-    if (v.next!=null)
-      v.next.last=v.last;
-    if (v.last!=null)
-      v.last.next=v.next;
-    else
-      liststart=v.next;
+    return ++v.revloc;
   }
 
 /*------------------------------------------------------------------------
@@ -1908,6 +3003,7 @@ Parameters:
   {
     if (xadd>0)
       {
+        VoiceGfxInfo firstv=voiceQueue.peek();
         curmeasure.xlength+=xadd;
         for (int i=0; i<numVoices; i++)
           if (musicData.getVoice(i)!=null)
@@ -1916,294 +3012,38 @@ Parameters:
                 {
                   double vxadd=xadd-voicegfx[i].xadd;
                   voicegfx[i].xloc+=vxadd;
-                  if (liststart!=null &&
-                      voicegfx[i].musictime.greaterThanOrEqualTo(liststart.musictime))
+                  if (firstv!=null &&
+                      MusicTime.compare(voicegfx[i].musictime,firstv.queueTime)>=0)
                     voicegfx[i].moveupBEFORENEXTevents(eventinfo[i],vxadd);
                 }
-              voicegfx[i].xadd=0;
-            }
-      }
-  }
-
-  void advanceOneMeasureSpacing()
-  {
-    /* load new measure */
-    barxstart+=curmeasure.xlength;
-    curMeasureNum++;
-    curmeasure=measures.get(curMeasureNum);
-    curmeasure.leftx=barxstart;
-
-    /* space for barlines */
-    if (options.get_barline_type()!=OptionSet.OPT_BARLINE_NONE)
-      {
-        double bxadd=BARLINE_XADD;
-        switch (options.get_barline_type())
-          {
-            case OptionSet.OPT_BARLINE_MENSS:
-            case OptionSet.OPT_BARLINE_MODERN:
-              bxadd*=2;
-              break;
-          }
-        curmeasure.xlength+=bxadd;
-        for (int i=0; i<numVoices; i++)
-          voicegfx[i].xloc+=bxadd;
-      }
-  }
-
-
-
-
-
-/* OLD RENDERING CODE */
-
-/*------------------------------------------------------------------------
-Method:  void renderAllMensuralEvents()
-Purpose: Normal rendering cycle, beginning wherever individual voices in
-         the voice list are currently positioned
-Parameters:
-  Input:  -
-  Output: -
-  Return: -
-------------------------------------------------------------------------*/
-
-  void positionMensuralEventsOld()
-  {
-    do
-      {
-        /* render untimed events and advance voice x-positions
-           do multiple untimed-event renders if variants requiring respacing
-           have been inserted */
-        boolean varRespaced;
-        do
-          {
-            advanceVoices(renderUntimedEvents());
-
-            varRespaced=false;
-            if (addSpaceAfterVar())
-              {
-                varRespaced=true;
-              }
-            else if (errorRespacingTime!=null && liststart!=null &&
-                liststart.musictime.greaterThanOrEqualTo(errorRespacingTime))
-              {
-                renderUnspacedVariantRemainder();
-                varRespaced=true;
-
-        while (liststart!=null && liststart.musictime.toDouble()>curmeasure.startMusicTime.toDouble()+curmeasure.numMinims)
-          advanceOneMeasureSpacing();
-              }
-          }
-        while (varRespaced && untimedEventsWaiting());
-
-        /* advance one measure if all untimed events at the right border of the current
-           measure have been rendered */
-if (liststart!=null && liststart.v.getEvent(liststart.evloc)==null)
-{
-System.out.println("event==null v="+liststart.voicenum+" evloc="+liststart.evloc);
-for (int ei=0; ei<liststart.evloc; ei++)
-  liststart.v.getEvent(ei).prettyprint();
-}
-        if (liststart!=null && liststart.musictime.toDouble()>=curmeasure.startMusicTime.toDouble()+curmeasure.numMinims &&
-            !(getxspacing(liststart.v.getEvent(liststart.evloc))==XSPACING_NOSPACE &&
-              getXPosType(liststart.v.getEvent(liststart.evloc))==XPOS_BEFORENEXT))
-          advanceOneMeasureSpacing();
-
-        /* render timed events and advance voice x-positions */
-        advanceVoices(renderTimedAndImmediateEvents());
-
-        /* advance one measure if leftmost voice is past current measure limit */
-        while (liststart!=null && liststart.musictime.toDouble()>curmeasure.startMusicTime.toDouble()+curmeasure.numMinims)
-          advanceOneMeasureSpacing();
-
-        /* respace for variant if necessary */
-        if (errorRespacingTime!=null && liststart!=null &&
-            liststart.musictime.greaterThanOrEqualTo(errorRespacingTime))
-          renderUnspacedVariantRemainder();
-
-        /* advance one measure if leftmost voice is past current measure limit */
-        while (liststart!=null && liststart.musictime.toDouble()>curmeasure.startMusicTime.toDouble()+curmeasure.numMinims)
-          advanceOneMeasureSpacing();
-      }
-    while (liststart!=null);
-  }
-
-  boolean addSpaceAfterVar()
-  {
-    boolean spaceAdded=false;
-
-    for (VoiceGfxInfo v : voicegfx)
-      if (v.respaceAfterVar)
-        {
-          v.lastx=v.xloc;
-          double xlocadd=MINIMSCALE*v.varDefaultTimeAdd.toDouble();
-          v.xloc+=xlocadd;
-//            xadd+=xlocadd;
-
-          v.musictime.add(v.varDefaultTimeAdd);
-          v.varDefaultTimeAdd=null;
-          v.respaceAfterVar=false;
-
-          spaceAdded=true;
-//System.out.println("space added");
-
-          recalcVoiceList(v);
-        }
-
-    return spaceAdded;
-  }
-
-/*------------------------------------------------------------------------
-Method:  double renderUntimedEvents()
-Purpose: Render untimed events for all voices in the leftmost place (i.e. those
-         at the front of the voice list)
-Parameters:
-  Input:  -
-  Output: -
-  Return: Total amount of horizontal space needed by the events
-------------------------------------------------------------------------*/
-
-  double renderUntimedEvents()
-  {
-    double       xadd=0;
-    VoiceGfxInfo curvoice,nextvoice;
-    Event        e;
-
-    if (liststart==null)
-      return xadd;
-
-    starttime=new Proportion(liststart.musictime);
-    nextvoice=liststart.next;
-    for (curvoice=liststart;
-         curvoice!=null && curvoice.musictime.equals(starttime);
-         curvoice=nextvoice)
-      {
-        nextvoice=curvoice.next;
-        if (curvoice.replacementEvents.size()>0)
-          xadd=insertReplacementEvents(curvoice,xadd);
-        for (e=curvoice.v.getEvent(curvoice.evloc);
-             e!=null && e.getmusictime().i1==0;
-             e=curvoice.v.getEvent(incrementVoicePosition(curvoice)))
-          if (getXPosType(e)==XPOS_WITHNEXT)
-            curvoice.withnextEvents++;
-          else
-            xadd=renderUntimedEvent(curvoice,e,xadd);
-      }
-
-    return xadd;
-  }
-
-/*------------------------------------------------------------------------
-Method:  boolean untimedEventsWaiting()
-Purpose: Check whether any untimed events are waiting at the head of the
-         rendering queue
-Parameters:
-  Input:  -
-  Output: -
-  Return: true if any untimed events are at the heading of the rendering
-          queue
-------------------------------------------------------------------------*/
-
-  boolean untimedEventsWaiting()
-  {
-    if (liststart==null)
-      return false;
-
-//    Proportion starttime=new Proportion(liststart.musictime);
-    for (VoiceGfxInfo curvoice=liststart;
-         curvoice!=null && curvoice.musictime.equals(starttime);
-         curvoice=curvoice.next)
-      {
-        Event e=curvoice.v.getEvent(curvoice.evloc);
-        if (e!=null && e.getmusictime().i1==0)
-          return true;
-      }
-
-    return false;
-  }
-
-/*------------------------------------------------------------------------
-Method:  double addWithnextEvents(VoiceGfxInfo v,double xadd)
-Purpose: Render events with positioning XPOS_WITHNEXT, i.e., untimed events
-         which are always in the same measure/position as the next event
-Parameters:
-  Input:  VoiceGfxInfo v    - voice to update
-          double       xadd - positioning adjuster for all voices at the
-                              end of untimed event rendering
-  Output: -
-  Return: new value for xadd
-------------------------------------------------------------------------*/
-
-  boolean addingWithnextEvents=false;
-
-  double addWithnextEvents(VoiceGfxInfo v,double xadd)
-  {
-    if (addingWithnextEvents) /* avoid re-entry */
-      return xadd;
-    addingWithnextEvents=true;
-
-    for (int i=0; i<v.withnextEvents; i++)
-      xadd=renderUntimedEvent(v,v.v.getEvent(v.evloc-v.withnextEvents+i),xadd);
-    v.withnextEvents=0;
-
-    addingWithnextEvents=false;
-    return xadd;
-  }
-
-/*------------------------------------------------------------------------
-Method:  double renderUntimedEvent(VoiceGfxInfo v,Event e,double xadd)
-Purpose: Render and finish one untimed event
-Parameters:
-  Input:  VoiceGfxInfo v    - voice to update
-          Event        e    - event to render
-          double       xadd - positioning adjuster for all voices at the
-                              end of untimed event rendering
-  Output: -
-  Return: new value for xadd
-------------------------------------------------------------------------*/
+              voicegfx[i].xadd=0;
+            }
+      }
+  }
 
-  double renderUntimedEvent(VoiceGfxInfo v,Event e,double xadd)
+  void advanceOneMeasureSpacing()
   {
-    RenderedEvent re;
-    RenderList    rl=eventinfo[v.voicenum];
-    double        curx;
-
-    xadd=addWithnextEvents(v,xadd);
+    /* load new measure */
+    barxstart+=curmeasure.xlength;
+    curMeasureNum++;
+    curmeasure=measures.get(curMeasureNum);
+    curmeasure.leftx=barxstart;
 
-    e=setVoiceParameters(v,e);
-    if (skipevents==0)
-      {
-        /* render event and advance this voice */
-        re=rl.addevent(true,e,new RenderParams(
-                curMeasureNum,
-                v.clefEvents,v.lastNoteEvent,v.mensEvent,
-                v.curProportion,v.curColoration,v.inEditorialSection,v.missingInVersion,
-                v.ligInfo,false,v.tieInfo,
-                v.v.getMetaData().getSuggestedModernClef(),
-                v.varReadingInfo));
-        re.setxloc(curx=v.calcXLoc(rl,re));
-        re.setmusictime(v.musictime);
-        setVoiceEventParameters(v,re);
-      }
-    else
+    /* space for barlines */
+    if (options.get_barline_type()!=OptionSet.OPT_BARLINE_NONE)
       {
-        re=rl.addevent(false,e,new RenderParams(
-                curMeasureNum,
-                v.clefEvents,v.lastNoteEvent,v.mensEvent,
-                v.curProportion,v.curColoration,v.inEditorialSection,v.missingInVersion,
-                v.ligInfo,false,v.tieInfo,
-                v.v.getMetaData().getSuggestedModernClef(),
-                v.varReadingInfo));
-        re.setxloc(curx=v.xloc);
-        re.setmusictime(v.musictime);
+        double bxadd=BARLINE_XADD;
+        switch (options.get_barline_type())
+          {
+            case OptionSet.OPT_BARLINE_MENSS:
+            case OptionSet.OPT_BARLINE_MODERN:
+              bxadd*=2;
+              break;
+          }
+        curmeasure.xlength+=bxadd;
+        for (int i=0; i<numVoices; i++)
+          voicegfx[i].xloc+=bxadd;
       }
-    xadd=finishUntimedEvent(v,re,curx,xadd);
-
-    if (skipevents>0)
-      skipevents--;
-    if (skipevents==0)
-      xadd=insertReplacementEvents(v,xadd);
-
-    return xadd;
   }
 
   void setVoiceEventParameters(VoiceGfxInfo v,RenderedEvent re)
@@ -2244,9 +3084,9 @@ Parameters:
         if (useModernClefs && e.geteventtype()==Event.EVENT_MULTIEVENT && e.hasPrincipalClef())
           {
             /* separate modern clefs from accidentals */
-            for (Iterator ei=((MultiEvent)e).iterator(); ei.hasNext();)
+            for (int ei=0; ei<((MultiEvent)e).getNumEvents(); ei++)
               {
-                Event ee=(Event)ei.next();
+                Event ee=((MultiEvent)e).getEvent(ei);
                 if (ee.geteventtype()==Event.EVENT_CLEF && !ee.hasPrincipalClef()) //&& !useModernAccSystem)
                   v.replacementEvents.add(ee);
               }
@@ -2278,7 +3118,7 @@ Parameters:
             BREVESCALE=MINIMSCALE*numMinimsInBreve;
 
             /* change current bar if mensuration takes effect here */
-            if (v.musictime.lessThan(curmeasure.getEndMusicTime()))
+            if (MusicTime.compare(v.musictime,curmeasure.getEndTime())<0)
               {
                 curmeasure.numMinims=numMinimsInBreve;
                 curmeasure.xlength+=BREVESCALE-oldBS;
@@ -2707,214 +3547,6 @@ Parameters:
     return xadd;
   }
 
-/*------------------------------------------------------------------------
-Method:  void renderUnspacedVariantRemainder()
-Purpose: When a variant error is longer than the default reading, finish
-         rendering it with non-score spacing, then apply extra spacing to
-         the non-variant voices so that the parts re-align properly after
-         the error
-Parameters:
-  Input:  -
-  Output: -
-  Return: -
-------------------------------------------------------------------------*/
-
-  void renderUnspacedVariantRemainder()
-  {
-    double xadd=0;
-
-    Event e;
-    for (e=variantVoice.v.getEvent(variantVoice.evloc);
-         e.geteventtype()!=Event.EVENT_VARIANTDATA_END;
-         e=variantVoice.v.getEvent(incrementVoicePosition(variantVoice)))
-      xadd=renderUntimedEvent(variantVoice,e,xadd);
-    xadd=renderUntimedEvent(variantVoice,e,xadd);
-    incrementVoicePosition(variantVoice);
-
-    advanceVoices(xadd);
-
-    errorRespacingTime=null;
-    variantVoice=null;
-  }
-
-/*------------------------------------------------------------------------
-Method:  int incrementVoicePosition(VoiceGfxInfo v)
-Purpose: Advance event index within one voice list, remove if done
-Parameters:
-  Input:  VoiceGfxInfo  v - voice to update
-  Output: -
-  Return: new event index
-------------------------------------------------------------------------*/
-
-  int incrementVoicePositionOld(VoiceGfxInfo v)
-  {
-    v.evloc++;
-    removeVoiceIfFinished(v);
-    return v.evloc;
-  }
-
-/*------------------------------------------------------------------------
-Method:  void removeVoice[IfFinished](VoiceGfxInfo v)
-Purpose: Remove voice from rendering to-do list [if all its events have
-         been rendered]
-Parameters:
-  Input:  VoiceGfxInfo  v - voice to update
-  Output: -
-  Return: -
-------------------------------------------------------------------------*/
-
-  void removeVoiceIfFinishedOld(VoiceGfxInfo v)
-  {
-    if (v.v.getEvent(v.evloc)==null)
-      removeVoice(v);
-  }
-
-  void removeVoiceOld(VoiceGfxInfo v)
-  {
-    if (v.next!=null)
-      v.next.last=v.last;
-    if (v.last!=null)
-      v.last.next=v.next;
-    else
-      liststart=v.next;
-  }
-
-/*------------------------------------------------------------------------
-Method:  void advanceVoices(double xadd)
-Purpose: Move all voices forward (horizontally) after events
-Parameters:
-  Input:  double xadd - total amount for voices to shift
-  Output: -
-  Return: -
-------------------------------------------------------------------------*/
-
-  void advanceVoicesOld(double xadd)
-  {
-    if (xadd>0)
-      {
-        curmeasure.xlength+=xadd;
-        for (int i=0; i<numVoices; i++)
-          if (musicData.getVoice(i)!=null)
-            {
-              if (voicegfx[i].xadd<xadd)
-                {
-                  double vxadd=xadd-voicegfx[i].xadd;
-                  voicegfx[i].xloc+=vxadd;
-                  if (liststart!=null && voicegfx[i].musictime.toDouble()>=liststart.musictime.toDouble())
-                    voicegfx[i].moveupBEFORENEXTevents(eventinfo[i],vxadd);
-                }
-              voicegfx[i].xadd=0;
-            }
-      }
-  }
-
-  void advanceOneMeasureSpacingOld()
-  {
-    /* deal with end of bar issues */
-    barxstart+=curmeasure.xlength;
-    curMeasureNum++;
-//    curmeasure=measures.newMeasure(curMeasureNum,curmeasure.startMusicTime+curmeasure.numMinims,numMinimsInBreve,
-//                                   BREVESCALE,barxstart);
-    for (int i=0; i<numVoices; i++)
-      {
-        curmeasure.reventindex[i]=voicegfx[i].revloc;
-        curmeasure.startClefEvents[i]=voicegfx[i].clefEvents;
-        curmeasure.startMensEvent[i]=voicegfx[i].mensEvent;
-      }
-
-    /* space for barlines */
-    if (options.get_barline_type()!=OptionSet.OPT_BARLINE_NONE)
-      {
-        double bxadd=BARLINE_XADD;
-        switch (options.get_barline_type())
-          {
-            case OptionSet.OPT_BARLINE_MENSS:
-            case OptionSet.OPT_BARLINE_MODERN:
-              bxadd*=2;
-              break;
-          }
-        curmeasure.xlength+=bxadd;
-        for (int i=0; i<numVoices; i++)
-          voicegfx[i].xloc+=bxadd;
-      }
-  }
-
-/*------------------------------------------------------------------------
-Method:  double renderTimedandImmediateEvents()
-Purpose: Render one timed event for each voice in last place along with
-         XPOS_IMMEDIATE untimed events following it (e.g., dots)
-Parameters:
-  Input:  -
-  Output: -
-  Return: Total amount of horizontal space needed by the events
-------------------------------------------------------------------------*/
-
-  double renderTimedAndImmediateEvents()
-  {
-    VoiceGfxInfo  curvoice,nextvoice,moveplace;
-    Event         e;
-    double        xadd=0;
-    Proportion    curevmusictime;
-
-    if (liststart==null)
-      return xadd;
-
-    nextvoice=liststart.next;
-    for (curvoice=liststart;
-         curvoice!=null && curvoice.musictime.toDouble()<=starttime.toDouble();
-         curvoice=nextvoice)
-      {
-        nextvoice=curvoice.next;
-
-        e=curvoice.v.getEvent(curvoice.evloc);
-        if (e==null)
-          removeVoice(curvoice);
-        else if (e.geteventtype()==Event.EVENT_ELLIPSIS)
-          {
-            removeVoice(curvoice);
-            finalisList.add(curvoice);
-          }
-        else
-          {
-            xadd=renderTimedEvent(curvoice,e,xadd);
-            recalcVoiceList(curvoice);
-          }
-      }
-
-    return xadd;
-  }
-
-/*------------------------------------------------------------------------
-Method:  void recalcVoiceList(VoiceGfxInfo curvoice)
-Purpose: Adjust pointers within voice list to maintain sorting order after one
-         voice has moved forward
-Parameters:
-  Input:  VoiceGfxInfo curvoice - voice which has just been advanced (i.e. in
-                                  which timed events have just been rendered)
-  Output: -
-  Return: -
-------------------------------------------------------------------------*/
-
-  void recalcVoiceListOld(VoiceGfxInfo curvoice)
-  {
-    VoiceGfxInfo moveplace=curvoice;
-    while (!((moveplace.next==null) ||
-             (moveplace.next.musictime.greaterThan(curvoice.musictime))))
-      moveplace=moveplace.next;
-
-    if (moveplace!=curvoice)
-      {
-        removeVoice(curvoice);
-
-        /* re-insert */
-        if (moveplace.next!=null)
-          moveplace.next.last=curvoice;
-        curvoice.next=moveplace.next;
-        curvoice.last=moveplace;
-        moveplace.next=curvoice;
-      }
-  }
-
   boolean doNoteEventLigInfo(VoiceGfxInfo curvoice,NoteEvent ne)
   {
     if (curvoice.ligInfo.firstEventNum==-1 && ne.isligated())
@@ -3002,198 +3634,6 @@ Parameters:
       }
   }
 
-/*------------------------------------------------------------------------
-Method:  double renderTimedEvent(VoiceGfxInfo curvoice,Event e,double xadd)
-Purpose: Render one timed event along with XPOS_IMMEDIATE untimed events
-         following it (e.g., dots)
-Parameters:
-  Input:  VoiceGfxInfo curvoice - voice of event
-          Event e               - event to render
-          double xadd           - total amount of horizontal space needed
-                                  for adjusting all voices after this render
-                                  phase
-  Output: -
-  Return: new value for xadd
-------------------------------------------------------------------------*/
-
-  double renderTimedEvent(VoiceGfxInfo curvoice,Event e,double xadd)
-  {
-    RenderList rl=eventinfo[curvoice.voicenum];
-
-    xadd=addWithnextEvents(curvoice,xadd);
-
-    boolean endlig=doLigInfo(curvoice,e);
-
-    /* handle multi-event special cases */
-    if (e.geteventtype()==Event.EVENT_MULTIEVENT)
-      {
-        if (useModernClefs && e.hasEventType(Event.EVENT_CLEF))
-          {
-            /* when switching to modern cleffing, do not allow clefs/accidentals
-               to co-exist with timed events (e.g., flat above a rest) */
-            for (Iterator i=((MultiEvent)e).iterator(); i.hasNext();)
-              {
-                Event ne=(Event)i.next();
-                if (ne.geteventtype()==Event.EVENT_CLEF)
-                  curvoice.replacementEvents.add(ne); /* queue clef events for later rendering */
-              }
-            e=((MultiEvent)e).noClefEvent();
-          }
-        setVoiceParameters(curvoice,e);
-      }
-
-    /* render event */
-    RenderedEvent re=rl.addevent(true,e,new RenderParams(
-            curMeasureNum,
-            curvoice.clefEvents,null,curvoice.mensEvent,
-            curvoice.curProportion,curvoice.curColoration,
-            curvoice.inEditorialSection,curvoice.missingInVersion,
-            curvoice.ligInfo,endlig,curvoice.tieInfo,
-            curvoice.v.getMetaData().getSuggestedModernClef(),
-            curvoice.varReadingInfo));
-    re.setxloc(curvoice.xloc);
-    re.setmusictime(curvoice.musictime);
-    if (e.geteventtype()==Event.EVENT_MULTIEVENT)
-      setVoiceEventParameters(curvoice,re);
-
-    /* if we've just finished a ligature, reset ligInfo */
-    if (endlig)
-      curvoice.ligInfo=new RenderedLigature(curvoice.v,rl);
-
-    curvoice.revloc++;
-    Proportion curevmusictime=new Proportion(e.getmusictime().i1*curvoice.curProportion.i2,
-                                             e.getmusictime().i2*curvoice.curProportion.i1);
-
-    /* update sonority info */
-    if (e.getFirstEventOfType(Event.EVENT_REST)!=null)
-      {
-        if (re.getmusictime().equals(curSonority.getMusicTime()))
-          curSonority.remove(curvoice.curSoundingEvent);
-        else
-          {
-            curSonority=curSonority.copyWithout(curvoice.curSoundingEvent);
-            curSonority.setMusicTime(re.getmusictime());
-            sonorityList.add(curSonority);
-          }
-        curvoice.curSoundingEvent=null;
-      }
-    if (e.getFirstEventOfType(Event.EVENT_NOTE)!=null)
-      {
-        if (re.getmusictime().equals(curSonority.getMusicTime()))
-          {
-            curSonority.remove(curvoice.curSoundingEvent);
-            curSonority.add(re);
-          }
-        else
-          {
-            curSonority=curSonority.copyWithout(curvoice.curSoundingEvent);
-            curSonority.add(re);
-            curSonority.setMusicTime(re.getmusictime());
-            sonorityList.add(curSonority);
-          }
-        curvoice.curSoundingEvent=re;
-        re.setSonority(curSonority);
-      }
-
-    curvoice.evloc++;
-    curvoice.lastx=curvoice.xloc;
-
-if (errorRespacingTime!=null && curvoice==variantVoice &&
-    Proportion.sum(curvoice.musictime,curevmusictime).greaterThan(errorRespacingTime))
-  curevmusictime=Proportion.difference(errorRespacingTime,curvoice.musictime);
-
-    double xlocadd=MINIMSCALE*curevmusictime.toDouble();
-    if (xlocadd<re.getrenderedxsize())
-      {
-        curvoice.xadd+=re.getrenderedxsize()-xlocadd;
-        if (xadd<curvoice.xadd)
-          xadd=curvoice.xadd;
-        xlocadd=re.getrenderedxsize();
-      }
-    curvoice.xloc+=xlocadd;
-
-    /* render untimed XPOS_IMMEDIATE events (e.g., dots)
-       and XPOS_SIMULTANEOUS events (vertically aligned with current event) */
-    Event ute=curvoice.v.getEvent(curvoice.evloc);
-    int xpostype=getXPosType(ute);
-    while (ute!=null && (xpostype==XPOS_IMMEDIATE || xpostype==XPOS_SIMULTANEOUS))
-      {
-        xadd=renderUntimedEvent(curvoice,ute,xadd);
-        ute=curvoice.v.getEvent(incrementVoicePosition(curvoice));
-        xpostype=getXPosType(ute);
-      }
-
-    curvoice.musictime.add(curevmusictime);
-
-    return xadd;
-  }
-
-/*------------------------------------------------------------------------
-Method:  void renderEllipses()
-Purpose: For incipit-scores: render blank space between incipits and
-         explicits
-Parameters:
-  Input:  -
-  Output: -
-  Return: -
-------------------------------------------------------------------------*/
-
-  void renderEllipses()
-  {
-    if (finalisList.size()<=0)
-      return;
-
-    /* find starting x-coord and musictime for explicits */
-    double     newx=0.0;
-    for (int i=0; i<voicegfx.length; i++)
-      if (voicegfx[i].xloc>newx)
-        newx=voicegfx[i].xloc;
-    newx+=20;
-    Proportion newmt=new Proportion((int)curmeasure.startMusicTime.toDouble()+curmeasure.numMinims,1);
-
-    VoiceGfxInfo lastv=null,
-                 firstv=null,
-                 curv=null;
-    for (Iterator i=finalisList.iterator(); i.hasNext();)
-      {
-        curv=(VoiceGfxInfo)i.next();
-
-        /* render ELLIPSIS event */
-        RenderList rl=eventinfo[curv.voicenum];
-        RenderedEvent re=rl.addevent(true,curv.v.getEvent(curv.evloc),new RenderParams(
-                curMeasureNum,
-                curv.clefEvents,null,curv.mensEvent,
-                curv.curProportion,curv.curColoration,
-                curv.inEditorialSection,curv.missingInVersion,
-                curv.ligInfo,false,curv.tieInfo,
-                curv.v.getMetaData().getSuggestedModernClef(),
-                curv.varReadingInfo));
-        re.setxloc(curv.xloc);
-        re.setmusictime(curv.musictime);
-
-        curv.revloc++;
-        curv.evloc++;
-        curv.xloc=newx;
-        curv.musictime.setVal(newmt);
-
-        /* re-construct voice list for rendering (finales only) */
-        if (lastv!=null)
-          {
-            curv.last=lastv;
-            lastv.next=curv;
-          }
-        else
-          firstv=curv;
-        lastv=curv;
-      }
-    liststart=firstv;
-
-    /* new measure for explicit */
-    curmeasure.xlength=newx-barxstart;
-    advanceOneMeasureSpacing();
-  }
-
-
 /*--------------------------- CHANT-RENDERING ---------------------------*/
 
 /*------------------------------------------------------------------------
@@ -16,6 +16,7 @@
         Date Started    : 11/1/2009 (parts moved from CriticalNotesWindow)
 
         Updates         :
+10/17/26: rendering taken from parent window's render cache when available
 
                                                                         */
 /*----------------------------------------------------------------------*/
@@ -59,7 +60,8 @@ Parameters:
 
   public VariantAnalysisList(PieceData musicData,MusicWin parentWin)
   {
-    this(musicData,ScoreRenderer.renderSections(musicData,parentWin.optSet));
+    this(musicData,parentWin.getRenderedSections(
+      musicData.getDefaultVariantVersion(),musicData,parentWin.optSet));
   }
 
   public VariantAnalysisList(PieceData musicData,ScoreRenderer[] renderedSections)
@@ -25,6 +25,14 @@ Updates:
           editorial commentary)
 2/20/09:  added line to show audio playback location
 12/30/09: display code for text sections
+10/17/26: switching versions reuses cached version data and renderings
+          (RenderedVersionCache) when available
+10/17/26: rerender(snum) rerenders from the changed section only as far as
+          following sections are affected
+10/17/26: rerender(snum,vnum,evnum) lays out an edit within one voice
+          again only from the measure containing the edit
+10/17/26: the render cache keeps its own copy of the section list instead
+          of the view's live list
 
                                                                         */
 /*----------------------------------------------------------------------*/
@@ -87,6 +95,8 @@ public class ViewCanvas extends JComponent implements MouseListener
   protected PieceData          curVersionMusicData; /* music data for
                                                        currently active
                                                        variant version */
+  ScoreRenderer                cachedRendering[]=null; /* rendering to use at next
+                                                          renderSections */
 
   public int nummeasures;
 
@@ -199,7 +209,18 @@ Parameters:
   protected void renderSections()
   {
     numSections=curVersionMusicData.getNumSections();
-    renderedSections=ScoreRenderer.renderSections(curVersionMusicData,options);
+    if (cachedRendering!=null)
+      {
+        renderedSections=cachedRendering;
+        cachedRendering=null;
+      }
+    else
+      {
+        renderedSections=ScoreRenderer.renderSections(curVersionMusicData,options);
+        RenderedVersionCache cache=getRenderCache();
+        if (cache!=null)
+          cache.put(curVariantVersion,options,curVersionMusicData,renderedSections.clone());
+      }
 
     leftRendererNum=0;
     nummeasures=0;
@@ -207,6 +228,42 @@ Parameters:
       nummeasures+=renderedSections[i].getNumMeasures();
   }
 
+/*------------------------------------------------------------------------
+Method:  void rerenderSections(int snum[,int vnum,int evnum])
+Purpose: Rerender sections starting from one which has been changed (all
+         sections if the section/voice structure no longer matches the
+         current rendering)
+Parameters:
+  Input:  int snum  - number of changed section
+          int vnum  - number of changed voice (-1 if unknown)
+          int evnum - index of first changed event in voice (-1 if unknown)
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+  protected void rerenderSections(int snum)
+  {
+    rerenderSections(snum,-1,-1);
+  }
+
+  protected void rerenderSections(int snum,int vnum,int evnum)
+  {
+    if (renderedSections==null ||
+        renderedSections.length!=curVersionMusicData.getNumSections() ||
+        renderedSections[snum].getSectionData()!=curVersionMusicData.getSection(snum) ||
+        renderedSections[snum].getStartingParams().length!=curVersionMusicData.getVoiceData().length)
+      {
+        renderSections();
+        return;
+      }
+
+    ScoreRenderer.rerenderSections(renderedSections,snum,vnum,evnum,curVersionMusicData,options);
+
+    nummeasures=0;
+    for (int i=0; i<numSections; i++)
+      nummeasures+=renderedSections[i].getNumMeasures();
+  }
+
 /*------------------------------------------------------------------------
 Method:  void loadoptions()
 Purpose: Get low-level drawing options from OptionSet (for quick access
@@ -498,7 +555,24 @@ Parameters:
     parentwin.updatemusicgfx=true;
   }
 
+/*------------------------------------------------------------------------
+Method:  void rerender(int snum[,int vnum,int evnum])
+Purpose: Rerender music after a change within one section; following
+         sections are only rerendered if the change affects them
+Parameters:
+  Input:  int snum  - number of changed section
+          int vnum  - number of changed voice (-1 if unknown)
+          int evnum - index of first changed event in voice (-1 if unknown)
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
   public void rerender(int snum)
+  {
+    rerender(snum,-1,-1);
+  }
+
+  public void rerender(int snum,int vnum,int evnum)
   {
     int oldSCREEN_MINHEIGHT=SCREEN_MINHEIGHT;
     loadoptions();
@@ -507,8 +581,7 @@ Parameters:
     initVoiceLabels();
 
     int oldnummeasures=nummeasures;
-
-    renderedSections[snum].render();
+    rerenderSections(snum,vnum,evnum);
 
     if (curmeasure>=nummeasures)
       curmeasure=nummeasures-1;
@@ -2324,6 +2397,11 @@ Parameters:
     return renderedSections;
   }
 
+  public RenderedVersionCache getRenderCache()
+  {
+    return parentwin==null ? null : parentwin.getRenderCache();
+  }
+
   public boolean inVariantVersion()
   {
     return getCurrentVariantVersion()!=musicData.getDefaultVariantVersion();
@@ -2340,10 +2418,26 @@ Parameters:
 
   public void setCurrentVariantVersion(VariantVersionData vvd)
   {
+    RenderedVersionCache       cache=getRenderCache();
+    RenderedVersionCache.Entry cached=null;
+    if (cache!=null)
+      if (vvd==curVariantVersion)
+        cache.invalidate(); /* current version is being reconstructed after a change */
+      else
+        cached=cache.get(vvd,options);
+
     curVariantVersion=vvd;
-    setMusicDataForDisplay(curVariantVersion==musicData.getDefaultVariantVersion() ?
-      musicData.recalcAllEventParams() :
-      curVariantVersion.constructMusicData(musicData).recalcAllEventParams());
+    if (cached!=null)
+      {
+        /* events are shared between versions, so parameters must still be
+           recalculated for this version */
+        cachedRendering=cached.getRenderedSections().clone();
+        setMusicDataForDisplay(cached.getMusicData().recalcAllEventParams());
+      }
+    else
+      setMusicDataForDisplay(curVariantVersion==musicData.getDefaultVariantVersion() ?
+        musicData.recalcAllEventParams() :
+        curVariantVersion.constructMusicData(musicData));
   }
 
   protected void setMusicDataForDisplay(PieceData musicData)
@@ -14,6 +14,7 @@
         Date Started    : 7/14/07
 
         Updates         :
+10/17/26: logs parse metrics (size, counts, time per phase) for each file
 
                                                                         */
 /*----------------------------------------------------------------------*/
@@ -155,7 +156,8 @@ Parameters:
                    
             System.out.print("Analyzing: "+fileName+"...");
 
-            PieceData       musicData=new CMMEParser(fileURL).piece;
+            CMMEParser      parser=new CMMEParser(fileURL);
+            PieceData       musicData=parser.piece;
             ScoreRenderer[] renderedSections=renderSections(musicData,optSet);
             Analyzer        a=new Analyzer(musicData,renderedSections);
 
@@ -164,7 +166,7 @@ Parameters:
             if (!screenoutput)
               outs.close();
 
-            System.out.println("done");
+            System.out.println("done ("+parser.getMetrics()+")");
 
             results.add(a);
           }
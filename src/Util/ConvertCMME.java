@@ -21,6 +21,10 @@ Updates:
          in one run)
 3/24/07: added support for recursive traversal of subdirectories
 7/14/07: moved recursive file-seeking functions to module RecursiveFileList
+10/17/26: file versions are probed in one batch (header only) before
+          conversion
+10/17/26: added option -z: write gzip-compressed output (filename.gz, for
+          publishing), including for files which need no conversion
 
                                                                         */
 /*----------------------------------------------------------------------*/
@@ -50,7 +54,8 @@ public class ConvertCMME
 /* Class variables */
 
   static boolean screenoutput=false,
-                 recursive=false;
+                 recursive=false,
+                 compressoutput=false;
 
   public static final String BaseDataDir="/data/";
   public static String       BaseDataURL;
@@ -106,13 +111,38 @@ Parameters:
         OutputStream outs;
 
         RecursiveFileList fl=new RecursiveFileList(mainFilename,recursive);
+        ArrayList<URL>    fileURLs=new ArrayList<URL>(fl.size());
+        for (File curfile : fl)
+          fileURLs.add(curfile.toURI().toURL());
+        ArrayList<String> fileVersions=CMMEParser.getFileVersions(fileURLs);
+
+        int fi=0;
         for (File curfile : fl)
           {
-            URL fileURL=curfile.toURI().toURL();
+            URL    fileURL=fileURLs.get(fi);
             String fileName=curfile.getName(),
-                   fileVersion=CMMEParser.getFileVersion(fileURL);
-            if (Float.valueOf(fileVersion).floatValue()>=0.8)
-              System.out.println(fileName+": already v. "+fileVersion+", skipping...");
+                   fileVersion=fileVersions.get(fi++);
+            if (fileVersion==null)
+              System.out.println(fileName+": unreadable, skipping...");
+            else if (Float.valueOf(fileVersion).floatValue()>=0.8)
+              if (compressoutput && !screenoutput)
+                {
+                  /* current version: only needs compressing */
+                  System.out.print("Compressing: "+fileName+"...");
+
+                  InputStream ins=new FileInputStream(curfile);
+                  outs=getOutputStream(curfile);
+                  byte[]      buf=new byte[65536];
+                  int         len;
+                  while ((len=ins.read(buf))>=0)
+                    outs.write(buf,0,len);
+                  ins.close();
+                  outs.close();
+
+                  System.out.println("done");
+                }
+              else
+                System.out.println(fileName+": already v. "+fileVersion+", skipping...");
             else
               {
                 System.out.print("Converting: "+fileName+"...");
@@ -120,7 +150,7 @@ Parameters:
                 PieceData musicdat=new CMMEOldVersionParser(fileURL).piece;
                 musicdat=convertCMMEData(musicdat);
 
-                outs=screenoutput ? System.out : new FileOutputStream(curfile);
+                outs=screenoutput ? System.out : getOutputStream(curfile);
                 CMMEParser.outputPieceData(musicdat,outs);
                 if (!screenoutput)
                   outs.close();
@@ -136,6 +166,24 @@ Parameters:
       }
   }
 
+/*------------------------------------------------------------------------
+Method:  OutputStream getOutputStream(File f)
+Purpose: Open output for a converted file
+Parameters:
+  Input:  File f - input file
+  Output: -
+  Return: stream for writing the file itself, or filename.gz if compressing
+------------------------------------------------------------------------*/
+
+  static OutputStream getOutputStream(File f) throws IOException
+  {
+    if (!compressoutput)
+      return new FileOutputStream(f);
+
+    return new ParallelGZIPOutputStream(
+      new BufferedOutputStream(new FileOutputStream(f.getPath()+".gz")));
+  }
+
 /*------------------------------------------------------------------------
 Method:  String parseCmdLine(String args[])
 Purpose: Parse command line
@@ -164,6 +212,9 @@ Parameters:
               case 'r':
                 recursive=true;
                 break;
+              case 'z':
+                compressoutput=true;
+                break;
               default:
                 usage_exit();
             }
@@ -198,6 +249,7 @@ Parameters:
     System.err.println("Options:");
     System.err.println("  -s: Screen output");
     System.err.println("  -r: Recursively search subdirectories");
+    System.err.println("  -z: Write gzip-compressed output (filename.gz)");
     System.exit(1);
   }
 
@@ -0,0 +1,280 @@
+/*----------------------------------------------------------------------*/
+/*
+
+        Module          : ParallelGZIPOutputStream.java
+
+        Package         : Util
+
+        Classes Included: ParallelGZIPOutputStream
+
+        Purpose         : GZIP output stream which compresses blocks of data
+                          on several processors at once
+
+        Programmer      : Ted Dumitrescu
+
+        Date Started    : 10/17/26
+
+        Updates         :
+
+                                                                        */
+/*----------------------------------------------------------------------*/
+
+package Util;
+
+/*----------------------------------------------------------------------*/
+/* Imported packages */
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.GZIPOutputStream;
+
+/*----------------------------------------------------------------------*/
+
+/*------------------------------------------------------------------------
+Class:   ParallelGZIPOutputStream
+Extends: java.io.FilterOutputStream
+Purpose: Split output into fixed-size blocks and compress each block as a
+         separate gzip member in a shared thread pool; members are written
+         in order, so the result is a standard (multi-member) gzip file
+         which gzip, zlib and java.util.zip.GZIPInputStream read as one
+         stream
+------------------------------------------------------------------------*/
+
+public class ParallelGZIPOutputStream extends FilterOutputStream
+{
+/*----------------------------------------------------------------------*/
+/* Class variables */
+
+  public static final int DEFAULT_BLOCK_SIZE=512*1024;
+
+  static final int NUM_THREADS=Runtime.getRuntime().availableProcessors();
+
+  static ExecutorService compressionThreads=null;
+
+/*----------------------------------------------------------------------*/
+/* Instance variables */
+
+  byte[] curBlock;
+  int    curBlockLen=0,
+         blockSize;
+  int    numMembers=0;
+  boolean closed=false;
+
+  /* blocks being compressed, in output order */
+  LinkedList<Future<byte[]>> pendingBlocks=new LinkedList<Future<byte[]>>();
+
+/*----------------------------------------------------------------------*/
+/* Class methods */
+
+/*------------------------------------------------------------------------
+Method:  ExecutorService getCompressionThreads()
+Purpose: Return thread pool shared by all streams (created on first use;
+         daemon threads, so that an idle pool does not keep the program
+         running)
+Parameters:
+  Input:  -
+  Output: -
+  Return: thread pool
+------------------------------------------------------------------------*/
+
+  static synchronized ExecutorService getCompressionThreads()
+  {
+    if (compressionThreads==null)
+      compressionThreads=Executors.newFixedThreadPool(NUM_THREADS,new ThreadFactory()
+        {
+          public Thread newThread(Runnable r)
+          {
+            Thread t=new Thread(r,"GZIP compression");
+            t.setDaemon(true);
+            return t;
+          }
+        });
+
+    return compressionThreads;
+  }
+
+/*------------------------------------------------------------------------
+Method:  byte[] compressMember(byte[] data,int len)
+Purpose: Compress one block into a complete gzip member
+Parameters:
+  Input:  byte[] data - block data
+          int len     - number of bytes in block
+  Output: -
+  Return: gzip member
+------------------------------------------------------------------------*/
+
+  static byte[] compressMember(byte[] data,int len) throws IOException
+  {
+    ByteArrayOutputStream memberOut=new ByteArrayOutputStream(len/4+64);
+    GZIPOutputStream      gzOut=new GZIPOutputStream(memberOut,Math.max(512,Math.min(len,8192)));
+    gzOut.write(data,0,len);
+    gzOut.finish();
+
+    return memberOut.toByteArray();
+  }
+
+/*----------------------------------------------------------------------*/
+/* Instance methods */
+
+/*------------------------------------------------------------------------
+Constructor: ParallelGZIPOutputStream(OutputStream out[,int blockSize])
+Purpose:     Initialize stream
+Parameters:
+  Input:  OutputStream out - stream to receive compressed data
+          int blockSize    - number of input bytes per gzip member
+  Output: -
+------------------------------------------------------------------------*/
+
+  public ParallelGZIPOutputStream(OutputStream out,int blockSize)
+  {
+    super(out);
+    this.blockSize=blockSize;
+    curBlock=new byte[blockSize];
+  }
+
+  public ParallelGZIPOutputStream(OutputStream out)
+  {
+    this(out,DEFAULT_BLOCK_SIZE);
+  }
+
+/*------------------------------------------------------------------------
+Method:  void write(int b|byte[] b,int off,int len)
+Purpose: Add data to current block, starting compression of each block as
+         it fills
+Parameters:
+  Input:  data to write
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+  public void write(int b) throws IOException
+  {
+    curBlock[curBlockLen++]=(byte)b;
+    if (curBlockLen==blockSize)
+      submitBlock();
+  }
+
+  public void write(byte[] b,int off,int len) throws IOException
+  {
+    while (len>0)
+      {
+        int copyLen=Math.min(len,blockSize-curBlockLen);
+        System.arraycopy(b,off,curBlock,curBlockLen,copyLen);
+        curBlockLen+=copyLen;
+        off+=copyLen;
+        len-=copyLen;
+
+        if (curBlockLen==blockSize)
+          submitBlock();
+      }
+  }
+
+/*------------------------------------------------------------------------
+Method:  void submitBlock()
+Purpose: Start compressing current block, and write out finished blocks
+         (waiting for the oldest one if too many are queued, which bounds
+         memory use)
+Parameters:
+  Input:  -
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+  void submitBlock() throws IOException
+  {
+    final byte[] blockData=curBlock;
+    final int    blockLen=curBlockLen;
+    pendingBlocks.add(getCompressionThreads().submit(new Callable<byte[]>()
+      {
+        public byte[] call() throws IOException
+        {
+          return compressMember(blockData,blockLen);
+        }
+      }));
+    numMembers++;
+
+    curBlock=new byte[blockSize];
+    curBlockLen=0;
+
+    while (!pendingBlocks.isEmpty() &&
+           (pendingBlocks.size()>NUM_THREADS*2 || pendingBlocks.getFirst().isDone()))
+      writeMember(pendingBlocks.removeFirst());
+  }
+
+/*------------------------------------------------------------------------
+Method:  void writeMember(Future<byte[]> member)
+Purpose: Write one compressed block to the output, waiting for it if
+         necessary
+Parameters:
+  Input:  Future<byte[]> member - compression task for block
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+  void writeMember(Future<byte[]> member) throws IOException
+  {
+    byte[] memberData;
+    try
+      {
+        memberData=member.get();
+      }
+    catch (InterruptedException e)
+      {
+        throw new InterruptedIOException("GZIP compression interrupted");
+      }
+    catch (ExecutionException e)
+      {
+        Throwable cause=e.getCause();
+        if (cause instanceof IOException)
+          throw (IOException)cause;
+        throw new IOException("GZIP compression failed: "+cause);
+      }
+
+    out.write(memberData);
+  }
+
+/*------------------------------------------------------------------------
+Method:  void finish()
+Purpose: Compress remaining data and write all blocks, without closing the
+         underlying stream
+Parameters:
+  Input:  -
+  Output: -
+  Return: -
+------------------------------------------------------------------------*/
+
+  public void finish() throws IOException
+  {
+    /* an empty file still needs one (empty) member */
+    if (curBlockLen>0 || numMembers==0)
+      submitBlock();
+    while (!pendingBlocks.isEmpty())
+      writeMember(pendingBlocks.removeFirst());
+  }
+
+  public void flush() throws IOException
+  {
+    if (curBlockLen>0)
+      submitBlock();
+    while (!pendingBlocks.isEmpty())
+      writeMember(pendingBlocks.removeFirst());
+    out.flush();
+  }
+
+  public void close() throws IOException
+  {
+    if (closed)
+      return;
+    closed=true;
+
+    try
+      {
+        finish();
+      }
+    finally
+      {
+        out.close();
+      }
+  }
+}
@@ -15,6 +15,8 @@
         Date Started    : 6/22/2007
 
         Updates         :
+10/17/26: reports to a DataStruct.ParseListener (ProgressBarListener for
+          progress bars), so that headless tools can track reads too
 
                                                                         */
 /*----------------------------------------------------------------------*/
@@ -27,6 +29,9 @@ package Util;
 import java.io.*;
 import javax.swing.JProgressBar;
 
+import DataStruct.ParseListener;
+import DataStruct.ProgressBarListener;
+
 /*----------------------------------------------------------------------*/
 
 /*------------------------------------------------------------------------
@@ -45,18 +50,35 @@ public class ProgressInputStream extends BufferedInputStream
 /*----------------------------------------------------------------------*/
 /* Instance variables */
 
-  JProgressBar progressBar;
-  int          contentLen,    /* length of stream */
-               PBStart,PBEnd, /* numbers for setting progress bar
-                                              at start and end of read */
-               curStreamPos;
-  double       curBarPos,lastBarPos;
+  ParseListener listener;
+  long          contentLen,  /* length of stream */
+                curStreamPos;
 
 /*----------------------------------------------------------------------*/
 
 /*----------------------------------------------------------------------*/
 /* Instance methods */
 
+/*------------------------------------------------------------------------
+Constructor: ProgressInputStream(InputStream in,ParseListener listener,
+                                 long contentLen)
+Purpose:     Initialize stream with listener for progress updates
+Parameters:
+  Input:  InputStream in         - stream from which to read data
+          ParseListener listener - listener to receive byte counts
+          long contentLen        - length of stream (-1 if unknown)
+  Output: -
+------------------------------------------------------------------------*/
+
+  public ProgressInputStream(InputStream in,ParseListener listener,
+                             long contentLen) throws IOException
+  {
+    super(in);
+    this.listener=listener;
+    this.contentLen=contentLen;
+    curStreamPos=0;
+  }
+
 /*------------------------------------------------------------------------
 Constructor: ProgressInputStream(InputStream in,JProgressBar progressBar,
                                  int contentLen,int PBStart,int PBEnd)
@@ -73,13 +95,7 @@ Parameters:
   public ProgressInputStream(InputStream in,JProgressBar progressBar,
                              int contentLen,int PBStart,int PBEnd) throws IOException
   {
-    super(in);
-    this.progressBar=progressBar;
-    this.contentLen=contentLen;
-    this.PBStart=PBStart;
-    this.PBEnd=PBEnd;
-    curStreamPos=0;
-    curBarPos=lastBarPos=(double)PBStart;
+    this(in,new ProgressBarListener(progressBar,PBStart,PBEnd),contentLen);
   }
 
   public int read(byte[] b,int off,int len) throws IOException
@@ -89,15 +105,10 @@ Parameters:
     if (amountRead>=0)
       {
         curStreamPos+=amountRead;
-        curBarPos+=((double)amountRead/(double)contentLen)*(PBEnd-PBStart);
-        if (curBarPos>lastBarPos+10)
-          {
-            progressBar.setValue((int)Math.round(curBarPos));
-            lastBarPos=curBarPos;
-          }
+        listener.bytesRead(curStreamPos,contentLen);
       }
     else
-      progressBar.setValue(PBEnd); /* EOF */
+      listener.bytesRead(curStreamPos,curStreamPos); /* EOF */
 
     return amountRead;
   }
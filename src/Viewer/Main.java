@@ -60,6 +60,7 @@ import java.util.zip.*;
 import java.io.*;
 
 import DataStruct.CMMEParser;
+import DataStruct.ProgressBarListener;
 import DataStruct.MetaData;
 import Gfx.MusicWin;
 import Util.AppContext;
@@ -412,7 +413,7 @@ Parameters:
             GZIPInputStream zipIn=new GZIPInputStream(
               new Util.ProgressInputStream(fURL.openStream(),
                                            lw.getProgressBar(),flen,0,75));
-            tmpmusicdat=new CMMEParser(zipIn,lw.getProgressBar()).piece;
+            tmpmusicdat=new CMMEParser(zipIn,new ProgressBarListener(lw.getProgressBar())).piece;
 
       }
     catch (Exception e)